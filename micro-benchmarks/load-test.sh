@@ -0,0 +1,26 @@
+#!/bin/sh
+#
+# Compares the thread pool modes of the embedded server under load: for every mode, the example
+# web app is started with: -Dmicro.server.thread_pool=<mode> and it is loaded by the LoadTest.
+#
+# usage: ./load-test.sh [web app] [clients] [seconds] [warm up seconds]
+# build first: mvn -B package
+#
+WEBAPP=${1:-../examples/markdown}
+CLIENTS=${2:-50}
+SECONDS_=${3:-30}
+WARMUP=${4:-10}
+PORT=${PORT:-8088}
+MODES=${MODES:-"queued executor"}
+JAR=target/benchmarks.jar
+
+for mode in $MODES; do
+  java -Dmicro.server.thread_pool=$mode -cp $JAR ca.simplegames.micro.WebServer $WEBAPP $PORT > target/load-test-$mode.log 2>&1 &
+  SERVER=$!
+  sleep 5
+
+  echo "$mode: $(java -cp $JAR ca.simplegames.micro.benchmarks.LoadTest http://localhost:$PORT/ $CLIENTS $SECONDS_ $WARMUP)"
+
+  kill $SERVER
+  wait $SERVER 2>/dev/null
+done
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.benchmarks;
+
+import ca.simplegames.micro.Globals;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The main class of the benchmarks jar. Runs the benchmarks with the JMH command line options and saves
+ * the results as JSON, in <code>target/jmh-result-&lt;micro version&gt;.json</code>, unless a result file
+ * or format is given. Two result files can be compared, for tracking the regressions between releases:
+ * <pre>
+ * java -jar target/benchmarks.jar MicroCallBenchmark -jvmArgsAppend -Dmicro.webapp=../micro-core/src/test/resources
+ * java -jar target/benchmarks.jar compare jmh-result-0.2.1.json jmh-result-0.2.2.json 5
+ * </pre>
+ * The benchmarks are run in forked JVMs, the system properties, like <code>micro.webapp</code>, are given
+ * to them with <code>-jvmArgsAppend</code>.
+ * The comparison lists the score change of every benchmark, and exits with 1 if any of them is worse by
+ * more than the threshold, in percents; 10 by default.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-19 3:20 AM)
+ */
+public class BenchmarkRunner {
+  public static final String COMPARE = "compare";
+  public static final double DEFAULT_THRESHOLD = 10;
+
+  public static void main(String[] args) throws Exception {
+    if (args.length > 0 && args[0].equals(COMPARE)) {
+      if (args.length < 3) {
+        System.err.println("usage: compare <baseline.json> <current.json> [threshold %]");
+        System.exit(2);
+      }
+      double threshold = args.length > 3 ? Double.parseDouble(args[3]) : DEFAULT_THRESHOLD;
+      System.exit(compare(new File(args[1]), new File(args[2]), threshold) ? 0 : 1);
+    }
+
+    CommandLineOptions cli;
+    try {
+      cli = new CommandLineOptions(args);
+    } catch (CommandLineOptionException e) {
+      System.err.println("Error parsing command line:");
+      System.err.println(" " + e.getMessage());
+      System.exit(1);
+      return;
+    }
+
+    if (cli.shouldHelp()) {
+      cli.showHelp();
+      return;
+    }
+
+    Runner runner;
+    if (cli.shouldList() || cli.shouldListWithParams() || cli.shouldListProfilers() ||
+        cli.shouldListResultFormats()) {
+      runner = new Runner(cli);
+      if (cli.shouldList()) {
+        runner.list();
+      } else if (cli.shouldListWithParams()) {
+        runner.listWithParams(cli);
+      } else if (cli.shouldListProfilers()) {
+        cli.listProfilers();
+      } else {
+        cli.listResultFormats();
+      }
+      return;
+    }
+
+    ChainedOptionsBuilder options = new OptionsBuilder().parent(cli);
+    if (!cli.getResultFormat().hasValue()) {
+      options.resultFormat(ResultFormatType.JSON);
+    }
+    if (!cli.getResult().hasValue()) {
+      new File("target").mkdirs();
+      options.result(String.format("target/jmh-result-%s.json", Globals.VERSION));
+    }
+    new Runner(options.build()).run();
+  }
+
+  /**
+   * compare the scores of two JMH result files, in the JSON format
+   *
+   * @param baseline  the results of the previous release
+   * @param current   the results of the current build
+   * @param threshold the largest acceptable regression, in percents
+   * @return true if no benchmark is slower than the threshold
+   * @throws IOException if the files cannot be read
+   */
+  public static boolean compare(File baseline, File current, double threshold) throws IOException {
+    Map<String, JSONObject> before = read(baseline);
+    Map<String, JSONObject> after = read(current);
+    boolean passed = true;
+
+    for (Map.Entry<String, JSONObject> entry : after.entrySet()) {
+      JSONObject result = entry.getValue();
+      JSONObject metric = result.getJSONObject("primaryMetric");
+      String unit = metric.getString("scoreUnit");
+      double score = metric.getDouble("score");
+
+      JSONObject previous = before.get(entry.getKey());
+      if (previous == null) {
+        System.out.println(String.format("%-90s %14.3f %-10s (new)", entry.getKey(), score, unit));
+        continue;
+      }
+
+      double previousScore = previous.getJSONObject("primaryMetric").getDouble("score");
+      double change = previousScore != 0 ? (score - previousScore) / previousScore * 100 : 0;
+      // the throughput is better when higher, the times are better when lower
+      double regression = result.getString("mode").equals("thrpt") ? -change : change;
+      boolean regressed = regression > threshold;
+      passed &= !regressed;
+
+      System.out.println(String.format("%-90s %14.3f %-10s %+8.2f%%%s",
+          entry.getKey(), score, unit, change, regressed ? "  REGRESSION" : ""));
+    }
+
+    for (String name : before.keySet()) {
+      if (!after.containsKey(name)) {
+        System.out.println(String.format("%-90s (missing)", name));
+      }
+    }
+    return passed;
+  }
+
+  private static Map<String, JSONObject> read(File file) throws IOException {
+    JSONArray results = new JSONArray(new String(Files.readAllBytes(file.toPath()), Charset.forName("UTF-8")));
+    Map<String, JSONObject> byName = new LinkedHashMap<String, JSONObject>();
+    for (int i = 0; i < results.length(); i++) {
+      JSONObject result = results.getJSONObject(i);
+      byName.put(name(result), result);
+    }
+    return byName;
+  }
+
+  // the benchmark, its mode and its parameters; the same benchmark may be run with many parameters
+  private static String name(JSONObject result) {
+    StringBuilder name = new StringBuilder(result.getString("benchmark"))
+        .append(" [").append(result.getString("mode")).append(']');
+    JSONObject params = result.optJSONObject("params");
+    if (params != null) {
+      Iterator keys = params.keys();
+      while (keys.hasNext()) {
+        String key = (String) keys.next();
+        name.append(' ').append(key).append('=').append(params.get(key));
+      }
+    }
+    return name.toString();
+  }
+}
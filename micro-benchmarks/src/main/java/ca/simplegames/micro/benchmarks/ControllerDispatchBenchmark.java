@@ -0,0 +1,113 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.benchmarks;
+
+import ca.simplegames.micro.Controller;
+import ca.simplegames.micro.Globals;
+import ca.simplegames.micro.Micro;
+import ca.simplegames.micro.MicroContext;
+import ca.simplegames.micro.controllers.ControllerException;
+import ca.simplegames.micro.controllers.ControllerManager;
+import org.jrack.utils.ClassUtilities;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of dispatching a Java controller: <code>registry</code> is executing it through the
+ * ControllerManager, resolving the controller class once, while <code>reflection</code> is loading the
+ * class and invoking the <code>execute</code> method reflectively for every call, like Micro did before.
+ * The <code>missing*</code> benchmarks are measuring the lookup of a name that is not a class, a script
+ * controller for example.
+ * <p/>
+ * The test web app is loaded from: <code>-Dmicro.webapp=../micro-core/src/test/resources</code>
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-18 8:40 PM)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ControllerDispatchBenchmark {
+  private static final String CONTROLLER = AnswerController.class.getName();
+  private static final String SCRIPT = "Foo.bsh";
+
+  private Micro micro;
+  private ControllerManager controllerManager;
+  private final Map<String, Object> configuration = new HashMap<String, Object>();
+
+  @Setup
+  public void setup() throws Exception {
+    String webapp = System.getProperty("micro.webapp", "../micro-core/src/test/resources");
+    micro = new Micro(webapp, null, webapp + "/WEB-INF/lib");
+    controllerManager = micro.getSite().getControllerManager();
+    configuration.put("answer", 42);
+  }
+
+  @TearDown
+  public void tearDown() {
+    micro.shutdown();
+  }
+
+  @Benchmark
+  public Object registry() throws Exception {
+    MicroContext<String> context = context();
+    controllerManager.execute(CONTROLLER, context, configuration);
+    return context.get("answer");
+  }
+
+  @Benchmark
+  public Object reflection() throws Exception {
+    MicroContext<String> context = context();
+    Controller controller = (Controller) ClassUtilities.loadClass(CONTROLLER).newInstance();
+    Method method = controller.getClass().getDeclaredMethod("execute", MicroContext.class, Map.class);
+    method.invoke(controller, context, configuration);
+    return context.get("answer");
+  }
+
+  @Benchmark
+  public Object missingRegistry() throws Exception {
+    return controllerManager.getRegistry().newInstance(SCRIPT, Controller.class);
+  }
+
+  @Benchmark
+  public Object missingReflection() {
+    try {
+      return ClassUtilities.loadClass(SCRIPT).newInstance();
+    } catch (Exception e) {
+      return e;
+    }
+  }
+
+  private MicroContext<String> context() {
+    MicroContext<String> context = new MicroContext<String>();
+    context.with(Globals.SITE, micro.getSite());
+    return context;
+  }
+
+  public static class AnswerController implements Controller {
+    public void execute(MicroContext context, Map configuration) throws ControllerException {
+      context.put("answer", configuration.get("answer"));
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.benchmarks;
+
+import ca.simplegames.micro.Globals;
+import ca.simplegames.micro.Micro;
+import ca.simplegames.micro.MicroContext;
+import ca.simplegames.micro.repositories.Repository;
+import ca.simplegames.micro.viewers.freemarker.MicroTemplateLoader;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders a layout-plus-view page with Freemarker. The <code>newConfiguration</code> benchmark is
+ * the rendering used by Micro before caching the Freemarker configurations: a new Configuration for
+ * every template, therefore parsing the templates on every request.
+ * <p/>
+ * The Freemarker templates are loaded from the Micro test web app:
+ * <code>-Dmicro.webapp=../micro-core/src/test/resources</code>
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-18 3:30 PM)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FreemarkerBenchmark {
+
+  @Param({Globals.PRODUCTION, Globals.DEVELOPMENT})
+  public String microEnv;
+
+  private Micro micro;
+  private Repository repository;
+  private MicroContext<String> context;
+
+  @Setup
+  public void setup() throws Exception {
+    String webapp = System.getProperty("micro.webapp", "../micro-core/src/test/resources");
+    micro = new Micro(webapp, null, webapp + "/WEB-INF/lib");
+    micro.getSite().setMicroEnv(microEnv);
+    repository = micro.getSite().getRepositoryManager().getRepository("freemarker");
+
+    List<String> items = new ArrayList<String>();
+    for (int i = 0; i < 50; i++) {
+      items.add(String.format("item <%d> & co.", i));
+    }
+    context = new MicroContext<String>();
+    context.with(Globals.SITE, micro.getSite())
+        .with("title", "Freemarker benchmark")
+        .with("items", items);
+  }
+
+  @TearDown
+  public void tearDown() {
+    micro.shutdown();
+  }
+
+  @Benchmark
+  public String cachedConfiguration() throws Exception {
+    StringWriter view = new StringWriter();
+    repository.getRenderer().render("page.ftl", repository, context, view);
+    context.with(Globals.YIELD, view.toString());
+
+    StringWriter page = new StringWriter();
+    repository.getRenderer().render("layout.ftl", repository, context, page);
+    return page.toString();
+  }
+
+  @Benchmark
+  public String newConfiguration() throws Exception {
+    context.with(Globals.YIELD, render("page.ftl"));
+    return render("layout.ftl");
+  }
+
+  private String render(String path) throws Exception {
+    Configuration fmConfig = new Configuration(Configuration.VERSION_2_3_21);
+    fmConfig.setTemplateLoader(new MicroTemplateLoader(repository));
+    fmConfig.setLocalizedLookup(false);
+    fmConfig.setWhitespaceStripping(micro.getSite().isProduction());
+
+    StringWriter writer = new StringWriter();
+    Template template = fmConfig.getTemplate(path, Globals.UTF8);
+    template.process(context, writer);
+    return writer.toString();
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A closed-loop HTTP load generator: a number of clients, each sending a request as soon as the previous one
+ * was answered, for a given duration, after a warm up. It reports the throughput and the latency percentiles;
+ * used by <code>load-test.sh</code> for comparing the thread pool modes of the embedded server.
+ * <p/>
+ * Usage:
+ * <pre>
+ * java -cp target/benchmarks.jar ca.simplegames.micro.benchmarks.LoadTest URL [clients] [seconds] [warm up seconds]
+ * </pre>
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-18 10:05 PM)
+ */
+public class LoadTest {
+  private final URL url;
+  private final int clients;
+  private final AtomicLong errors = new AtomicLong();
+  private volatile boolean recording;
+  private volatile boolean running = true;
+
+  public LoadTest(URL url, int clients) {
+    this.url = url;
+    this.clients = clients;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("usage: LoadTest URL [clients] [seconds] [warm up seconds]");
+      System.exit(1);
+    }
+
+    URL url = new URL(args[0]);
+    int clients = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+    int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+    int warmUp = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+    System.out.println(new LoadTest(url, clients).run(warmUp, seconds));
+  }
+
+  /**
+   * @param warmUp  the warm up duration, in seconds, not measured
+   * @param seconds the duration of the measurement, in seconds
+   * @return a one-line report: throughput, latency percentiles and errors
+   */
+  public String run(int warmUp, int seconds) throws InterruptedException {
+    final CountDownLatch finished = new CountDownLatch(clients);
+    final List<Latencies> latencies = new ArrayList<Latencies>();
+
+    for (int i = 0; i < clients; i++) {
+      final Latencies clientLatencies = new Latencies();
+      latencies.add(clientLatencies);
+
+      Thread thread = new Thread(new Runnable() {
+        public void run() {
+          try {
+            while (running) {
+              long start = System.nanoTime();
+              boolean ok = request();
+              long latency = System.nanoTime() - start;
+              if (recording) {
+                if (!ok) {
+                  errors.incrementAndGet();
+                } else {
+                  clientLatencies.add(latency);
+                }
+              }
+            }
+          } finally {
+            finished.countDown();
+          }
+        }
+      }, "load-client-" + i);
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    Thread.sleep(TimeUnit.SECONDS.toMillis(warmUp));
+    recording = true;
+    long start = System.nanoTime();
+    Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+    recording = false;
+    long elapsed = System.nanoTime() - start;
+    running = false;
+    finished.await();
+
+    int total = 0;
+    for (Latencies clientLatencies : latencies) {
+      total += clientLatencies.count;
+    }
+    long[] all = new long[total];
+    int offset = 0;
+    for (Latencies clientLatencies : latencies) {
+      System.arraycopy(clientLatencies.values, 0, all, offset, clientLatencies.count);
+      offset += clientLatencies.count;
+    }
+    Arrays.sort(all);
+
+    return String.format("clients: %d, requests: %d, throughput: %.1f req/s, " +
+            "latency (ms) p50: %.2f, p90: %.2f, p99: %.2f, max: %.2f, errors: %d",
+        clients, total, total / (elapsed / 1e9),
+        percentile(all, 50), percentile(all, 90), percentile(all, 99), percentile(all, 100), errors.get());
+  }
+
+  private boolean request() {
+    HttpURLConnection connection = null;
+    try {
+      connection = (HttpURLConnection) url.openConnection();
+      connection.setConnectTimeout(5000);
+      connection.setReadTimeout(30000);
+      int status = connection.getResponseCode();
+      InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+      if (in != null) {
+        byte[] buffer = new byte[8192];
+        while (in.read(buffer) != -1) {
+          // drain the response, so the connection is kept alive
+        }
+        in.close();
+      }
+      return status < 400;
+    } catch (IOException e) {
+      if (connection != null) {
+        connection.disconnect();
+      }
+      return false;
+    }
+  }
+
+  /**
+   * the latencies recorded by a client, in a buffer growing with the number of requests
+   */
+  private static class Latencies {
+    long[] values = new long[1024];
+    int count;
+
+    void add(long latency) {
+      if (count == values.length) {
+        values = Arrays.copyOf(values, count * 2);
+      }
+      values[count++] = latency;
+    }
+  }
+
+  private static double percentile(long[] sorted, double percentile) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.benchmarks;
+
+import ca.simplegames.micro.cache.DefaultCache;
+import ca.simplegames.micro.cache.LruCache;
+import ca.simplegames.micro.cache.MicroCache;
+import ca.simplegames.micro.cache.SimpleMapCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link MicroCache} implementations under contention: a read mostly load, 7 threads reading for
+ * every thread writing, like the view and the output caches of a live site, and a balanced one, 4 readers
+ * and 4 writers. The keys are reused, the caches are filled before measuring.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-19 3:05 AM)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class MicroCacheBenchmark {
+  private static final int KEYS = 512;
+
+  @Param({"lru", "map", "ehcache"})
+  public String implementation;
+
+  private MicroCache cache;
+  private String[] keys;
+  private String[] values;
+
+  @Setup
+  public void setup() throws Exception {
+    if (implementation.equals("lru")) {
+      cache = new LruCache();
+    } else if (implementation.equals("map")) {
+      cache = new SimpleMapCache();
+    } else {
+      cache = new DefaultCache();
+    }
+    cache.addCache("benchmark", (String) null);
+
+    keys = new String[KEYS];
+    values = new String[KEYS];
+    for (int i = 0; i < KEYS; i++) {
+      keys[i] = "/views/page_" + i + ".html";
+      values[i] = "<p>page " + i + "</p>";
+      cache.put(keys[i], values[i]);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    cache.destroy();
+  }
+
+  /**
+   * the position of a thread in the keys, so the threads are not all using the same key
+   */
+  @State(Scope.Thread)
+  public static class Cursor {
+    private int next;
+
+    @Setup
+    public void setup() {
+      next = (int) (Thread.currentThread().getId() * 31);
+    }
+
+    int next() {
+      return next++ & (KEYS - 1);
+    }
+  }
+
+  @Benchmark
+  @Group("readMostly")
+  @GroupThreads(7)
+  public Object readMostlyGet(Cursor cursor) throws Exception {
+    return cache.get(keys[cursor.next()]);
+  }
+
+  @Benchmark
+  @Group("readMostly")
+  @GroupThreads(1)
+  public void readMostlyPut(Cursor cursor) throws Exception {
+    int i = cursor.next();
+    cache.put(keys[i], values[i]);
+  }
+
+  @Benchmark
+  @Group("balanced")
+  @GroupThreads(4)
+  public Object balancedGet(Cursor cursor) throws Exception {
+    return cache.get(keys[cursor.next()]);
+  }
+
+  @Benchmark
+  @Group("balanced")
+  @GroupThreads(4)
+  public void balancedPut(Cursor cursor) throws Exception {
+    int i = cursor.next();
+    cache.put(keys[i], values[i]);
+  }
+}
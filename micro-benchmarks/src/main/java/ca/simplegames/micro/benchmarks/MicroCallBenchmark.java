@@ -0,0 +1,73 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ca.simplegames.micro.benchmarks;
+
+import ca.simplegames.micro.Micro;
+import org.jrack.Context;
+import org.jrack.Rack;
+import org.jrack.RackResponse;
+import org.jrack.context.MapContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Micro#call(Context)}, end to end, for the kinds of requests served by the Micro test web
+ * app: a Velocity view in its layout, a text view, a markdown view, a view with filters and controllers, a
+ * route rendering a view, a binary file and a page served from the output cache. The requests are plain
+ * Rack inputs, there is no servlet container involved.
+ * <p/>
+ * The test web app is loaded from: <code>-Dmicro.webapp=../micro-core/src/test/resources</code>
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-19 2:30 AM)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MicroCallBenchmark {
+
+  @Param({"/index.html", "/another_text.txt", "/index.md", "/view_with_filters.html", "/view/Micro",
+      "/micro-logo.png", "/cached.html"})
+  public String path;
+
+  private Micro micro;
+
+  @Setup
+  public void setup() throws Exception {
+    String webapp = System.getProperty("micro.webapp", "../micro-core/src/test/resources");
+    micro = new Micro(webapp, null, webapp + "/WEB-INF/lib");
+  }
+
+  @TearDown
+  public void tearDown() {
+    micro.shutdown();
+  }
+
+  @Benchmark
+  public RackResponse call() {
+    return micro.call(new MapContext<String>()
+        .with(Rack.REQUEST_METHOD, "GET")
+        .with(Rack.PATH_INFO, path)
+        .with(Rack.PARAMS, Collections.singletonMap("language", "en")));
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.benchmarks;
+
+import ca.simplegames.micro.Globals;
+import ca.simplegames.micro.Micro;
+import ca.simplegames.micro.MicroContext;
+import ca.simplegames.micro.utils.SlotMap;
+import org.jrack.Context;
+import org.jrack.Rack;
+import org.jrack.RackResponse;
+import org.jrack.context.MapContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the request context backed by a ConcurrentHashMap, created for every request, with the
+ * recycled context backed by a {@link SlotMap}.
+ * <p/>
+ * The <code>newContext</code> and <code>recycledContext</code> benchmarks are filling and reading a
+ * context the same way {@link Micro#call(Context)} does, while <code>requestMix</code> is serving the
+ * requests used by the Micro tests, with and without recycling the contexts. The test web app used by
+ * the latter is loaded from: <code>-Dmicro.webapp=../micro-core/src/test/resources</code>
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-18 1:55 PM)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MicroContextBenchmark {
+  private static final String[] REPOSITORIES = {"content", "markdown", "templates"};
+  private static final String[] HELPERS = {"hello"};
+
+  @State(Scope.Thread)
+  public static class Contexts {
+    MicroContext<String> recycled = new MicroContext<String>(new SlotMap());
+    Context<String> input = new MapContext<String>()
+        .with(Rack.REQUEST_METHOD, "GET")
+        .with(Rack.PATH_INFO, "/index.html")
+        .with(Rack.PARAMS, Collections.singletonMap("language", "en"));
+    Object site = new Object();
+    Object log = new Object();
+    Object engines = new Object();
+    Object wrapper = new Object();
+    RackResponse response = new RackResponse(200);
+    Map<String, Object> params = new HashMap<String, Object>();
+  }
+
+  @State(Scope.Benchmark)
+  public static class Requests {
+    @Param({"true", "false"})
+    public boolean contextRecycling;
+
+    Micro micro;
+    final String[] paths = {"/index.html", "/index.txt", "/another_text.txt", "/index.md", "/redir/me",
+        "/micro-logo.png", "/view/Micro"};
+
+    @Setup
+    public void setup() throws Exception {
+      String webapp = System.getProperty("micro.webapp", "../micro-core/src/test/resources");
+      micro = new Micro(webapp, null, webapp + "/WEB-INF/lib");
+      micro.getSite().setContextRecycling(contextRecycling);
+    }
+
+    @TearDown
+    public void tearDown() {
+      micro.shutdown();
+    }
+  }
+
+  @Benchmark
+  public Object newContext(Contexts state) {
+    return fill(new MicroContext<String>(), state);
+  }
+
+  @Benchmark
+  public Object recycledContext(Contexts state) {
+    state.recycled.reset();
+    return fill(state.recycled, state);
+  }
+
+  @Benchmark
+  public int requestMix(Requests state) throws Exception {
+    int length = 0;
+    for (String path : state.paths) {
+      RackResponse response = state.micro.call(new MapContext<String>()
+          .with(Rack.REQUEST_METHOD, "GET")
+          .with(Rack.PATH_INFO, path)
+          .with(Rack.PARAMS, Collections.singletonMap("language", "en")));
+      length += response.getStatus();
+    }
+    return length;
+  }
+
+  /**
+   * the context attributes used by Micro while serving a simple request
+   */
+  private Object fill(MicroContext<String> context, Contexts state) {
+    context.with(Globals.RACK_INPUT, state.input)
+        .with(Globals.SITE, state.site)
+        .with(Rack.RACK_LOGGER, state.log)
+        .with(Globals.LOG, state.log)
+        .with(Globals.REQUEST, context.getRequest())
+        .with(Globals.MICRO_ENV, Globals.PRODUCTION)
+        .with(Globals.PARAMS, state.input.get(Rack.PARAMS))
+        .with(Globals.PARAMS, state.params)
+        .with(Globals.SITE, state.site)
+        .with(Globals.PATH_INFO, state.input.get(Rack.PATH_INFO))
+        .with(Micro.TOOLS, Micro.tools);
+
+    context.with(Globals.MICRO_TEMPLATE_ENGINES, state.engines);
+    for (String repository : REPOSITORIES) {
+      context.with(repository, state.wrapper);
+    }
+    context.setRackResponse(state.response);
+    for (String helper : HELPERS) {
+      context.with(helper, state.wrapper);
+    }
+
+    Object last = context.getRackInput();
+    if (context.get(Globals.VIEW) == null && context.getTemplateName() == null) {
+      context.with(Globals.PATH, state.input.get(Rack.PATH_INFO));
+    }
+    last = context.getDefaultRepositoryName() == null ? context.get(Globals.PATH) : last;
+    last = context.getTemplatesRepositoryName() == null ? context.get(REPOSITORIES[2]) : last;
+    context.put(Globals.YIELD, last);
+    context.getParams();
+    return context.getRackResponse();
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ca.simplegames.micro.benchmarks;
+
+import ca.simplegames.micro.Globals;
+import ca.simplegames.micro.Micro;
+import ca.simplegames.micro.View;
+import ca.simplegames.micro.repositories.Repository;
+import ca.simplegames.micro.repositories.RepositoryContent;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the repository lookups made for every request: the View definition of a path, parsed once and
+ * shared, and the content of a file, read as a String or as the raw, cached, bytes. The
+ * <code>hotReload</code> parameter compares the repositories watched for changes, in development, with the
+ * ones of a production site.
+ * <p/>
+ * The test web app is loaded from: <code>-Dmicro.webapp=../micro-core/src/test/resources</code>
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-19 2:40 AM)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RepositoryBenchmark {
+  private static final String VIEW = "/view_with_filters.html";
+  private static final String FILE = "/index.html";
+
+  @Param({"false", "true"})
+  public boolean hotReload;
+
+  private Micro micro;
+  private Repository repository;
+
+  @Setup
+  public void setup() throws Exception {
+    String webapp = System.getProperty("micro.webapp", "../micro-core/src/test/resources");
+    // the files are watched in development, by default
+    System.setProperty(Globals.MICRO_ENV, hotReload ? Globals.DEVELOPMENT : Globals.PRODUCTION);
+    try {
+      micro = new Micro(webapp, null, webapp + "/WEB-INF/lib");
+    } finally {
+      System.clearProperty(Globals.MICRO_ENV);
+    }
+    repository = micro.getSite().getRepositoryManager().getRepository("content");
+  }
+
+  @TearDown
+  public void tearDown() {
+    micro.shutdown();
+  }
+
+  @Benchmark
+  public View getView() {
+    return repository.getView(VIEW);
+  }
+
+  @Benchmark
+  public View getMissingView() {
+    return repository.getView(FILE);
+  }
+
+  @Benchmark
+  public String read() throws Exception {
+    return repository.read(FILE);
+  }
+
+  @Benchmark
+  public RepositoryContent readContent() throws Exception {
+    return repository.readContent(FILE);
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.benchmarks;
+
+import ca.simplegames.micro.Globals;
+import ca.simplegames.micro.MicroContext;
+import ca.simplegames.micro.Route;
+import ca.simplegames.micro.SiteContext;
+import ca.simplegames.micro.route.RouteManager;
+import org.apache.wink.common.internal.uritemplate.UriTemplateMatcher;
+import org.jrack.Rack;
+import org.jrack.RackResponse;
+import org.jrack.context.MapContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of finding the Route matching a request path, as the number of routes grows.
+ * The <code>linearScan</code> benchmark is the route lookup used by Micro before having the
+ * compiled routes, kept here as a baseline.
+ * <p/>
+ * Run it with: <code>java -jar target/benchmarks.jar RouteManagerBenchmark</code>
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-18 11:40 AM)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RouteManagerBenchmark {
+
+  @Param({"10", "100", "500", "1000"})
+  public int routesCount;
+
+  private RouteManager routeManager;
+  private List<Route> routes = new ArrayList<Route>();
+  private MicroContext context;
+  private String path;
+
+  @Setup
+  public void setup() throws Exception {
+    File routesConfig = File.createTempFile("routes", ".yml");
+    routesConfig.deleteOnExit();
+
+    SiteContext site = new SiteContext(new MapContext<String>());
+    site.setMicroEnv(Globals.PRODUCTION);
+    routeManager = new RouteManager(site, routesConfig);
+
+    for (int i = 0; i < routesCount; i++) {
+      add(String.format("/section%d/about", i), "get");
+      add(String.format("/section%d/{id}/items", i), "get, head");
+      add(String.format("/section%d/{id}/items/{item:.*}", i), Globals.EMPTY_STRING);
+    }
+
+    // the worst case for a linear scan, the last route
+    path = String.format("/section%d/42/items/7", routesCount - 1);
+    context = new MicroContext<String>();
+    context.with(Globals.RACK_INPUT, new MapContext<String>().with(Rack.REQUEST_METHOD, "GET"))
+        .with(Globals.PARAMS, new HashMap<String, Object>());
+  }
+
+  @Benchmark
+  public RackResponse compiledRoutes() throws Exception {
+    routeManager.call(path, context);
+    return context.getRackResponse();
+  }
+
+  @Benchmark
+  public UriTemplateMatcher linearScan() {
+    for (Route route : routes) {
+      if (route.getMethod().isEmpty() || route.getMethod().contains("GET")) {
+        UriTemplateMatcher templateMatcher = route.match(path, route.getPath());
+        if (templateMatcher != null) {
+          templateMatcher.getVariables(true);
+          return templateMatcher;
+        }
+      }
+    }
+    return null;
+  }
+
+  private void add(String template, String method) {
+    Route route = new Route(template, Collections.<String, Object>singletonMap("method", method)) {
+      @Override
+      public RackResponse call(MicroContext context) throws Exception {
+        return null;
+      }
+    };
+    routes.add(route);
+    routeManager.add(route);
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.benchmarks;
+
+import ca.simplegames.micro.Globals;
+import ca.simplegames.micro.Micro;
+import ca.simplegames.micro.MicroContext;
+import ca.simplegames.micro.controllers.BSFEnginePool;
+import ca.simplegames.micro.controllers.ScriptController;
+import org.apache.bsf.BSFManager;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of the script controllers: <code>pooledEngines</code> is executing the
+ * controller with the engines borrowed from the site's pool, while <code>newEngine</code> is loading a
+ * new engine for every execution, like Micro did before pooling the engines. Run it with more threads,
+ * <code>-t 4</code>, for measuring the pool under contention.
+ * <p/>
+ * The JRuby benchmarks require jruby-complete on the classpath. The test web app is loaded from:
+ * <code>-Dmicro.webapp=../micro-core/src/test/resources</code>
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-18 7:30 PM)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScriptControllerBenchmark {
+  private static final Logger log = LoggerFactory.getLogger(ScriptControllerBenchmark.class);
+
+  @Param({"bsh", "groovy", "rb"})
+  public String extension;
+
+  private Micro micro;
+  private String language;
+  private String controllerName;
+  private String script;
+  private ScriptController controller;
+  private final Map<String, Object> configuration = new HashMap<String, Object>();
+
+  @Setup
+  public void setup() throws Exception {
+    String webapp = System.getProperty("micro.webapp", "../micro-core/src/test/resources");
+    micro = new Micro(webapp, null, webapp + "/WEB-INF/lib");
+
+    controllerName = "Benchmark." + extension;
+    BSFEnginePool.registerEngines();
+    language = BSFManager.getLangFromFilename(controllerName);
+    script = extension.equals("rb") ?
+        "$context.put('answer', $configuration.get('answer'))" :
+        "context.put(\"answer\", configuration.get(\"answer\"));";
+    controller = new ScriptController(micro.getSite(), controllerName, script);
+    configuration.put("answer", 42);
+  }
+
+  @TearDown
+  public void tearDown() {
+    micro.shutdown();
+  }
+
+  @Benchmark
+  public Object pooledEngines() throws Exception {
+    MicroContext<String> context = context();
+    controller.execute(context, configuration);
+    return context.get("answer");
+  }
+
+  @Benchmark
+  public Object newEngine() throws Exception {
+    MicroContext<String> context = context();
+    micro.getSite().getBSFEngine(language, context, configuration, log).exec(controllerName, 0, 0, script);
+    return context.get("answer");
+  }
+
+  private MicroContext<String> context() {
+    MicroContext<String> context = new MicroContext<String>();
+    context.with(Globals.SITE, micro.getSite());
+    return context;
+  }
+}
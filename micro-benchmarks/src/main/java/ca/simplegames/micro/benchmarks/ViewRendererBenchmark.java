@@ -0,0 +1,97 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.benchmarks;
+
+import ca.simplegames.micro.Globals;
+import ca.simplegames.micro.Micro;
+import ca.simplegames.micro.MicroContext;
+import ca.simplegames.micro.repositories.Repository;
+import ca.simplegames.micro.viewers.ViewRenderer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders a view with each of the template engines of Micro, through the {@link ViewRenderer} of the
+ * repository holding it: the same list of items with Velocity and Freemarker, and a markdown document.
+ * <p/>
+ * The views are loaded from the Micro test web app: <code>-Dmicro.webapp=../micro-core/src/test/resources</code>
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-19 2:50 AM)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ViewRendererBenchmark {
+  // {engine, repository, view}
+  private static final String[][] VIEWS = {
+      {"velocity", "content", "items.html"},
+      {"freemarker", "freemarker", "page.ftl"},
+      {"markdown", "markdown", "index.md"}};
+
+  @Param({"velocity", "freemarker", "markdown"})
+  public String engine;
+
+  private Micro micro;
+  private Repository repository;
+  private ViewRenderer renderer;
+  private String view;
+  private MicroContext<String> context;
+
+  @Setup
+  public void setup() throws Exception {
+    String webapp = System.getProperty("micro.webapp", "../micro-core/src/test/resources");
+    micro = new Micro(webapp, null, webapp + "/WEB-INF/lib");
+    micro.getSite().setMicroEnv(Globals.PRODUCTION);
+
+    for (String[] definition : VIEWS) {
+      if (definition[0].equals(engine)) {
+        repository = micro.getSite().getRepositoryManager().getRepository(definition[1]);
+        view = definition[2];
+      }
+    }
+    renderer = repository.getRenderer();
+
+    List<String> items = new ArrayList<String>();
+    for (int i = 0; i < 50; i++) {
+      items.add(String.format("item %d", i));
+    }
+    context = new MicroContext<String>();
+    context.with(Globals.SITE, micro.getSite())
+        .with("title", "ViewRenderer benchmark")
+        .with("items", items);
+  }
+
+  @TearDown
+  public void tearDown() {
+    micro.shutdown();
+  }
+
+  @Benchmark
+  public String render() throws Exception {
+    StringWriter out = new StringWriter();
+    renderer.render(view, repository, context, out);
+    return out.toString();
+  }
+}
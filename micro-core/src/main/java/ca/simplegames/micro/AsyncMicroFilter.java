@@ -0,0 +1,530 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro;
+
+import ca.simplegames.micro.utils.StaticContent;
+import org.apache.commons.lang3.StringUtils;
+import org.jrack.RackFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Servlet 3 filter serving the Micro requests asynchronously. The request is detached from the container
+ * thread with an {@link AsyncContext} and it is served by a thread of this filter, so the number of slow
+ * requests served concurrently is no longer limited by the container's thread pool. Every other aspect of
+ * a request is handled by the {@link RackFilter} wrapped by this filter, with the same configuration.
+ * <p/>
+ * Example, in a Servlet 3 web.xml:
+ * <pre>
+ * &lt;filter>
+ *   &lt;filter-name>Micro&lt;/filter-name>
+ *   &lt;filter-class>ca.simplegames.micro.AsyncMicroFilter&lt;/filter-class>
+ *   &lt;async-supported>true&lt;/async-supported>
+ *   &lt;init-param>
+ *     &lt;param-name>rack&lt;/param-name>
+ *     &lt;param-value>ca.simplegames.micro.MicroFilter&lt;/param-value>
+ *   &lt;/init-param>
+ *   &lt;init-param>
+ *     &lt;param-name>asyncTimeout&lt;/param-name>  &lt;!-- milliseconds -->
+ *     &lt;param-value>30000&lt;/param-value>
+ *   &lt;/init-param>
+ * &lt;/filter>
+ * </pre>
+ * Parameters: <code>async</code>, false for serving the requests synchronously, like the RackFilter;
+ * <code>asyncTimeout</code>, the time a request can take before being answered with a 503;
+ * <code>asyncThreads</code> and <code>asyncQueue</code>, the maximum number of threads serving the requests
+ * and of the requests waiting for a thread. The requests exceeding the queue are answered with a 503.
+ * <p/>
+ * The requests passed by Micro to the container, the static content for example, are dispatched back to the
+ * container, see: {@link AsyncContext#dispatch()}. The files sent out by Micro, see: {@link StaticContent}, are
+ * written by this filter after the response headers, see: {@link StaticContent.FileRegion}.
+ * <p/>
+ * A request is served through a response closed when the request times out or fails; once closed, whatever
+ * the serving thread is still writing is dropped and the response belongs to the container's thread.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-18 9:40 PM)
+ */
+public class AsyncMicroFilter implements javax.servlet.Filter {
+    private static final Logger log = LoggerFactory.getLogger(AsyncMicroFilter.class);
+
+    public static final String ASYNC = "async";
+    public static final String ASYNC_TIMEOUT = "asyncTimeout";
+    public static final String ASYNC_THREADS = "asyncThreads";
+    public static final String ASYNC_QUEUE = "asyncQueue";
+    public static final long DEFAULT_ASYNC_TIMEOUT = 30000;
+    public static final int DEFAULT_ASYNC_THREADS = 200;
+    public static final int DEFAULT_ASYNC_QUEUE = 1000;
+
+    // set on the requests dispatched back to the container
+    private static final String PASSED = Globals.MICRO + "async_passed";
+
+    private final RackFilter rackFilter;
+    private boolean async;
+    private long timeout;
+    private ThreadPoolExecutor executor;
+
+    public AsyncMicroFilter() {
+        this(new RackFilter());
+    }
+
+    AsyncMicroFilter(RackFilter rackFilter) {
+        this.rackFilter = rackFilter;
+    }
+
+    public void init(FilterConfig config) throws ServletException {
+        rackFilter.init(config);
+
+        async = Boolean.parseBoolean(StringUtils.defaultIfBlank(config.getInitParameter(ASYNC), "true").trim());
+        timeout = Long.parseLong(StringUtils.defaultIfBlank(config.getInitParameter(ASYNC_TIMEOUT),
+                String.valueOf(DEFAULT_ASYNC_TIMEOUT)).trim());
+
+        if (async) {
+            int threads = Integer.parseInt(StringUtils.defaultIfBlank(config.getInitParameter(ASYNC_THREADS),
+                    String.valueOf(DEFAULT_ASYNC_THREADS)).trim());
+            int queue = Integer.parseInt(StringUtils.defaultIfBlank(config.getInitParameter(ASYNC_QUEUE),
+                    String.valueOf(DEFAULT_ASYNC_QUEUE)).trim());
+
+            executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(queue), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "micro-async-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            log.info(String.format("Micro is serving the requests asynchronously; threads: %d, timeout: %d ms",
+                    threads, timeout));
+        }
+    }
+
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        if (request.getAttribute(PASSED) != null) {
+            request.removeAttribute(PASSED);
+            chain.doFilter(request, response);
+        } else if (!async || !request.isAsyncSupported() || request.getDispatcherType() != DispatcherType.REQUEST) {
+            request.setAttribute(StaticContent.ZERO_COPY, Boolean.TRUE);
+            rackFilter.doFilter(request, response, chain);
+            StaticContent.transfer(request, response);
+        } else {
+            startAsync(request, response);
+        }
+    }
+
+    private void startAsync(ServletRequest request, ServletResponse response) {
+        final AsyncContext asyncContext = request.startAsync(request, response);
+        final AtomicBoolean done = new AtomicBoolean();
+        final AsyncRequest asyncRequest = new AsyncRequest(asyncContext, done);
+        asyncContext.setTimeout(timeout);
+        asyncContext.addListener(new AsyncListener() {
+            public void onTimeout(AsyncEvent event) throws IOException {
+                if (done.compareAndSet(false, true)) {
+                    log.warn(String.format("the request was not served in: %d ms", timeout));
+                    asyncRequest.cancel();
+                    sendError(asyncContext.getResponse(), HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                    asyncContext.complete();
+                }
+            }
+
+            public void onComplete(AsyncEvent event) {
+            }
+
+            public void onError(AsyncEvent event) {
+                if (done.compareAndSet(false, true)) {
+                    asyncRequest.cancel();
+                    asyncContext.complete();
+                }
+            }
+
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+
+        try {
+            asyncRequest.future = executor.submit(asyncRequest);
+        } catch (RejectedExecutionException e) {
+            if (done.compareAndSet(false, true)) {
+                log.warn("too many requests, the request was rejected");
+                sendError(asyncContext.getResponse(), HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                asyncContext.complete();
+            }
+        }
+    }
+
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        rackFilter.destroy();
+    }
+
+    private static void sendError(ServletResponse response, int status) {
+        try {
+            if (!response.isCommitted()) {
+                ((HttpServletResponse) response).sendError(status);
+            }
+        } catch (IOException e) {
+            log.error(String.format("cannot send the error: %d; %s", status, e.getMessage()));
+        }
+    }
+
+    /**
+     * a detached request, served by the RackFilter in a thread of this filter
+     */
+    private class AsyncRequest implements Runnable {
+        private final AsyncContext asyncContext;
+        private final AtomicBoolean done;
+        private final GuardedResponse response;
+        private volatile Future<?> future;
+
+        AsyncRequest(AsyncContext asyncContext, AtomicBoolean done) {
+            this.asyncContext = asyncContext;
+            this.done = done;
+            this.response = new GuardedResponse((HttpServletResponse) asyncContext.getResponse());
+        }
+
+        public void run() {
+            final boolean[] passed = {false};
+            try {
+                asyncContext.getRequest().setAttribute(StaticContent.ZERO_COPY, Boolean.TRUE);
+                rackFilter.doFilter(asyncContext.getRequest(), response, new FilterChain() {
+                    public void doFilter(ServletRequest request, ServletResponse response) {
+                        passed[0] = true;
+                    }
+                });
+                StaticContent.transfer(asyncContext.getRequest(), response);
+            } catch (Exception e) {
+                log.error(String.format("cannot serve the request; %s", e.getMessage()));
+                sendError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            } finally {
+                if (done.compareAndSet(false, true)) {
+                    if (passed[0]) {
+                        asyncContext.getRequest().setAttribute(PASSED, Boolean.TRUE);
+                        asyncContext.dispatch();
+                    } else {
+                        asyncContext.complete();
+                    }
+                }
+            }
+        }
+
+        /**
+         * close the response, waiting for the write in progress, if any, and stop the serving thread
+         */
+        void cancel() {
+            response.close();
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * the response given to the RackFilter: the writes, the headers and the status are dropped once the
+     * response is closed. Closing is waiting for the write in progress, so the container's thread and the
+     * serving thread are never writing the response at the same time.
+     */
+    private static class GuardedResponse extends HttpServletResponseWrapper {
+        private boolean closed;
+        private GuardedOutputStream outputStream;
+        private PrintWriter writer;
+
+        GuardedResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        synchronized void close() {
+            closed = true;
+        }
+
+        @Override
+        public synchronized ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                final ServletOutputStream out = super.getOutputStream();
+                outputStream = new GuardedOutputStream() {
+                    public void write(ByteBuffer buffer) throws IOException {
+                        synchronized (GuardedResponse.this) {
+                            if (!closed) {
+                                StaticContent.write(out, buffer);
+                            }
+                        }
+                    }
+
+                    public void write(int b) throws IOException {
+                        synchronized (GuardedResponse.this) {
+                            if (!closed) {
+                                out.write(b);
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        synchronized (GuardedResponse.this) {
+                            if (!closed) {
+                                out.write(b, off, len);
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        synchronized (GuardedResponse.this) {
+                            if (!closed) {
+                                out.flush();
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        synchronized (GuardedResponse.this) {
+                            if (!closed) {
+                                out.close();
+                            }
+                        }
+                    }
+
+                    public boolean isReady() {
+                        return out.isReady();
+                    }
+
+                    public void setWriteListener(WriteListener writeListener) {
+                        out.setWriteListener(writeListener);
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public synchronized PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                final PrintWriter out = super.getWriter();
+                writer = new PrintWriter(new Writer() {
+                    public void write(char[] buffer, int off, int len) {
+                        synchronized (GuardedResponse.this) {
+                            if (!closed) {
+                                out.write(buffer, off, len);
+                            }
+                        }
+                    }
+
+                    public void flush() {
+                        synchronized (GuardedResponse.this) {
+                            if (!closed) {
+                                out.flush();
+                            }
+                        }
+                    }
+
+                    public void close() {
+                        synchronized (GuardedResponse.this) {
+                            if (!closed) {
+                                out.close();
+                            }
+                        }
+                    }
+                });
+            }
+            return writer;
+        }
+
+        @Override
+        public synchronized void sendError(int sc, String msg) throws IOException {
+            if (!closed) {
+                super.sendError(sc, msg);
+            }
+        }
+
+        @Override
+        public synchronized void sendError(int sc) throws IOException {
+            if (!closed) {
+                super.sendError(sc);
+            }
+        }
+
+        @Override
+        public synchronized void sendRedirect(String location) throws IOException {
+            if (!closed) {
+                super.sendRedirect(location);
+            }
+        }
+
+        @Override
+        public synchronized void setStatus(int sc) {
+            if (!closed) {
+                super.setStatus(sc);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public synchronized void setStatus(int sc, String sm) {
+            if (!closed) {
+                super.setStatus(sc, sm);
+            }
+        }
+
+        @Override
+        public synchronized void addCookie(Cookie cookie) {
+            if (!closed) {
+                super.addCookie(cookie);
+            }
+        }
+
+        @Override
+        public synchronized void setHeader(String name, String value) {
+            if (!closed) {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public synchronized void addHeader(String name, String value) {
+            if (!closed) {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public synchronized void setDateHeader(String name, long date) {
+            if (!closed) {
+                super.setDateHeader(name, date);
+            }
+        }
+
+        @Override
+        public synchronized void addDateHeader(String name, long date) {
+            if (!closed) {
+                super.addDateHeader(name, date);
+            }
+        }
+
+        @Override
+        public synchronized void setIntHeader(String name, int value) {
+            if (!closed) {
+                super.setIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public synchronized void addIntHeader(String name, int value) {
+            if (!closed) {
+                super.addIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public synchronized void setContentType(String type) {
+            if (!closed) {
+                super.setContentType(type);
+            }
+        }
+
+        @Override
+        public synchronized void setContentLength(int len) {
+            if (!closed) {
+                super.setContentLength(len);
+            }
+        }
+
+        @Override
+        public synchronized void setContentLengthLong(long len) {
+            if (!closed) {
+                super.setContentLengthLong(len);
+            }
+        }
+
+        @Override
+        public synchronized void setCharacterEncoding(String charset) {
+            if (!closed) {
+                super.setCharacterEncoding(charset);
+            }
+        }
+
+        @Override
+        public synchronized void setLocale(Locale locale) {
+            if (!closed) {
+                super.setLocale(locale);
+            }
+        }
+
+        @Override
+        public synchronized void setBufferSize(int size) {
+            if (!closed) {
+                super.setBufferSize(size);
+            }
+        }
+
+        @Override
+        public synchronized void flushBuffer() throws IOException {
+            if (!closed) {
+                super.flushBuffer();
+            }
+        }
+
+        @Override
+        public synchronized void reset() {
+            if (!closed) {
+                super.reset();
+            }
+        }
+
+        @Override
+        public synchronized void resetBuffer() {
+            if (!closed) {
+                super.resetBuffer();
+            }
+        }
+    }
+
+    /**
+     * the output stream of a {@link GuardedResponse}, writing the mapped files without copying them
+     */
+    private abstract static class GuardedOutputStream extends ServletOutputStream
+            implements StaticContent.BufferOutput {
+    }
+}
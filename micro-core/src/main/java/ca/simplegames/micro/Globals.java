@@ -37,6 +37,7 @@ public class Globals {
   public static final String MICRO_CACHE_MANAGER = MICRO + "cache_manager";
 
   public static final String SCRIPT_CONTROLLERS_CACHE_NAME = MICRO + "script_controllers_cache";
+  public static final String OUTPUT_CACHE_NAME = MICRO + "output_cache";
   public static final String MICRO_CACHE_CONFIG = MICRO_CACHE_MANAGER + "_config";
   public static final String MICRO_HELPERS_CONFIG = "helpers";
 
@@ -60,6 +61,9 @@ public class Globals {
   public static final String FILTERS = "filters";
   public static final String WRAPPER = "wrapper";
   public static final String CONTROLLERS = CONTROLLER + "s";
+  public static final String PARALLEL = "parallel";
+  public static final String ASYNC = "async";
+  public static final String TIMEOUT = "timeout";
   public static final String PARAMS = "params";
   public static final String VIEW = "view";
   public static final String YML_EXTENSION = ".yml";
@@ -72,6 +76,9 @@ public class Globals {
   public static final String ERROR_MESSAGE = "error_message";
   public static final String YIELD = "yield";
   public static final String LEGACY = "LEGACY";
+  public static final String CONTEXT_RECYCLING = "context_recycling";
+  public static final String HOT_RELOAD = "hot_reload";
+  public static final String INSTRUMENTATION = "instrumentation";
 
   public static final String HEADERS_CONTENT_TYPE = "Content-Type";
 
@@ -16,18 +16,23 @@
 
 package ca.simplegames.micro;
 
+import ca.simplegames.micro.cache.CachedOutput;
+import ca.simplegames.micro.cache.OutputCache;
 import ca.simplegames.micro.controllers.ControllerException;
 import ca.simplegames.micro.controllers.ControllerNotFoundException;
 import ca.simplegames.micro.helpers.HelperWrapper;
+import ca.simplegames.micro.instrumentation.Instrumentation;
+import ca.simplegames.micro.instrumentation.Instrumentation.Stage;
+import ca.simplegames.micro.instrumentation.RequestTimings;
 import ca.simplegames.micro.repositories.Repository;
 import ca.simplegames.micro.repositories.RepositoryManager;
+import ca.simplegames.micro.utils.ByteSink;
 import ca.simplegames.micro.utils.ClassUtils;
-import ca.simplegames.micro.utils.CollectionUtils;
 import ca.simplegames.micro.utils.ParamsFactory;
 import ca.simplegames.micro.utils.PathUtilities;
+import ca.simplegames.micro.utils.SlotMap;
 import ca.simplegames.micro.viewers.TemplateEngineWrapper;
 import ca.simplegames.micro.viewers.ViewException;
-import org.apache.bsf.BSFManager;
 import org.apache.commons.lang3.StringUtils;
 import org.jrack.*;
 import org.jrack.context.MapContext;
@@ -64,8 +69,15 @@ public class Micro {
       .with("PathUtilities", new PathUtilities())
       .with("StringUtils", new StringUtils());
 
+  private static final MicroContext.Binding TEMPLATE_ENGINES = new MicroContext.Binding() {
+    public Object resolve(MicroContext context) {
+      return new TemplateEngineWrapper(context);
+    }
+  };
+
   private SiteContext site;
   private String welcomeFile;
+  private final ThreadLocal<MicroContext<String>> recycledContexts = new ThreadLocal<MicroContext<String>>();
 
   public Micro(String path, ServletContext servletContext, String userClassPaths) throws Exception {
     final File applicationPath = new File(path);
@@ -101,7 +113,6 @@ public class Micro {
     if (log.isDebugEnabled()) {
       log.info("classpath: " + resources);
     }
-    configureBSF();
 
     site.loadApplication(webInfPath.getAbsolutePath() + "/config");
     // done with the init phase
@@ -125,10 +136,52 @@ public class Micro {
   }
 
   public RackResponse call(Context<String> input) {
+    MicroContext<String> context = acquireContext();
+    RequestTimings timings = site.getInstrumentation().start();
+    context.setTimings(timings);
+    try {
+      RackResponse response = call(input, context);
+      if (timings != null) {
+        timings.complete(response.getStatus(), (String) context.get(Globals.PATH));
+        if (site.getInstrumentation().isServerTiming()) {
+          response.withHeader(Instrumentation.SERVER_TIMING, timings.toServerTiming());
+        }
+      }
+      return response;
+    } finally {
+      if (context.inUse) {
+        // don't keep the objects of this request alive until the next one
+        context.reset();
+        context.inUse = false;
+      }
+    }
+  }
 
-    MicroContext context = new MicroContext<String>();
+  /**
+   * get a context for a new request. If recycling is enabled, the context used by the previous request
+   * served by this thread, cleared when that request was completed, is reused. A new context is created if
+   * recycling is disabled, or for a nested call.
+   *
+   * @return a context ready to be used
+   */
+  private MicroContext<String> acquireContext() {
+    if (!site.isContextRecycling()) {
+      return new MicroContext<String>();
+    }
 
-    //try {
+    MicroContext<String> context = recycledContexts.get();
+    if (context == null) {
+      context = new MicroContext<String>(new SlotMap());
+      recycledContexts.set(context);
+    } else if (context.inUse) {
+      return new MicroContext<String>(new SlotMap());
+    }
+
+    context.inUse = true;
+    return context;
+  }
+
+  private RackResponse call(Context<String> input, MicroContext context) {
     input.with(Globals.SITE, site);
     input.with(Rack.RACK_LOGGER, log);
 
@@ -148,9 +201,10 @@ public class Micro {
 
     input.with(Globals.CONTEXT, context); // mostly for helping the testing effort
 
-    context.with(Globals.MICRO_TEMPLATE_ENGINES, new TemplateEngineWrapper(context));
+    // the template engines, the repositories and the helpers are bound lazily, created only if used
+    context.with(Globals.MICRO_TEMPLATE_ENGINES, TEMPLATE_ENGINES);
     for (Repository repository : site.getRepositoryManager().getRepositories()) {
-      context.with(repository.getName(), repository.getRepositoryWrapper(context));
+      context.with(repository.getName(), repository);
     }
 
     RackResponse response = new RackResponse(RackResponseUtils.ReturnCode.OK)
@@ -160,19 +214,46 @@ public class Micro {
     context.setRackResponse(response);
 
     try {
-      // inject the Helpers into the current context
+      // the stages of the request are timed only if the instrumentation is enabled
+      RequestTimings timings = context.getTimings();
+      long mark = timings != null ? System.nanoTime() : 0;
+
+      // inject the Helpers into the current context; created when used
       List<HelperWrapper> helpers = site.getHelperManager().getHelpers();
       if (!helpers.isEmpty()) {
         for (HelperWrapper helper : helpers) {
           if (helper != null) {
-            context.with(helper.getName(), helper.getInstance(context));
+            context.with(helper.getName(), helper);
           }
         }
       }
+      if (timings != null) {
+        mark = timings.stage(Stage.HELPERS, mark);
+      }
 
       if (site.getFilterManager() != null) {
         callFilters(site.getFilterManager().getBeforeFilters(), context);
       }
+      if (timings != null) {
+        mark = timings.stage(Stage.BEFORE_FILTERS, mark);
+      }
+
+      // a cached page is sent out after the before filters, without calling the routes, the controllers or
+      // the renderers; looked up only if a Route or a View has an output cache
+      boolean outputCaching = isOutputCaching();
+      boolean cacheable = !context.isHalt(); // the response is not provided by a before filter
+      OutputCache outputCache = null;
+      String outputCacheKey = null;
+      if (outputCaching && cacheable) {
+        outputCache = findOutputCache(input);
+        outputCacheKey = outputCache != null ? outputCache.key(context) : null;
+        if (outputCacheKey != null) {
+          CachedOutput cachedOutput = outputCache.get(site, outputCacheKey);
+          if (cachedOutput != null) {
+            return cachedOutput.toResponse(context);
+          }
+        }
+      }
 
       if (!context.isHalt()) {
         String path = input.get(JRack.PATH_INFO);
@@ -181,7 +262,10 @@ public class Micro {
         }
 
         if (site.getRouteManager() != null) {
-          site.getRouteManager().call(path, context);
+          site.getRouteManager().call(path, context); // timed by the RouteManager
+        }
+        if (timings != null) {
+          mark = System.nanoTime();
         }
 
         // Routes or filters providing their own Views will most probably ask a flow interruption, hence the
@@ -215,10 +299,21 @@ public class Micro {
               templateName = view.getTemplate();
             }
           }
+          if (timings != null) {
+            mark = timings.stage(Stage.VIEW_CONFIG, mark);
+          }
 
           if (!site.isLegacy()) {
             // Execute the View Filters and Controllers (if any), render it and save it as the context 'yield' var
+            long viewControllers = timings != null ? timings.getNanos(Stage.VIEW_CONTROLLERS) : 0;
             context.put(Globals.YIELD, defaultRepository.getRepositoryWrapper(context).get(path));
+            if (timings != null) {
+              long now = System.nanoTime();
+              // the View controllers are timed by the RepositoryWrapper
+              timings.record(Stage.VIEW_RENDER, null,
+                  now - mark - (timings.getNanos(Stage.VIEW_CONTROLLERS) - viewControllers));
+              mark = now;
+            }
           }
 
           // Render the Default Template. The template will pull out the View via the Globals.YIELD, and the result being
@@ -232,11 +327,20 @@ public class Micro {
           }
 
           if (templatesRepository != null) {
-            String out = templatesRepository.getRepositoryWrapper(context)
-                .get(templateName + pathBasedContentType);
-
-            response.withContentLength(out.getBytes(Charset.forName(Globals.UTF8)).length)
-                .withBody(out);
+            // the Template is rendered straight into a pooled UTF-8 byte sink, counting the bytes as well
+            ByteSink out = ByteSink.acquire();
+            try {
+              templatesRepository.getRepositoryWrapper(context)
+                  .render(templateName + pathBasedContentType, out.getWriter());
+
+              response.withContentLength(out.size())
+                  .withBody(out.toByteArray());
+            } finally {
+              out.release();
+            }
+            if (timings != null) {
+              mark = timings.stage(Stage.LAYOUT_RENDER, mark);
+            }
           } else {
             throw new FileNotFoundException(String.format("templates repository: %s", context.getTemplatesRepositoryName()));
           }
@@ -246,10 +350,22 @@ public class Micro {
           if (site.getFilterManager() != null) {
             callFilters(site.getFilterManager().getAfterFilters(), context);
           }
+          if (timings != null) {
+            timings.stage(Stage.AFTER_FILTERS, mark);
+          }
         }
       }
 
-      return context.getRackResponse().withContentType(getContentType(context));
+      response = context.getRackResponse().withContentType(getContentType(context));
+      if (cacheable && !outputCaching && isOutputCaching()) {
+        // the first output cache was found by this request, parsing its View
+        outputCache = findOutputCache(input);
+        outputCacheKey = outputCache != null ? outputCache.key(context) : null;
+      }
+      if (outputCacheKey != null && context.get(OutputCache.NOT_CACHEABLE) == null) {
+        outputCache.put(site, outputCacheKey, response);
+      }
+      return response;
 
     } catch (ControllerNotFoundException e) {
       context.with(Globals.ERROR, e);
@@ -270,17 +386,6 @@ public class Micro {
       e.printStackTrace();
       return badJuju(context, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e);
     }
-    // Experimental!!!!!!
-    //        } finally {
-    //            // this is an experimental trick that will save some processing time required by BSF to load
-    //            // various engines.
-    //            @SuppressWarnings("unchecked")
-    //            CloseableThreadLocal<BSFManager> closeableBsfManager = (CloseableThreadLocal<BSFManager>)
-    //                    context.get(Globals.CLOSEABLE_BSF_MANAGER);
-    //            if(closeableBsfManager!=null){
-    //                closeableBsfManager.close();
-    //            }
-    //    }
   }
 
   /**
@@ -308,22 +413,16 @@ public class Micro {
     }
 
     // verify the charset
-    Map<String, String[]> params = (Map<String, String[]>) context.get(Globals.PARAMS);
-    if (!CollectionUtils.isEmpty(params) && params.get(Globals.CHARSET) != null
-        && !contentType.contains(Globals.CHARSET)) {
-      contentType = String.format("%s;%s", contentType, params.get(Globals.CHARSET)[0]);
+    Map<String, Object> params = (Map<String, Object>) context.get(Globals.PARAMS);
+    Object charset = params != null ? params.get(Globals.CHARSET) : null;
+    if (charset != null && !contentType.contains(Globals.CHARSET)) {
+      contentType = String.format("%s;%s", contentType,
+          charset instanceof String[] ? ((String[]) charset)[0] : charset);
     }
 
     return contentType;
   }
 
-  private void configureBSF() {
-    BSFManager.registerScriptingEngine("beanshell", "bsh.util.BeanShellBSFEngine", new String[]{"bsh"});
-    BSFManager.registerScriptingEngine("groovy", "org.codehaus.groovy.bsf.GroovyEngine",
-        new String[]{"groovy", "gy"});
-    BSFManager.registerScriptingEngine("jruby19", "org.jruby.embed.bsf.JRubyEngine", new String[]{"ruby", "rb"});
-  }
-
   private void showBanner() {
     log.info("");
     log.info(" _ __ ___ ( ) ___ _ __ ___ ");
@@ -359,13 +458,26 @@ public class Micro {
   }
 
   private String maybeAppendHtmlToPath(MicroContext context) {
-    final Context rackInput = context.getRackInput();
+    String path = requestPath(context.getRackInput());
+
+    if (welcomeFile.isEmpty() || path.contains(HTML)) {
+      return path;
+    }
 
+    path = appendWelcomeFile(path);
+    context.with(Globals.PATH_INFO, path);
+    return path;
+  }
+
+  private String requestPath(Context rackInput) {
     String path = (String) rackInput.get(JRack.PATH_INFO);
     if (StringUtils.isBlank(path)) {
       path = (String) rackInput.get(Rack.SCRIPT_NAME);
     }
+    return path;
+  }
 
+  private String appendWelcomeFile(String path) {
     if (welcomeFile.isEmpty() || path.contains(HTML)) {
       return path;
     }
@@ -377,10 +489,41 @@ public class Micro {
       String welcomeFile = StringUtils.defaultString(site.getWelcomeFile(), INDEX + DOT + HTML);
       path = path + welcomeFile;
     }
-    context.with(Globals.PATH_INFO, path);
     return path;
   }
 
+  /**
+   * @return true if the output cache is used: not in development mode, and at least one Route, or one of the
+   * Views parsed so far, has an output cache
+   */
+  private boolean isOutputCaching() {
+    return !site.isDevelopment() &&
+        (site.getRouteManager() != null && site.getRouteManager().getRouteTable().hasOutputCaches() ||
+            site.getRepositoryManager().getDefaultRepository().hasOutputCaches());
+  }
+
+  /**
+   * find the output cache of the requested page: the one of the matching Route, or the one of the View
+   * from the default repository.
+   *
+   * @param input the Rack input
+   * @return the output cache or null if the page is not cached
+   */
+  private OutputCache findOutputCache(Context<String> input) {
+    String path = requestPath(input);
+    if (site.getRouteManager() != null) {
+      Route route = site.getRouteManager().find(path, input.get(Rack.REQUEST_METHOD));
+      if (route != null) {
+        return route.getOutputCache();
+      }
+    }
+
+    path = appendWelcomeFile(path);
+    View view = site.getRepositoryManager().getDefaultRepository()
+        .getView(path.contains(DOUBLE_SLASH) ? path.replace(DOUBLE_SLASH, SLASH) : path);
+    return view != null ? view.getOutputCache() : null;
+  }
+
   private void callFilters(List<Filter> filters, MicroContext context) {
     if (!filters.isEmpty()) {
       for (Filter filter : filters) {
@@ -16,6 +16,8 @@
 
 package ca.simplegames.micro;
 
+import ca.simplegames.micro.instrumentation.RequestTimings;
+import ca.simplegames.micro.utils.SlotMap;
 import ca.simplegames.micro.utils.UrlUtilities;
 import org.jrack.Context;
 import org.jrack.Rack;
@@ -24,13 +26,22 @@ import org.slf4j.Logger;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * A thread safe context created for every new Request. Avoid serializing its instance as it may be
+ * A context created for every new Request. Avoid serializing its instance as it may be
  * loaded with user stuff.
+ * <p/>
+ * The contexts created with the default constructor are thread safe. If <code>context_recycling: true</code>
+ * is set in <code>micro-config.yml</code>, Micro is reusing the request contexts, one per worker thread, and
+ * clearing them when the request is completed, see: {@link #reset()}; these are backed by a {@link SlotMap}
+ * and they are confined to the thread serving the request.
  *
  * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
  * @since $Revision$ (created: 2012-12-19 11:05 AM)
@@ -39,6 +50,26 @@ public class MicroContext<T> implements Context<T> {
     protected Map<String, Object> map;
     protected Context<T> rackInput;
     private boolean halt;
+    private Map<String, Object> forkedFrom; // the attributes of the parent context, when this one was forked
+    private RackResponse forkedResponse; // the copy of the parent's response, changed by a forked context
+    private RackResponse forkedResponseState; // the parent's response, as it was when this context was forked
+    boolean inUse; // true while a recycled context is serving a request
+    private RequestTimings timings; // null, unless the instrumentation is enabled
+
+    /**
+     * A value of the context created when it is read the first time; the helpers, the repository wrappers,
+     * etc. Added with {@link #with(String, Object)} and replaced by the value it resolves to, by
+     * {@link #get(String)}. The code iterating the context, or reading its map directly, is seeing the
+     * bindings not resolved yet.
+     */
+    public interface Binding {
+        /**
+         * @param context the context reading the value
+         * @return the value, or null for removing the key
+         * @throws Exception if the value cannot be created
+         */
+        Object resolve(MicroContext context) throws Exception;
+    }
 
     public MicroContext(Map<String, Object> map) {
         this.map = map;
@@ -49,20 +80,29 @@ public class MicroContext<T> implements Context<T> {
     }
 
     public Object getObject(String key) {
-        if (key != null && map != null && map.containsKey(key)) {
-            return map.get(key);
-        } else {
-            return null;
-        }
+        Object value = key != null && map != null ? map.get(key) : null;
+        return value instanceof Binding ? resolve(key, (Binding) value) : value;
     }
 
     @SuppressWarnings("unchecked")
     public T get(String key) {
-        if (key != null && map != null && map.containsKey(key)) {
-            return (T) map.get(key);
+        return (T) getObject(key);
+    }
+
+    private Object resolve(String key, Binding binding) {
+        Object value;
+        try {
+            value = binding.resolve(this);
+        } catch (Exception e) {
+            throw new IllegalStateException(String.format("%s, cannot be resolved: %s", key, e.getMessage()), e);
+        }
+
+        if (value != null) {
+            map.put(key, value);
         } else {
-            return null;
+            map.remove(key);
         }
+        return value;
     }
 
     public Context<T> with(String key, Object value) {
@@ -207,6 +247,133 @@ public class MicroContext<T> implements Context<T> {
         setRedirect(path, secure, 0);
     }
 
+    /**
+     * remove all the attributes and clear the state of this context, making it ready for a new request
+     */
+    public void reset() {
+        map.clear();
+        rackInput = null;
+        forkedFrom = null;
+        forkedResponse = null;
+        forkedResponseState = null;
+        halt = false;
+        timings = null;
+    }
+
+    /**
+     * create a context for a controller executed by another thread, starting with the attributes of this
+     * context and with its own copy of the Rack response. The changes made by the controller are copied back
+     * with {@link #merge(MicroContext)}
+     *
+     * @return a new, thread safe, context
+     */
+    public MicroContext<T> fork() {
+        MicroContext<T> fork = new MicroContext<T>(new ConcurrentHashMap<String, Object>(map));
+        fork.rackInput = rackInput;
+        fork.forkedFrom = new HashMap<String, Object>(map);
+        fork.timings = timings;
+
+        RackResponse response = getRackResponse();
+        if (response != null) {
+            fork.forkedResponse = copy(response);
+            fork.forkedResponseState = copy(response);
+            fork.map.put(Globals.RACK_RESPONSE, fork.forkedResponse);
+        }
+        return fork;
+    }
+
+    /**
+     * copy the attributes added, changed or removed by a forked context into this one, and its halt flag.
+     * The headers, the status and the body changed by the forked context in its copy of the Rack response are
+     * copied into the response of this context; a response replaced by the forked context replaces this one.
+     *
+     * @param fork a context created by {@link #fork()}
+     */
+    public void merge(MicroContext<T> fork) {
+        Map<String, Object> forkedFrom = fork.forkedFrom != null ? fork.forkedFrom : Collections.<String, Object>emptyMap();
+        for (Map.Entry<String, Object> entry : fork.map.entrySet()) {
+            if (fork.forkedResponse != null && entry.getValue() == fork.forkedResponse) {
+                mergeResponse(fork.forkedResponse, fork.forkedResponseState);
+            } else if (forkedFrom.get(entry.getKey()) != entry.getValue()) {
+                with(entry.getKey(), entry.getValue());
+            }
+        }
+        for (String key : forkedFrom.keySet()) {
+            if (!fork.map.containsKey(key)) {
+                remove(key);
+            }
+        }
+        if (fork.isHalt()) {
+            halt();
+        }
+    }
+
+    // copy the changes made to a forked response into the response of this context
+    private void mergeResponse(RackResponse changed, RackResponse original) {
+        RackResponse response = getRackResponse();
+        if (response == null) {
+            return;
+        }
+
+        for (Map.Entry<String, String> header : changed.getHeaders().entrySet()) {
+            if (!header.getValue().equals(original.getHeaders().get(header.getKey()))) {
+                response.withHeader(header.getKey(), header.getValue());
+            }
+        }
+        for (String name : original.getHeaders().keySet()) {
+            if (!changed.getHeaders().containsKey(name)) {
+                response.getHeaders().remove(name);
+            }
+        }
+        if (changed.getStatus() != original.getStatus()) {
+            response.with(Rack.MESSAGE_STATUS, changed.getStatus());
+        }
+        if (changed.getBody() != original.getBody()) {
+            withBody(response, changed.getBody());
+        }
+    }
+
+    private static RackResponse copy(RackResponse response) {
+        RackResponse copy = new RackResponse(response.getStatus());
+        for (Map.Entry<String, String> header : response.getHeaders().entrySet()) {
+            copy.withHeader(header.getKey(), header.getValue());
+        }
+        return withBody(copy, response.getBody());
+    }
+
+    private static RackResponse withBody(RackResponse response, Object body) {
+        if (body instanceof String) {
+            response.withBody((String) body);
+        } else if (body instanceof byte[]) {
+            response.withBody((byte[]) body);
+        } else if (body instanceof File) {
+            try {
+                response.withBody((File) body);
+            } catch (FileNotFoundException e) {
+                // the file was removed meanwhile, the response is sent out without it
+            }
+        }
+        return response;
+    }
+
+    /**
+     * @return the timings of the current request, or null if the instrumentation is disabled
+     */
+    public RequestTimings getTimings() {
+        return timings;
+    }
+
+    public void setTimings(RequestTimings timings) {
+        this.timings = timings;
+    }
+
+    /**
+     * @return true if this context was created by {@link #fork()}
+     */
+    public boolean isForked() {
+        return forkedFrom != null;
+    }
+
     public Map<String, Object> getParams() {
         return (Map<String, Object>) get(Globals.PARAMS);
     }
@@ -16,6 +16,7 @@
 
 package ca.simplegames.micro;
 
+import ca.simplegames.micro.cache.OutputCache;
 import ca.simplegames.micro.utils.CollectionUtils;
 import org.apache.wink.common.internal.uritemplate.JaxRsUriTemplateProcessor;
 import org.apache.wink.common.internal.uritemplate.UriTemplateMatcher;
@@ -38,7 +39,8 @@ public abstract class Route {
     private View view;
     private Map<String, Object> config;
     private String method = Globals.EMPTY_STRING;
-    private UriTemplateProcessor processor;
+    private volatile UriTemplateProcessor processor; // compiled by the warm-up, maybe in the background
+    private OutputCache outputCache;
 
     /**
      * Constructor
@@ -59,6 +61,11 @@ public abstract class Route {
             // todo: Should refactor the nested controllers, so that they don't collide with the ones from the View, if there is a View?!
             view = new View(config.containsKey(Globals.VIEW) ?
                     (Map<String, Object>) config.get(Globals.VIEW) : config); // arghhh >:/
+
+            outputCache = OutputCache.fromConfig(config);
+            if (outputCache == null) {
+                outputCache = view.getOutputCache();
+            }
         }
     }
 
@@ -95,6 +102,13 @@ public abstract class Route {
         return null;
     }
 
+    /**
+     * @return the output cache declared by this route or by its View, or null if the output is not cached
+     */
+    public OutputCache getOutputCache() {
+        return outputCache;
+    }
+
     /**
      * @return a string containing Request method names, all uppercase, or an empty String which matches:
      *         any method
@@ -124,4 +138,13 @@ public abstract class Route {
         UriTemplateMatcher matcher = processor.matcher();
         return matcher.matches(requestPath) ? matcher : null;
     }
+
+    /**
+     * compile the URI template of this route, before matching the first request; used by the warm-up
+     */
+    public void compile() {
+        if (processor == null) {
+            processor = new JaxRsUriTemplateProcessor(route);
+        }
+    }
 }
@@ -17,19 +17,22 @@
 package ca.simplegames.micro;
 
 import ca.simplegames.micro.cache.MicroCacheManager;
+import ca.simplegames.micro.controllers.BSFEnginePool;
 import ca.simplegames.micro.controllers.ControllerException;
 import ca.simplegames.micro.controllers.ControllerManager;
 import ca.simplegames.micro.controllers.ControllerNotFoundException;
 import ca.simplegames.micro.extensions.ExtensionsManager;
 import ca.simplegames.micro.filters.FilterManager;
 import ca.simplegames.micro.helpers.HelperManager;
-import ca.simplegames.micro.helpers.HelperWrapper;
+import ca.simplegames.micro.instrumentation.Instrumentation;
+import ca.simplegames.micro.instrumentation.Metrics;
 import ca.simplegames.micro.repositories.RepositoryManager;
 import ca.simplegames.micro.route.RouteManager;
 import ca.simplegames.micro.templates.TemplateEnginesManager;
-import ca.simplegames.micro.utils.CloseableThreadLocal;
+import ca.simplegames.micro.utils.FileChangeService;
 import ca.simplegames.micro.utils.PathUtilities;
 import ca.simplegames.micro.utils.StringUtils;
+import ca.simplegames.micro.utils.YamlUtils;
 import org.apache.bsf.BSFEngine;
 import org.apache.bsf.BSFException;
 import org.apache.bsf.BSFManager;
@@ -37,11 +40,9 @@ import org.jrack.Context;
 import org.jrack.context.MapContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.yaml.snakeyaml.Yaml;
 
 import javax.servlet.ServletContext;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
 import java.util.List;
@@ -57,6 +58,7 @@ import java.util.Map;
 public class SiteContext extends MapContext {
   private Logger log = LoggerFactory.getLogger(getClass());
   private MicroCacheManager cacheManager;
+  private BSFEnginePool bsfEnginePool;
   private RepositoryManager repositoryManager;
   private ControllerManager controllerManager;
   private FilterManager filterManager = new FilterManager();
@@ -71,6 +73,13 @@ public class SiteContext extends MapContext {
   private String welcomeFile = "index.html";
   private File applicationConfigPath;
   private boolean legacy;
+  private boolean contextRecycling;
+  private boolean hotReload;
+  private FileChangeService fileChangeService;
+  private Startup startup;
+  private WarmUp warmUp;
+  private Instrumentation instrumentation = Instrumentation.fromConfig(null);
+  private final Metrics metrics = new Metrics(this);
 
   public SiteContext(Context<String> env) {
     for (Map.Entry<String, Object> entry : env) {
@@ -89,7 +98,8 @@ public class SiteContext extends MapContext {
    * @return itself
    */
   @SuppressWarnings("unchecked")
-  public SiteContext loadApplication(String configPath) throws Exception {
+  public SiteContext loadApplication(final String configPath) throws Exception {
+    long start = System.nanoTime();
     File config = new File(configPath, "micro-config.yml");
     applicationConfigPath = new File(configPath);
     webInfPath = (File) get(Globals.WEB_INF_PATH);
@@ -98,7 +108,7 @@ public class SiteContext extends MapContext {
       with(Globals.MICRO_CONFIG_PATH, config);
 
       try {
-        appConfig = (Map) new Yaml().load(new FileInputStream(config));
+        appConfig = (Map) YamlUtils.load(config);
         with(Globals.MICRO_CACHE_CONFIG, appConfig.get("cache"));
         microEnv = StringUtils.defaultString(appConfig.get(Globals.MICRO_ENV), Globals.DEVELOPMENT);
         // and just check if System env vars overwrite our settings; useful when running @Heroku, etc.
@@ -106,75 +116,146 @@ public class SiteContext extends MapContext {
         // or if there is a -DMICRO_ENV=... in the VM ARGS
         microEnv = StringUtils.defaultString(System.getProperty(Globals.MICRO_ENV), microEnv);
 
-        // - Cache
-        cacheManager = new MicroCacheManager(this);
+        // reload the routes, views, templates, controllers and resource bundles when their files are
+        // modified; on by default in development, it can be enabled in production with: hot_reload: true
+        hotReload = appConfig.get(Globals.HOT_RELOAD) != null ?
+            Boolean.parseBoolean(appConfig.get(Globals.HOT_RELOAD).toString()) : isDevelopment();
+        if (hotReload) {
+          fileChangeService = new FileChangeService();
+        }
+
+        // the timings of the requests; disabled by default, see: Instrumentation
+        instrumentation = Instrumentation.fromConfig((Map<String, Object>) appConfig.get(Globals.INSTRUMENTATION));
 
         log.info(String.format("Application name: %s", StringUtils.defaultString(appConfig.get("name"), "")));
         log.info(String.format("     description: %s", StringUtils.defaultString(appConfig.get("description"), "")));
 
-        log.info("Template engines:");
-        templateEnginesManager = new TemplateEnginesManager(this, appConfig);
+        // the managers are loaded sequentially or, if configured, concurrently; see: Startup
+        startup = Startup.fromConfig((Map<String, Object>) appConfig.get(Startup.STARTUP));
+        startup.record("config", start);
+        if (startup.isParallel()) {
+          // the keys set by the managers are added in advance, so setting them from the startup threads
+          // is not modifying the structure of the site map, read by the other startup threads
+          with(Globals.MICRO_CACHE_MANAGER, null);
+          with(Globals.MICRO_REPOSITORY_MANAGER, null);
+        }
+
+        // - Cache
+        startup.add("cache", new Startup.Phase() {
+          public void run() throws Exception {
+            cacheManager = new MicroCacheManager(SiteContext.this);
+          }
+        });
+
+        startup.add("template_engines", new Startup.Phase() {
+          public void run() throws Exception {
+            log.info("Template engines:");
+            templateEnginesManager = new TemplateEnginesManager(SiteContext.this, appConfig);
+          }
+        });
 
-        log.info("Repositories:");
         // - Repositories
-        repositoryManager = new RepositoryManager(this);
+        startup.add("repositories", new Startup.Phase() {
+          public void run() throws Exception {
+            log.info("Repositories:");
+            repositoryManager = new RepositoryManager(SiteContext.this);
+          }
+        }, "cache", "template_engines");
+
+        // - Scripting engines, pooled for the script controllers only if configured; the engines are
+        // loaded when used first time, unless the pool is warmed up
+        startup.add("scripting", new Startup.Phase() {
+          public void run() throws Exception {
+            log.info("Scripting engines:");
+            bsfEnginePool = BSFEnginePool.fromConfig(SiteContext.this,
+                (Map<String, Object>) appConfig.get(BSFEnginePool.SCRIPTING));
+            if (bsfEnginePool == null) {
+              log.info("  not pooled");
+            }
+          }
+        });
 
         // - Controllers
-        controllerManager = new ControllerManager(this, (Map<String, Object>) appConfig.get("controllers"));
+        startup.add("controllers", new Startup.Phase() {
+          public void run() throws Exception {
+            controllerManager = new ControllerManager(SiteContext.this,
+                (Map<String, Object>) appConfig.get("controllers"));
+          }
+        }, "cache");
 
         // - Filters
-        // log.info("Filters:");
-        File filtersConfig = new File(configPath, "filters.yml");
-        if (filtersConfig.exists()) {
-          filterManager = new FilterManager(this,
-              (List<Map<String, Object>>) new Yaml().load(new FileInputStream(filtersConfig)));
-        }
+        startup.add("filters", new Startup.Phase() {
+          public void run() throws Exception {
+            File filtersConfig = new File(configPath, "filters.yml");
+            if (filtersConfig.exists()) {
+              filterManager = new FilterManager(SiteContext.this,
+                  (List<Map<String, Object>>) YamlUtils.load(filtersConfig));
+            }
+          }
+        });
 
         // The strategy used for loading Helpers and Extensions will eventually be just one, currently
         // exploring different methods for managing them, hence the redundancy, sorry for that.
 
-        // - Loading the Extensions
-        File extensionsDirectory = new File(configPath, "extensions");
-        if (extensionsDirectory.exists() && extensionsDirectory.isDirectory()) {
-          // load extensions
-          extensionsManager = new ExtensionsManager(this, files(extensionsDirectory, ".yml"));
-        }
+        // - Loading the Extensions; they are registered by the application script
+        startup.add("extensions", new Startup.Phase() {
+          public void run() throws Exception {
+            File extensionsDirectory = new File(configPath, "extensions");
+            if (extensionsDirectory.exists() && extensionsDirectory.isDirectory()) {
+              extensionsManager = new ExtensionsManager(SiteContext.this, files(extensionsDirectory, ".yml"));
+            }
+          }
+        });
 
         // - Helpers
-        //log.info("Helpers:");
-        File helpersDirectory = new File(configPath, "helpers");
-        helperManager = new HelperManager();
-        if (helpersDirectory.exists() && helpersDirectory.isDirectory()) {
-          for (File file : files(helpersDirectory, ".yml")) {
-            Map<String, Object> yaml = (Map<String, Object>) new Yaml().load(new FileInputStream(file));
-            HelperWrapper helper = helperManager.addHelper(PathUtilities.extractName(file), yaml);
-            //log.info(String.format("  %s: %s", helper.getName(), file.getAbsolutePath()));
+        startup.add("helpers", new Startup.Phase() {
+          public void run() throws Exception {
+            File helpersDirectory = new File(configPath, "helpers");
+            HelperManager helpers = new HelperManager();
+            if (helpersDirectory.exists() && helpersDirectory.isDirectory()) {
+              for (File file : files(helpersDirectory, ".yml")) {
+                helpers.addHelper(PathUtilities.extractName(file), (Map<String, Object>) YamlUtils.load(file));
+              }
+            }
+            helperManager = helpers;
           }
-        }
+        });
 
         // - Routes
-        File routesConfig = new File(configPath, "routes.yml");
-        if (routesConfig.exists()) {
-          //routeManager = new RouteManager(this,
-          //    (List<Map<String, Object>>) new Yaml().load(new FileInputStream(routesConfig)));
+        startup.add("routes", new Startup.Phase() {
+          public void run() throws Exception {
+            File routesConfig = new File(configPath, "routes.yml");
+            if (routesConfig.exists()) {
+              routeManager = new RouteManager(SiteContext.this, routesConfig);
+            }
+          }
+        });
 
-          routeManager = new RouteManager(this, routesConfig);
-        }
+        // load the user mime types, if any
+        userMimeTypes = (Map<String, String>) appConfig.get("mime_types");
 
+        startup.run();
 
-        MicroContext context = new MicroContext();
-        context.with(Globals.SITE, this)
-            .with(Globals.WEB_APP_NAME, StringUtils.defaultString(appConfig.get("name"), "<name your app>"))
-            .with(Globals.WEB_APP_DESCRIPTION, StringUtils.defaultString(appConfig.get("description"),
-                "<describe your app>"));
+        // execute the app' startup controller, when everything else is loaded, on the current thread
+        startup.add("application", new Startup.Phase() {
+          public void run() throws Exception {
+            MicroContext context = new MicroContext();
+            context.with(Globals.SITE, SiteContext.this)
+                .with(Globals.WEB_APP_NAME, StringUtils.defaultString(appConfig.get("name"), "<name your app>"))
+                .with(Globals.WEB_APP_DESCRIPTION, StringUtils.defaultString(appConfig.get("description"),
+                    "<describe your app>"));
 
-        // load the user mime types, if any
-        userMimeTypes = (Map<String, String>) appConfig.get("mime_types");
+            controllerManager.execute(findApplicationStartupScript(configPath), context, appConfig);
+          }
+        });
+
+        startup.run();
+        startup.log(log);
 
-        //add anything else to the context? If no, then execute the app' startup controller:
-        controllerManager.execute(findApplicationStartupScript(configPath), context, appConfig);
-        if (context.get(Globals.CLOSEABLE_BSF_MANAGER) != null) {
-          ((CloseableThreadLocal) context.get(Globals.CLOSEABLE_BSF_MANAGER)).close();
+        // compile the templates, routes and controllers before the first requests; see: WarmUp
+        warmUp = WarmUp.fromConfig(this, (Map<String, Object>) appConfig.get(WarmUp.WARM_UP));
+        if (warmUp != null) {
+          warmUp.start();
         }
 
       } catch (FileNotFoundException e) {
@@ -188,6 +269,11 @@ public class SiteContext extends MapContext {
       // disable the 'yield' support for the webapps using the "JPublish" design style
       legacy = StringUtils.defaultString(appConfig.get(Globals.LEGACY), "false").equalsIgnoreCase("true");
 
+      // reuse the request contexts, one per worker thread; off by default. Enable it only if no code keeps a
+      // reference to the context after the request is completed, or uses it from another thread
+      contextRecycling = StringUtils.defaultString(appConfig.get(Globals.CONTEXT_RECYCLING), "false")
+          .equalsIgnoreCase("true");
+
       log.info(String.format("Welcome file is: '%s'", welcomeFile));
       log.info(String.format("Application running in: '%s' mode", microEnv));
     } else {
@@ -240,6 +326,13 @@ public class SiteContext extends MapContext {
     return controllerManager;
   }
 
+  /**
+   * @return the pool of BSF engines used by the script controllers, or null if the pool is not enabled
+   */
+  public BSFEnginePool getBSFEnginePool() {
+    return bsfEnginePool;
+  }
+
   public Map getAppConfig() {
     return appConfig;
   }
@@ -282,6 +375,55 @@ public class SiteContext extends MapContext {
     return getMicroEnv().equalsIgnoreCase(Globals.TEST);
   }
 
+  /**
+   * @return true if the files of this site are watched and the modified ones are reloaded
+   */
+  public boolean isHotReload() {
+    return hotReload;
+  }
+
+  /**
+   * @return the service notifying the changes of the site files, or null if the hot reload is disabled
+   */
+  public FileChangeService getFileChangeService() {
+    return fileChangeService;
+  }
+
+  /**
+   * @return the timings of the requests served by this site; never null, disabled unless configured
+   */
+  public Instrumentation getInstrumentation() {
+    return instrumentation;
+  }
+
+  /**
+   * @return the phases of the application startup and their timings, or null if the application is not loaded
+   */
+  public Startup getStartup() {
+    return startup;
+  }
+
+  /**
+   * @return the warm-up of the site, or null if it is not enabled
+   */
+  public WarmUp getWarmUp() {
+    return warmUp;
+  }
+
+  /**
+   * @return true if the application was loaded and warmed up, if the warm-up is enabled
+   */
+  public boolean isReady() {
+    return startup != null && startup.getTotal() >= 0 && (warmUp == null || warmUp.isDone());
+  }
+
+  /**
+   * @return the metrics of this site, see: {@link ca.simplegames.micro.controllers.MetricsController}
+   */
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
   /**
    * a simple method that can be used as an ad-hoc scripting engine.
    * <p/>
@@ -290,7 +432,7 @@ public class SiteContext extends MapContext {
    * engine.exec("complexCalculus", 0, 0, "one = 1 * 1;"); // :P
    * <p/>
    * Check this discussion: http://goo.gl/D8m9g, about the execution scope and if the BSFEngine can be
-   * reused.
+   * reused. The script controllers are using the engines from {@link #getBSFEnginePool()} instead.
    *
    * @param language      a valid BSF language, example: 'beanshell'
    * @param context       a MicroContext that can be used to transmit parameters
@@ -300,25 +442,8 @@ public class SiteContext extends MapContext {
    * @throws BSFException if the Engine cannot be created
    */
   public BSFEngine getBSFEngine(String language, MicroContext context, Map configuration, Logger log) throws BSFException {
-    //@SuppressWarnings("unchecked")
-    //CloseableThreadLocal<BSFManager> bsfManagerTL = (CloseableThreadLocal<BSFManager>)
-    //        context.get(Globals.CLOSEABLE_BSF_MANAGER);
-
-    BSFManager bsfManager;
-
-    // if (bsfManagerTL == null) {
-    //     bsfManagerTL = new CloseableThreadLocal<BSFManager>();
-    //     bsfManager = new BSFManager();
-    //     bsfManagerTL.set(bsfManager);
-    //     bsfManager.setClassLoader(this.getClass().getClassLoader());
-    //     bsfManager.declareBean(Globals.SITE, this, SiteContext.class);
-    //     context.with(Globals.CLOSEABLE_BSF_MANAGER, bsfManagerTL);
-    // } else {
-    //     bsfManager = bsfManagerTL.get();
-    // }
-
-
-    bsfManager = new BSFManager();
+    BSFEnginePool.registerEngines();
+    BSFManager bsfManager = new BSFManager();
     bsfManager.setClassLoader(this.getClass().getClassLoader());
     bsfManager.declareBean(Globals.SITE, this, SiteContext.class);
     bsfManager.declareBean(Globals.LOG, log, Logger.class);
@@ -431,6 +556,18 @@ public class SiteContext extends MapContext {
     this.legacy = legacy;
   }
 
+  public boolean isContextRecycling() {
+    return contextRecycling;
+  }
+
+  /**
+   * @param contextRecycling TRUE, if the request contexts can be reused by the next requests served
+   *                         by the same thread
+   */
+  public void setContextRecycling(boolean contextRecycling) {
+    this.contextRecycling = contextRecycling;
+  }
+
   /**
    * this method notifies the appropriate Micro managers to shutdown
    */
@@ -446,6 +583,15 @@ public class SiteContext extends MapContext {
     } catch (ControllerNotFoundException e) {
       // no problem, the shutdown controller is optional
     }
+    controllerManager.shutdown();
+
+    if (fileChangeService != null) {
+      fileChangeService.shutdown();
+    }
+
+    if (bsfEnginePool != null) {
+      bsfEnginePool.shutdown();
+    }
     extensionsManager.shutdown();
   }
 
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro;
+
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The phases loading a Micro application: the caches, the template engines, the repositories, etc., and
+ * the phases each of them depends on. The phases are executed one after another, in the order they were
+ * added, or, in the parallel mode, every phase is started as soon as the phases it depends on are completed.
+ * The time spent by every phase is kept in a report, logged and published by the stats controller.
+ * <p/>
+ * Configured in <code>micro-config.yml</code>:
+ * <pre>
+ * startup:
+ *   parallel: true
+ *   threads: 4  # the number of processors, by default
+ * </pre>
+ * Sequential by default. In the parallel mode, the code executed at startup by the template engines, the
+ * caches and the other managers, the user defined ones included, must not depend on the managers loaded
+ * by the phases running concurrently.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-19 3:50 AM)
+ */
+public class Startup {
+  public static final String STARTUP = "startup";
+  public static final String PARALLEL = "parallel";
+  public static final String THREADS = "threads";
+
+  /**
+   * A startup phase
+   */
+  public interface Phase {
+    void run() throws Exception;
+  }
+
+  private static class Step {
+    final String name;
+    final Phase phase;
+    final String[] dependencies;
+    volatile Future<?> future;
+    volatile String thread;
+    volatile long started = -1; // since the startup, nanoseconds
+    volatile long nanos = -1;
+
+    Step(String name, Phase phase, String[] dependencies) {
+      this.name = name;
+      this.phase = phase;
+      this.dependencies = dependencies;
+    }
+  }
+
+  private final boolean parallel;
+  private final int threads;
+  private final Map<String, Step> steps = new LinkedHashMap<String, Step>();
+  private long start = System.nanoTime();
+  private volatile long total = -1;
+
+  /**
+   * @param parallel true for executing the independent phases concurrently
+   * @param threads  the maximum number of phases executed concurrently
+   */
+  public Startup(boolean parallel, int threads) {
+    this.parallel = parallel && threads > 1;
+    this.threads = this.parallel ? threads : 1;
+  }
+
+  /**
+   * @param config the <code>startup</code> node of the site configuration, can be null
+   * @return a startup, configured
+   */
+  public static Startup fromConfig(Map<String, Object> config) {
+    if (config == null) {
+      return new Startup(false, 1);
+    }
+
+    return new Startup(
+        Boolean.TRUE.equals(config.get(PARALLEL)),
+        config.get(THREADS) instanceof Number ?
+            ((Number) config.get(THREADS)).intValue() : Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * add a phase
+   *
+   * @param name         the name of the phase, used by the report
+   * @param phase        the phase
+   * @param dependencies the names of the phases that must be completed before this one; added already
+   * @return itself
+   */
+  public Startup add(String name, Phase phase, String... dependencies) {
+    for (String dependency : dependencies) {
+      if (!steps.containsKey(dependency)) {
+        throw new IllegalArgumentException(String.format("%s: unknown phase: %s", name, dependency));
+      }
+    }
+    steps.put(name, new Step(name, phase, dependencies));
+    return this;
+  }
+
+  /**
+   * add to the report a phase executed by the caller, before the others
+   *
+   * @param name  the name of the phase
+   * @param since the moment the phase started, from {@link System#nanoTime()}
+   */
+  public void record(String name, long since) {
+    Step step = new Step(name, null, new String[0]);
+    start = Math.min(start, since);
+    step.thread = Thread.currentThread().getName();
+    step.started = since - start;
+    step.nanos = System.nanoTime() - since;
+    steps.put(name, step);
+  }
+
+  /**
+   * execute the phases added and not executed yet; a single phase is executed by the calling thread
+   *
+   * @throws Exception the failure of the first phase failed, in the order the phases were added
+   */
+  public void run() throws Exception {
+    List<Step> pending = new ArrayList<Step>();
+    for (Step step : steps.values()) {
+      if (step.phase != null && step.nanos < 0) {
+        pending.add(step);
+      }
+    }
+
+    try {
+      if (!parallel || pending.size() < 2) {
+        for (Step step : pending) {
+          execute(step);
+        }
+      } else {
+        runParallel(pending);
+      }
+    } finally {
+      total = System.nanoTime() - start;
+    }
+  }
+
+  // the phases are submitted in the order they were added, after their dependencies, so a phase
+  // waiting for its dependencies can't prevent them from running
+  private void runParallel(List<Step> pending) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, pending.size()),
+        new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "micro-startup-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+
+    try {
+      for (final Step step : pending) {
+        step.future = executor.submit(new Callable<Void>() {
+          public Void call() throws Exception {
+            for (String dependency : step.dependencies) {
+              Future<?> future = steps.get(dependency).future;
+              if (future != null) {
+                future.get();
+              }
+            }
+            execute(step);
+            return null;
+          }
+        });
+      }
+
+      for (Step step : pending) {
+        try {
+          step.future.get();
+        } catch (ExecutionException e) {
+          Throwable cause = e;
+          while (cause instanceof ExecutionException && cause.getCause() != null) {
+            cause = cause.getCause();
+          }
+          if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw cause instanceof Exception ? (Exception) cause : e;
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void execute(Step step) throws Exception {
+    long since = System.nanoTime();
+    step.thread = Thread.currentThread().getName();
+    step.started = since - start;
+    try {
+      step.phase.run();
+    } finally {
+      step.nanos = System.nanoTime() - since;
+    }
+  }
+
+  public boolean isParallel() {
+    return parallel;
+  }
+
+  /**
+   * @return the startup duration, in nanoseconds, or -1 if it is not completed
+   */
+  public long getTotal() {
+    return total;
+  }
+
+  /**
+   * @return the mode, the total time and the time spent by every phase, when it started and on what thread;
+   * the durations in milliseconds
+   */
+  public Map<String, Object> getReport() {
+    Map<String, Object> report = new LinkedHashMap<String, Object>();
+    report.put("mode", parallel ? PARALLEL : "sequential");
+    report.put("threads", threads);
+    report.put("total", millis(total));
+
+    Map<String, Object> phases = new LinkedHashMap<String, Object>();
+    for (Step step : steps.values()) {
+      if (step.nanos >= 0) {
+        Map<String, Object> phase = new LinkedHashMap<String, Object>();
+        phase.put("duration", millis(step.nanos));
+        phase.put("started", millis(step.started));
+        phase.put("thread", step.thread);
+        phases.put(step.name, phase);
+      }
+    }
+    report.put("phases", phases);
+    return report;
+  }
+
+  /**
+   * @param log the logger receiving the report
+   */
+  public void log(Logger log) {
+    log.info(String.format("Started in %.3f ms, %s:", millis(total),
+        parallel ? String.format("parallel, %d threads", threads) : "sequential"));
+    for (Step step : steps.values()) {
+      if (step.nanos >= 0) {
+        log.info(String.format("  %-18s %10.3f ms, started at: %10.3f ms, on: %s",
+            step.name, millis(step.nanos), millis(step.started), step.thread));
+      }
+    }
+  }
+
+  private static double millis(long nanos) {
+    return Math.round(nanos / 1000.0) / 1000.0;
+  }
+}
@@ -16,6 +16,7 @@
 
 package ca.simplegames.micro;
 
+import ca.simplegames.micro.cache.OutputCache;
 import ca.simplegames.micro.utils.CollectionUtils;
 
 import java.io.Serializable;
@@ -25,11 +26,16 @@ import java.util.List;
 import java.util.Map;
 
 /**
+ * A View definition. The Views are shared by the concurrent requests, see: {@link
+ * ca.simplegames.micro.repositories.Repository#getView(String)}, their lists are read-only.
+ *
  * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
  * @since $Revision$ (created: 2012-12-24 12:09 PM)
  */
 @SuppressWarnings("unchecked")
 public class View implements Serializable {
+    public static final long DEFAULT_TIMEOUT = 30000; // milliseconds
+
     private Map<String, Object> config;
     private String repositoryName = null;
     private String template = null;
@@ -37,6 +43,9 @@ public class View implements Serializable {
     private List<Map<String, Object>> controllers = null;
     private List<Map<String, Object>> filtersBefore = new ArrayList<Map<String, Object>>();
     private List<Map<String, Object>> filtersAfter = new ArrayList<Map<String, Object>>();
+    private OutputCache outputCache = null;
+    private boolean parallel = false;
+    private long timeout = DEFAULT_TIMEOUT;
 
     public View(Map<String, Object> config) {
         if (!CollectionUtils.isEmpty(config)) {
@@ -52,12 +61,21 @@ public class View implements Serializable {
                 path = (String) config.get(Globals.PATH);
             }
             if (config.get(Globals.CONTROLLERS) != null) {
-                controllers = (List<Map<String, Object>>) config.get(Globals.CONTROLLERS);
+                controllers = Collections.unmodifiableList((List<Map<String, Object>>) config.get(Globals.CONTROLLERS));
             }
             if (config.get(Globals.CONTROLLER) != null) {
                 controllers = Collections.singletonList((Map<String, Object>) config.get(Globals.CONTROLLER));
             }
 
+            if (config.get(Globals.PARALLEL) != null) {
+                parallel = Boolean.parseBoolean(config.get(Globals.PARALLEL).toString());
+            }
+            if (config.get(Globals.TIMEOUT) != null) {
+                timeout = Long.parseLong(config.get(Globals.TIMEOUT).toString().trim());
+            }
+
+            outputCache = OutputCache.fromConfig(config);
+
             List<Map> viewFilters = (List<Map>) config.get(Globals.FILTERS);
             if (viewFilters != null && !viewFilters.isEmpty()) {
                 // define the BEFORE and AFTER filters
@@ -73,6 +91,8 @@ public class View implements Serializable {
                 }
             }
         }
+        filtersBefore = Collections.unmodifiableList(filtersBefore);
+        filtersAfter = Collections.unmodifiableList(filtersAfter);
     }
 
     public String getTemplate() {
@@ -102,4 +122,29 @@ public class View implements Serializable {
     public List<Map<String, Object>> getFiltersAfter() {
         return filtersAfter;
     }
+
+    /**
+     * @return the output cache of this View, or null if its output is not cached
+     */
+    public OutputCache getOutputCache() {
+        return outputCache;
+    }
+
+    /**
+     * @return true if the controllers of this View are independent and they can be executed
+     *         concurrently; the controllers can also be marked individually, with: <code>async: true</code>.
+     *         A concurrent controller is changing its own copy of the context and of the Rack response, see:
+     *         {@link MicroContext#fork()}, but the servlet request and response are shared and they must
+     *         not be changed by such a controller
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * @return the maximum time, in milliseconds, this View is waiting for its concurrent controllers
+     */
+    public long getTimeout() {
+        return timeout;
+    }
 }
@@ -0,0 +1,457 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro;
+
+import ca.simplegames.micro.controllers.ControllerManager;
+import ca.simplegames.micro.extensions.ExtensionsManager;
+import ca.simplegames.micro.repositories.Repository;
+import ca.simplegames.micro.repositories.RepositoryManager;
+import ca.simplegames.micro.route.RouteManager;
+import ca.simplegames.micro.viewers.TemplatePrecompiler;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prepares a Micro site for its first requests, after it is loaded: the templates of the repositories are
+ * compiled by their renderers, the View definitions are parsed, the route matchers are compiled, the script
+ * controllers are loaded, or compiled, and the extensions implementing {@link Participant}, i.e. the i18n
+ * extension, are opening their resources. The site is reporting it is ready, see:
+ * {@link SiteContext#isReady()}, only after the warm-up is done.
+ * <p/>
+ * Configured in <code>micro-config.yml</code>:
+ * <pre>
+ * warm_up:
+ *   enabled: true
+ *   budget: 30          # seconds; the warm-up stops when exceeded, even in the middle of an item, and
+ *                       # the site is ready anyway. 0: no limit
+ *   background: false   # true for warming up on a separate thread, while the site is starting
+ *   repositories: [content, templates] # all the repositories, by default
+ * </pre>
+ * Disabled by default. The progress is logged every 10% of the items warmed up and the items failing are
+ * logged and skipped; they fail again when requested.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-19 4:30 AM)
+ */
+public class WarmUp {
+  public static final String WARM_UP = "warm_up";
+  public static final String ENABLED = "enabled";
+  public static final String BUDGET = "budget";
+  public static final String BACKGROUND = "background";
+  public static final String REPOSITORIES = "repositories";
+
+  public static final String PENDING = "pending";
+  public static final String RUNNING = "running";
+  public static final String COMPLETED = "completed";
+  public static final String BUDGET_EXCEEDED = "budget_exceeded";
+
+  // the files rendered by the Velocity, FreeMarker and Markdown renderers; the static files are not warmed up
+  private static final Set<String> TEMPLATE_EXTENSIONS = new HashSet<String>(Arrays.asList(
+      ".html", ".htm", ".xhtml", ".xml", ".vm", ".ftl", ".md", ".markdown"));
+
+  /**
+   * A component preparing its own resources during the warm-up; the extensions implementing it are
+   * called after the templates, the routes and the controllers were warmed up.
+   */
+  public interface Participant {
+    /**
+     * @param site the site warmed up
+     * @return the number of resources prepared, reported by the warm-up
+     * @throws Exception if the resources cannot be prepared; logged, the site is started anyway
+     */
+    int warmUp(SiteContext site) throws Exception;
+  }
+
+  private abstract static class Item {
+    final String name;
+
+    Item(String name) {
+      this.name = name;
+    }
+
+    abstract void warmUp() throws Exception;
+  }
+
+  private final SiteContext site;
+  private final long budget; // nanoseconds, 0 for no limit
+  private final boolean background;
+  private final List<String> repositories;
+  private final CountDownLatch done = new CountDownLatch(1);
+  private final AtomicInteger templates = new AtomicInteger();
+  private final AtomicInteger views = new AtomicInteger();
+  private final AtomicInteger routes = new AtomicInteger();
+  private final AtomicInteger controllers = new AtomicInteger();
+  private final AtomicInteger resources = new AtomicInteger();
+  private final AtomicInteger failures = new AtomicInteger();
+  private volatile String state = PENDING;
+  private volatile int total;
+  private volatile int warmedUp;
+  private volatile long nanos = -1;
+
+  /**
+   * @param site         the site warmed up
+   * @param budget       the maximum duration of the warm-up, in seconds; 0 for no limit
+   * @param background   true for warming up on a separate thread
+   * @param repositories the names of the repositories warmed up, or null for all of them
+   */
+  public WarmUp(SiteContext site, double budget, boolean background, List<String> repositories) {
+    this.site = site;
+    this.budget = budget > 0 ? (long) (budget * 1e9) : 0;
+    this.background = background;
+    this.repositories = repositories;
+  }
+
+  /**
+   * @param site   the site warmed up
+   * @param config the <code>warm_up</code> node of the site configuration, can be null
+   * @return the warm-up configured or null if it is not enabled
+   */
+  @SuppressWarnings("unchecked")
+  public static WarmUp fromConfig(SiteContext site, Map<String, Object> config) {
+    if (config == null || !Boolean.TRUE.equals(config.get(ENABLED))) {
+      return null;
+    }
+
+    return new WarmUp(site,
+        config.get(BUDGET) instanceof Number ? ((Number) config.get(BUDGET)).doubleValue() : 0,
+        Boolean.TRUE.equals(config.get(BACKGROUND)),
+        config.get(REPOSITORIES) instanceof List ? (List<String>) config.get(REPOSITORIES) : null);
+  }
+
+  /**
+   * warm up the site, on the calling thread or, if configured, on a separate one
+   */
+  public void start() {
+    if (background) {
+      Thread thread = new Thread(new Runnable() {
+        public void run() {
+          WarmUp.this.run();
+        }
+      }, "micro-warm-up");
+      thread.setDaemon(true);
+      thread.start();
+    } else {
+      run();
+    }
+  }
+
+  /**
+   * warm up the site, on the calling thread; once. With a budget, the items are warmed up by a separate
+   * thread and the calling thread is waiting for them at most the budget; an item not finished by then, a
+   * script engine hanging while loading a controller for example, is abandoned to its thread.
+   */
+  public void run() {
+    synchronized (this) {
+      if (!PENDING.equals(state)) {
+        return;
+      }
+      state = RUNNING;
+    }
+
+    final Logger log = site.getLog();
+    final long start = System.nanoTime();
+    try {
+      if (budget > 0) {
+        Thread worker = new Thread(new Runnable() {
+          public void run() {
+            warmUpItems(log, start);
+          }
+        }, "micro-warm-up-items");
+        worker.setDaemon(true);
+        worker.start();
+        worker.join(Math.max(1, budget / 1000000));
+        if (worker.isAlive() && budgetExceeded()) {
+          log.warn(String.format("Warm-up budget exceeded, %d of %d items warmed up; the item in progress " +
+              "is abandoned", warmedUp, total));
+          worker.interrupt();
+        }
+      } else {
+        warmUpItems(log, start);
+      }
+    } catch (InterruptedException e) {
+      budgetExceeded();
+      log.warn("Warm-up interrupted");
+      Thread.currentThread().interrupt();
+    } finally {
+      nanos = System.nanoTime() - start;
+      done.countDown();
+    }
+
+    log.info(String.format("Warm-up %s in %.3f ms: %d templates, %d views, %d routes, %d controllers, " +
+        "%d resources, %d failures", state.replace('_', ' '), nanos / 1e6, templates.get(), views.get(),
+        routes.get(), controllers.get(), resources.get(), failures.get()));
+  }
+
+  // warm up the items, until all of them are warmed up or the budget is exceeded
+  private void warmUpItems(Logger log, long start) {
+    try {
+      List<Item> items = new ArrayList<Item>();
+      addTemplates(items);
+      addRoutes(items);
+      addControllers(items);
+      addParticipants(items);
+      total = items.size();
+      log.info(String.format("Warming up %d items%s", total,
+          budget > 0 ? String.format(", in at most %.1f s", budget / 1e9) : ""));
+
+      int progressStep = Math.max(1, total / 10);
+      for (Item item : items) {
+        if (!RUNNING.equals(state)) {
+          return; // the budget was exceeded while warming up the previous item
+        }
+        if (budget > 0 && System.nanoTime() - start > budget) {
+          if (budgetExceeded()) {
+            log.warn(String.format("Warm-up budget exceeded, %d of %d items warmed up", warmedUp, total));
+          }
+          return;
+        }
+
+        try {
+          item.warmUp();
+        } catch (Exception e) {
+          if (!RUNNING.equals(state)) {
+            return; // abandoned, interrupted by the budget
+          }
+          failures.incrementAndGet();
+          log.warn(String.format("Warm-up failed for: %s, %s", item.name, e.getMessage()));
+        }
+
+        warmedUp++;
+        if (warmedUp % progressStep == 0 && warmedUp < total) {
+          log.info(String.format("Warm-up: %d%%, %d of %d items, %.3f ms", warmedUp * 100 / total,
+              warmedUp, total, (System.nanoTime() - start) / 1e6));
+        }
+      }
+      completed();
+    } catch (RuntimeException e) {
+      completed();
+      log.error("Warm-up failed", e);
+    }
+  }
+
+  // true if the warm-up was running and it is stopped now by its budget
+  private synchronized boolean budgetExceeded() {
+    if (RUNNING.equals(state)) {
+      state = BUDGET_EXCEEDED;
+      return true;
+    }
+    return false;
+  }
+
+  private synchronized void completed() {
+    if (RUNNING.equals(state)) {
+      state = COMPLETED;
+    }
+  }
+
+  // the templates of the repositories warmed up, the View definitions and the static files excepted
+  private void addTemplates(List<Item> items) {
+    RepositoryManager repositoryManager = site.getRepositoryManager();
+    if (repositoryManager == null) {
+      return;
+    }
+
+    for (Repository repository : repositoryManager.getRepositories()) {
+      if (repositories == null || repositories.contains(repository.getName())) {
+        addTemplates(items, repository, repository.getPath(), "");
+      }
+    }
+  }
+
+  private void addTemplates(List<Item> items, final Repository repository, File directory, String prefix) {
+    File[] files = directory != null ? directory.listFiles() : null;
+    if (files == null) {
+      return;
+    }
+
+    for (File file : files) {
+      final String path = prefix + file.getName();
+      if (file.isHidden() || file.equals(repository.getConfigPath())) {
+        continue;
+      }
+
+      if (file.isDirectory()) {
+        addTemplates(items, repository, file, path + "/");
+      } else if (isTemplate(file.getName())) {
+        items.add(new Item(repository.getName() + ":" + path) {
+          void warmUp() throws Exception {
+            if (repository.getRenderer() instanceof TemplatePrecompiler &&
+                ((TemplatePrecompiler) repository.getRenderer()).precompile(path, repository)) {
+              templates.incrementAndGet();
+            }
+            if (repository.getView("/" + path) != null) {
+              views.incrementAndGet();
+            }
+          }
+        });
+      }
+    }
+  }
+
+  private static boolean isTemplate(String fileName) {
+    int dot = fileName.lastIndexOf('.');
+    return dot >= 0 && TEMPLATE_EXTENSIONS.contains(fileName.substring(dot).toLowerCase());
+  }
+
+  private void addRoutes(List<Item> items) {
+    RouteManager routeManager = site.getRouteManager();
+    if (routeManager == null) {
+      return;
+    }
+
+    for (final Route route : routeManager.getRouteTable().getRoutes()) {
+      items.add(new Item("route:" + route.getPath()) {
+        void warmUp() throws Exception {
+          route.compile();
+          routes.incrementAndGet();
+        }
+      });
+    }
+  }
+
+  private void addControllers(List<Item> items) {
+    ControllerManager controllerManager = site.getControllerManager();
+    if (controllerManager == null) {
+      return;
+    }
+
+    for (File path : controllerManager.getPathsToControllers()) {
+      addControllers(items, controllerManager, path, "");
+    }
+  }
+
+  private void addControllers(List<Item> items, final ControllerManager controllerManager, File directory,
+                              String prefix) {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+
+    for (File file : files) {
+      final String controllerName = prefix + file.getName();
+      if (file.isHidden()) {
+        continue;
+      }
+
+      if (file.isDirectory()) {
+        addControllers(items, controllerManager, file, controllerName + "/");
+      } else if (controllerName.indexOf('.') > 0) {
+        items.add(new Item("controller:" + controllerName) {
+          void warmUp() throws Exception {
+            controllerManager.findController(controllerName);
+            controllers.incrementAndGet();
+          }
+        });
+      }
+    }
+  }
+
+  private void addParticipants(List<Item> items) {
+    ExtensionsManager extensionsManager = site.getExtensionsManager();
+    if (extensionsManager == null) {
+      return;
+    }
+
+    for (final Extension extension : extensionsManager.getExtensions()) {
+      if (extension instanceof Participant) {
+        items.add(new Item("extension:" + extension.getName()) {
+          void warmUp() throws Exception {
+            resources.addAndGet(((Participant) extension).warmUp(site));
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * @return true if the warm-up is completed, or it was stopped by its budget
+   */
+  public boolean isDone() {
+    return done.getCount() == 0;
+  }
+
+  /**
+   * @param timeout the maximum time to wait, in milliseconds
+   * @return true if the warm-up is done
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public boolean await(long timeout) throws InterruptedException {
+    return done.await(timeout, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @return {@link #PENDING}, {@link #RUNNING}, {@link #COMPLETED} or {@link #BUDGET_EXCEEDED}
+   */
+  public String getState() {
+    return state;
+  }
+
+  public int getTemplates() {
+    return templates.get();
+  }
+
+  public int getViews() {
+    return views.get();
+  }
+
+  public int getRoutes() {
+    return routes.get();
+  }
+
+  public int getControllers() {
+    return controllers.get();
+  }
+
+  public int getResources() {
+    return resources.get();
+  }
+
+  public int getFailures() {
+    return failures.get();
+  }
+
+  /**
+   * @return the state, the items warmed up out of the total, the counts and the duration, in milliseconds
+   */
+  public Map<String, Object> getReport() {
+    Map<String, Object> report = new LinkedHashMap<String, Object>();
+    report.put("state", state);
+    report.put("background", background);
+    report.put("budget", budget / 1e9);
+    report.put("total", total);
+    report.put("warmed_up", warmedUp);
+    report.put("templates", templates.get());
+    report.put("views", views.get());
+    report.put("routes", routes.get());
+    report.put("controllers", controllers.get());
+    report.put("resources", resources.get());
+    report.put("failures", failures.get());
+    report.put("duration", nanos >= 0 ? Math.round(nanos / 1000.0) / 1000.0 : -1);
+    return report;
+  }
+}
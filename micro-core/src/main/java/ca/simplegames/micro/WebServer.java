@@ -16,11 +16,15 @@
 
 package ca.simplegames.micro;
 
+import ca.simplegames.micro.utils.YamlUtils;
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
 import org.eclipse.jetty.webapp.WebAppContext;
 import org.eclipse.jetty.xml.XmlConfiguration;
 import org.slf4j.Logger;
@@ -28,10 +32,29 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.util.concurrent.TimeUnit;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Micro as a web server using embedded Jetty.
+ * <p/>
+ * The server is configured by the <code>server</code> node of the micro-config.yml file, or by the
+ * system properties: <code>-Dmicro.server.max_threads=200</code>, overriding the config file. Example:
+ * <pre>
+ * server:
+ *   thread_pool: queued       # Jetty's own pool, or: executor, a fixed pool of threads
+ *   max_threads: 200
+ *   min_threads: 8            # queued pool only
+ *   queue_size: 6000          # the requests waiting for a thread; 0 for an unbounded queue
+ *   idle_timeout: 60000       # milliseconds, before stopping an idle thread
+ *   acceptors: -1             # -1 for Jetty's default, depending on the number of CPUs
+ *   selectors: -1
+ *   connection_idle_timeout: 3600000  # milliseconds
+ * </pre>
+ * A jetty.xml file found in the current directory is applied after these settings; its ThreadPool settings
+ * are only supported by the queued pool.
  *
  * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
  * @since $Revision$ (created: 2013-01-11 7:28 PM)
@@ -40,6 +63,21 @@ public class WebServer {
   protected static final Logger log = LoggerFactory.getLogger(WebServer.class);
   public static final String PORT = "PORT";
   public static int DEFAULT_MAX_THREADS = 20;
+  public static final int DEFAULT_MIN_THREADS = 8;
+  public static final int DEFAULT_IDLE_TIMEOUT = 60000;
+  public static final int DEFAULT_CONNECTION_IDLE_TIMEOUT = 1000 * 60 * 60;
+  public static final String SERVER = "server";
+  public static final String SYSTEM_PROPERTY_PREFIX = "micro.server.";
+  public static final String THREAD_POOL = "thread_pool";
+  public static final String QUEUED = "queued";
+  public static final String EXECUTOR = "executor";
+  public static final String MAX_THREADS = "max_threads";
+  public static final String MIN_THREADS = "min_threads";
+  public static final String QUEUE_SIZE = "queue_size";
+  public static final String IDLE_TIMEOUT = "idle_timeout";
+  public static final String ACCEPTORS = "acceptors";
+  public static final String SELECTORS = "selectors";
+  public static final String CONNECTION_IDLE_TIMEOUT = "connection_idle_timeout";
 
   /**
    * Will start the embedded Jetty server and will initialize the Micro web app. The web app is a
@@ -66,8 +104,10 @@ public class WebServer {
 
       try {
 
-        Server server = new Server(new QueuedThreadPool(DEFAULT_MAX_THREADS));
-        ServerConnector connector = new ServerConnector(server);
+        Map<String, Object> config = serverConfig(path);
+        Server server = new Server(threadPool(config));
+        ServerConnector connector = new ServerConnector(server,
+            intValue(config, ACCEPTORS, -1), intValue(config, SELECTORS, -1));
         connector.setPort(port);
 
         if (new File("jetty.xml").exists()) {
@@ -75,7 +115,7 @@ public class WebServer {
           configuration.configure(server);
           log.info(String.format("jetty %s config detected and loaded ...", Server.getVersion()));
         }else{
-          connector.setIdleTimeout(1000 * 60 * 60);
+          connector.setIdleTimeout(intValue(config, CONNECTION_IDLE_TIMEOUT, DEFAULT_CONNECTION_IDLE_TIMEOUT));
           connector.setSoLingerTime(-1);
         }
 
@@ -100,4 +140,66 @@ public class WebServer {
       log.error("You must specify the path to the directory containing the Micro web application.");
     }
   }
+
+  /**
+   * @param config the server configuration
+   * @return a new thread pool, as configured: a Jetty {@link QueuedThreadPool} or a fixed pool of threads
+   */
+  public static ThreadPool threadPool(Map<String, Object> config) {
+    int maxThreads = intValue(config, MAX_THREADS, DEFAULT_MAX_THREADS);
+    int queueSize = intValue(config, QUEUE_SIZE, 0);
+    int idleTimeout = intValue(config, IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+    String mode = stringValue(config, THREAD_POOL, QUEUED);
+
+    if (EXECUTOR.equalsIgnoreCase(mode)) {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, idleTimeout, TimeUnit.MILLISECONDS,
+          queueSize > 0 ? new ArrayBlockingQueue<Runnable>(queueSize) : new LinkedBlockingQueue<Runnable>(),
+          new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+              return new Thread(runnable, "micro-server-" + count.incrementAndGet());
+            }
+          });
+      log.info(String.format("thread pool: %s, threads: %d, queue: %d", EXECUTOR, maxThreads, queueSize));
+      return new ExecutorThreadPool(executor);
+    }
+
+    int minThreads = Math.min(maxThreads, intValue(config, MIN_THREADS, DEFAULT_MIN_THREADS));
+    log.info(String.format("thread pool: %s, threads: %d-%d, queue: %d", QUEUED, minThreads, maxThreads, queueSize));
+    return new QueuedThreadPool(maxThreads, minThreads, idleTimeout, queueSize > 0 ?
+        new BlockingArrayQueue<Runnable>(queueSize, queueSize, queueSize) : null);
+  }
+
+  /**
+   * @param path the path to the Micro web app
+   * @return the <code>server</code> node of the micro-config.yml file, or an empty map
+   */
+  @SuppressWarnings("unchecked")
+  public static Map<String, Object> serverConfig(String path) {
+    File configFile = new File(path, "WEB-INF/config/micro-config.yml");
+    if (configFile.exists()) {
+      try {
+        Map<String, Object> appConfig = (Map<String, Object>) YamlUtils.load(configFile);
+        if (appConfig != null && appConfig.get(SERVER) instanceof Map) {
+          return (Map<String, Object>) appConfig.get(SERVER);
+        }
+      } catch (Exception e) {
+        log.error(String.format("cannot read the server configuration from: %s; %s", configFile, e.getMessage()));
+      }
+    }
+    return Collections.emptyMap();
+  }
+
+  private static String stringValue(Map<String, Object> config, String name, String defaultValue) {
+    String value = System.getProperty(SYSTEM_PROPERTY_PREFIX + name);
+    if (value == null && config.get(name) != null) {
+      value = config.get(name).toString();
+    }
+    return value != null ? value.trim() : defaultValue;
+  }
+
+  private static int intValue(Map<String, Object> config, String name, int defaultValue) {
+    return Integer.parseInt(stringValue(config, name, String.valueOf(defaultValue)));
+  }
 }
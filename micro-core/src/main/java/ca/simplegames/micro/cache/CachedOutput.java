@@ -0,0 +1,171 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.cache;
+
+import ca.simplegames.micro.Globals;
+import ca.simplegames.micro.MicroContext;
+import org.jrack.RackResponse;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.Serializable;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.zip.CRC32;
+
+/**
+ * A page kept by the {@link OutputCache}: the rendered bytes, the response headers and the validators
+ * used for answering the conditional requests. A 304 is sent out with the caching headers only.
+
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-18 5:10 PM)
+ */
+public class CachedOutput implements Serializable {
+    public static final String ETAG = "ETag";
+    public static final String LAST_MODIFIED = "Last-Modified";
+    public static final String IF_NONE_MATCH = "If-None-Match";
+    public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+    // the headers sent out with a 304
+    private static final String[] NOT_MODIFIED_HEADERS = {"Cache-Control", "Expires", "Vary", "Content-Location"};
+
+    private final byte[] body;
+    private final LinkedHashMap<String, String> headers;
+    private final String etag;
+    private final long lastModified; // truncated to seconds, as sent out
+    private final String lastModifiedDate;
+    private final long expires;
+
+    /**
+     * @param body         the rendered bytes
+     * @param headers      the response headers replayed with the page, the content length and the validators
+     *                     excepted
+     * @param lastModified the time the page was rendered
+     * @param expires      the time the page expires
+     */
+    public CachedOutput(byte[] body, Map<String, String> headers, long lastModified, long expires) {
+        this.body = body;
+        this.headers = new LinkedHashMap<String, String>(headers);
+        this.lastModified = lastModified / 1000 * 1000;
+        this.lastModifiedDate = httpDateFormat().format(new Date(this.lastModified));
+        this.expires = expires;
+
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        etag = String.format("\"%x-%x\"", body.length, crc.getValue());
+    }
+
+    public boolean isExpired(long now) {
+        return now >= expires;
+    }
+
+    /**
+     * @param context the context of the current request
+     * @return true if the client has this page already, as told by the request validators. The
+     *         <code>If-Modified-Since</code> header is ignored when <code>If-None-Match</code> is present
+     */
+    public boolean isNotModified(MicroContext context) {
+        String ifNoneMatch = OutputCache.header(context, IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.equals("*") || tag.equals(etag) || (tag.startsWith("W/") && tag.substring(2).equals(etag))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        String ifModifiedSince = OutputCache.header(context, IF_MODIFIED_SINCE);
+        if (ifModifiedSince != null) {
+            try {
+                return httpDateFormat().parse(ifModifiedSince).getTime() >= lastModified;
+            } catch (ParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param context the context of the current request
+     * @return a new response with this page, or a 304 if the client has it already
+     */
+    public RackResponse toResponse(MicroContext context) {
+        RackResponse response;
+        if (isNotModified(context)) {
+            response = new RackResponse(HttpServletResponse.SC_NOT_MODIFIED).withBody(new byte[0]);
+            for (String name : NOT_MODIFIED_HEADERS) {
+                if (headers.containsKey(name)) {
+                    response.withHeader(name, headers.get(name));
+                }
+            }
+        } else {
+            response = new RackResponse(HttpServletResponse.SC_OK);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                response.withHeader(header.getKey(), header.getValue());
+            }
+            response.withContentLength(body.length).withBody(body);
+        }
+        return addValidators(response);
+    }
+
+    /**
+     * @param response a response sending out this page
+     * @return the response, with the ETag and Last-Modified headers
+     */
+    public RackResponse addValidators(RackResponse response) {
+        return response.withHeader(ETAG, etag).withHeader(LAST_MODIFIED, lastModifiedDate);
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public String getContentType() {
+        return headers.get(Globals.HEADERS_CONTENT_TYPE);
+    }
+
+    /**
+     * @return the response headers replayed with the page
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return a new formatter for the HTTP dates; SimpleDateFormat is not thread safe
+     */
+    public static SimpleDateFormat httpDateFormat() {
+        SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format;
+    }
+}
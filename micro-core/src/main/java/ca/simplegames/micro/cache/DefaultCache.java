@@ -35,7 +35,7 @@ import java.util.List;
  * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
  * @since $Revision$ (created: 2012-12-19 4:27 PM)
  */
-public class DefaultCache implements MicroCache {
+public class DefaultCache implements MicroCache, MicroCacheStatistics {
     private Logger log = LoggerFactory.getLogger(getClass());
 
     private Cache cache;
@@ -176,4 +176,22 @@ public class DefaultCache implements MicroCache {
     public int getSize() {
         return cache.getSize();
     }
+
+    @Override
+    public long getHitCount() {
+        try {
+            return cache.getLiveCacheStatistics().getCacheHitCount();
+        } catch (IllegalStateException e) {
+            return -1; // the cache is not alive
+        }
+    }
+
+    @Override
+    public long getMissCount() {
+        try {
+            return cache.getLiveCacheStatistics().getCacheMissCount();
+        } catch (IllegalStateException e) {
+            return -1;
+        }
+    }
 }
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.cache;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EntryWeigher;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, in-process cache, evicting the least recently used elements when its capacity is
+ * exceeded. The capacity is either the number of elements or, with the <code>bytes</code> weigher,
+ * the approximate size in bytes of the cached content. The elements older than the flush interval are
+ * expired when they are read.
+ * <p/>
+ * Example:
+ * <pre>
+ * cache:
+ *   names: [views, controllers]
+ *   class: ca.simplegames.micro.cache.LruCache
+ *   capacity: 1000
+ *   weigher: entries  # or: bytes
+ *   flush_interval: 300  # seconds, 0 for never
+ * </pre>
+ * The statistics: hits, misses, evictions, expirations and the time spent loading the missing elements by
+ * {@link #get(Object, Callable)}.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-18 6:05 PM)
+ */
+public class LruCache implements MicroCache, MicroCacheStatistics {
+    public static final long DEFAULT_CAPACITY = 1000;
+    public static final long DEFAULT_BYTES_CAPACITY = 64 * 1024 * 1024;
+    public static final String CAPACITY = "capacity";
+    public static final String WEIGHER = "weigher";
+    public static final String ENTRIES = "entries";
+    public static final String BYTES = "bytes";
+
+    private static final int CONCURRENCY_LEVEL = 16;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadTime = new AtomicLong(); // nanoseconds
+
+    private String name = "lru";
+    private long capacity = DEFAULT_CAPACITY;
+    private String weigher = ENTRIES;
+    private volatile long flushInterval; // seconds
+    private volatile ConcurrentLinkedHashMap<Object, Element> cache = newMap();
+
+    public void addCache(String name, String... config) throws MicroCacheException {
+        this.name = name;
+    }
+
+    public Object get(Object key) throws MicroCacheException {
+        if (key == null) {
+            throw new MicroCacheException("Invalid key specification: null");
+        }
+
+        Element element = cache.get(key);
+        if (element != null && flushInterval > 0 &&
+                System.currentTimeMillis() - element.created >= flushInterval * 1000) {
+            if (cache.remove(key, element)) {
+                expirations.incrementAndGet();
+            }
+            element = null;
+        }
+
+        if (element == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return element.value;
+    }
+
+    public void put(Object key, Object value) throws MicroCacheException {
+        if (key == null || value == null) {
+            throw new MicroCacheException(String.format("null key/value: %s/%s", key, value));
+        }
+
+        cache.put(key, new Element(value, System.currentTimeMillis()));
+    }
+
+    /**
+     * get an element, loading and caching it if it is missing; the time spent loading it is measured
+     *
+     * @param key    the key of the element
+     * @param loader loading the element; a null element is not cached
+     * @return the element, cached or loaded
+     * @throws MicroCacheException if the element cannot be loaded
+     */
+    public Object get(Object key, Callable<?> loader) throws MicroCacheException {
+        Object value = get(key);
+        if (value == null) {
+            long start = System.nanoTime();
+            try {
+                value = loader.call();
+            } catch (Exception e) {
+                throw new MicroCacheException(String.format("cannot load: %s", key), e);
+            }
+            loads.incrementAndGet();
+            loadTime.addAndGet(System.nanoTime() - start);
+            if (value != null) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    public void remove(Object key) throws MicroCacheException {
+        if (key != null) {
+            cache.remove(key);
+        }
+    }
+
+    public void clear() throws MicroCacheException {
+        cache.clear();
+    }
+
+    public void destroy() throws MicroCacheException {
+        clear();
+    }
+
+    /**
+     * @param interval the maximum age of the cached elements, in seconds; 0 for never expiring them
+     */
+    public void setFlushInterval(long interval) throws MicroCacheException {
+        flushInterval = interval;
+    }
+
+    public long getFlushInterval() throws MicroCacheException {
+        return flushInterval;
+    }
+
+    public List getKeys() throws MicroCacheException {
+        return new ArrayList<Object>(cache.keySet());
+    }
+
+    /**
+     * @return a Map with the current counters of this cache
+     */
+    public Object getStatistics() throws MicroCacheException {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long loadCount = loads.get();
+
+        Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+        statistics.put("name", name);
+        statistics.put("size", cache.size());
+        statistics.put("weighted_size", cache.weightedSize());
+        statistics.put("capacity", cache.capacity());
+        statistics.put("weigher", weigher);
+        statistics.put("hits", hitCount);
+        statistics.put("misses", missCount);
+        statistics.put("hit_ratio", hitCount + missCount > 0 ? (double) hitCount / (hitCount + missCount) : 0d);
+        statistics.put("evictions", evictions.get());
+        statistics.put("expirations", expirations.get());
+        statistics.put("loads", loadCount);
+        statistics.put("load_time", loadTime.get() / 1000000); // milliseconds
+        statistics.put("average_load_time", loadCount > 0 ? loadTime.get() / loadCount / 1000 : 0); // microseconds
+        return statistics;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getSize() {
+        return cache.size();
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * configure the capacity and the weigher of this cache
+     *
+     * @param config the cache configuration, see the example above
+     */
+    public void configure(Map<String, Object> config) {
+        if (config != null) {
+            setWeigher((String) config.get(WEIGHER));
+            Object capacityConfig = config.get(CAPACITY);
+            if (capacityConfig != null) {
+                setCapacity(Long.parseLong(capacityConfig.toString().trim()));
+            } else {
+                setCapacity(BYTES.equals(weigher) ? DEFAULT_BYTES_CAPACITY : DEFAULT_CAPACITY);
+            }
+        }
+    }
+
+    /**
+     * change the capacity of this cache; the elements exceeding the new capacity are evicted
+     *
+     * @param capacity the maximum number of elements or bytes, depending on the weigher
+     */
+    public void setCapacity(long capacity) {
+        this.capacity = capacity;
+        cache.setCapacity(capacity);
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @param weigher <code>entries</code>, counting the elements, or <code>bytes</code>, weighing the
+     *                elements by the approximate size of their content. The cache is emptied
+     */
+    public void setWeigher(String weigher) {
+        this.weigher = BYTES.equalsIgnoreCase(weigher) ? BYTES : ENTRIES;
+        cache = newMap();
+    }
+
+    public String getWeigher() {
+        return weigher;
+    }
+
+    private ConcurrentLinkedHashMap<Object, Element> newMap() {
+        ConcurrentLinkedHashMap.Builder<Object, Element> builder = new ConcurrentLinkedHashMap.Builder<Object, Element>()
+                .maximumWeightedCapacity(capacity)
+                .concurrencyLevel(CONCURRENCY_LEVEL)
+                .listener(new EvictionListener<Object, Element>() {
+                    public void onEviction(Object key, Element element) {
+                        evictions.incrementAndGet();
+                    }
+                });
+
+        if (BYTES.equals(weigher)) {
+            builder.weigher(new EntryWeigher<Object, Element>() {
+                public int weightOf(Object key, Element element) {
+                    return Math.max(1, element.weight());
+                }
+            });
+        }
+        return builder.build();
+    }
+
+    private static class Element {
+        final Object value;
+        final long created;
+
+        Element(Object value, long created) {
+            this.value = value;
+            this.created = created;
+        }
+
+        /**
+         * @return the approximate size of the value, in bytes
+         */
+        int weight() {
+            if (value instanceof byte[]) {
+                return ((byte[]) value).length;
+            } else if (value instanceof CharSequence) {
+                return ((CharSequence) value).length() * 2;
+            } else if (value instanceof CachedOutput) {
+                return ((CachedOutput) value).getBody().length;
+            }
+            return 1;
+        }
+    }
+}
@@ -23,25 +23,28 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
  * @since $Revision$ (created: 2012-12-19 4:26 PM)
  */
 public class MicroCacheManager {
+    public static final String FLUSH_INTERVAL = "flush_interval";
     private Logger log = LoggerFactory.getLogger(getClass());
 
-    private Map<String, MicroCache> cacheImplementations = new HashMap<String, MicroCache>();
+    private ConcurrentMap<String, MicroCache> cacheImplementations = new ConcurrentHashMap<String, MicroCache>();
     private String cacheClass;
+    private Map<String, Object> cacheConfig;
 
     @SuppressWarnings("unchecked")
     public MicroCacheManager(SiteContext site) {
         if (site.isProduction()) {
             try {
-                Map<String, Object> cacheConfig = (Map<String, Object>) site.get(Globals.MICRO_CACHE_CONFIG);
+                cacheConfig = (Map<String, Object>) site.get(Globals.MICRO_CACHE_CONFIG);
 
                 List<String> cachesNames = (List<String>) cacheConfig.get("names");
                 cacheClass = (String) cacheConfig.get("class");
@@ -58,7 +61,7 @@ public class MicroCacheManager {
                     }
 
                     microCache.addCache(cacheName, cacheConfigPath);
-                    microCache.setFlushInterval(0); //todo implement me
+                    configure(microCache);
 
                     cacheImplementations.put(cacheName, microCache);
                 }
@@ -97,21 +100,51 @@ public class MicroCacheManager {
                 new String[cacheImplementations.keySet().size()]);
     }
 
-    public MicroCache getCacheWithDefault(String scriptControllersCacheName) {
-        if (!cacheImplementations.containsKey(scriptControllersCacheName)) {
-            MicroCache microCache = null;
+    /**
+     * returns a cache storage by name, creating it if it doesn't exist. A bounded {@link LruCache} is
+     * used if the cache system is disabled, or the configured cache class can't be used.
+     *
+     * @param cacheName the name of the cache
+     * @return the cache implementation
+     */
+    public MicroCache getCacheWithDefault(String cacheName) {
+        MicroCache microCache = cacheImplementations.get(cacheName);
 
+        if (microCache == null) {
             try {
-                Class aClass = Class.forName(cacheClass);
-                microCache = (MicroCache) aClass.newInstance();
-                microCache.addCache(scriptControllersCacheName);
+                if (cacheClass != null) {
+                    Class aClass = Class.forName(cacheClass);
+                    microCache = (MicroCache) aClass.newInstance();
+                } else {
+                    microCache = new LruCache();
+                }
+                microCache.addCache(cacheName);
+                configure(microCache);
             } catch (Exception e) {
                 e.printStackTrace();
-                microCache = new SimpleMapCache();
+                microCache = new LruCache();
+            }
+
+            MicroCache existing = cacheImplementations.putIfAbsent(cacheName, microCache);
+            if (existing != null) {
+                microCache = existing;
             }
-            cacheImplementations.put(scriptControllersCacheName, microCache);
         }
 
-        return cacheImplementations.get(scriptControllersCacheName);
+        return microCache;
+    }
+
+    /**
+     * apply the common settings to a new cache: the flush interval, in seconds, and the capacity of
+     * the {@link LruCache} caches
+     */
+    private void configure(MicroCache microCache) throws MicroCacheException {
+        if (cacheConfig != null) {
+            Object flushInterval = cacheConfig.get(FLUSH_INTERVAL);
+            microCache.setFlushInterval(flushInterval != null ? Long.parseLong(flushInterval.toString().trim()) : 0);
+            if (microCache instanceof LruCache) {
+                ((LruCache) microCache).configure(cacheConfig);
+            }
+        }
     }
 }
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.cache;
+
+/**
+ * Implemented by the {@link MicroCache} counting their lookups; the counters are published by the
+ * metrics and the system info controllers. Optional, the other caches are reported by their size only.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-19 4:20 PM)
+ */
+public interface MicroCacheStatistics {
+
+    /**
+     * @return the number of the lookups finding an element, or -1 if the cache cannot count them now
+     */
+    public long getHitCount();
+
+    /**
+     * @return the number of the lookups not finding an element, or -1 if the cache cannot count them now
+     */
+    public long getMissCount();
+}
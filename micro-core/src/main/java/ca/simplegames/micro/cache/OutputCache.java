@@ -0,0 +1,332 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.cache;
+
+import ca.simplegames.micro.Globals;
+import ca.simplegames.micro.MicroContext;
+import ca.simplegames.micro.SiteContext;
+import ca.simplegames.micro.utils.StaticContent;
+import org.jrack.Context;
+import org.jrack.Rack;
+import org.jrack.RackResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * The output cache of a View or of a Route, keeping the rendered pages. A page found in the cache is
+ * sent out after the before filters, without calling the routes, the controllers or the renderers, and the
+ * conditional requests (<code>If-None-Match</code>, <code>If-Modified-Since</code>) are answered with a 304
+ * if the page was not modified. Only the successful responses to GET and HEAD requests are cached, and
+ * only for the anonymous requests: the requests carrying an <code>Authorization</code> header, a session
+ * or cookies, unless the pages are varied by <code>"header:Cookie"</code>, are neither served from the
+ * cache nor cached.
+ * <p/>
+ * Example, in the View or the Route configuration:
+ * <pre>
+ * output_cache:
+ *   ttl: 60  # seconds, 0 for keeping the pages until the cache is evicting them
+ *   cache: pages  # optional, one of the named caches; default: micro_output_cache
+ *   vary: [params, locale, "header:Accept-Encoding"]
+ * </pre>
+ * The pages are cached by their request method, path and the precompressed encodings accepted by the
+ * client, see: {@link StaticContent#acceptedEncodings(MicroContext)}, and, optionally, by: all the request
+ * <code>params</code> or some of them, <code>"param:name"</code>, the browser <code>locale</code> and the
+ * request headers, <code>"header:name"</code>. The responses marked with {@link #NOT_CACHEABLE} are not
+ * cached.
+ * <p/>
+ * A cached page is sent out with the headers of the response it was rendered in, except for the cookies,
+ * the content length and the validators, and the request headers varying the page, the locale or the
+ * <code>"header:name"</code> criteria, are sent out in the <code>Vary</code> header. A response with a
+ * <code>Content-Encoding</code> is cached only if its page is cached by the encodings accepted by the client.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-18 5:10 PM)
+ */
+public class OutputCache implements Serializable {
+    private static final Logger log = LoggerFactory.getLogger(OutputCache.class);
+
+    public static final String OUTPUT_CACHE = "output_cache";
+    public static final String TTL = "ttl";
+    public static final String CACHE = "cache";
+    public static final String VARY = "vary";
+    public static final long DEFAULT_TTL = 60;
+    /**
+     * a context attribute, set for the responses that must not be cached: the files sent out after the
+     * response headers, for example
+     */
+    public static final String NOT_CACHEABLE = Globals.MICRO + "not_cacheable";
+
+    private static final String VARY_PARAMS = "params";
+    private static final String VARY_LOCALE = "locale";
+    private static final String VARY_PARAM = "param:";
+    private static final String VARY_HEADER = "header:";
+    private static final String ACCEPT_LANGUAGE = "Accept-Language";
+    private static final String SET_COOKIE = "Set-Cookie";
+    private static final String COOKIE = "Cookie";
+    private static final String AUTHORIZATION = "Authorization";
+    private static final String CONTENT_LENGTH = "Content-Length";
+    private static final String ACCEPT_ENCODING_KEY = "|encoding=";
+    // the response headers not kept with a cached page
+    private static final String[] NOT_CACHED_HEADERS = {SET_COOKIE, CONTENT_LENGTH,
+            CachedOutput.ETAG, CachedOutput.LAST_MODIFIED};
+
+    private static final Charset UTF8 = Charset.forName(Globals.UTF8);
+
+    private final long ttl; // milliseconds
+    private final String cacheName;
+    private boolean varyByParams;
+    private boolean varyByLocale;
+    private boolean varyByCookie;
+    private boolean varyByAcceptEncoding;
+    private final List<String> varyHeaders = new ArrayList<String>(); // sent out in the Vary header
+    private final List<String> params = new ArrayList<String>();
+    private final List<String> headers = new ArrayList<String>();
+
+    @SuppressWarnings("unchecked")
+    public OutputCache(Map<String, Object> config) {
+        Object ttlConfig = config.get(TTL);
+        ttl = (ttlConfig != null ? Long.parseLong(ttlConfig.toString().trim()) : DEFAULT_TTL) * 1000;
+        cacheName = config.get(CACHE) != null ? (String) config.get(CACHE) : Globals.OUTPUT_CACHE_NAME;
+
+        List<String> vary = (List<String>) config.get(VARY);
+        if (vary != null) {
+            for (String criteria : vary) {
+                criteria = criteria.trim();
+                if (criteria.equalsIgnoreCase(VARY_PARAMS)) {
+                    varyByParams = true;
+                } else if (criteria.equalsIgnoreCase(VARY_LOCALE)) {
+                    varyByLocale = true;
+                    varyHeaders.add(ACCEPT_LANGUAGE);
+                } else if (criteria.startsWith(VARY_PARAM)) {
+                    params.add(criteria.substring(VARY_PARAM.length()).trim());
+                } else if (criteria.startsWith(VARY_HEADER)) {
+                    String header = criteria.substring(VARY_HEADER.length()).trim();
+                    headers.add(header);
+                    varyHeaders.add(header);
+                    varyByCookie |= header.equalsIgnoreCase(COOKIE);
+                    varyByAcceptEncoding |= header.equalsIgnoreCase(StaticContent.ACCEPT_ENCODING);
+                } else {
+                    log.warn(String.format("Unknown output cache criteria: '%s', ignored.", criteria));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param config the configuration of a View or a Route
+     * @return the output cache declared by the given configuration or null
+     */
+    @SuppressWarnings("unchecked")
+    public static OutputCache fromConfig(Map<String, Object> config) {
+        if (config != null && config.get(OUTPUT_CACHE) instanceof Map) {
+            return new OutputCache((Map<String, Object>) config.get(OUTPUT_CACHE));
+        }
+        return null;
+    }
+
+    /**
+     * @param context the context of the current request
+     * @return the key of the page requested, or null if the request method is not cacheable or the request
+     * is carrying credentials
+     */
+    @SuppressWarnings("unchecked")
+    public String key(MicroContext context) {
+        Context<String> input = context.getRackInput();
+        String method = input.get(Rack.REQUEST_METHOD);
+        if (!"GET".equalsIgnoreCase(method) && !"HEAD".equalsIgnoreCase(method) || isPrivate(context)) {
+            return null;
+        }
+
+        String path = input.get(Rack.PATH_INFO);
+        StringBuilder key = new StringBuilder(OUTPUT_CACHE).append(':')
+                .append(method.toUpperCase(Locale.ENGLISH)).append(' ')
+                .append(path != null && path.length() > 0 ? path : input.get(Rack.SCRIPT_NAME));
+
+        Map<String, Object> requestParams = (Map<String, Object>) input.getObject(Rack.PARAMS);
+        if (varyByParams && requestParams != null) {
+            for (Map.Entry<String, Object> param : new TreeMap<String, Object>(requestParams).entrySet()) {
+                appendParam(key, param.getKey(), param.getValue());
+            }
+        } else if (!params.isEmpty() && requestParams != null) {
+            for (String name : params) {
+                appendParam(key, name, requestParams.get(name));
+            }
+        }
+
+        if (varyByLocale) {
+            key.append("|locale=").append(input.getObject(Rack.RACK_BROWSER_LOCALE))
+                    .append(',').append(header(context, ACCEPT_LANGUAGE));
+        }
+        for (String name : headers) {
+            key.append('|').append(name).append('=').append(header(context, name));
+        }
+
+        String encodings = StaticContent.acceptedEncodings(context);
+        if (encodings.length() > 0) {
+            key.append(ACCEPT_ENCODING_KEY).append(encodings);
+        }
+        return key.toString();
+    }
+
+    /**
+     * @param site the site context
+     * @param key  the key of the page, see: {@link #key(MicroContext)}
+     * @return the cached page, or null if the page is not in the cache or it expired
+     */
+    public CachedOutput get(SiteContext site, String key) {
+        MicroCache cache = site.getCacheManager().getCacheWithDefault(cacheName);
+        try {
+            CachedOutput output = (CachedOutput) cache.get(key);
+            if (output != null && output.isExpired(System.currentTimeMillis())) {
+                cache.remove(key);
+                return null;
+            }
+            return output;
+        } catch (MicroCacheException e) {
+            log.error(String.format("Cannot read the page: %s, from the output cache: %s", key, cacheName));
+            return null;
+        }
+    }
+
+    /**
+     * cache the response, if it is a successful one, and add its validators to the response:
+     * ETag and Last-Modified, and the request headers varying the page, to its Vary header
+     *
+     * @param site     the site context
+     * @param key      the key of the page, see: {@link #key(MicroContext)}
+     * @param response the response sent out
+     */
+    public void put(SiteContext site, String key, RackResponse response) {
+        Map<String, String> responseHeaders = response.getHeaders();
+        String encoding = responseHeaders.get(StaticContent.CONTENT_ENCODING);
+        List<String> vary = new ArrayList<String>(varyHeaders);
+        if (encoding != null) {
+            vary.add(StaticContent.ACCEPT_ENCODING);
+        }
+        if (!vary.isEmpty()) {
+            response.withHeader(StaticContent.VARY, vary(responseHeaders.get(StaticContent.VARY), vary));
+        }
+
+        Object body = response.getBody();
+        if (response.getStatus() != HttpServletResponse.SC_OK || responseHeaders.containsKey(SET_COOKIE) ||
+                !(body instanceof byte[] || body instanceof String) ||
+                encoding != null && !isCachedByEncoding(key, encoding)) {
+            return;
+        }
+
+        Map<String, String> cachedHeaders = new LinkedHashMap<String, String>(responseHeaders);
+        for (String name : NOT_CACHED_HEADERS) {
+            for (Iterator<String> names = cachedHeaders.keySet().iterator(); names.hasNext(); ) {
+                if (names.next().equalsIgnoreCase(name)) {
+                    names.remove();
+                }
+            }
+        }
+
+        byte[] bytes = body instanceof byte[] ? (byte[]) body : ((String) body).getBytes(UTF8);
+        long now = System.currentTimeMillis();
+        CachedOutput output = new CachedOutput(bytes, cachedHeaders, now, ttl > 0 ? now + ttl : Long.MAX_VALUE);
+        output.addValidators(response);
+
+        try {
+            site.getCacheManager().getCacheWithDefault(cacheName).put(key, output);
+        } catch (MicroCacheException e) {
+            log.error(String.format("Cannot add the page: %s, to the output cache: %s", key, cacheName));
+        }
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    /**
+     * @return a request header, from the servlet request if there is one or from the Rack input
+     */
+    public static String header(MicroContext context, String name) {
+        HttpServletRequest request = context.getRequest();
+        if (request != null) {
+            return request.getHeader(name);
+        }
+        return (String) context.getRackInput().getObject("HTTP_" + name.toUpperCase(Locale.ENGLISH).replace('-', '_'));
+    }
+
+    /**
+     * @return true if the request is carrying credentials: an Authorization header, a session or cookies, if
+     * the pages are not varied by the Cookie header
+     */
+    private boolean isPrivate(MicroContext context) {
+        if (header(context, AUTHORIZATION) != null || !varyByCookie && header(context, COOKIE) != null) {
+            return true;
+        }
+        HttpServletRequest request = context.getRequest();
+        return request != null && request.getSession(false) != null;
+    }
+
+    /**
+     * @return true if the clients getting the page cached with the given key are all accepting the encoding:
+     * the pages are varied by the Accept-Encoding header or the encoding is one of the encodings in the key
+     */
+    private boolean isCachedByEncoding(String key, String encoding) {
+        if (varyByAcceptEncoding) {
+            return true;
+        }
+
+        int start = key.lastIndexOf(ACCEPT_ENCODING_KEY);
+        if (start >= 0) {
+            for (String accepted : key.substring(start + ACCEPT_ENCODING_KEY.length()).split(",")) {
+                if (accepted.equalsIgnoreCase(encoding.trim())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // the value of the Vary header, with the headers not present already
+    private static String vary(String value, List<String> names) {
+        StringBuilder vary = new StringBuilder(value != null ? value : "");
+        for (String name : names) {
+            boolean present = false;
+            for (String token : vary.toString().split(",")) {
+                present |= token.trim().equalsIgnoreCase(name);
+            }
+            if (!present) {
+                vary.append(vary.length() > 0 ? ", " : "").append(name);
+            }
+        }
+        return vary.toString();
+    }
+
+    private static void appendParam(StringBuilder key, String name, Object value) {
+        key.append('|').append(name).append('=');
+        if (value instanceof String[]) {
+            key.append(Arrays.toString((String[]) value));
+        } else {
+            key.append(value);
+        }
+    }
+}
@@ -27,7 +27,7 @@ import java.util.concurrent.ConcurrentHashMap;
  * @since $Revision$ (created: 2012-12-19 7:15 PM)
  */
 public class SimpleMapCache implements MicroCache {
-    Map<String, Object> cache = new ConcurrentHashMap<String, Object>(8, 0.9f, 2);
+    final Map<String, Object> cache = new ConcurrentHashMap<String, Object>(8, 0.9f, 2);
     private String name = "map";
 
     public void addCache(String name, String ... config) throws MicroCacheException {
@@ -47,7 +47,7 @@ public class SimpleMapCache implements MicroCache {
     }
 
     public void clear() throws MicroCacheException {
-        cache = new ConcurrentHashMap<String, Object>(8, 0.9f, 2);
+        cache.clear();
     }
 
     public void destroy() throws MicroCacheException {
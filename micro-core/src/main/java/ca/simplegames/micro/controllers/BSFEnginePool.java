@@ -0,0 +1,371 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.controllers;
+
+import ca.simplegames.micro.Globals;
+import ca.simplegames.micro.MicroContext;
+import ca.simplegames.micro.SiteContext;
+import ca.simplegames.micro.instrumentation.MetricsWriter;
+import org.apache.bsf.BSFEngine;
+import org.apache.bsf.BSFException;
+import org.apache.bsf.BSFManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of BSF engines, by language, reused by the script controllers. Loading a scripting engine
+ * means bootstrapping an interpreter, expensive for Groovy or JRuby, so the engines are kept and reused
+ * instead of creating new ones for every execution.
+ * <p/>
+ * A borrowed engine has the <code>site</code> bean and the beans of the current execution:
+ * <code>context</code>, <code>configuration</code> and <code>log</code>; the latter are undeclared when
+ * the engine is returned. The pool never blocks: a new engine is created if there is no idle engine,
+ * and the returned engines exceeding the pool size are terminated. The engines failing an execution are
+ * terminated as well.
+ * <p/>
+ * The pool is off by default and the script controllers are using a new engine for every execution.
+ * Configuration, in micro-config.yml:
+ * <pre>
+ * scripting:
+ *   pool_size: 8  # idle engines kept per language; the pool is used only if greater than 0
+ *   warm_up: {beanshell: 2, groovy: 1}  # engines created at startup
+ * </pre>
+ * Please note the variables created by a script, other than the beans above, are visible to the
+ * next scripts executed by the same engine; enable the pool only for the scripts not keeping any
+ * request state in their global variables.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-18 6:50 PM)
+ */
+public class BSFEnginePool {
+    public static final String SCRIPTING = "scripting";
+    public static final String POOL_SIZE = "pool_size";
+    public static final String WARM_UP = "warm_up";
+    public static final int DEFAULT_POOL_SIZE = 0; // off
+
+    private static volatile boolean enginesRegistered;
+
+    private Logger log = LoggerFactory.getLogger(getClass());
+
+    private final SiteContext site;
+    private final int poolSize;
+    private final ConcurrentMap<String, LanguagePool> pools = new ConcurrentHashMap<String, LanguagePool>();
+
+    public BSFEnginePool(SiteContext site, int poolSize) {
+        this.site = site;
+        this.poolSize = Math.max(0, poolSize);
+    }
+
+    /**
+     * @param site   the site context
+     * @param config the <code>scripting</code> configuration, can be null
+     * @return a new pool, warmed up as configured, or null if the pool is not enabled
+     */
+    @SuppressWarnings("unchecked")
+    public static BSFEnginePool fromConfig(SiteContext site, Map<String, Object> config) {
+        int poolSize = DEFAULT_POOL_SIZE;
+        if (config != null && config.get(POOL_SIZE) != null) {
+            poolSize = Integer.parseInt(config.get(POOL_SIZE).toString().trim());
+        }
+
+        if (poolSize <= 0) {
+            return null;
+        }
+
+        BSFEnginePool pool = new BSFEnginePool(site, poolSize);
+        if (config != null && config.get(WARM_UP) instanceof Map) {
+            for (Map.Entry<String, Object> warmUp : ((Map<String, Object>) config.get(WARM_UP)).entrySet()) {
+                pool.warmUp(warmUp.getKey(), Integer.parseInt(warmUp.getValue().toString().trim()));
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * register the BSF engines used by Micro: beanshell, groovy and jruby19, and the extensions of their
+     * scripts. Done when a script is used first time, not at startup, so the BSF classes are not loaded
+     * by the sites without script controllers. Called for every script, the lock is taken only once.
+     */
+    public static void registerEngines() {
+        if (!enginesRegistered) {
+            synchronized (BSFEnginePool.class) {
+                if (!enginesRegistered) {
+                    BSFManager.registerScriptingEngine("beanshell", "bsh.util.BeanShellBSFEngine", new String[]{"bsh"});
+                    BSFManager.registerScriptingEngine("groovy", "org.codehaus.groovy.bsf.GroovyEngine",
+                            new String[]{"groovy", "gy"});
+                    BSFManager.registerScriptingEngine("jruby19", "org.jruby.embed.bsf.JRubyEngine",
+                            new String[]{"ruby", "rb"});
+                    enginesRegistered = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * create idle engines, up to the pool size
+     *
+     * @param language a BSF language, example: 'beanshell'
+     * @param count    the number of engines to create
+     */
+    public void warmUp(String language, int count) {
+        LanguagePool pool = pool(language);
+        long start = System.currentTimeMillis();
+        int created = 0;
+
+        try {
+            for (; created < Math.min(count, poolSize) && pool.idleCount.get() < poolSize; created++) {
+                pool.idle.offer(pool.create());
+                pool.idleCount.incrementAndGet();
+            }
+            log.info(String.format("  %s: %d engine(s), warmed up in %d ms", language, created,
+                    System.currentTimeMillis() - start));
+        } catch (BSFException e) {
+            log.error(String.format("cannot warm up the '%s' engines; %s", language, e.getMessage()));
+        }
+    }
+
+    /**
+     * borrow an engine and declare the beans of the current execution
+     *
+     * @param language      a BSF language, example: 'beanshell'
+     * @param context       the current context
+     * @param configuration the configuration of the execution, can be null
+     * @param logger        the logger used by the script
+     * @return an engine that must be returned with {@link #release(PooledEngine, boolean)}
+     * @throws BSFException if a new engine cannot be created
+     */
+    public PooledEngine borrow(String language, MicroContext context, Map configuration, Logger logger)
+            throws BSFException {
+        LanguagePool pool = pool(language);
+        PooledEngine engine = pool.idle.poll();
+
+        if (engine != null) {
+            pool.idleCount.decrementAndGet();
+            pool.reused.incrementAndGet();
+        } else {
+            engine = pool.create();
+        }
+        pool.inUse.incrementAndGet();
+
+        try {
+            engine.declare(context, configuration, logger);
+        } catch (BSFException e) {
+            release(engine, false);
+            throw e;
+        }
+        return engine;
+    }
+
+    /**
+     * return an engine to the pool, undeclaring the beans of the execution
+     *
+     * @param engine  a borrowed engine
+     * @param healthy false if the engine failed and it must not be reused
+     */
+    public void release(PooledEngine engine, boolean healthy) {
+        LanguagePool pool = engine.pool;
+        pool.inUse.decrementAndGet();
+
+        if (healthy) {
+            engine.undeclare();
+            if (pool.idleCount.incrementAndGet() <= poolSize) {
+                pool.idle.offer(engine);
+                return;
+            }
+            pool.idleCount.decrementAndGet();
+        }
+
+        pool.discarded.incrementAndGet();
+        engine.terminate();
+    }
+
+    /**
+     * terminate all the idle engines
+     */
+    public void shutdown() {
+        for (LanguagePool pool : pools.values()) {
+            PooledEngine engine;
+            while ((engine = pool.idle.poll()) != null) {
+                pool.idleCount.decrementAndGet();
+                engine.terminate();
+            }
+        }
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * @return the counters of the pool, by language: created, reused and discarded engines, the idle
+     *         engines and the ones in use, the total time spent creating engines
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+        statistics.put(POOL_SIZE, poolSize);
+        for (LanguagePool pool : pools.values()) {
+            Map<String, Object> languageStatistics = new LinkedHashMap<String, Object>();
+            languageStatistics.put("created", pool.created.get());
+            languageStatistics.put("reused", pool.reused.get());
+            languageStatistics.put("discarded", pool.discarded.get());
+            languageStatistics.put("idle", pool.idleCount.get());
+            languageStatistics.put("in_use", pool.inUse.get());
+            languageStatistics.put("creation_time", pool.creationTime.get() / 1000000); // milliseconds
+            statistics.put(pool.language, languageStatistics);
+        }
+        return statistics;
+    }
+
+    /**
+     * write the usage of the pool, by language: the engines in use and idle, the engines created and reused
+     *
+     * @param out the metrics writer
+     */
+    public void collect(MetricsWriter out) {
+        out.family("micro_script_engines_in_use", MetricsWriter.GAUGE, "The scripting engines executing a script.");
+        for (LanguagePool pool : pools.values()) {
+            out.sample("micro_script_engines_in_use", "language", pool.language, pool.inUse.get());
+        }
+        out.family("micro_script_engines_idle", MetricsWriter.GAUGE, "The scripting engines waiting in the pool.");
+        for (LanguagePool pool : pools.values()) {
+            out.sample("micro_script_engines_idle", "language", pool.language, pool.idleCount.get());
+        }
+        out.family("micro_script_engines_created_total", MetricsWriter.COUNTER, "The scripting engines created.");
+        for (LanguagePool pool : pools.values()) {
+            out.sample("micro_script_engines_created_total", "language", pool.language, pool.created.get());
+        }
+        out.family("micro_script_engines_reused_total", MetricsWriter.COUNTER,
+                "The scripts executed by a pooled engine.");
+        for (LanguagePool pool : pools.values()) {
+            out.sample("micro_script_engines_reused_total", "language", pool.language, pool.reused.get());
+        }
+        out.family("micro_script_engines_max", MetricsWriter.GAUGE, "The maximum number of idle engines, by language.");
+        out.sample("micro_script_engines_max", poolSize);
+    }
+
+    private LanguagePool pool(String language) {
+        LanguagePool pool = pools.get(language);
+        if (pool == null) {
+            pool = new LanguagePool(language);
+            LanguagePool existing = pools.putIfAbsent(language, pool);
+            if (existing != null) {
+                pool = existing;
+            }
+        }
+        return pool;
+    }
+
+    private class LanguagePool {
+        final String language;
+        final Queue<PooledEngine> idle = new ConcurrentLinkedQueue<PooledEngine>();
+        final AtomicInteger idleCount = new AtomicInteger();
+        final AtomicInteger inUse = new AtomicInteger();
+        final AtomicLong created = new AtomicLong();
+        final AtomicLong reused = new AtomicLong();
+        final AtomicLong discarded = new AtomicLong();
+        final AtomicLong creationTime = new AtomicLong(); // nanoseconds
+
+        LanguagePool(String language) {
+            this.language = language;
+        }
+
+        PooledEngine create() throws BSFException {
+            long start = System.nanoTime();
+            registerEngines();
+            BSFManager bsfManager = new BSFManager();
+            bsfManager.setClassLoader(site.getClass().getClassLoader());
+            bsfManager.declareBean(Globals.SITE, site, SiteContext.class);
+            BSFEngine bsfEngine = bsfManager.loadScriptingEngine(language);
+
+            created.incrementAndGet();
+            creationTime.addAndGet(System.nanoTime() - start);
+            return new PooledEngine(this, bsfManager, bsfEngine);
+        }
+    }
+
+    /**
+     * a BSF engine and its manager, holding the declared beans
+     */
+    public static class PooledEngine {
+        private final LanguagePool pool;
+        private final BSFManager bsfManager;
+        private final BSFEngine bsfEngine;
+        private boolean configurationDeclared;
+        private boolean undeclareUnsupported;
+
+        private PooledEngine(LanguagePool pool, BSFManager bsfManager, BSFEngine bsfEngine) {
+            this.pool = pool;
+            this.bsfManager = bsfManager;
+            this.bsfEngine = bsfEngine;
+        }
+
+        public BSFEngine getEngine() {
+            return bsfEngine;
+        }
+
+        public String getLanguage() {
+            return pool.language;
+        }
+
+        private void declare(MicroContext context, Map configuration, Logger logger) throws BSFException {
+            bsfManager.declareBean(Globals.LOG, logger, Logger.class);
+            if (configuration == null && undeclareUnsupported) {
+                // hide the configuration of the previous execution
+                configuration = Collections.emptyMap();
+            }
+            configurationDeclared = configuration != null;
+            if (configurationDeclared) {
+                bsfManager.declareBean(Globals.CONFIGURATION, configuration, Map.class);
+            }
+            bsfManager.declareBean(Globals.CONTEXT, context, MicroContext.class);
+        }
+
+        /**
+         * undeclare the beans of the execution. Some engines can't undeclare beans; the beans are removed
+         * from the manager anyway and the engine will see the new beans declared by the next execution
+         */
+        private void undeclare() {
+            undeclare(Globals.CONTEXT);
+            if (configurationDeclared) {
+                undeclare(Globals.CONFIGURATION);
+            }
+            undeclare(Globals.LOG);
+        }
+
+        private void undeclare(String bean) {
+            try {
+                bsfManager.undeclareBean(bean);
+            } catch (BSFException e) {
+                undeclareUnsupported = true;
+            }
+        }
+
+        private void terminate() {
+            bsfManager.terminate();
+        }
+    }
+}
@@ -23,18 +23,19 @@ import ca.simplegames.micro.SiteContext;
 import ca.simplegames.micro.repositories.Repository;
 import ca.simplegames.micro.utils.CollectionUtils;
 import ca.simplegames.micro.utils.PathUtilities;
+import ca.simplegames.micro.utils.StaticContent;
 import org.jrack.Rack;
-import org.jrack.RackResponse;
 import org.jrack.utils.Mime;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.Map;
 
 /**
  * Basic controller that can be used as a default binary content streamer. Useful in those
- * scenarios where a developer would like to serve data from a private (dynamic) repository
+ * scenarios where a developer would like to serve data from a private (dynamic) repository.
+ * The conditional, the range and the precompressed requests are supported, see: {@link StaticContent}
  *
  * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
  * @since $Revision$ (created: 2012-12-22 7:15 PM)
@@ -62,21 +63,18 @@ public class BinaryContent implements Controller {
         String fileType = PathUtilities.extractType(file.getAbsolutePath());
 
         if (file.exists()) {
-            RackResponse rackResponse = null;
-            try {
-                rackResponse = context.getRackResponse().withBody(file).withContentLength(file.length());
-                if (configuration != null) {
-                    Map<String, String> customMimeTypes = (Map<String, String>) configuration.get(CONFIG_ELEMENT_MIME_TYPES);
-                    if (!CollectionUtils.isEmpty(customMimeTypes) && customMimeTypes.containsKey(fileType)) {
-                        rackResponse.withContentType(customMimeTypes.get(fileType));
-                    } else {
-                        rackResponse.withContentType(Mime.mimeType(fileType));
-                    }
-                } else {
-                    rackResponse.withContentType(Mime.mimeType(fileType));
+            String contentType = Mime.mimeType(fileType);
+            if (configuration != null) {
+                Map<String, String> customMimeTypes = (Map<String, String>) configuration.get(CONFIG_ELEMENT_MIME_TYPES);
+                if (!CollectionUtils.isEmpty(customMimeTypes) && customMimeTypes.containsKey(fileType)) {
+                    contentType = customMimeTypes.get(fileType);
                 }
-            } catch (FileNotFoundException e) {
-                throw new ControllerException("File not found: " + file.getAbsolutePath(), e);
+            }
+
+            try {
+                StaticContent.serve(context, file, contentType);
+            } catch (IOException e) {
+                throw new ControllerException("Cannot read: " + file.getAbsolutePath(), e);
             }
 
         } else {
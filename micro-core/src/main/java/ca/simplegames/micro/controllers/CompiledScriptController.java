@@ -0,0 +1,202 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.controllers;
+
+import ca.simplegames.micro.Controller;
+import ca.simplegames.micro.Globals;
+import ca.simplegames.micro.MicroContext;
+import ca.simplegames.micro.RedirectException;
+import org.slf4j.LoggerFactory;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+
+/**
+ * A script controller compiled by a JSR-223 engine supporting {@link Compilable}. The script is compiled
+ * once and compiled again only if its file was modified; the beans of every execution: <code>site</code>,
+ * <code>context</code>, <code>configuration</code> and <code>log</code>, are given to the script through
+ * their own {@link Bindings}.
+ * <p/>
+ * The engine is shared by all the controllers written in the same language; the scripts are evaluated
+ * concurrently if the engine says it is thread safe, otherwise one at a time, locking the engine.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-18 7:40 PM)
+ */
+public class CompiledScriptController implements Controller {
+    private static final String THREADING = "THREADING";
+
+    private final String controllerName;
+    private final File file;
+    private final ScriptEngine engine;
+    private final boolean threadSafe;
+
+    private volatile Compiled compiled;
+    private volatile boolean watched;
+
+    /**
+     * @param controllerName the name of the controller, used for logging and error reporting
+     * @param file           the script file
+     * @param engine         an engine implementing {@link Compilable}
+     */
+    public CompiledScriptController(String controllerName, File file, ScriptEngine engine) {
+        if (!(engine instanceof Compilable)) {
+            throw new IllegalArgumentException(String.format("%s, the engine cannot compile scripts", controllerName));
+        }
+        this.controllerName = controllerName;
+        this.file = file;
+        this.engine = engine;
+        this.threadSafe = engine.getFactory().getParameter(THREADING) != null;
+    }
+
+    /**
+     * evaluate the compiled script, compiling it first if its file is new or it was modified
+     *
+     * @param context       a Map containing input parameters
+     * @param configuration an action specific configuration. Can be null
+     * @throws ControllerException if the script cannot be compiled or if it fails
+     */
+    public void execute(MicroContext context, Map configuration) throws ControllerException {
+        Bindings bindings = engine.createBindings();
+        bindings.put(Globals.SITE, context.getSiteContext());
+        bindings.put(Globals.CONTEXT, context);
+        bindings.put(Globals.CONFIGURATION, configuration);
+        bindings.put(Globals.LOG, LoggerFactory.getLogger(controllerName));
+
+        try {
+            if (threadSafe) {
+                getCompiled().eval(bindings);
+            } else {
+                synchronized (engine) {
+                    getCompiled().eval(bindings);
+                }
+            }
+        } catch (ScriptException e) {
+            if (isRedirect(e)) {
+                throw new RedirectException();
+            }
+            throw new ControllerException(
+                    String.format("error while executing: %s; details: %s", controllerName, e.getMessage()));
+        } catch (RedirectException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new ControllerException(
+                    String.format("error while executing: %s; details: %s", controllerName, e));
+        }
+    }
+
+    public String getControllerName() {
+        return controllerName;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @param watched true if the script file is watched by the {@link ControllerManager}, which is discarding
+     *                this controller when the file is modified; the file is not checked before every execution
+     */
+    public void setWatched(boolean watched) {
+        this.watched = watched;
+    }
+
+    public boolean isWatched() {
+        return watched;
+    }
+
+    /**
+     * @return the time the script file was modified, when it was compiled last time, or 0 if the
+     *         script was not compiled yet
+     */
+    public long getLastModified() {
+        Compiled current = compiled;
+        return current != null ? current.lastModified : 0;
+    }
+
+    private CompiledScript getCompiled() throws ControllerException {
+        Compiled current = compiled;
+        if (current != null && watched) {
+            return current.script;
+        }
+
+        long lastModified = file.lastModified();
+
+        if (current == null || current.lastModified != lastModified) {
+            synchronized (this) {
+                current = compiled;
+                if (current == null || current.lastModified != lastModified) {
+                    current = compile(lastModified);
+                    compiled = current;
+                }
+            }
+        }
+        return current.script;
+    }
+
+    private Compiled compile(long lastModified) throws ControllerException {
+        Reader reader = null;
+        try {
+            reader = new FileReader(file);
+            synchronized (engine) {
+                engine.put(ScriptEngine.FILENAME, controllerName);
+                return new Compiled(((Compilable) engine).compile(reader), lastModified);
+            }
+        } catch (ScriptException e) {
+            throw new ControllerException(
+                    String.format("cannot compile: %s; details: %s", controllerName, e.getMessage()));
+        } catch (IOException e) {
+            throw new ControllerException(
+                    String.format("cannot read: %s; details: %s", controllerName, e.getMessage()));
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static boolean isRedirect(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RedirectException ||
+                    (cause.getMessage() != null && cause.getMessage().contains(RedirectException.class.getName()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Compiled {
+        final CompiledScript script;
+        final long lastModified;
+
+        Compiled(CompiledScript script, long lastModified) {
+            this.script = script;
+            this.lastModified = lastModified;
+        }
+    }
+}
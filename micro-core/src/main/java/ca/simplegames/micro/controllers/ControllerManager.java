@@ -19,42 +19,88 @@ package ca.simplegames.micro.controllers;
 import ca.simplegames.micro.*;
 import ca.simplegames.micro.cache.MicroCache;
 import ca.simplegames.micro.cache.MicroCacheException;
+import ca.simplegames.micro.instrumentation.Instrumentation.Stage;
+import ca.simplegames.micro.instrumentation.RequestTimings;
+import ca.simplegames.micro.utils.FileChangeService;
 import org.apache.bsf.util.IOUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.jrack.utils.ClassUtilities;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.script.Compilable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
 import java.io.File;
 import java.io.FileReader;
-import java.lang.reflect.Method;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The ControllerManager - responsible for finding, caching, instantiating and executing Micro controllers
  * <p/>
  * Only the Scripting is cached and only if Micro runs in 'production' mode.
+ * <p/>
+ * The scripts are evaluated by BSF, see: {@link ScriptController}. With the compilation enabled:
+ * <code>controllers: {compile_scripts: true}</code>, the scripts written in a language having a JSR-223
+ * engine able to compile them, Groovy for example, are compiled once and kept by this manager in every
+ * mode; they are compiled again if their files are modified.
+ * <p/>
+ * With the hot reload enabled, see: {@link SiteContext#isHotReload()}, the controllers folders are watched and
+ * the script controllers are discarded when their files are changed, in every mode.
  *
  * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
  * @since $Revision$ (created: 2012-12-19 12:53 PM)
  */
 public class ControllerManager {
     public static final String EXECUTE_METHOD = "execute";
+    public static final String COMPILE_SCRIPTS = "compile_scripts";
+    public static final String PARALLEL_THREADS = "parallel_threads";
+    public static final int DEFAULT_PARALLEL_THREADS = Runtime.getRuntime().availableProcessors() * 2;
+    private static final int PARALLEL_QUEUE_SIZE = 256;
     private Logger log = LoggerFactory.getLogger(getClass());
     private SiteContext site;
     private MicroCache cachedScriptControllers;
     private Set<File> pathsToControllers = new HashSet<File>();
+    private final ControllerRegistry registry = new ControllerRegistry();
+
+    private final boolean compileScripts;
+    private volatile ScriptEngineManager scriptEngineManager;
+    private final ConcurrentMap<String, CompiledScriptController> compiledScriptControllers =
+            new ConcurrentHashMap<String, CompiledScriptController>();
+    private final ConcurrentMap<String, ScriptEngine> compilingEngines = new ConcurrentHashMap<String, ScriptEngine>();
+    private final Set<String> nonCompilingExtensions = Collections.newSetFromMap(
+            new ConcurrentHashMap<String, Boolean>());
+
+    private final int parallelThreads;
+    private volatile ExecutorService executor;
+    private final Set<String> watchedPaths = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     public ControllerManager(SiteContext site, Map<String, Object> config) {
         this.site = site;
+        // the JSR-223 engines are discovered when the first script is compiled, not at startup; the
+        // discovery is loading the classes of every engine found: Groovy, JRuby, etc.
+        compileScripts = config.get(COMPILE_SCRIPTS) != null &&
+                Boolean.parseBoolean(config.get(COMPILE_SCRIPTS).toString());
+        parallelThreads = config.get(PARALLEL_THREADS) != null ?
+                Integer.parseInt(config.get(PARALLEL_THREADS).toString().trim()) : DEFAULT_PARALLEL_THREADS;
         if (site.isProduction()) {
             cachedScriptControllers = site.getCacheManager().getCacheWithDefault(
                     StringUtils.defaultString((String) config.get("cache"),
                             Globals.SCRIPT_CONTROLLERS_CACHE_NAME).trim());
         }
-        pathsToControllers.add(new File(site.getWebInfPath(), "controllers"));
+        File controllersPath = new File(site.getWebInfPath(), "controllers");
+        pathsToControllers.add(controllersPath);
+        watch(controllersPath);
     }
 
     public void execute(String controllerName, MicroContext context) throws ControllerException, ControllerNotFoundException {
@@ -67,31 +113,32 @@ public class ControllerManager {
         }
 
         final String controllerNotFoundMessage = String.format("%s, not found!", controllerName);
+        RequestTimings timings = context != null ? context.getTimings() : null;
+        long start = timings != null ? System.nanoTime() : 0;
         Controller controller = findController(controllerName);
 
-        if (controller != null) {
-            if (controller instanceof ScriptController) {
-                controller.execute(context, configuration);
-            } else {
-                try {
-                    Class[] paramTypes = {MicroContext.class, Map.class};
-                    Object[] params = {context, configuration};
-                    Method method = controller.getClass().getDeclaredMethod(EXECUTE_METHOD, paramTypes);
-                    // ... Object result =
-                    method.invoke(controller, params);
-                } catch (Exception e) {
-                    if (e.getCause() instanceof RedirectException) {
-                        throw new RedirectException(); // must be a better way :'(
-                    } else {
+        try {
+            if (controller != null) {
+                if (controller instanceof ScriptController || controller instanceof CompiledScriptController) {
+                    controller.execute(context, configuration);
+                } else {
+                    try {
+                        controller.execute(context, configuration);
+                    } catch (RedirectException e) {
+                        throw e;
+                    } catch (Exception e) {
                         log.error(String.format("%s, error: %s", controllerName, e.getMessage()));
                         e.printStackTrace();
-                        throw new ControllerException(
-                                String.format("%s, error: %s", controllerName, e.getCause()));
+                        throw new ControllerException(String.format("%s, error: %s", controllerName, e));
                     }
                 }
+            } else {
+                throw new ControllerException(controllerNotFoundMessage);
+            }
+        } finally {
+            if (timings != null) {
+                timings.stage(Stage.CONTROLLER, controllerName, start);
             }
-        } else {
-            throw new ControllerException(controllerNotFoundMessage);
         }
     }
 
@@ -110,59 +157,227 @@ public class ControllerManager {
         // todo: think if we need to check if there are any Extensions providing controllers?
 
         try {
-            return (Controller) ClassUtilities.loadClass(name).newInstance();
-        } catch (Exception e) {
-            // throw new ControllerNotFoundException(path, e);
-            ScriptController scriptController = null;
+            Controller controller = registry.newInstance(name, Controller.class);
+            if (controller != null) {
+                return controller;
+            }
+        } catch (ControllerException e) {
+            throw new ControllerNotFoundException(name, e);
+        }
 
-            if (cachedScriptControllers != null) {
-                try {
-                    scriptController = (ScriptController) cachedScriptControllers.get(name);
-                } catch (MicroCacheException ignored) {
-                    throw new ControllerNotFoundException(name, e);
-                }
+        ScriptController scriptController = null;
+        if (cachedScriptControllers != null) {
+            try {
+                scriptController = (ScriptController) cachedScriptControllers.get(name);
+            } catch (MicroCacheException e) {
+                throw new ControllerNotFoundException(name, e);
             }
+        }
 
-            if (scriptController == null) {
+        if (scriptController == null) {
+            CompiledScriptController compiledController = compiledScriptControllers.get(name);
+            if (compiledController != null) {
+                if (compiledController.isWatched() || compiledController.getFile().exists()) {
+                    return compiledController;
+                }
+                compiledScriptControllers.remove(name, compiledController);
+            }
 
-                File controllerFile = new File(name);
-                if (!controllerFile.exists()) {
-                    // maybe it exists in the app controllers?
-                    for (File path : pathsToControllers) {
-                        controllerFile = new File(path, name);
-                        if (controllerFile.exists()) {
-                            break;
-                        }
+            File controllerFile = new File(name);
+            if (!controllerFile.exists()) {
+                // maybe it exists in the app controllers?
+                for (File path : pathsToControllers) {
+                    controllerFile = new File(path, name);
+                    if (controllerFile.exists()) {
+                        break;
                     }
                 }
+            }
 
 
-                if (controllerFile.exists()) {
-                    try {
-                        scriptController = new ScriptController(site, name,
-                                IOUtils.getStringFromReader(new FileReader(controllerFile)));
+            if (controllerFile.exists()) {
+                try {
+                    ScriptEngine engine = compilingEngine(name);
+                    if (engine != null) {
+                        compiledController = new CompiledScriptController(name, controllerFile, engine);
+                        compiledController.setWatched(isWatched(controllerFile));
+                        CompiledScriptController existing = compiledScriptControllers.putIfAbsent(name, compiledController);
+                        return existing != null ? existing : compiledController;
+                    }
 
-                        if (cachedScriptControllers != null) {
-                            cachedScriptControllers.put(name, scriptController);
-                        }
-                        return scriptController;
+                    scriptController = new ScriptController(site, name,
+                            IOUtils.getStringFromReader(new FileReader(controllerFile)));
 
-                    } catch (Exception ex) {
-                        throw new ControllerNotFoundException(name, ex);
+                    if (cachedScriptControllers != null) {
+                        cachedScriptControllers.put(name, scriptController);
                     }
+                    return scriptController;
+
+                } catch (Exception ex) {
+                    throw new ControllerNotFoundException(name, ex);
+                }
+            } else {
+                throw new ControllerNotFoundException(name);
+            }
+        } else {
+            return scriptController;
+        }
+    }
+
+    /**
+     * @param name the name of a script controller
+     * @return the JSR-223 engine compiling the scripts having the same extension or null if there
+     *         is no such engine; BSF is used instead
+     */
+    private ScriptEngine compilingEngine(String name) {
+        int dot = name.lastIndexOf('.');
+        if (!compileScripts || dot < 0) {
+            return null;
+        }
+
+        String extension = name.substring(dot + 1);
+        ScriptEngine engine = compilingEngines.get(extension);
+        if (engine == null && !nonCompilingExtensions.contains(extension)) {
+            engine = getScriptEngineManager().getEngineByExtension(extension);
+            if (engine instanceof Compilable) {
+                ScriptEngine existing = compilingEngines.putIfAbsent(extension, engine);
+                if (existing != null) {
+                    engine = existing;
                 } else {
-                    throw new ControllerNotFoundException(name, e);
+                    log.info(String.format("The .%s controllers are compiled by: %s", extension,
+                            engine.getFactory().getEngineName()));
                 }
             } else {
-                return scriptController;
+                nonCompilingExtensions.add(extension);
+                engine = null;
+            }
+        }
+        return engine;
+    }
+
+
+    private ScriptEngineManager getScriptEngineManager() {
+        if (scriptEngineManager == null) {
+            synchronized (this) {
+                if (scriptEngineManager == null) {
+                    scriptEngineManager = new ScriptEngineManager(getClass().getClassLoader());
+                }
+            }
+        }
+        return scriptEngineManager;
+    }
+
+    /**
+     * @return the registry of the Java controllers and controller wrappers, resolved by name
+     */
+    public ControllerRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * The executor running the independent controllers of the Views, see: {@link View#isParallel()}. It is
+     * bounded by <code>controllers: {parallel_threads: N}</code>; when it is saturated, the controllers are
+     * executed by the request thread.
+     *
+     * @return the executor, created when used first time
+     */
+    public ExecutorService getExecutor() {
+        if (executor == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(parallelThreads, parallelThreads,
+                            60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(PARALLEL_QUEUE_SIZE),
+                            new ThreadFactory() {
+                                private final AtomicInteger count = new AtomicInteger();
+
+                                public Thread newThread(Runnable runnable) {
+                                    Thread thread = new Thread(runnable, "micro-controller-" + count.incrementAndGet());
+                                    thread.setDaemon(true);
+                                    return thread;
+                                }
+                            }, new ThreadPoolExecutor.CallerRunsPolicy());
+                    pool.allowCoreThreadTimeOut(true);
+                    executor = pool;
+                }
             }
         }
+        return executor;
+    }
+
+    /**
+     * stop the threads executing the controllers concurrently
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
     }
 
+    /**
+     * @return the folders containing the script controllers
+     */
+    public Set<File> getPathsToControllers() {
+        return Collections.unmodifiableSet(new HashSet<File>(pathsToControllers));
+    }
 
     public void addPathToControllers(File path) {
         if (path != null && path.exists()) {
             pathsToControllers.add(path);
+            watch(path);
+        }
+    }
+
+    /**
+     * forget the script controllers loaded from a file, or from a directory
+     *
+     * @param file a script file or a directory containing scripts
+     * @throws MicroCacheException if the cache of the script controllers cannot be updated
+     */
+    public void invalidate(File file) throws MicroCacheException {
+        String changed = file.getAbsolutePath();
+        String children = changed + File.separator;
+
+        for (Map.Entry<String, CompiledScriptController> entry : compiledScriptControllers.entrySet()) {
+            String scriptPath = entry.getValue().getFile().getAbsolutePath();
+            if (scriptPath.equals(changed) || scriptPath.startsWith(children)) {
+                compiledScriptControllers.remove(entry.getKey(), entry.getValue());
+            }
+        }
+
+        if (cachedScriptControllers != null) {
+            if (file.isDirectory()) {
+                cachedScriptControllers.clear();
+            } else {
+                // the script controllers are cached by their names: absolute or relative to a controllers path
+                cachedScriptControllers.remove(changed);
+                for (File path : pathsToControllers) {
+                    String root = path.getAbsolutePath() + File.separator;
+                    if (changed.startsWith(root)) {
+                        cachedScriptControllers.remove(changed.substring(root.length()).replace(File.separatorChar, '/'));
+                    }
+                }
+            }
+        }
+    }
+
+    private void watch(File path) {
+        FileChangeService fileChangeService = site.getFileChangeService();
+        if (fileChangeService != null && fileChangeService.watch(path, true, new FileChangeService.Listener() {
+            public void changed(File file) throws Exception {
+                invalidate(file);
+            }
+        })) {
+            watchedPaths.add(path.getAbsolutePath() + File.separator);
+        }
+    }
+
+    private boolean isWatched(File file) {
+        String filePath = file.getAbsolutePath();
+        for (String path : watchedPaths) {
+            if (filePath.startsWith(path)) {
+                return true;
+            }
         }
+        return false;
     }
 }
\ No newline at end of file
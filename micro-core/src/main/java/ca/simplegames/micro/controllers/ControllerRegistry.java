@@ -0,0 +1,136 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.controllers;
+
+import org.jrack.utils.ClassUtilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Java classes used as controllers or controller wrappers, resolved by name once. A resolved class
+ * is kept with a {@link MethodHandle} of its default constructor and every lookup returns a new instance,
+ * like before, ready for a direct call through the controller interface. The names not resolving to a
+ * class, the script controllers for example, are remembered as well, so they don't cost a failed class
+ * loading every time.
+ * <p/>
+ * The classes are resolved once per Micro instance; a Java controller added or recompiled at runtime
+ * requires a restart, as before.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-18 8:15 PM)
+ */
+public class ControllerRegistry {
+    private static final Logger log = LoggerFactory.getLogger(ControllerRegistry.class);
+    private static final Entry MISSING = new Entry(null, null);
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final AtomicLong resolved = new AtomicLong();
+    private final AtomicLong missing = new AtomicLong();
+
+    /**
+     * @param name the fully qualified name of a class
+     * @param type the expected type, {@link ca.simplegames.micro.Controller} or {@link ControllerWrapper}
+     * @return a new instance of the named class or null if there is no such class of the given type
+     * @throws ControllerException if the class was found but it cannot be instantiated
+     */
+    public <T> T newInstance(String name, Class<T> type) throws ControllerException {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            entry = resolve(name);
+            Entry existing = entries.putIfAbsent(name, entry);
+            if (existing != null) {
+                entry = existing;
+            } else if (entry == MISSING) {
+                missing.incrementAndGet();
+            } else {
+                resolved.incrementAndGet();
+            }
+        }
+
+        if (entry == MISSING || !type.isAssignableFrom(entry.type)) {
+            return null;
+        }
+
+        try {
+            return type.cast(entry.constructor.invokeExact());
+        } catch (Throwable e) {
+            throw new ControllerException(String.format("%s, cannot be instantiated: %s", name, e), e);
+        }
+    }
+
+    /**
+     * forget all the resolved and the missing names
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of resolved classes and of the missing names
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+        statistics.put("resolved", resolved.get());
+        statistics.put("missing", missing.get());
+        return statistics;
+    }
+
+    private static Entry resolve(String name) {
+        Class<?> klass;
+        try {
+            klass = ClassUtilities.loadClass(name);
+        } catch (Throwable e) {
+            // not a class, maybe a script
+            return MISSING;
+        }
+
+        try {
+            Constructor<?> constructor = klass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            MethodHandle handle = MethodHandles.lookup().unreflectConstructor(constructor)
+                    .asType(MethodType.methodType(Object.class));
+            return new Entry(klass, handle);
+        } catch (Exception e) {
+            log.warn(String.format("%s, has no default constructor, ignored. Details: %s", name, e.getMessage()));
+            return MISSING;
+        }
+    }
+
+    private static class Entry {
+        final Class<?> type;
+        final MethodHandle constructor; // ()Object
+
+        Entry(Class<?> type, MethodHandle constructor) {
+            this.type = type;
+            this.constructor = constructor;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.controllers;
+
+import ca.simplegames.micro.Controller;
+import ca.simplegames.micro.Globals;
+import ca.simplegames.micro.MicroContext;
+import ca.simplegames.micro.instrumentation.MetricsWriter;
+import org.jrack.Rack;
+
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/**
+ * Provides the metrics of the site, in the Prometheus text format; see:
+ * {@link ca.simplegames.micro.instrumentation.Metrics}. Example, in <code>routes.yml</code>:
+ * <pre>
+ * - route: /system/metrics
+ *   method: get
+ *   controller:
+ *     name: ca.simplegames.micro.controllers.MetricsController
+ * </pre>
+ * The requests are timed only if the instrumentation is enabled, in <code>micro-config.yml</code>:
+ * <code>instrumentation: {enabled: true}</code>
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-19 2:00 AM)
+ */
+public class MetricsController implements Controller {
+    private static final Charset UTF8 = Charset.forName(Globals.UTF8);
+
+    public void execute(MicroContext context, Map configuration) throws ControllerException {
+        byte[] metrics = context.getSiteContext().getMetrics().scrape().getBytes(UTF8);
+
+        context.getRackResponse()
+                .withContentType(MetricsWriter.CONTENT_TYPE)
+                .withBody(metrics)
+                .withContentLength(metrics.length)
+                .with(Rack.MESSAGE_STATUS, HttpServletResponse.SC_OK);
+
+        context.halt();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.controllers;
+
+import ca.simplegames.micro.Controller;
+import ca.simplegames.micro.MicroContext;
+import ca.simplegames.micro.SiteContext;
+import ca.simplegames.micro.WarmUp;
+import org.jrack.Rack;
+import org.jrack.utils.Mime;
+import org.json.JSONObject;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reports if the site is ready to serve requests: 200 once the application is loaded and warmed up, 503
+ * before; see: {@link ca.simplegames.micro.WarmUp}. Meant for the readiness probes of the load balancers
+ * and of the container orchestrators. Example, in <code>routes.yml</code>:
+ * <pre>
+ * - route: /system/ready
+ *   method: get, head
+ *   controller:
+ *     name: ca.simplegames.micro.controllers.ReadinessController
+ * </pre>
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-19 4:50 AM)
+ */
+public class ReadinessController implements Controller {
+
+    public void execute(MicroContext context, Map configuration) throws ControllerException {
+        SiteContext site = context.getSiteContext();
+        boolean ready = site != null && site.isReady();
+
+        Map<String, Object> readiness = new LinkedHashMap<String, Object>();
+        readiness.put("ready", ready);
+        WarmUp warmUp = site != null ? site.getWarmUp() : null;
+        if (warmUp != null) {
+            readiness.put(WarmUp.WARM_UP, warmUp.getReport());
+        }
+
+        context.getRackResponse()
+                .withContentType(Mime.mimeType(StatsController.JSON_TYPE))
+                .withBody(new JSONObject(readiness).toString())
+                .with(Rack.MESSAGE_STATUS, ready ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+
+        context.halt();
+    }
+}
@@ -51,6 +51,7 @@ public class ScriptController implements Controller {
         if (StringUtils.isNotBlank(controllerName) && StringUtils.isNotBlank(script)) {
             this.script = script;
             try {
+                BSFEnginePool.registerEngines();
                 language = BSFManager.getLangFromFilename(controllerName);
             } catch (BSFException e) {
                 e.printStackTrace();
@@ -60,7 +61,7 @@ public class ScriptController implements Controller {
     }
 
     /**
-     * instantiate a new BSF Engine and evaluate the script of the Controller
+     * evaluate the script of the Controller, with a BSF Engine borrowed from the site's pool
      *
      * @param context       a Map containing input parameters
      * @param configuration an action specific configuration. Can be null
@@ -72,11 +73,26 @@ public class ScriptController implements Controller {
             // pre-load the engine to make sure we were called right
             final SiteContext site = context.getSiteContext();
             if (site != null) {
-                BSFEngine bsfEngine = site.getBSFEngine(language, context, configuration, logger);
-                // Execute with the proper language, the fileName (for error reporting),
-                // the row and column to start at, and finally the contents of the script
-                // some examples: http://massapi.com/class/bs/BSFManager.html
-                bsfEngine.exec(controllerName, 0, 0, script);
+                BSFEnginePool pool = site.getBSFEnginePool();
+                if (pool != null) {
+                    BSFEnginePool.PooledEngine engine = pool.borrow(language, context, configuration, logger);
+                    boolean healthy = false;
+                    try {
+                        engine.getEngine().exec(controllerName, 0, 0, script);
+                        healthy = true;
+                    } catch (BSFException e) {
+                        healthy = isRedirect(e); // a redirect doesn't harm the engine
+                        throw e;
+                    } finally {
+                        pool.release(engine, healthy);
+                    }
+                } else {
+                    BSFEngine bsfEngine = site.getBSFEngine(language, context, configuration, logger);
+                    // Execute with the proper language, the fileName (for error reporting),
+                    // the row and column to start at, and finally the contents of the script
+                    // some examples: http://massapi.com/class/bs/BSFManager.html
+                    bsfEngine.exec(controllerName, 0, 0, script);
+                }
 
             } else {
                 throw new ControllerException("Micro site is not in the current context, please review");
@@ -84,7 +100,7 @@ public class ScriptController implements Controller {
             // return bsfManager.lookupBean(Globals.SCRIPT_CONTROLLER_RESPONSE);
         } catch (BSFException e) {
             // check is stupid BSF is eating all the exceptions again >:/
-            if (e.getMessage() != null && e.getMessage().contains(RedirectException.class.getName())) {
+            if (isRedirect(e)) {
                 throw new RedirectException(); // stupid ...
             } else {
                 throw new ControllerException(
@@ -93,4 +109,8 @@ public class ScriptController implements Controller {
         }
 
     }
+
+    private static boolean isRedirect(BSFException e) {
+        return e.getMessage() != null && e.getMessage().contains(RedirectException.class.getName());
+    }
 }
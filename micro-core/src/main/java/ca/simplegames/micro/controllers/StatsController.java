@@ -19,15 +19,25 @@ package ca.simplegames.micro.controllers;
 import ca.simplegames.micro.Controller;
 import ca.simplegames.micro.Globals;
 import ca.simplegames.micro.MicroContext;
+import ca.simplegames.micro.Startup;
+import ca.simplegames.micro.WarmUp;
+import ca.simplegames.micro.cache.MicroCache;
+import ca.simplegames.micro.cache.MicroCacheException;
+import ca.simplegames.micro.cache.MicroCacheManager;
+import ca.simplegames.micro.cache.MicroCacheStatistics;
+import ca.simplegames.micro.helpers.HelperManager;
+import ca.simplegames.micro.instrumentation.Instrumentation;
+import ca.simplegames.micro.repositories.Repository;
+import ca.simplegames.micro.repositories.RepositoryManager;
+import ca.simplegames.micro.route.RouteManager;
+import ca.simplegames.micro.utils.FileChangeService;
 import com.sun.management.OperatingSystemMXBean;
 import org.jrack.Rack;
 import org.jrack.utils.Mime;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import javax.management.MBeanServerConnection;
 import javax.servlet.http.HttpServletResponse;
-import java.io.IOException;
 import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadMXBean;
@@ -43,19 +53,17 @@ public class StatsController implements Controller {
     private static final long MEGA_BYTE = 1048576;
     public static final String JSON_TYPE = ".json";
     public static final String POWERED_BY_MICRO = "Micro " + Globals.VERSION;
+    private static final java.lang.management.OperatingSystemMXBean OPERATING_SYSTEM =
+            ManagementFactory.getOperatingSystemMXBean();
 
     public void execute(MicroContext context, Map configuration) throws ControllerException {
         Map<String, Object> systemInfo = new HashMap<String, Object>();
         Map<String, Object> osMap = new HashMap<String, Object>();
-        MBeanServerConnection mbeanServer = ManagementFactory.getPlatformMBeanServer();
-
-        OperatingSystemMXBean sunOperatingSystemMXBean = null;
-        try {
-            sunOperatingSystemMXBean = ManagementFactory.newPlatformMXBeanProxy(
-                    mbeanServer, ManagementFactory.OPERATING_SYSTEM_MXBEAN_NAME, OperatingSystemMXBean.class);
-        } catch (IOException e) {
-            throw new ControllerException(e.getMessage());
+        // the platform bean, not a proxy; see: Metrics, for the scrape friendly version of these statistics
+        if (!(OPERATING_SYSTEM instanceof OperatingSystemMXBean)) {
+            throw new ControllerException("The operating system statistics are not supported by this JVM");
         }
+        OperatingSystemMXBean sunOperatingSystemMXBean = (OperatingSystemMXBean) OPERATING_SYSTEM;
 
         Runtime rt = Runtime.getRuntime();
         long totalMemory = rt.totalMemory() / MEGA_BYTE;
@@ -112,6 +120,91 @@ public class StatsController implements Controller {
         threadInfoMap.put("dead_locked_thread_count", deadlockedThreads != null ? deadlockedThreads.length : 0);
         systemInfo.put("thread_info", threadInfoMap);
 
+        RouteManager routeManager = context.getSiteContext() != null ?
+                context.getSiteContext().getRouteManager() : null;
+        if (routeManager != null) {
+            Map<String, Object> routesInfo = new HashMap<String, Object>();
+            routesInfo.put("count", routeManager.getRouteTable().size());
+            routesInfo.put("reload_count", routeManager.getReloadCount());
+            routesInfo.put("reload_failures", routeManager.getReloadFailures());
+            routesInfo.put("last_reload_time", routeManager.getLastReloadTime());
+            routesInfo.put("last_reload_duration", routeManager.getLastReloadDuration());
+            systemInfo.put("routes", routesInfo);
+        }
+
+        MicroCacheManager cacheManager = context.getSiteContext() != null ?
+                context.getSiteContext().getCacheManager() : null;
+        if (cacheManager != null) {
+            Map<String, Object> cachesInfo = new HashMap<String, Object>();
+            for (String cacheName : cacheManager.getAvailableCacheNames()) {
+                try {
+                    MicroCache cache = cacheManager.getCache(cacheName);
+                    Object statistics = cache.getStatistics();
+                    if (statistics instanceof Map) {
+                        cachesInfo.put(cacheName, statistics);
+                    } else if (cache instanceof MicroCacheStatistics) {
+                        Map<String, Object> cacheInfo = new HashMap<String, Object>();
+                        cacheInfo.put("hits", ((MicroCacheStatistics) cache).getHitCount());
+                        cacheInfo.put("misses", ((MicroCacheStatistics) cache).getMissCount());
+                        cacheInfo.put("size", cache.getSize());
+                        cachesInfo.put(cacheName, cacheInfo);
+                    }
+                } catch (MicroCacheException e) {
+                    cachesInfo.put(cacheName, e.getMessage());
+                }
+            }
+            systemInfo.put("caches", cachesInfo);
+        }
+
+        BSFEnginePool bsfEnginePool = context.getSiteContext() != null ?
+                context.getSiteContext().getBSFEnginePool() : null;
+        if (bsfEnginePool != null) {
+            systemInfo.put("scripting", bsfEnginePool.getStatistics());
+        }
+
+        ControllerManager controllerManager = context.getSiteContext() != null ?
+                context.getSiteContext().getControllerManager() : null;
+        if (controllerManager != null) {
+            systemInfo.put("controllers", controllerManager.getRegistry().getStatistics());
+        }
+
+        HelperManager helperManager = context.getSiteContext() != null ?
+                context.getSiteContext().getHelperManager() : null;
+        if (helperManager != null) {
+            systemInfo.put("helpers", helperManager.getStatistics());
+        }
+
+        RepositoryManager repositoryManager = context.getSiteContext() != null ?
+                context.getSiteContext().getRepositoryManager() : null;
+        if (repositoryManager != null) {
+            Map<String, Object> viewsInfo = new HashMap<String, Object>();
+            for (Repository repository : repositoryManager.getRepositories()) {
+                viewsInfo.put(repository.getName(), repository.getViewStatistics());
+            }
+            systemInfo.put("views", viewsInfo);
+        }
+
+        FileChangeService fileChangeService = context.getSiteContext() != null ?
+                context.getSiteContext().getFileChangeService() : null;
+        if (fileChangeService != null) {
+            systemInfo.put("file_changes", fileChangeService.getStatistics());
+        }
+
+        Instrumentation instrumentation = context.getSiteContext() != null ?
+                context.getSiteContext().getInstrumentation() : null;
+        if (instrumentation != null && instrumentation.isEnabled()) {
+            systemInfo.put("timings", instrumentation.getStatistics());
+        }
+
+        Startup startup = context.getSiteContext() != null ? context.getSiteContext().getStartup() : null;
+        if (startup != null) {
+            systemInfo.put("startup", startup.getReport());
+        }
+
+        WarmUp warmUp = context.getSiteContext() != null ? context.getSiteContext().getWarmUp() : null;
+        if (warmUp != null) {
+            systemInfo.put(WarmUp.WARM_UP, warmUp.getReport());
+        }
 
         JSONObject sysinfoJson = new JSONObject(Collections.singletonMap("system_info", systemInfo));
 
@@ -22,19 +22,20 @@ import ca.simplegames.micro.SiteContext;
 import ca.simplegames.micro.utils.Assert;
 import ca.simplegames.micro.utils.CollectionUtils;
 import ca.simplegames.micro.utils.PathUtilities;
+import ca.simplegames.micro.utils.YamlUtils;
 import org.jrack.utils.ClassUtilities;
-import org.yaml.snakeyaml.Yaml;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Manager responsible with loading and registering Micro extensions
@@ -45,6 +46,7 @@ import java.util.Set;
 public class ExtensionsManager {
   private Map<String, Map<String, Object>> extensionsConfigMap = new HashMap<String, Map<String, Object>>();
   private Set<String> registeredExtensions = new HashSet<String>();
+  private List<Extension> extensions = new CopyOnWriteArrayList<Extension>();
   private File extensionsFolder;
   private SiteContext site;
 
@@ -62,7 +64,7 @@ public class ExtensionsManager {
 
       if (extensionsFolder.exists() && extensionsFolder.isDirectory()) {
         for (File configFile : configFiles) {
-          Map<String, Object> yaml = (Map<String, Object>) new Yaml().load(new FileInputStream(configFile));
+          Map<String, Object> yaml = (Map<String, Object>) YamlUtils.load(configFile);
           final String fileName = PathUtilities.extractName(configFile);
           extensionsConfigMap.put(fileName, yaml);
         }
@@ -124,6 +126,7 @@ public class ExtensionsManager {
           site.getLog().info("Extensions:");
         }
         registeredExtensions.add(extension.getName());
+        extensions.add(extension);
         site.getLog().info(String.format(" - %s, loaded.", extension.getName()));
       } else {
         site.getLog().error(String.format("  %s, not loaded.", name));
@@ -133,6 +136,13 @@ public class ExtensionsManager {
   }
 
 
+  /**
+   * @return the extensions registered
+   */
+  public List<Extension> getExtensions() {
+    return extensions;
+  }
+
   public void shutdown() {
     if (!CollectionUtils.isEmpty(registeredExtensions)) {
       for (String extensionName : registeredExtensions) {
@@ -20,14 +20,18 @@ import ca.simplegames.micro.Extension;
 import ca.simplegames.micro.Filter;
 import ca.simplegames.micro.Globals;
 import ca.simplegames.micro.SiteContext;
+import ca.simplegames.micro.WarmUp;
 import ca.simplegames.micro.filters.FilterManager;
 import ca.simplegames.micro.utils.Assert;
+import ca.simplegames.micro.utils.FileChangeService;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.*;
 
 /**
@@ -35,7 +39,7 @@ import java.util.*;
  * @since $Revision$ (created: 2012-12-19 10:19 PM)
  */
 @SuppressWarnings("unchecked")
-public class I18NExtension implements Extension {
+public class I18NExtension implements Extension, WarmUp.Participant {
   private Logger log = LoggerFactory.getLogger(getClass());
 
   private static final String version = "0.1";
@@ -101,6 +105,13 @@ public class I18NExtension implements Extension {
       messageSource.setCacheSeconds(resourceCacheRefreshInterval);
       messageSource.setBasenames(resourceBasePaths);
 
+      // with the hot reload, the bundles are kept until their files are changed, instead of being checked
+      // every 'resource_cache' seconds
+      if (site.getFileChangeService() != null && watch(site, site.getFileChangeService())) {
+        messageSource.setCacheSeconds(-1);
+        resourceCacheRefreshInterval = -1;
+      }
+
       Filter i18N = new I18NFilter(this);
       final FilterManager filterManager = site.getFilterManager();
 
@@ -119,6 +130,66 @@ public class I18NExtension implements Extension {
     return this;
   }
 
+  private boolean watch(SiteContext site, FileChangeService fileChangeService) {
+    FileChangeService.Listener listener = new FileChangeService.Listener() {
+      public void changed(File file) {
+        messageSource.clearCacheIncludingAncestors();
+      }
+    };
+
+    boolean watched = true;
+    for (String basePath : resourceBasePaths) {
+      File baseFile = baseFile(site, basePath);
+      watched &= fileChangeService.watch(baseFile != null ? baseFile.getParentFile() : null, true, listener);
+    }
+    return watched;
+  }
+
+  // the file of a resource bundle base name, without the locale and the extension, or null
+  private File baseFile(SiteContext site, String basePath) {
+    try {
+      return basePath.startsWith("file:") ? new File(new URI(basePath)) : new File(site.getWebInfPath(), basePath);
+    } catch (URISyntaxException e) {
+      return null;
+    }
+  }
+
+  /**
+   * load the bundles of the default language and of every locale having a bundle file: messages_ro.properties,
+   * messages_en_US.properties, etc.
+   *
+   * @param site the site context
+   * @return the number of locales loaded
+   */
+  public int warmUp(SiteContext site) throws Exception {
+    if (messageSource == null) {
+      return 0;
+    }
+
+    Set<Locale> locales = new LinkedHashSet<Locale>();
+    locales.add(new Locale(DEFAULT_LANG));
+    for (String basePath : resourceBasePaths) {
+      File baseFile = baseFile(site, basePath);
+      File[] bundles = baseFile != null && baseFile.getParentFile() != null ?
+          site.files(baseFile.getParentFile(), ".properties") : null;
+      if (bundles != null) {
+        String prefix = baseFile.getName() + "_";
+        for (File bundle : bundles) {
+          String bundleName = bundle.getName();
+          if (bundleName.startsWith(prefix)) {
+            String[] parts = bundleName.substring(prefix.length(), bundleName.lastIndexOf('.')).split("_", 3);
+            locales.add(new Locale(parts[0], parts.length > 1 ? parts[1] : "", parts.length > 2 ? parts[2] : ""));
+          }
+        }
+      }
+    }
+
+    for (Locale locale : locales) {
+      messageSource.preload(locale);
+    }
+    return locales.size();
+  }
+
   public ReloadableResourceBundleMessageSource getMessageSource() {
     return messageSource;
   }
@@ -286,6 +286,24 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
     }
 
 
+    /**
+     * Load the bundle files of the given Locale, before resolving the first message.
+     *
+     * @param locale the locale
+     */
+    public void preload(Locale locale) {
+        if (this.cacheMillis < 0) {
+            getMergedProperties(locale);
+        } else {
+            for (int i = 0; i < this.basenames.length; i++) {
+                List filenames = calculateAllFilenames(this.basenames[i], locale);
+                for (int j = 0; j < filenames.size(); j++) {
+                    getProperties((String) filenames.get(j));
+                }
+            }
+        }
+    }
+
     /**
      * Get a PropertiesHolder that contains the actually visible properties
      * for a Locale, after merging all specified resource bundles.
@@ -94,7 +94,7 @@ public class FilterWrapper implements Filter {
                         MultivaluedMap<String, String> routeParams = templateMatcher.getVariables(true);
                         Map<String, String[]> params = (Map<String, String[]>) context.get(Globals.PARAMS);
 
-                        if (CollectionUtils.isEmpty(params)) {
+                        if (params == null) {
                             params = new HashMap<String, String[]>();
                             context.with(Globals.PARAMS, params);
                         }
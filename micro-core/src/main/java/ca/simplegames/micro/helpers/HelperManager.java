@@ -22,6 +22,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -68,4 +69,26 @@ public class HelperManager {
         return helpersMap.get(name);
     }
 
+    /**
+     * @return the number of helpers created, by all the helpers
+     */
+    public long getInstanceCount() {
+        long count = 0;
+        for (HelperWrapper helper : helpers) {
+            count += helper.getInstanceCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return the statistics of every helper, by name; see: {@link HelperWrapper#getStatistics()}
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+        for (HelperWrapper helper : helpers) {
+            statistics.put(helper.getName(), helper.getStatistics());
+        }
+        return statistics;
+    }
+
 }
@@ -21,31 +21,107 @@ import ca.simplegames.micro.Helper;
 import ca.simplegames.micro.MicroContext;
 import org.jrack.utils.ClassUtilities;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Creates the instances of a Helper. Micro binds the helpers to the request contexts lazily, a helper is
+ * created only if a controller, a filter or a template is using it; see: {@link MicroContext.Binding}.
+ * The helpers declared stateless, in their configuration, are created once and shared by all the requests,
+ * these are registered without a context:
+ * <pre>
+ * class: ca.simplegames.micro.helpers.HelloHelper
+ * stateless: true
+ * options:
+ *   name: Huston
+ * </pre>
+ *
  * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
  * @since $Revision$ (created: 2013-01-17 7:05 PM)
  */
-public class HelperWrapper {
+public class HelperWrapper implements MicroContext.Binding {
+    public static final String STATELESS = "stateless";
+
     private Class klass;
     private String name;
     private Map<String, Object> options;
-    // todo: private boolean isSingleton = false;
+    private final boolean stateless;
+    private volatile Helper singleton;
+    private final AtomicLong instances = new AtomicLong();
+    private final AtomicLong lookups = new AtomicLong();
 
     public HelperWrapper(String name, Map<String, Object> configuration) throws ClassNotFoundException {
         this.name = name;
         this.options = (Map<String, Object>) configuration.get(Globals.OPTIONS);
+        this.stateless = Boolean.TRUE.equals(configuration.get(STATELESS));
         klass = ClassUtilities.loadClass((String) configuration.get("class"));
     }
 
+    /**
+     * @param context the current context
+     * @return a new Helper, registered with the given context, or the shared one, if the helper is stateless
+     * @throws Exception if the helper cannot be created
+     */
     public Helper getInstance(MicroContext context) throws Exception {
+        if (stateless) {
+            if (singleton == null) {
+                synchronized (this) {
+                    if (singleton == null) {
+                        singleton = newInstance(null);
+                    }
+                }
+            }
+            return singleton;
+        }
+        return newInstance(context);
+    }
+
+    private Helper newInstance(MicroContext context) throws Exception {
         Helper helper = (Helper) klass.newInstance();
         helper.register(context, options);
+        instances.incrementAndGet();
         return helper;
     }
 
+    /**
+     * the helper is used by a request
+     */
+    public Object resolve(MicroContext context) throws Exception {
+        lookups.incrementAndGet();
+        return getInstance(context);
+    }
+
     public String getName() {
         return name;
     }
+
+    public boolean isStateless() {
+        return stateless;
+    }
+
+    /**
+     * @return the number of helpers created
+     */
+    public long getInstanceCount() {
+        return instances.get();
+    }
+
+    /**
+     * @return the number of requests using this helper
+     */
+    public long getLookupCount() {
+        return lookups.get();
+    }
+
+    /**
+     * @return stateless, the helpers created and the requests using them
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+        statistics.put(STATELESS, stateless);
+        statistics.put("instances", instances.get());
+        statistics.put("lookups", lookups.get());
+        return statistics;
+    }
 }
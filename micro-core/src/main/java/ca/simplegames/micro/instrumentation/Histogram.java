@@ -0,0 +1,163 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.instrumentation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of durations, in nanoseconds. Every power of two is divided in 8 buckets, so the
+ * percentiles are reported with a relative error below 12.5%, using a fixed amount of memory; the durations
+ * longer than 2^40 ns, about 18 minutes, are counted in the last bucket.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-19 12:10 AM)
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    public static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanos a duration, in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSum() {
+        return sum.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile a percentile, between 0 and 100
+     * @return the duration, in nanoseconds, below which the given percentage of the durations are falling
+     */
+    public long percentile(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += buckets.get(i);
+            if (cumulative >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * @param nanos a duration, in nanoseconds
+     * @return the number of durations shorter or equal to the given one, approximated to the bucket precision
+     */
+    public long countAtOrBelow(long nanos) {
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS && lowerBound(i) <= nanos; i++) {
+            cumulative += buckets.get(i);
+        }
+        return cumulative;
+    }
+
+    /**
+     * count the durations up to each of the given bounds, in a single pass; see {@link #countAtOrBelow(long)}
+     *
+     * @param bounds the bounds, in nanoseconds, ascending
+     * @param counts receives the cumulative count for every bound; at least as long as the bounds
+     */
+    public void countAtOrBelow(long[] bounds, long[] counts) {
+        long cumulative = 0;
+        int bucket = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            for (; bucket < BUCKETS && lowerBound(bucket) <= bounds[i]; bucket++) {
+                cumulative += buckets.get(bucket);
+            }
+            counts[i] = cumulative;
+        }
+    }
+
+    /**
+     * @return count, mean, p50, p95, p99 and max; the durations in milliseconds
+     */
+    public Map<String, Object> getStatistics() {
+        long total = count.get();
+        Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+        statistics.put("count", total);
+        statistics.put("mean", millis(total > 0 ? sum.get() / total : 0));
+        statistics.put("p50", millis(percentile(50)));
+        statistics.put("p95", millis(percentile(95)));
+        statistics.put("p99", millis(percentile(99)));
+        statistics.put("max", millis(max.get()));
+        return statistics;
+    }
+
+    static double millis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    static long upperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowerBound(bucket + 1) - 1;
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.instrumentation;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The timings of the requests served by a Micro site. When enabled, every request is timed by a
+ * {@link RequestTimings} object, carried by its context, and the stages of the request: the helpers, the
+ * filters, the route, the view controllers, the view and the layout rendering are recorded in histograms,
+ * per stage, per route, per view and per controller. The listeners are told about every stage recorded.
+ * <p/>
+ * Configured in <code>micro-config.yml</code>:
+ * <pre>
+ * instrumentation:
+ *   enabled: true
+ *   server_timing: true # the stages of a request are sent to the browser with the Server-Timing header
+ * </pre>
+ * Disabled by default; the requests are not timed at all then.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-19 12:20 AM)
+ */
+public class Instrumentation {
+    public static final String SERVER_TIMING = "Server-Timing";
+    public static final int DEFAULT_MAX_SERIES = 500;
+    /**
+     * the name of the series collecting the timings of the names above the limit; 404s for random paths, etc.
+     */
+    public static final String OTHER = "other";
+    private static final String[] STATUSES = new String[500];
+
+    static {
+        for (int i = 0; i < STATUSES.length; i++) {
+            STATUSES[i] = Integer.toString(i + 100);
+        }
+    }
+
+    /**
+     * The stages of a request; their name is used by the Server-Timing header and by the statistics.
+     */
+    public enum Stage {
+        HELPERS("helpers"),
+        BEFORE_FILTERS("before_filters"),
+        ROUTE_MATCH("route_match"),
+        ROUTE("route"),
+        VIEW_CONFIG("view_config"),
+        VIEW_CONTROLLERS("view_controllers"),
+        VIEW_RENDER("view_render"),
+        LAYOUT_RENDER("layout_render"),
+        AFTER_FILTERS("after_filters"),
+        CONTROLLER("controller"),
+        TOTAL("total");
+
+        private final String name;
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * A listener notified about the timings recorded, for sending them to an external metrics system.
+     */
+    public interface Listener {
+        /**
+         * @param stage the stage timed
+         * @param name  the route, the view or the controller timed, or null for the whole stage
+         * @param nanos the duration, in nanoseconds
+         */
+        void recorded(Stage stage, String name, long nanos);
+    }
+
+    private final boolean enabled;
+    private final boolean serverTiming;
+    private final int maxSeries;
+    private final Map<Stage, Histogram> stages = new LinkedHashMap<Stage, Histogram>();
+    private final ConcurrentMap<String, Histogram> routes = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, Histogram> views = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, Histogram> controllers = new ConcurrentHashMap<String, Histogram>();
+    // the requests, by route and by status; the statuses between 100 and 599
+    private final ConcurrentMap<String, AtomicReferenceArray<Histogram>> requests =
+            new ConcurrentHashMap<String, AtomicReferenceArray<Histogram>>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    public Instrumentation(boolean enabled, boolean serverTiming) {
+        this(enabled, serverTiming, DEFAULT_MAX_SERIES);
+    }
+
+    /**
+     * @param enabled      true for timing the requests
+     * @param serverTiming true for sending the timings with the response, in the Server-Timing header
+     * @param maxSeries    the maximum number of routes, views or controllers timed separately
+     */
+    public Instrumentation(boolean enabled, boolean serverTiming, int maxSeries) {
+        this.enabled = enabled;
+        this.serverTiming = enabled && serverTiming;
+        this.maxSeries = maxSeries;
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new Histogram());
+        }
+    }
+
+    /**
+     * @param config the <code>instrumentation</code> node of the site configuration, can be null
+     * @return the instrumentation configured
+     */
+    public static Instrumentation fromConfig(Map<String, Object> config) {
+        if (config == null) {
+            return new Instrumentation(false, false);
+        }
+
+        return new Instrumentation(
+                Boolean.TRUE.equals(config.get("enabled")),
+                Boolean.TRUE.equals(config.get("server_timing")),
+                config.get("max_series") instanceof Number ?
+                        ((Number) config.get("max_series")).intValue() : DEFAULT_MAX_SERIES);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isServerTiming() {
+        return serverTiming;
+    }
+
+    /**
+     * @return the timings of a new request, or null if disabled
+     */
+    public RequestTimings start() {
+        return enabled ? new RequestTimings(this) : null;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * record a timing; called by {@link RequestTimings}
+     *
+     * @param stage the stage timed
+     * @param name  the route, the view or the controller timed, or null
+     * @param nanos the duration, in nanoseconds
+     */
+    void record(Stage stage, String name, long nanos) {
+        if (name == null) {
+            stages.get(stage).record(nanos);
+        } else if (stage == Stage.ROUTE) {
+            histogram(routes, name).record(nanos);
+        } else if (stage == Stage.VIEW_RENDER) {
+            histogram(views, name).record(nanos);
+        } else if (stage == Stage.CONTROLLER) {
+            histogram(controllers, name).record(nanos);
+        }
+
+        for (Listener listener : listeners) {
+            listener.recorded(stage, name, nanos);
+        }
+    }
+
+    /**
+     * record a request served; called by {@link RequestTimings}
+     *
+     * @param name   the route, or the view, serving the request
+     * @param status the response status
+     * @param nanos  the duration, in nanoseconds
+     */
+    void request(String name, int status, long nanos) {
+        if (status < 100 || status > 599) {
+            return;
+        }
+
+        AtomicReferenceArray<Histogram> statuses = requests.get(name);
+        if (statuses == null && requests.size() >= maxSeries) {
+            // too many series, the existing OTHER series is used without allocating a new one
+            name = OTHER;
+            statuses = requests.get(OTHER);
+        }
+        if (statuses == null) {
+            statuses = new AtomicReferenceArray<Histogram>(500);
+            AtomicReferenceArray<Histogram> existing = requests.putIfAbsent(name, statuses);
+            if (existing != null) {
+                statuses = existing;
+            }
+        }
+
+        Histogram histogram = statuses.get(status - 100);
+        if (histogram == null) {
+            statuses.compareAndSet(status - 100, null, new Histogram());
+            histogram = statuses.get(status - 100);
+        }
+        histogram.record(nanos);
+    }
+
+    private Histogram histogram(ConcurrentMap<String, Histogram> series, String name) {
+        Histogram histogram = series.get(name);
+        if (histogram == null && series.size() >= maxSeries) {
+            // too many series, the existing OTHER series is used without allocating a new one
+            name = OTHER;
+            histogram = series.get(OTHER);
+        }
+        if (histogram == null) {
+            histogram = new Histogram();
+            Histogram existing = series.putIfAbsent(name, histogram);
+            if (existing != null) {
+                histogram = existing;
+            }
+        }
+        return histogram;
+    }
+
+    public Histogram getStage(Stage stage) {
+        return stages.get(stage);
+    }
+
+    /**
+     * @return the histograms of the route calls, by route path
+     */
+    public Map<String, Histogram> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * @return the histograms of the views rendered, by view path
+     */
+    public Map<String, Histogram> getViews() {
+        return views;
+    }
+
+    /**
+     * @return the histograms of the controllers executed, by controller name
+     */
+    public Map<String, Histogram> getControllers() {
+        return controllers;
+    }
+
+    /**
+     * @param name   the route, or the view
+     * @param status the response status
+     * @return the histogram of the requests served by the given route, with the given status, or null
+     */
+    public Histogram getRequests(String name, int status) {
+        AtomicReferenceArray<Histogram> statuses = requests.get(name);
+        return statuses != null && status >= 100 && status <= 599 ? statuses.get(status - 100) : null;
+    }
+
+    /**
+     * write the durations of the requests, by route and status, of the stages, the views and the controllers
+     *
+     * @param out the metrics writer
+     */
+    public void collect(MetricsWriter out) {
+        if (!enabled) {
+            return;
+        }
+
+        out.family("micro_request_duration_seconds", MetricsWriter.HISTOGRAM,
+                "The requests served, by route, or view, and status.");
+        for (Map.Entry<String, AtomicReferenceArray<Histogram>> entry : requests.entrySet()) {
+            AtomicReferenceArray<Histogram> statuses = entry.getValue();
+            for (int i = 0; i < statuses.length(); i++) {
+                Histogram histogram = statuses.get(i);
+                if (histogram != null) {
+                    out.histogram("micro_request_duration_seconds", "route", entry.getKey(),
+                            "status", STATUSES[i], histogram);
+                }
+            }
+        }
+
+        out.family("micro_stage_duration_seconds", MetricsWriter.HISTOGRAM,
+                "The time spent by the requests in every stage of Micro.");
+        for (Map.Entry<Stage, Histogram> entry : stages.entrySet()) {
+            if (entry.getValue().getCount() > 0) {
+                out.histogram("micro_stage_duration_seconds", "stage", entry.getKey().getName(),
+                        null, null, entry.getValue());
+            }
+        }
+
+        summary(out, "micro_view_duration_seconds", "The views rendered, their controllers included.",
+                "view", views);
+        summary(out, "micro_controller_duration_seconds", "The controllers executed.", "controller", controllers);
+    }
+
+    private static void summary(MetricsWriter out, String name, String help, String label,
+                                Map<String, Histogram> series) {
+        String count = name + "_count";
+        String sum = name + "_sum";
+        out.family(name, MetricsWriter.SUMMARY, help);
+        for (Map.Entry<String, Histogram> entry : series.entrySet()) {
+            out.sample(count, label, entry.getKey(), entry.getValue().getCount());
+            out.sample(sum, label, entry.getKey(), entry.getValue().getSum() / 1e9);
+        }
+    }
+
+    /**
+     * @return the statistics of the stages, routes, views and controllers; see {@link Histogram#getStatistics()}
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+        statistics.put("enabled", enabled);
+        if (enabled) {
+            Map<String, Object> stageStatistics = new LinkedHashMap<String, Object>();
+            for (Map.Entry<Stage, Histogram> entry : stages.entrySet()) {
+                if (entry.getValue().getCount() > 0) {
+                    stageStatistics.put(entry.getKey().getName(), entry.getValue().getStatistics());
+                }
+            }
+            statistics.put("stages", stageStatistics);
+            statistics.put("routes", statistics(routes));
+            statistics.put("views", statistics(views));
+            statistics.put("controllers", statistics(controllers));
+        }
+        return statistics;
+    }
+
+    private static Map<String, Object> statistics(Map<String, Histogram> series) {
+        Map<String, Object> statistics = new TreeMap<String, Object>();
+        for (Map.Entry<String, Histogram> entry : series.entrySet()) {
+            statistics.put(entry.getKey(), entry.getValue().getStatistics());
+        }
+        return statistics;
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.instrumentation;
+
+import ca.simplegames.micro.SiteContext;
+import ca.simplegames.micro.cache.MicroCache;
+import ca.simplegames.micro.cache.MicroCacheManager;
+import ca.simplegames.micro.cache.MicroCacheStatistics;
+import ca.simplegames.micro.controllers.BSFEnginePool;
+import ca.simplegames.micro.helpers.HelperManager;
+import ca.simplegames.micro.helpers.HelperWrapper;
+import ca.simplegames.micro.repositories.Repository;
+import ca.simplegames.micro.repositories.RepositoryManager;
+import ca.simplegames.micro.route.RouteManager;
+import ca.simplegames.micro.utils.FileChangeService;
+
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.RuntimeMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The metrics of a Micro site, in the Prometheus text format: the requests, by route and status, and the
+ * stages of Micro, if the {@link Instrumentation} is enabled, the caches, the scripting engines, the
+ * templates compiled, the reloads and the JVM. Served by the
+ * {@link ca.simplegames.micro.controllers.MetricsController}.
+ * <p/>
+ * The values are read from the counters kept by the Micro components, when scraped; nothing is collected
+ * in between and the scrapes are appending the samples straight to the output. The extensions can
+ * {@link #register(Collector)} their own metrics.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-19 1:40 AM)
+ */
+public class Metrics {
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final RuntimeMXBean RUNTIME = ManagementFactory.getRuntimeMXBean();
+    private static final ClassLoadingMXBean CLASSES = ManagementFactory.getClassLoadingMXBean();
+    private static final OperatingSystemMXBean OS = ManagementFactory.getOperatingSystemMXBean();
+
+    private final SiteContext site;
+    private final List<Collector> collectors = new CopyOnWriteArrayList<Collector>();
+    private volatile int lastLength = 8192;
+
+    /**
+     * A source of metrics, asked to write them at every scrape
+     */
+    public interface Collector {
+        /**
+         * @param out the metrics writer
+         */
+        void collect(MetricsWriter out);
+    }
+
+    public Metrics(SiteContext site) {
+        this.site = site;
+    }
+
+    public void register(Collector collector) {
+        collectors.add(collector);
+    }
+
+    public void unregister(Collector collector) {
+        collectors.remove(collector);
+    }
+
+    /**
+     * @return the current metrics, in the Prometheus text format
+     */
+    public String scrape() {
+        StringBuilder text = new StringBuilder(lastLength + 1024);
+        collect(new MetricsWriter(text));
+        lastLength = text.length();
+        return text.toString();
+    }
+
+    /**
+     * @param out the writer receiving the metrics of the site, of the JVM and of the registered collectors
+     */
+    public void collect(MetricsWriter out) {
+        site.getInstrumentation().collect(out);
+        collectCaches(out);
+
+        BSFEnginePool bsfEnginePool = site.getBSFEnginePool();
+        if (bsfEnginePool != null) {
+            bsfEnginePool.collect(out);
+        }
+
+        collectRepositories(out);
+        collectHelpers(out);
+        collectReloads(out);
+        collectJvm(out);
+
+        for (Collector collector : collectors) {
+            collector.collect(out);
+        }
+    }
+
+    private void collectCaches(MetricsWriter out) {
+        MicroCacheManager cacheManager = site.getCacheManager();
+        if (cacheManager == null) {
+            return;
+        }
+
+        String[] names = cacheManager.getAvailableCacheNames();
+        out.family("micro_cache_hits_total", MetricsWriter.COUNTER, "The lookups finding an element in the cache.");
+        for (String name : names) {
+            MicroCacheStatistics statistics = statistics(cacheManager.getCache(name));
+            if (statistics != null && statistics.getHitCount() >= 0) {
+                out.sample("micro_cache_hits_total", "cache", name, statistics.getHitCount());
+            }
+        }
+        out.family("micro_cache_misses_total", MetricsWriter.COUNTER, "The lookups not finding an element.");
+        for (String name : names) {
+            MicroCacheStatistics statistics = statistics(cacheManager.getCache(name));
+            if (statistics != null && statistics.getMissCount() >= 0) {
+                out.sample("micro_cache_misses_total", "cache", name, statistics.getMissCount());
+            }
+        }
+        out.family("micro_cache_hit_ratio", MetricsWriter.GAUGE, "The hits, out of all the lookups.");
+        for (String name : names) {
+            MicroCacheStatistics statistics = statistics(cacheManager.getCache(name));
+            if (statistics != null && statistics.getHitCount() >= 0 && statistics.getMissCount() >= 0) {
+                long lookups = statistics.getHitCount() + statistics.getMissCount();
+                out.sample("micro_cache_hit_ratio", "cache", name,
+                        lookups > 0 ? (double) statistics.getHitCount() / lookups : 0d);
+            }
+        }
+        out.family("micro_cache_size", MetricsWriter.GAUGE, "The elements in the cache.");
+        for (String name : names) {
+            MicroCache cache = cacheManager.getCache(name);
+            if (cache != null) {
+                out.sample("micro_cache_size", "cache", name, cache.getSize());
+            }
+        }
+    }
+
+    // the lookup counters of a cache, if it is counting them
+    private static MicroCacheStatistics statistics(MicroCache cache) {
+        return cache instanceof MicroCacheStatistics ? (MicroCacheStatistics) cache : null;
+    }
+
+    private void collectRepositories(MetricsWriter out) {
+        RepositoryManager repositoryManager = site.getRepositoryManager();
+        if (repositoryManager == null) {
+            return;
+        }
+
+        List<Repository> repositories = repositoryManager.getRepositories();
+        out.family("micro_template_compiles_total", MetricsWriter.COUNTER,
+                "The templates compiled by the template engines, the modified ones included.");
+        for (Repository repository : repositories) {
+            out.sample("micro_template_compiles_total", "repository", repository.getName(),
+                    repository.getTemplateCompileCount());
+        }
+        out.family("micro_view_parses_total", MetricsWriter.COUNTER,
+                "The View definitions parsed, the modified ones included.");
+        for (Repository repository : repositories) {
+            out.sample("micro_view_parses_total", "repository", repository.getName(),
+                    repository.getViewParseCount());
+        }
+    }
+
+    private void collectHelpers(MetricsWriter out) {
+        HelperManager helperManager = site.getHelperManager();
+        if (helperManager == null || helperManager.getHelpers().isEmpty()) {
+            return;
+        }
+
+        out.family("micro_helper_instances_total", MetricsWriter.COUNTER,
+                "The helpers created; once, for the stateless ones.");
+        for (HelperWrapper helper : helperManager.getHelpers()) {
+            out.sample("micro_helper_instances_total", "helper", helper.getName(), helper.getInstanceCount());
+        }
+        out.family("micro_helper_lookups_total", MetricsWriter.COUNTER, "The requests using a helper.");
+        for (HelperWrapper helper : helperManager.getHelpers()) {
+            out.sample("micro_helper_lookups_total", "helper", helper.getName(), helper.getLookupCount());
+        }
+    }
+
+    private void collectReloads(MetricsWriter out) {
+        RouteManager routeManager = site.getRouteManager();
+        if (routeManager != null) {
+            out.family("micro_route_reloads_total", MetricsWriter.COUNTER, "The reloads of the routes.");
+            out.sample("micro_route_reloads_total", routeManager.getReloadCount());
+            out.family("micro_route_reload_failures_total", MetricsWriter.COUNTER,
+                    "The routes reloads failed.");
+            out.sample("micro_route_reload_failures_total", routeManager.getReloadFailures());
+        }
+
+        FileChangeService fileChangeService = site.getFileChangeService();
+        if (fileChangeService != null) {
+            out.family("micro_file_change_events_total", MetricsWriter.COUNTER,
+                    "The changes of the files watched.");
+            out.sample("micro_file_change_events_total", fileChangeService.getEventCount());
+            out.family("micro_file_change_notifications_total", MetricsWriter.COUNTER,
+                    "The notifications of the file change listeners: caches invalidated, files reloaded.");
+            out.sample("micro_file_change_notifications_total", fileChangeService.getNotificationCount());
+        }
+    }
+
+    private void collectJvm(MetricsWriter out) {
+        MemoryUsage heap = MEMORY.getHeapMemoryUsage();
+        MemoryUsage nonHeap = MEMORY.getNonHeapMemoryUsage();
+        out.family("jvm_memory_bytes_used", MetricsWriter.GAUGE, "The memory used, by area.");
+        out.sample("jvm_memory_bytes_used", "area", "heap", heap.getUsed());
+        out.sample("jvm_memory_bytes_used", "area", "nonheap", nonHeap.getUsed());
+        out.family("jvm_memory_bytes_committed", MetricsWriter.GAUGE, "The memory committed, by area.");
+        out.sample("jvm_memory_bytes_committed", "area", "heap", heap.getCommitted());
+        out.sample("jvm_memory_bytes_committed", "area", "nonheap", nonHeap.getCommitted());
+        out.family("jvm_memory_bytes_max", MetricsWriter.GAUGE, "The maximum memory, by area; -1 if undefined.");
+        out.sample("jvm_memory_bytes_max", "area", "heap", heap.getMax());
+        out.sample("jvm_memory_bytes_max", "area", "nonheap", nonHeap.getMax());
+
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        out.family("jvm_gc_collections_total", MetricsWriter.COUNTER, "The garbage collections, by collector.");
+        for (GarbageCollectorMXBean gc : collectors) {
+            out.sample("jvm_gc_collections_total", "gc", gc.getName(), gc.getCollectionCount());
+        }
+        out.family("jvm_gc_collection_seconds_total", MetricsWriter.COUNTER,
+                "The time spent collecting the garbage, by collector.");
+        for (GarbageCollectorMXBean gc : collectors) {
+            out.sample("jvm_gc_collection_seconds_total", "gc", gc.getName(), gc.getCollectionTime() / 1e3);
+        }
+
+        out.family("jvm_threads_current", MetricsWriter.GAUGE, "The live threads.");
+        out.sample("jvm_threads_current", THREADS.getThreadCount());
+        out.family("jvm_threads_daemon", MetricsWriter.GAUGE, "The live daemon threads.");
+        out.sample("jvm_threads_daemon", THREADS.getDaemonThreadCount());
+        out.family("jvm_threads_peak", MetricsWriter.GAUGE, "The peak number of live threads.");
+        out.sample("jvm_threads_peak", THREADS.getPeakThreadCount());
+        out.family("jvm_classes_loaded", MetricsWriter.GAUGE, "The classes loaded.");
+        out.sample("jvm_classes_loaded", CLASSES.getLoadedClassCount());
+
+        out.family("process_start_time_seconds", MetricsWriter.GAUGE, "The start time of the JVM, since the epoch.");
+        out.sample("process_start_time_seconds", RUNTIME.getStartTime() / 1e3);
+        if (OS instanceof com.sun.management.OperatingSystemMXBean) {
+            out.family("process_cpu_seconds_total", MetricsWriter.COUNTER, "The CPU time used by the JVM.");
+            out.sample("process_cpu_seconds_total",
+                    ((com.sun.management.OperatingSystemMXBean) OS).getProcessCpuTime() / 1e9);
+        }
+        out.family("system_load_average", MetricsWriter.GAUGE, "The system load average, for the last minute.");
+        out.sample("system_load_average", OS.getSystemLoadAverage());
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.instrumentation;
+
+/**
+ * Writes metrics in the Prometheus text exposition format, version 0.0.4, also accepted by the OpenMetrics
+ * scrapers. The samples are appended straight to a {@link StringBuilder}, without intermediate objects:
+ * <pre>
+ * # HELP micro_cache_hits_total The lookups finding an element in the cache.
+ * # TYPE micro_cache_hits_total counter
+ * micro_cache_hits_total{cache="views"} 42
+ * </pre>
+ * The samples of a metric must be written right after its {@link #family(String, String, String)} header.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-19 1:20 AM)
+ */
+public class MetricsWriter {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    public static final String COUNTER = "counter";
+    public static final String GAUGE = "gauge";
+    public static final String HISTOGRAM = "histogram";
+    public static final String SUMMARY = "summary";
+
+    /**
+     * the upper bounds of the histogram buckets, in seconds
+     */
+    public static final double[] LATENCY_BUCKETS = {
+            0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    private static final long[] LATENCY_BUCKETS_NANOS = new long[LATENCY_BUCKETS.length];
+
+    static {
+        for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+            LATENCY_BUCKETS_NANOS[i] = (long) (LATENCY_BUCKETS[i] * 1e9);
+        }
+    }
+
+    private final StringBuilder out;
+    private final long[] bucketCounts = new long[LATENCY_BUCKETS.length];
+
+    public MetricsWriter(StringBuilder out) {
+        this.out = out;
+    }
+
+    /**
+     * @param name the name of the metric
+     * @param type {@link #COUNTER}, {@link #GAUGE}, {@link #HISTOGRAM} or {@link #SUMMARY}
+     * @param help a description of the metric
+     * @return itself
+     */
+    public MetricsWriter family(String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return this;
+    }
+
+    public MetricsWriter sample(String name, long value) {
+        out.append(name).append(' ').append(value).append('\n');
+        return this;
+    }
+
+    public MetricsWriter sample(String name, double value) {
+        out.append(name).append(' ');
+        return value(value);
+    }
+
+    public MetricsWriter sample(String name, String label, String labelValue, long value) {
+        labels(name, label, labelValue, null, null);
+        out.append(' ').append(value).append('\n');
+        return this;
+    }
+
+    public MetricsWriter sample(String name, String label, String labelValue, double value) {
+        labels(name, label, labelValue, null, null);
+        out.append(' ');
+        return value(value);
+    }
+
+    public MetricsWriter sample(String name, String label, String labelValue,
+                                String label2, String label2Value, long value) {
+        labels(name, label, labelValue, label2, label2Value);
+        out.append(' ').append(value).append('\n');
+        return this;
+    }
+
+    /**
+     * write the buckets, the sum and the count of a histogram of durations, in seconds. The bucket counts
+     * are approximated to the precision of the {@link Histogram}.
+     *
+     * @param name       the name of the metric
+     * @param label      a label, or null
+     * @param labelValue the value of the label
+     * @param label2     a second label, or null
+     * @param label2Value the value of the second label
+     * @param histogram  the histogram
+     * @return itself
+     */
+    public MetricsWriter histogram(String name, String label, String labelValue,
+                                   String label2, String label2Value, Histogram histogram) {
+        long count = histogram.getCount();
+        long sum = histogram.getSum();
+        histogram.countAtOrBelow(LATENCY_BUCKETS_NANOS, bucketCounts);
+
+        for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+            bucket(name, label, labelValue, label2, label2Value);
+            out.append(LATENCY_BUCKETS[i]).append("\"} ").append(Math.min(bucketCounts[i], count)).append('\n');
+        }
+        bucket(name, label, labelValue, label2, label2Value);
+        out.append("+Inf\"} ").append(count).append('\n');
+
+        labels(name, "_sum", label, labelValue, label2, label2Value);
+        out.append(' ');
+        value(sum / 1e9);
+        labels(name, "_count", label, labelValue, label2, label2Value);
+        out.append(' ').append(count).append('\n');
+        return this;
+    }
+
+    private void bucket(String name, String label, String labelValue, String label2, String label2Value) {
+        out.append(name).append("_bucket{");
+        if (label != null) {
+            label(label, labelValue).append(',');
+        }
+        if (label2 != null) {
+            label(label2, label2Value).append(',');
+        }
+        out.append("le=\"");
+    }
+
+    private void labels(String name, String label, String labelValue, String label2, String label2Value) {
+        labels(name, null, label, labelValue, label2, label2Value);
+    }
+
+    private void labels(String name, String suffix, String label, String labelValue,
+                        String label2, String label2Value) {
+        out.append(name);
+        if (suffix != null) {
+            out.append(suffix);
+        }
+        if (label != null) {
+            out.append('{');
+            label(label, labelValue);
+            if (label2 != null) {
+                out.append(',');
+                label(label2, label2Value);
+            }
+            out.append('}');
+        }
+    }
+
+    private StringBuilder label(String label, String value) {
+        out.append(label).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+        return out.append('"');
+    }
+
+    private MetricsWriter value(double value) {
+        if (Double.isNaN(value)) {
+            out.append("NaN");
+        } else if (Double.isInfinite(value)) {
+            out.append(value > 0 ? "+Inf" : "-Inf");
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+        return this;
+    }
+}
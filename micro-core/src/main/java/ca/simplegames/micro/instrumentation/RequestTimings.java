@@ -0,0 +1,188 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.instrumentation;
+
+import ca.simplegames.micro.instrumentation.Instrumentation.Stage;
+
+/**
+ * The timings of a single request, carried by its context: the time spent in every stage, summed up when a
+ * stage is executed more than once, i.e. the controllers. The routes, views and controllers are timed
+ * individually too, in the histograms of the {@link Instrumentation}, and the stage totals are recorded
+ * when the request is completed. Thread safe; the forked contexts are sharing the timings of the request.
+ * <p/>
+ * The controllers are executed by the other stages, their time is a breakdown of these, not an addition.
+ * <p/>
+ * Usage, in the code timing a stage:
+ * <pre>
+ * RequestTimings timings = context.getTimings();
+ * long start = timings != null ? System.nanoTime() : 0;
+ * ...
+ * if (timings != null) timings.stage(Stage.VIEW_RENDER, path, start);
+ * </pre>
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-19 12:35 AM)
+ */
+public class RequestTimings {
+    private static final Stage[] STAGES = Stage.values();
+
+    private final Instrumentation instrumentation;
+    private final long start = System.nanoTime();
+    private final long[] nanos = new long[STAGES.length];
+    private final int[] counts = new int[STAGES.length];
+    private volatile String route;
+    private boolean completed;
+
+    RequestTimings(Instrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+    }
+
+    /**
+     * record the time elapsed since the given moment
+     *
+     * @param stage the stage timed
+     * @param since the moment the stage started, from {@link System#nanoTime()}
+     * @return the current moment, the start of the next stage
+     */
+    public long stage(Stage stage, long since) {
+        return stage(stage, null, since);
+    }
+
+    /**
+     * record the time elapsed since the given moment
+     *
+     * @param stage the stage timed
+     * @param name  the route, the view or the controller timed, or null
+     * @param since the moment the stage started, from {@link System#nanoTime()}
+     * @return the current moment, the start of the next stage
+     */
+    public long stage(Stage stage, String name, long since) {
+        long now = System.nanoTime();
+        record(stage, name, now - since);
+        return now;
+    }
+
+    /**
+     * @param stage the stage timed
+     * @param name  the route, the view or the controller timed, or null
+     * @param nanos the duration, in nanoseconds
+     */
+    public void record(Stage stage, String name, long nanos) {
+        synchronized (this) {
+            this.nanos[stage.ordinal()] += nanos;
+            counts[stage.ordinal()]++;
+        }
+        if (name != null) {
+            instrumentation.record(stage, name, nanos);
+        }
+    }
+
+    /**
+     * record the timing of a route, a view or a controller, without adding it to the time of the stage;
+     * used when the stage time is measured by the caller
+     *
+     * @param stage the stage timed
+     * @param name  the route, the view or the controller timed
+     * @param nanos the duration, in nanoseconds
+     */
+    public void series(Stage stage, String name, long nanos) {
+        instrumentation.record(stage, name, nanos);
+    }
+
+    /**
+     * @param route the path of the route serving the request; set by the {@link ca.simplegames.micro.route.RouteManager}
+     */
+    public void setRoute(String route) {
+        this.route = route;
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    /**
+     * the request was served; record the total time, the time of every stage executed and the request, by
+     * route and status. The requests not served by a route are counted by view path, the failed ones as
+     * {@link Instrumentation#OTHER}, their paths may be anything. Once.
+     *
+     * @param status the response status
+     * @param path   the view path, used if the request was not served by a route; can be null
+     */
+    public void complete(int status, String path) {
+        long total = System.nanoTime() - start;
+        long[] stageNanos;
+        int[] stageCounts;
+        synchronized (this) {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            nanos[Stage.TOTAL.ordinal()] = total;
+            counts[Stage.TOTAL.ordinal()] = 1;
+            stageNanos = nanos.clone();
+            stageCounts = counts.clone();
+        }
+
+        for (Stage stage : STAGES) {
+            if (stageCounts[stage.ordinal()] > 0) {
+                instrumentation.record(stage, null, stageNanos[stage.ordinal()]);
+            }
+        }
+
+        String name = route;
+        if (name == null) {
+            name = status < 400 && path != null ? path : Instrumentation.OTHER;
+        }
+        instrumentation.request(name, status, total);
+    }
+
+    /**
+     * @param stage a stage
+     * @return the time spent in the given stage, in nanoseconds
+     */
+    public synchronized long getNanos(Stage stage) {
+        return nanos[stage.ordinal()];
+    }
+
+    /**
+     * @param stage a stage
+     * @return the number of times the given stage was executed
+     */
+    public synchronized int getCount(Stage stage) {
+        return counts[stage.ordinal()];
+    }
+
+    /**
+     * @return the value of the Server-Timing header: the stages executed, their duration in milliseconds
+     */
+    public synchronized String toServerTiming() {
+        StringBuilder header = new StringBuilder(256);
+        for (Stage stage : STAGES) {
+            int i = stage.ordinal();
+            if (counts[i] > 0) {
+                if (header.length() > 0) {
+                    header.append(", ");
+                }
+                header.append(stage.getName()).append(";dur=").append(Histogram.millis(nanos[i]));
+                if (counts[i] > 1) {
+                    header.append(";desc=\"").append(counts[i]).append('"');
+                }
+            }
+        }
+        return header.toString();
+    }
+}
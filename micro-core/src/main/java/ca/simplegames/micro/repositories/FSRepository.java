@@ -16,13 +16,12 @@
 
 package ca.simplegames.micro.repositories;
 
-import ca.simplegames.micro.Globals;
 import ca.simplegames.micro.SiteContext;
 import ca.simplegames.micro.cache.MicroCache;
 
-import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.InputStream;
-import java.nio.charset.Charset;
 
 /**
  * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
@@ -33,8 +32,16 @@ public class FSRepository extends Repository {
         super(name, cache, site, path, configPathName, engineName);
     }
 
+    /**
+     * @return a stream reading the raw content of the resource, see: {@link #readContent(String)}; the
+     *         files larger than {@link #MAX_CACHED_CONTENT_LENGTH} are streamed from the disk
+     */
     @Override
-    public InputStream getInputStream(String name) throws Exception{
-       return new ByteArrayInputStream(read(name).getBytes(Charset.forName(Globals.UTF8)));
+    public InputStream getInputStream(String name) throws Exception {
+        File file = pathToFile(name);
+        if (file.length() > MAX_CACHED_CONTENT_LENGTH) {
+            return new FileInputStream(file);
+        }
+        return readContent(name).getInputStream();
     }
 }
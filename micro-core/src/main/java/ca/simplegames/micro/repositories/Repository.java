@@ -23,27 +23,36 @@ import ca.simplegames.micro.View;
 import ca.simplegames.micro.cache.MicroCache;
 import ca.simplegames.micro.cache.MicroCacheException;
 import ca.simplegames.micro.templates.TemplateEnginesManager;
+import ca.simplegames.micro.utils.FileChangeService;
 import ca.simplegames.micro.utils.IO;
 import ca.simplegames.micro.utils.PathUtilities;
+import ca.simplegames.micro.utils.YamlUtils;
 import ca.simplegames.micro.viewers.ViewRenderer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.yaml.snakeyaml.Yaml;
 
 import java.io.*;
 import java.nio.charset.Charset;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A Repository is responsible for identifying resources in a given folder and it can be used
- * as a context helper for accessing a specific resource, rendered or not
+ * as a context helper for accessing a specific resource, rendered or not. Bound to the request contexts
+ * by name, its {@link RepositoryWrapper} is created when it is used the first time by a request.
  *
  * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
  * @since $Revision$ (created: 2012-12-20 1:58 PM)
  */
-public abstract class Repository {
-    public static final String VIEW_CACHE_KEY_FORMAT = "%s::%s";
+public abstract class Repository implements MicroContext.Binding {
+    public static final String CONTENT_CACHE_KEY_FORMAT = "content::%s";
+    /**
+     * the files larger than this are read on the heap and they are not cached, see: {@link #readContent(String)}
+     */
+    public static final long MAX_CACHED_CONTENT_LENGTH = 1024 * 1024;
     private Logger log;
 
     private String name;
@@ -54,7 +63,13 @@ public abstract class Repository {
     private ViewRenderer renderer;
     private File config;
     private boolean isDefault;
-    private Map<String, ViewConfigElements> viewConfigPathMap = new HashMap<String, ViewConfigElements>();
+    private boolean directBuffers;
+    private final ConcurrentMap<String, CompiledView> views = new ConcurrentHashMap<String, CompiledView>();
+    private final AtomicLong viewParseCount = new AtomicLong();
+    private volatile boolean outputCaching;
+    private final AtomicLong templateCompileCount = new AtomicLong();
+    private final ConcurrentMap<String, Long> lastModifiedTimes = new ConcurrentHashMap<String, Long>();
+    private volatile boolean watched;
 
     /**
      * creates a new Repository object
@@ -115,6 +130,13 @@ public abstract class Repository {
 
     public abstract InputStream getInputStream(String name) throws Exception;
 
+    /**
+     * @return the folder containing the View definitions, or null
+     */
+    public File getConfigPath() {
+        return config;
+    }
+
     public MicroCache getCache() {
         return cache;
     }
@@ -131,6 +153,18 @@ public abstract class Repository {
         return isDefault;
     }
 
+    /**
+     * @param directBuffers true for keeping the content read by {@link #readContent(String)} outside of
+     *                      the Java heap
+     */
+    public void setDirectBuffers(boolean directBuffers) {
+        this.directBuffers = directBuffers;
+    }
+
+    public boolean isDirectBuffers() {
+        return directBuffers;
+    }
+
     public SiteContext getSite() {
         return site;
     }
@@ -151,12 +185,98 @@ public abstract class Repository {
         return new RepositoryWrapper(this, context);
     }
 
+    /**
+     * @return the wrapper of this repository, for the context using it
+     */
+    public Object resolve(MicroContext context) {
+        return getRepositoryWrapper(context);
+    }
+
     public ViewRenderer getRenderer() {
         return renderer;
     }
 
     public long getLastModified(String name) {
-        return pathToFile(name).lastModified();
+        return getLastModified(pathToFile(name));
+    }
+
+    /**
+     * @param file a file of this repository
+     * @return the last modification time of the file; remembered until the file is changed, if the
+     *         repository is watched, see: {@link #watch(FileChangeService)}
+     */
+    public long getLastModified(File file) {
+        if (!watched) {
+            return file.lastModified();
+        }
+
+        String key = file.getAbsolutePath();
+        Long lastModified = lastModifiedTimes.get(key);
+        if (lastModified == null) {
+            lastModified = file.lastModified();
+            lastModifiedTimes.put(key, lastModified);
+        }
+        return lastModified;
+    }
+
+    /**
+     * watch the files of this repository. The Views, the content and the modification times are
+     * kept until their files are changed, instead of checking the files for every request.
+     *
+     * @param fileChangeService the service notifying the file changes
+     * @return true if the repository is watched
+     */
+    public boolean watch(FileChangeService fileChangeService) {
+        watched = path.exists() && fileChangeService.watch(path, true, new FileChangeService.Listener() {
+            public void changed(File file) throws Exception {
+                invalidate(file);
+            }
+        });
+        return watched;
+    }
+
+    public boolean isWatched() {
+        return watched;
+    }
+
+    /**
+     * forget everything known about a file: its View, its cached content and its modification time
+     *
+     * @param file a file or a directory of this repository
+     * @throws MicroCacheException if the cache cannot be updated
+     */
+    public void invalidate(File file) throws MicroCacheException {
+        String changed = file.getAbsolutePath();
+        String children = changed + File.separator;
+
+        for (String key : lastModifiedTimes.keySet()) {
+            if (key.equals(changed) || key.startsWith(children)) {
+                lastModifiedTimes.remove(key);
+            }
+        }
+
+        for (Map.Entry<String, CompiledView> entry : views.entrySet()) {
+            String configPath = entry.getValue().configFile.getAbsolutePath();
+            if (configPath.equals(changed) || configPath.startsWith(children)) {
+                views.remove(entry.getKey(), entry.getValue());
+            }
+        }
+
+        if (cache != null) {
+            if (file.isDirectory()) {
+                // the cache can be shared by other repositories, only the files of the directory are evicted
+                String contentChildren = String.format(CONTENT_CACHE_KEY_FORMAT, children);
+                for (Object key : cache.getKeys()) {
+                    if (key instanceof String && (((String) key).startsWith(children) ||
+                            ((String) key).startsWith(contentChildren))) {
+                        cache.remove(key);
+                    }
+                }
+            } else {
+                cache.remove(changed);
+                cache.remove(String.format(CONTENT_CACHE_KEY_FORMAT, changed));
+            }
+        }
     }
 
     public File pathToFile(String name) {
@@ -189,6 +309,44 @@ public abstract class Repository {
         return content;
     }
 
+    /**
+     * read the raw content of a resource, without decoding it. The content is cached, if the repository
+     * has a cache, and it is read again if the file was modified since. The files larger than
+     * {@link #MAX_CACHED_CONTENT_LENGTH} are read on the heap, never in a direct buffer, and not cached.
+     *
+     * @param path the path to a resource in this repository
+     * @return the content or null if the path is null
+     * @throws Exception a File not found exception if there is no such a resource
+     */
+    public RepositoryContent readContent(String path) throws Exception {
+        RepositoryContent content = null;
+
+        if (path != null) {
+            final File file = pathToFile(path);
+            final String key = String.format(CONTENT_CACHE_KEY_FORMAT, file.getAbsolutePath());
+
+            if (cache != null) {
+                content = (RepositoryContent) cache.get(key);
+                if (content != null && !watched && content.getLastModified() != file.lastModified()) {
+                    content = null;
+                }
+            }
+
+            if (content == null) {
+                if (file.exists()) {
+                    boolean cached = file.length() <= MAX_CACHED_CONTENT_LENGTH;
+                    content = RepositoryContent.read(file, directBuffers && cached);
+                    if (cache != null && cached) {
+                        cache.put(key, content);
+                    }
+                } else {
+                    throw new FileNotFoundException(file.getAbsolutePath());
+                }
+            }
+        }
+        return content;
+    }
+
     /**
      * obtain a Reader from the path.
      * Mr. Developer - please don't forget to close it if you're using it.
@@ -216,78 +374,116 @@ public abstract class Repository {
     }
 
     /**
+     * Returns the View defined by the <code>.yml</code> file of a resource, from the repository config folder.
+     * The definitions are parsed once and the Views are shared by the requests; a View is parsed again
+     * when its definition file is modified, created or removed, as notified by the {@link FileChangeService}
+     * if the repository is watched.
+     *
      * @param name a resource name; a view template name
-     * @return a {@link View} instance
+     * @return a {@link View} instance or null if the resource has no View definition
      */
-    @SuppressWarnings("unchecked")
     public View getView(String name) {
         if (config != null) {
-            ViewConfigElements viewConfigElements = viewConfigPathMap.get(name);
+            CompiledView compiledView = views.get(name);
 
-            if (viewConfigElements == null) {
+            if (compiledView == null) {
                 File viewConfig = new File(config, PathUtilities.extractViewPath(name) + Globals.YML_EXTENSION);
-                viewConfigElements = new ViewConfigElements(viewConfig.getAbsolutePath(), viewConfig.exists());
-                viewConfigPathMap.put(name, viewConfigElements);
+                compiledView = compileView(viewConfig);
+                views.put(name, compiledView);
+            } else if (!watched && compiledView.isModified()) {
+                compiledView = compileView(compiledView.configFile);
+                views.put(name, compiledView);
             }
 
-            String key = String.format(VIEW_CACHE_KEY_FORMAT, getName(), name);
-            Map viewModel = null;
+            return compiledView.view;
+        }
+        return null;
+    }
 
-            // don't hit the cache unnecessarily if the config was never there!
-            if (cache != null && viewConfigElements.isConfigFileExists()) {
-                try {
-                    viewModel = (Map) cache.get(key);
-                } catch (MicroCacheException e) {
-                    log.error(String.format("Cannot cache the view: %s", viewConfigElements.getConfigFullPath()));
-                    e.printStackTrace();
-                }
-            }
+    /**
+     * @return the number of Views known by this repository and the number of View definitions parsed
+     */
+    public Map<String, Object> getViewStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+        statistics.put("views", views.size());
+        statistics.put("parsed", viewParseCount.get());
+        statistics.put("templates_compiled", templateCompileCount.get());
+        return statistics;
+    }
+
+    /**
+     * @return the number of View definitions parsed, the changed ones included
+     */
+    public long getViewParseCount() {
+        return viewParseCount.get();
+    }
+
+    /**
+     * @return true if at least one of the Views parsed so far has an output cache
+     */
+    public boolean hasOutputCaches() {
+        return outputCaching;
+    }
+
+    /**
+     * counts a template read for being compiled by a template engine; called by the template loaders
+     */
+    public void templateCompiled() {
+        templateCompileCount.incrementAndGet();
+    }
 
-            // there is no ViewModel if the config file doesn't exist
-            if (viewModel == null && viewConfigElements.isConfigFileExists()) {
+    /**
+     * @return the number of templates compiled by the template engines, the recompiled ones included
+     */
+    public long getTemplateCompileCount() {
+        return templateCompileCount.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    private CompiledView compileView(File viewConfig) {
+        long lastModified = viewConfig.lastModified();
+        View view = null;
+
+        // there is no View if the config file doesn't exist
+        if (lastModified != 0L) {
+            try {
+                InputStream in = new FileInputStream(viewConfig);
                 try {
-                    viewModel = (Map) new Yaml().load(
-                            new FileInputStream(new File(viewConfigElements.getConfigFullPath())));
-                    if (cache != null) {
-                        try {
-                            cache.put(key, viewModel);
-                        } catch (MicroCacheException e) {
-                            log.error(String.format("Cannot use the cache for retrieving this view: %s",
-                                    viewConfigElements.getConfigFullPath()));
-                            e.printStackTrace();
+                    Map viewModel = (Map) YamlUtils.load(in);
+                    viewParseCount.incrementAndGet();
+                    if (viewModel != null) {
+                        view = new View(viewModel);
+                        if (view.getOutputCache() != null) {
+                            outputCaching = true;
                         }
                     }
-                } catch (FileNotFoundException e) {
-                    log.error("cannot load the configuration from: " + name);
-                    e.printStackTrace();
+                } finally {
+                    IO.close(in);
                 }
-            }
-
-            if (viewModel != null) {
-                return new View(viewModel);
+            } catch (Exception e) {
+                log.error(String.format("cannot load the view configuration from: %s; %s",
+                        viewConfig.getAbsolutePath(), e.getMessage()));
             }
         }
-        return null;
+        return new CompiledView(viewConfig, lastModified, view);
     }
 
     /**
-     * internal class used as a shortcut to avoid File name calculations; a performance optimization
+     * a View definition parsed once; a performance optimization
      */
-    class ViewConfigElements {
-        private String configFullPath;
-        private boolean configFileExists = false;
-
-        ViewConfigElements(String configFullPath, boolean configFileExists) {
-            this.configFullPath = configFullPath;
-            this.configFileExists = configFileExists;
-        }
-
-        public String getConfigFullPath() {
-            return configFullPath;
+    private static class CompiledView {
+        private final File configFile;
+        private final long lastModified;
+        private final View view;
+
+        CompiledView(File configFile, long lastModified, View view) {
+            this.configFile = configFile;
+            this.lastModified = lastModified;
+            this.view = view;
         }
 
-        public boolean isConfigFileExists() {
-            return configFileExists;
+        boolean isModified() {
+            return configFile.lastModified() != lastModified;
         }
     }
 }
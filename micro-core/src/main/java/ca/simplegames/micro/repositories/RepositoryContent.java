@@ -0,0 +1,173 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.repositories;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * The raw content of a repository resource, read once and shared: the bytes, as a read-only
+ * {@link ByteBuffer}, their length and the last modification time of the file they were read from.
+ * The bytes are never decoded by this class, the users are deciding the encoding, if any.
+ * <p/>
+ * The buffer is a direct buffer, outside of the Java heap, if the repository is configured with:
+ * <code>direct_buffers: true</code>. A buffer is limited to {@link #MAX_LENGTH} bytes, the larger files
+ * must be streamed instead. Serializable, for the caches storing their values on the disk.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-18 11:00 PM)
+ */
+public class RepositoryContent implements Serializable {
+    /**
+     * the maximum length of a file read in a buffer
+     */
+    public static final long MAX_LENGTH = Integer.MAX_VALUE - 8;
+
+    private transient ByteBuffer buffer;
+    private final long lastModified;
+
+    public RepositoryContent(ByteBuffer buffer, long lastModified) {
+        this.buffer = buffer.asReadOnlyBuffer();
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @param file   the file to read
+     * @param direct true for reading the file into a direct buffer, outside of the Java heap
+     * @return the content of the file
+     * @throws IOException if the file cannot be read or if it is longer than {@link #MAX_LENGTH}
+     */
+    public static RepositoryContent read(File file, boolean direct) throws IOException {
+        long lastModified = file.lastModified();
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size > MAX_LENGTH) {
+                throw new IOException(String.format("%s is too large to be read in memory: %d bytes", file, size));
+            }
+            int length = (int) size;
+            ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // until the whole file is read
+            }
+            buffer.flip();
+            return new RepositoryContent(buffer, lastModified);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return a new read-only view of the content, positioned at its beginning
+     */
+    public ByteBuffer getBuffer() {
+        return buffer.duplicate();
+    }
+
+    /**
+     * @return a new stream reading the content, without copying it
+     */
+    public InputStream getInputStream() {
+        return new ByteBufferInputStream(buffer.duplicate());
+    }
+
+    /**
+     * @return a copy of the content
+     */
+    public byte[] getBytes() {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    public String toString(Charset charset) {
+        return charset.decode(buffer.duplicate()).toString();
+    }
+
+    public int getLength() {
+        return buffer.remaining();
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public boolean isDirect() {
+        return buffer.isDirect();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        byte[] bytes = getBytes();
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        buffer = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -76,6 +76,13 @@ public class RepositoryManager {
                     repository.setIsDefault(StringUtils.defaultString(repoConfig.get("default"), "false")
                             .equalsIgnoreCase("true"));
 
+                    repository.setDirectBuffers(StringUtils.defaultString(repoConfig.get("direct_buffers"), "false")
+                            .equalsIgnoreCase("true"));
+
+                    if (site.getFileChangeService() != null) {
+                        repository.watch(site.getFileChangeService());
+                    }
+
                     if (repository.isDefault()) {
                         defaultRepository = repository;
                     }
@@ -18,22 +18,30 @@ package ca.simplegames.micro.repositories;
 
 import ca.simplegames.micro.Globals;
 import ca.simplegames.micro.MicroContext;
+import ca.simplegames.micro.RedirectException;
 import ca.simplegames.micro.View;
 import ca.simplegames.micro.controllers.ControllerException;
 import ca.simplegames.micro.controllers.ControllerManager;
 import ca.simplegames.micro.controllers.ControllerNotFoundException;
 import ca.simplegames.micro.controllers.ControllerWrapper;
+import ca.simplegames.micro.instrumentation.Instrumentation.Stage;
+import ca.simplegames.micro.instrumentation.RequestTimings;
 import ca.simplegames.micro.utils.CollectionUtils;
 import ca.simplegames.micro.viewers.ViewException;
 import ca.simplegames.micro.viewers.ViewRenderer;
-import org.jrack.utils.ClassUtilities;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.StringWriter;
-import java.lang.reflect.Method;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
@@ -64,9 +72,29 @@ public class RepositoryWrapper {
      */
     @SuppressWarnings("unchecked")
     public String get(String templateEngineName, String path, Map<String, Object> model) throws Exception {
+        StringWriter writer = new StringWriter();
+        render(templateEngineName, path, model, writer);
+        return writer.toString();
+    }
+
+    /**
+     * executes the filters and the controllers associated with this path and renders the content straight
+     * into the given Writer
+     *
+     * @param templateEngineName the name of the Template engine that will render this page
+     * @param path               the view path
+     * @param model              a Map containing an optional ad-hoc user model that will be passed to the renderer
+     * @param out                the Writer receiving the result of the Filters and Controllers merged with
+     *                           the Template content
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    public void render(String templateEngineName, String path, Map<String, Object> model, Writer out)
+            throws Exception {
         final Logger log = LoggerFactory.getLogger(path);
+        RequestTimings timings = context != null ? context.getTimings() : null;
+        long start = timings != null ? System.nanoTime() : 0;
 
-        StringWriter writer = new StringWriter();
         View view = repository.getView(path);
 
         try {
@@ -86,7 +114,11 @@ public class RepositoryWrapper {
 
 
             if (view != null && !CollectionUtils.isEmpty(view.getControllers())) {
-                executeViewControllers(view.getControllers(), context);
+                executeViewControllers(view, context);
+            }
+            if (timings != null && view != null &&
+                    (!view.getFiltersBefore().isEmpty() || !CollectionUtils.isEmpty(view.getControllers()))) {
+                timings.stage(Stage.VIEW_CONTROLLERS, start);
             }
 
             ViewRenderer engine = context.getSiteContext().getTemplateEnginesManager().getEngine(templateEngineName);
@@ -95,9 +127,7 @@ public class RepositoryWrapper {
                 context.getMap().putAll(model);
             }
 
-            engine.render(path, repository, context, writer);
-
-            return writer.toString();
+            engine.render(path, repository, context, out);
 
         } finally {
             if (view != null && !view.getFiltersAfter().isEmpty()) {
@@ -112,6 +142,9 @@ public class RepositoryWrapper {
                     }
                 }
             }
+            if (timings != null) {
+                timings.series(Stage.VIEW_RENDER, path, System.nanoTime() - start);
+            }
         }
     }
 
@@ -126,42 +159,144 @@ public class RepositoryWrapper {
         return get(repository.getRenderer().getName(), path);
     }
 
-    private void executeViewControllers(List<Map<String, Object>> controllers, MicroContext context)
+    /**
+     * executes the filters and the controllers associated with this path and renders the content straight
+     * into the given Writer
+     *
+     * @param path the view path
+     * @param out  the Writer receiving the result of the Filters and Controllers merged with the Template content
+     * @throws Exception
+     */
+    public void render(String path, Writer out) throws Exception {
+        render(repository.getRenderer().getName(), path, null, out);
+    }
+
+    /**
+     * execute the controllers of a View, in the order they are declared. The independent controllers, all of
+     * them if the View is <code>parallel</code> or the ones marked with <code>async: true</code>, are executed
+     * concurrently, with their own copy of the context; their changes are merged into the context, in the
+     * order the controllers are declared, after all of them finished and before rendering the View.
+     */
+    private void executeViewControllers(View view, MicroContext context)
             throws ControllerException, ControllerNotFoundException {
 
+        List<Map<String, Object>> controllers = view.getControllers();
         if (context != null && !CollectionUtils.isEmpty(controllers)) {
             ControllerManager controllerManager = context.getSiteContext().getControllerManager();
-            for (Map<String, Object> map : controllers) {
-                final Map controllerMap = (Map) map.get(Globals.CONTROLLER);
-                if (!CollectionUtils.isEmpty(controllerMap)) {
-                    String controllerName = (String) controllerMap.get(Globals.NAME);
-                    String wrapperName = (String) controllerMap.get(Globals.WRAPPER);
-
-                    // StringUtils.isNotBlank too heavy for this crowded space ... sorry Commons::Lang
-                    if (controllerName != null && !controllerName.isEmpty()) {
-                        if (wrapperName != null && !wrapperName.isEmpty()) {
-                            try {
-                                ControllerWrapper controller =
-                                        (ControllerWrapper) ClassUtilities.loadClass(wrapperName).newInstance();
-                                Class[] paramTypes = {String.class, MicroContext.class, Map.class};
-                                Object[] params = {controllerName, context, (Map) controllerMap.get(Globals.OPTIONS)};
-                                Method method = controller.getClass()
-                                        .getDeclaredMethod(ControllerManager.EXECUTE_METHOD, paramTypes);
-                                method.invoke(controller, params);
-                            } catch (Exception e) {
-                                repository.getLog().error(String.format("%s, error: %s", controllerName, e.getMessage()));
-                                e.printStackTrace();
-                                throw new ControllerException(e.getMessage());
+            List<Future<MicroContext>> forks = null;
+
+            try {
+                for (Map<String, Object> map : controllers) {
+                    final Map controllerMap = (Map) map.get(Globals.CONTROLLER);
+                    if (!CollectionUtils.isEmpty(controllerMap)) {
+                        final String controllerName = (String) controllerMap.get(Globals.NAME);
+
+                        // StringUtils.isNotBlank too heavy for this crowded space ... sorry Commons::Lang
+                        if (controllerName != null && !controllerName.isEmpty()) {
+                            if (view.isParallel() || Boolean.TRUE.equals(controllerMap.get(Globals.ASYNC))) {
+                                if (forks == null) {
+                                    forks = new ArrayList<Future<MicroContext>>();
+                                }
+                                final MicroContext fork = context.fork();
+                                forks.add(controllerManager.getExecutor().submit(new Callable<MicroContext>() {
+                                    public MicroContext call() throws Exception {
+                                        executeViewController(controllerName, controllerMap, fork);
+                                        return fork;
+                                    }
+                                }));
+                            } else {
+                                executeViewController(controllerName, controllerMap, context);
                             }
-                        } else {
-                            controllerManager.execute(controllerName, context, (Map) controllerMap.get(Globals.OPTIONS));
                         }
                     }
                 }
+
+                if (forks != null) {
+                    joinViewControllers(forks, view.getTimeout(), context);
+                }
+            } finally {
+                if (forks != null) {
+                    for (Future<MicroContext> fork : forks) {
+                        fork.cancel(true);
+                    }
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void joinViewControllers(List<Future<MicroContext>> forks, long timeout, MicroContext context)
+            throws ControllerException, ControllerNotFoundException {
+        long deadline = System.currentTimeMillis() + timeout;
+
+        for (Future<MicroContext> fork : forks) {
+            try {
+                context.merge(fork.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof ForkedRedirectException) {
+                    context.merge(((ForkedRedirectException) cause).fork);
+                    throw new RedirectException();
+                } else if (cause instanceof ControllerException) {
+                    throw (ControllerException) cause;
+                } else if (cause instanceof ControllerNotFoundException) {
+                    throw (ControllerNotFoundException) cause;
+                }
+                throw new ControllerException(String.valueOf(cause), cause);
+            } catch (TimeoutException e) {
+                throw new ControllerException(
+                        String.format("the controllers didn't finish in: %d ms", timeout));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ControllerException("interrupted while waiting for the controllers", e);
             }
         }
     }
 
+    private void executeViewController(String controllerName, Map controllerMap, MicroContext context)
+            throws ControllerException, ControllerNotFoundException {
+        String wrapperName = (String) controllerMap.get(Globals.WRAPPER);
+        ControllerManager controllerManager = context.getSiteContext().getControllerManager();
+
+        try {
+            if (wrapperName != null && !wrapperName.isEmpty()) {
+                try {
+                    ControllerWrapper controller =
+                            controllerManager.getRegistry().newInstance(wrapperName, ControllerWrapper.class);
+                    if (controller == null) {
+                        throw new ControllerNotFoundException(wrapperName);
+                    }
+                    controller.execute(controllerName, context, (Map) controllerMap.get(Globals.OPTIONS));
+                } catch (RedirectException e) {
+                    throw e;
+                } catch (Exception e) {
+                    repository.getLog().error(String.format("%s, error: %s", controllerName, e.getMessage()));
+                    e.printStackTrace();
+                    throw new ControllerException(e.getMessage());
+                }
+            } else {
+                controllerManager.execute(controllerName, context, (Map) controllerMap.get(Globals.OPTIONS));
+            }
+        } catch (RedirectException e) {
+            if (context.isForked()) {
+                // the redirect response is in the forked context
+                throw new ForkedRedirectException(context);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * a redirect requested by a controller executed concurrently, carrying the context of the controller
+     */
+    private static class ForkedRedirectException extends RuntimeException {
+        final MicroContext fork;
+
+        ForkedRedirectException(MicroContext fork) {
+            this.fork = fork;
+        }
+    }
+
     public Repository getRepository() {
         return repository;
     }
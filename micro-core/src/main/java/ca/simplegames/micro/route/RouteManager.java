@@ -20,21 +20,23 @@ import ca.simplegames.micro.Globals;
 import ca.simplegames.micro.MicroContext;
 import ca.simplegames.micro.Route;
 import ca.simplegames.micro.SiteContext;
+import ca.simplegames.micro.instrumentation.Instrumentation.Stage;
+import ca.simplegames.micro.instrumentation.RequestTimings;
 import ca.simplegames.micro.utils.Assert;
 import ca.simplegames.micro.utils.CollectionUtils;
-import ca.simplegames.micro.utils.MicroConfigFileMonitor;
 import ca.simplegames.micro.utils.Reloadable;
+import ca.simplegames.micro.utils.YamlUtils;
 import org.apache.wink.common.internal.uritemplate.UriTemplateMatcher;
 import org.jrack.Rack;
 import org.jrack.RackResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.yaml.snakeyaml.Yaml;
 
 import javax.ws.rs.core.MultivaluedMap;
 import java.io.File;
-import java.io.FileInputStream;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The Route manager is responsible for initializing various Routes at startup time, and for executing those
@@ -45,20 +47,26 @@ import java.util.*;
  */
 public class RouteManager implements Reloadable {
   private Logger log = LoggerFactory.getLogger(getClass());
-  private MicroConfigFileMonitor monitor;
   private SiteContext site;
   private File routesConfig;
 
-  private List<Route> routes = new ArrayList<Route>();
-  private Map<String, Route> routesMap = new HashMap<String, Route>();
+  // the request threads are only reading the current snapshot; a new table is published by a single write
+  private volatile RouteTable routeTable = RouteTable.EMPTY;
+  private final Object writeLock = new Object();
+
+  private final AtomicLong reloadCount = new AtomicLong();
+  private final AtomicLong reloadFailures = new AtomicLong();
+  private volatile long lastReloadTime;
+  private volatile long lastReloadDuration;
+
+  private RouteTable load(SiteContext site, List<Map<String, Object>> routeMaps) {
+    RouteTable.Builder builder = new RouteTable.Builder();
 
-  private void load(SiteContext site, List<Map<String, Object>> routeMaps) {
     if (!CollectionUtils.isEmpty(routeMaps)) {
       for (Map<String, Object> routeMap : routeMaps) {
         try {
           String routePath = (String) routeMap.get("route");
-          Route route = new RouteWrapper(routePath, routeMap);
-          add(route);
+          builder.add(new RouteWrapper(routePath, routeMap));
         } catch (Exception e) {
           log.error("cannot load the following router for: " + routeMaps);
           e.printStackTrace();
@@ -67,15 +75,37 @@ public class RouteManager implements Reloadable {
     } else {
       log.warn("Empty route config file, nothing to do.");
     }
+    return builder.build();
   }
 
+  /**
+   * load the routes config file in a new {@link RouteTable} and replace the current routes with it.
+   * The request threads are using the previous routes until the new table is completely loaded and,
+   * if the config file cannot be loaded, the previous routes remain active.
+   *
+   * @throws Exception if the routes config file cannot be read
+   */
   @Override
   @SuppressWarnings("unchecked")
   public void reload() throws Exception {
-    routes = new ArrayList<Route>();
-    routesMap = new HashMap<String, Route>();
+    long start = System.nanoTime();
+    RouteTable table;
+
+    try {
+      table = load(site, (List<Map<String, Object>>) YamlUtils.load(routesConfig));
+    } catch (Exception e) {
+      reloadFailures.incrementAndGet();
+      throw e;
+    }
 
-    load(site, (List<Map<String, Object>>) new Yaml().load(new FileInputStream(routesConfig)));
+    synchronized (writeLock) {
+      routeTable = table;
+    }
+
+    lastReloadDuration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    lastReloadTime = System.currentTimeMillis();
+    reloadCount.incrementAndGet();
+    log.info(String.format("%d routes loaded in %d ms", table.size(), lastReloadDuration));
   }
 
   @SuppressWarnings("unchecked")
@@ -86,26 +116,23 @@ public class RouteManager implements Reloadable {
     this.site = site;
     this.routesConfig = routesConfig;
 
-    if (site.isDevelopment()) {
-      int seconds = 2;
-
-      log.info("The routes config file will be monitored every " + seconds + " seconds and reloaded if modified.");
-      monitor = new MicroConfigFileMonitor(routesConfig, this, seconds);
-      // todo: think about a future usage of the monitor field
-    } else {
-      load(site, (List<Map<String, Object>>) new Yaml().load(new FileInputStream(routesConfig)));
+    routeTable = load(site, (List<Map<String, Object>>) YamlUtils.load(routesConfig));
+    if (site.getFileChangeService() != null && site.getFileChangeService().watch(routesConfig, this)) {
+      log.info("The routes config file is watched and it will be reloaded if modified.");
     }
   }
 
   /**
-   * add a new Route
+   * add a new Route. The current routes are copied in a new table, together with the new route;
+   * meant to be used at startup or by the admin tools, not on the request path.
    *
    * @param route the route instance
    */
   public void add(Route route) {
     if (route != null) {
-      routes.add(route);
-      routesMap.put(route.getPath(), route);
+      synchronized (writeLock) {
+        routeTable = routeTable.toBuilder().add(route).build();
+      }
     }
   }
 
@@ -115,7 +142,74 @@ public class RouteManager implements Reloadable {
    * @return a read only map containing all the route paths and their associated route instances
    */
   public Map<String, Route> getRoutesMap() {
-    return Collections.unmodifiableMap(routesMap);
+    return routeTable.getRoutesMap();
+  }
+
+  /**
+   * @return the current routes snapshot
+   */
+  public RouteTable getRouteTable() {
+    return routeTable;
+  }
+
+  /**
+   * @return how many times the routes were reloaded from the config file
+   */
+  public long getReloadCount() {
+    return reloadCount.get();
+  }
+
+  /**
+   * @return how many times the routes config file couldn't be reloaded
+   */
+  public long getReloadFailures() {
+    return reloadFailures.get();
+  }
+
+  /**
+   * @return the time of the last successful reload, in milliseconds, or zero if never reloaded
+   */
+  public long getLastReloadTime() {
+    return lastReloadTime;
+  }
+
+  /**
+   * @return the duration of the last successful reload, in milliseconds
+   */
+  public long getLastReloadDuration() {
+    return lastReloadDuration;
+  }
+
+  /**
+   * find the routes that may be matching the given path and request method, in the order they were
+   * declared. The candidates are selected from the current {@link RouteTable} using a {@link RouteTrie},
+   * so the cost of this lookup doesn't depend on the total number of routes.
+   *
+   * @param path            the request path
+   * @param requestedMethod the request method
+   * @return a list of routes that must be matched against the path, first matching route wins
+   */
+  public List<Route> candidates(String path, String requestedMethod) {
+    return routeTable.candidates(path, requestedMethod);
+  }
+
+  /**
+   * find the route matching the given path and request method, without calling it
+   *
+   * @param path            the request path
+   * @param requestedMethod the request method
+   * @return the first matching route or null
+   */
+  public Route find(String path, String requestedMethod) {
+    if (requestedMethod != null) {
+      for (Route route : candidates(path, requestedMethod)) {
+        if ((route.getMethod().isEmpty() || route.getMethod().contains(requestedMethod))
+            && route.match(path, route.getPath()) != null) {
+          return route;
+        }
+      }
+    }
+    return null;
   }
 
   /**
@@ -129,9 +223,11 @@ public class RouteManager implements Reloadable {
   @SuppressWarnings("unchecked")
   public void call(String path, MicroContext context) throws Exception {
     String requestedMethod = (String) context.getRackInput().get(Rack.REQUEST_METHOD);
+    RequestTimings timings = context.getTimings();
+    long mark = timings != null ? System.nanoTime() : 0;
 
     if (requestedMethod != null) {
-      for (Route route : routes) {
+      for (Route route : candidates(path, requestedMethod)) {
         if (route.getMethod().isEmpty() || route.getMethod().contains(requestedMethod)) {
 
           UriTemplateMatcher templateMatcher = route.match(path, route.getPath());
@@ -140,7 +236,7 @@ public class RouteManager implements Reloadable {
             MultivaluedMap<String, String> routeParams = templateMatcher.getVariables(true);
             Map<String, Object> params = (Map<String, Object>) context.get(Globals.PARAMS);
 
-            if (CollectionUtils.isEmpty(params)) {
+            if (params == null) {
               params = new HashMap<String, Object>();
               context.with(Globals.PARAMS, params);
             }
@@ -152,16 +248,31 @@ public class RouteManager implements Reloadable {
               params.put(param.getKey(), paramValue);
             }
 
-            RackResponse response = route.call(context);
-            if (response != null) {
-              context.setRackResponse(response);
+            if (timings != null) {
+              timings.setRoute(route.getPath());
+              mark = timings.stage(Stage.ROUTE_MATCH, mark);
+            }
+
+            try {
+              RackResponse response = route.call(context);
+              if (response != null) {
+                context.setRackResponse(response);
+              }
+            } finally {
+              if (timings != null) {
+                timings.stage(Stage.ROUTE, route.getPath(), mark);
+              }
             }
 
             // first matching route wins
-            break;
+            return;
           }
         }
       }
     }
+
+    if (timings != null) {
+      timings.stage(Stage.ROUTE_MATCH, mark);
+    }
   }
 }
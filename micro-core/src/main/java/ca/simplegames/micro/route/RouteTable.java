@@ -0,0 +1,123 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.route;
+
+import ca.simplegames.micro.Route;
+
+import java.util.*;
+
+/**
+ * An immutable snapshot of the routes known by the {@link RouteManager}. A table is built
+ * completely, using a {@link Builder}, and only then published to the request threads, so they
+ * will never see a partially loaded set of routes and will never need a lock for reading it.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-18 12:05 PM)
+ */
+public final class RouteTable {
+  public static final RouteTable EMPTY = new Builder().build();
+
+  private final List<Route> routes;
+  private final Map<String, Route> routesMap;
+  private final RouteTrie routeTrie;
+  private final boolean outputCaching;
+
+  private RouteTable(List<Route> routes, Map<String, Route> routesMap, RouteTrie routeTrie) {
+    this.routes = Collections.unmodifiableList(routes);
+    this.routesMap = Collections.unmodifiableMap(routesMap);
+    this.routeTrie = routeTrie;
+
+    boolean outputCaches = false;
+    for (Route route : routes) {
+      outputCaches |= route.getOutputCache() != null;
+    }
+    this.outputCaching = outputCaches;
+  }
+
+  /**
+   * @return the routes, in the order they were declared
+   */
+  public List<Route> getRoutes() {
+    return routes;
+  }
+
+  /**
+   * @return a read only map containing all the route paths and their associated route instances
+   */
+  public Map<String, Route> getRoutesMap() {
+    return routesMap;
+  }
+
+  /**
+   * @param path   the request path
+   * @param method the request method
+   * @return the routes that may match the given path and request method, in their declaration order
+   */
+  public List<Route> candidates(String path, String method) {
+    return routeTrie.candidates(path, method);
+  }
+
+  /**
+   * @return true if at least one of the routes has an output cache
+   */
+  public boolean hasOutputCaches() {
+    return outputCaching;
+  }
+
+  public int size() {
+    return routes.size();
+  }
+
+  /**
+   * @return a new builder containing the routes of this table, used for adding more routes
+   */
+  public Builder toBuilder() {
+    Builder builder = new Builder();
+    for (Route route : routes) {
+      builder.add(route);
+    }
+    return builder;
+  }
+
+  /**
+   * Collects the routes of a new table; not thread safe, a builder must be used by a single thread
+   */
+  public static class Builder {
+    private final List<Route> routes = new ArrayList<Route>();
+    private final Map<String, Route> routesMap = new HashMap<String, Route>();
+    private final RouteTrie routeTrie = new RouteTrie();
+    private boolean built;
+
+    public Builder add(Route route) {
+      if (built) {
+        throw new IllegalStateException("the route table was already built");
+      }
+
+      if (route != null) {
+        routes.add(route);
+        routesMap.put(route.getPath(), route);
+        routeTrie.add(route);
+      }
+      return this;
+    }
+
+    public RouteTable build() {
+      built = true;
+      return new RouteTable(routes, routesMap, routeTrie);
+    }
+  }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.route;
+
+import ca.simplegames.micro.Route;
+
+import java.util.*;
+
+/**
+ * A prefix tree of the route templates, keyed on the literal path segments. Template variables
+ * spanning a single segment are stored as wildcard nodes and the routes are kept in per-node
+ * HTTP method buckets.
+ * <p/>
+ * The tree is only used for narrowing down the list of routes that may match a request path; the
+ * candidates are returned in the order they were added and the caller is still matching them
+ * with {@link Route#match(String, String)}, therefore the "first matching route wins" rule and the
+ * extracted route parameters are exactly the same as when scanning all the routes. A JAX-RS template
+ * is also matching the paths extending it, i.e. '/system/info' matches '/system/info/disk', this is why
+ * the candidates are collected from every node visited while walking the request path.
+ * <p/>
+ * Templates that can't be split safely in segments, for example: '/files/{path:.*}', are stored as
+ * "tail" routes on the deepest node preceding the complex segment, and they will be returned for
+ * any request path walking through that node.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-18 10:12 AM)
+ */
+public class RouteTrie {
+  private static final char SLASH = '/';
+  private static final String ANY_METHOD = "*";
+
+  private final Node root = new Node();
+  // routes not starting with a slash are always candidates, we can't reason about them
+  private final Bucket unrooted = new Bucket();
+  private final List<Route> routes = new ArrayList<Route>();
+
+  /**
+   * add a new route; its position is given by the insertion order
+   *
+   * @param route the route
+   */
+  public void add(Route route) {
+    Entry entry = new Entry(routes.size(), route);
+    routes.add(route);
+
+    String template = route.getPath();
+    if (template == null || template.isEmpty() || template.charAt(0) != SLASH) {
+      unrooted.add(entry);
+      return;
+    }
+
+    Node node = root;
+    for (String segment : templateSegments(template)) {
+      switch (kindOf(segment)) {
+        case LITERAL:
+          node = node.literal(segment);
+          break;
+        case WILDCARD:
+          node = node.wildcard();
+          break;
+        default:
+          node.tails.add(entry);
+          return;
+      }
+    }
+    node.routes.add(entry);
+  }
+
+  /**
+   * find the routes that may match the given path and request method
+   *
+   * @param path   the request path
+   * @param method the request method, uppercase
+   * @return the candidate routes, in their declaration order
+   */
+  public List<Route> candidates(String path, String method) {
+    if (path == null || path.isEmpty() || path.charAt(0) != SLASH) {
+      return allFor(method);
+    }
+
+    Candidates candidates = new Candidates();
+    unrooted.collect(method, candidates);
+    walk(root, path, 1, method, candidates);
+    return candidates.toRoutes(routes);
+  }
+
+  public int size() {
+    return routes.size();
+  }
+
+  public List<Route> getRoutes() {
+    return Collections.unmodifiableList(routes);
+  }
+
+  private void walk(Node node, String path, int from, String method, Candidates candidates) {
+    node.tails.collect(method, candidates);
+    node.routes.collect(method, candidates);
+
+    if (from > path.length()) {
+      return;
+    }
+
+    int to = path.indexOf(SLASH, from);
+    if (to == -1) {
+      to = path.length();
+    }
+    String segment = path.substring(from, to);
+
+    Node next = node.literals != null ? node.literals.get(segment) : null;
+    if (next != null) {
+      walk(next, path, to + 1, method, candidates);
+    }
+    if (node.wildcard != null) {
+      walk(node.wildcard, path, to + 1, method, candidates);
+    }
+  }
+
+  private List<Route> allFor(String method) {
+    List<Route> list = new ArrayList<Route>();
+    for (Route route : routes) {
+      if (acceptsMethod(route, method)) {
+        list.add(route);
+      }
+    }
+    return list;
+  }
+
+  static boolean acceptsMethod(Route route, String method) {
+    return route.getMethod().isEmpty() || route.getMethod().contains(method);
+  }
+
+  /**
+   * split a route template in path segments, ignoring the slashes used by the variable regular
+   * expressions. The leading and the trailing slashes are optional for JAX-RS templates.
+   */
+  static List<String> templateSegments(String template) {
+    List<String> segments = new ArrayList<String>();
+    int end = template.length();
+    while (end > 1 && template.charAt(end - 1) == SLASH) {
+      end--;
+    }
+
+    if (end > 1) {
+      int depth = 0;
+      StringBuilder segment = new StringBuilder();
+      for (int i = 1; i < end; i++) {
+        char c = template.charAt(i);
+        if (c == '{') {
+          depth++;
+        } else if (c == '}' && depth > 0) {
+          depth--;
+        }
+
+        if (c == SLASH && depth == 0) {
+          segments.add(segment.toString());
+          segment.setLength(0);
+        } else {
+          segment.append(c);
+        }
+      }
+      segments.add(segment.toString());
+    }
+    return segments;
+  }
+
+  static Kind kindOf(String segment) {
+    int open = segment.indexOf('{');
+    if (open == -1) {
+      return Kind.LITERAL;
+    }
+
+    int depth = 0;
+    int colon = -1;
+    for (int i = 0; i < segment.length(); i++) {
+      char c = segment.charAt(i);
+      if (c == '{') {
+        if (++depth == 1) {
+          colon = -1;
+        }
+      } else if (c == ':' && depth == 1 && colon == -1) {
+        colon = i;
+      } else if (c == '}') {
+        if (depth == 1 && colon != -1 && !isSegmentSafe(segment.substring(colon + 1, i))) {
+          return Kind.TAIL;
+        }
+        depth--;
+      }
+    }
+    return depth == 0 ? Kind.WILDCARD : Kind.TAIL;
+  }
+
+  /**
+   * a very conservative check for the user defined regular expressions; true if the regex can't
+   * match a slash, for example: "png|jpg", "\d+" or "\d{4}"
+   */
+  static boolean isSegmentSafe(String regex) {
+    for (int i = 0; i < regex.length(); i++) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        if (i + 1 < regex.length() && "dw".indexOf(regex.charAt(i + 1)) != -1) {
+          i++;
+          continue;
+        }
+        return false;
+      }
+      if (!Character.isLetterOrDigit(c) && " _-|()+*?{},".indexOf(c) == -1) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  enum Kind {LITERAL, WILDCARD, TAIL}
+
+  static class Node {
+    Map<String, Node> literals;
+    Node wildcard;
+    final Bucket routes = new Bucket();
+    final Bucket tails = new Bucket();
+
+    Node literal(String segment) {
+      if (literals == null) {
+        literals = new HashMap<String, Node>();
+      }
+      Node node = literals.get(segment);
+      if (node == null) {
+        node = new Node();
+        literals.put(segment, node);
+      }
+      return node;
+    }
+
+    Node wildcard() {
+      if (wildcard == null) {
+        wildcard = new Node();
+      }
+      return wildcard;
+    }
+  }
+
+  /**
+   * the routes of a node, grouped by the HTTP methods they are accepting
+   */
+  static class Bucket {
+    private Map<String, List<Entry>> byMethod;
+
+    void add(Entry entry) {
+      if (byMethod == null) {
+        byMethod = new HashMap<String, List<Entry>>(4);
+      }
+
+      String method = entry.route.getMethod();
+      if (method.isEmpty()) {
+        bucket(ANY_METHOD).add(entry);
+      } else {
+        for (String name : method.split("[^A-Z]+")) {
+          if (!name.isEmpty()) {
+            bucket(name).add(entry);
+          }
+        }
+      }
+    }
+
+    void collect(String method, Candidates candidates) {
+      if (byMethod != null) {
+        candidates.addAll(byMethod.get(ANY_METHOD));
+        candidates.addAll(byMethod.get(method));
+      }
+    }
+
+    private List<Entry> bucket(String method) {
+      List<Entry> entries = byMethod.get(method);
+      if (entries == null) {
+        entries = new ArrayList<Entry>(2);
+        byMethod.put(method, entries);
+      }
+      return entries;
+    }
+  }
+
+  static class Entry {
+    final int index;
+    final Route route;
+
+    Entry(int index, Route route) {
+      this.index = index;
+      this.route = route;
+    }
+  }
+
+  /**
+   * a small, sorted set of route indexes
+   */
+  static class Candidates {
+    private int[] indexes = new int[8];
+    private int size;
+
+    void addAll(List<Entry> entries) {
+      if (entries != null) {
+        for (Entry entry : entries) {
+          add(entry.index);
+        }
+      }
+    }
+
+    void add(int index) {
+      int at = Arrays.binarySearch(indexes, 0, size, index);
+      if (at < 0) {
+        at = -at - 1;
+        if (size == indexes.length) {
+          indexes = Arrays.copyOf(indexes, size * 2);
+        }
+        System.arraycopy(indexes, at, indexes, at + 1, size - at);
+        indexes[at] = index;
+        size++;
+      }
+    }
+
+    List<Route> toRoutes(List<Route> routes) {
+      if (size == 0) {
+        return Collections.emptyList();
+      }
+      List<Route> list = new ArrayList<Route>(size);
+      for (int i = 0; i < size; i++) {
+        list.add(routes.get(indexes[i]));
+      }
+      return list;
+    }
+  }
+}
@@ -24,6 +24,7 @@ import ca.simplegames.micro.controllers.ControllerException;
 import ca.simplegames.micro.controllers.ControllerNotFoundException;
 import ca.simplegames.micro.repositories.Repository;
 import ca.simplegames.micro.repositories.RepositoryManager;
+import ca.simplegames.micro.utils.ByteSink;
 import ca.simplegames.micro.utils.CollectionUtils;
 import ca.simplegames.micro.utils.PathUtilities;
 import ca.simplegames.micro.utils.StringUtils;
@@ -32,7 +33,6 @@ import org.jrack.RackResponse;
 import org.jrack.utils.Mime;
 
 import java.io.FileNotFoundException;
-import java.nio.charset.Charset;
 import java.util.Map;
 
 /**
@@ -90,25 +90,29 @@ public class RouteWrapper extends Route {
 
                 context.with(Globals.PATH, path);
 
-                String out;
-                if (getView().getTemplate() != null) {
-                    out = repositoryManager.getTemplatesRepository().getRepositoryWrapper(context)
-                            .get(getView().getTemplate() + PathUtilities.extractType(path));
-                } else {
-                    Repository repository = repositoryManager.getRepository(repositoryName);
-                    out = repository.getRepositoryWrapper(context).get(getView().getPath());
+                ByteSink out = ByteSink.acquire();
+                try {
+                    if (getView().getTemplate() != null) {
+                        repositoryManager.getTemplatesRepository().getRepositoryWrapper(context)
+                                .render(getView().getTemplate() + PathUtilities.extractType(path), out.getWriter());
+                    } else {
+                        Repository repository = repositoryManager.getRepository(repositoryName);
+                        repository.getRepositoryWrapper(context).render(getView().getPath(), out.getWriter());
+                    }
+
+                    String contentType = Mime.mimeType(PathUtilities.extractType(path));
+
+                    if (response.getHeaders().get(Globals.HEADERS_CONTENT_TYPE) != null) {
+                        contentType = response.getHeaders().get(Globals.HEADERS_CONTENT_TYPE);
+                    }
+
+                    response.withContentType(contentType)
+                            .withContentLength(out.size())
+                            .withBody(out.toByteArray());
+                } finally {
+                    out.release();
                 }
 
-                String contentType = Mime.mimeType(PathUtilities.extractType(path));
-
-                if (response.getHeaders().get(Globals.HEADERS_CONTENT_TYPE) != null) {
-                    contentType = response.getHeaders().get(Globals.HEADERS_CONTENT_TYPE);
-                }
-
-                response.withContentType(contentType)
-                        .withContentLength(out.getBytes(Charset.forName(Globals.UTF8)).length)
-                        .withBody(out);
-
                 // We have a View served by
                 // Faites vos jeux, rien ne va plus
                 context.halt();
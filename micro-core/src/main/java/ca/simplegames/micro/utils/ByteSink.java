@@ -0,0 +1,213 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.utils;
+
+import ca.simplegames.micro.Globals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer receiving the rendered content. The {@link #getWriter() writer} is encoding
+ * the characters in UTF-8 straight into the buffer, without intermediate Strings, and the number of
+ * bytes written is known at any time, see: {@link #size()}.
+ * <p/>
+ * The sinks are pooled, one per thread, see: {@link #acquire()} and {@link #release()}. Not thread safe.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-18 2:40 PM)
+ */
+public class ByteSink extends OutputStream {
+    private static final int INITIAL_CAPACITY = 8192;
+    // the buffers growing over this size are not kept in the pool
+    private static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+    private static final ThreadLocal<ByteSink> pool = new ThreadLocal<ByteSink>();
+    private static final Charset UTF8 = Charset.forName(Globals.UTF8);
+
+    private byte[] buffer;
+    private int count;
+    private boolean inUse;
+    private char highSurrogate; // a pending high surrogate, written by the writer
+    private final Writer writer = new Utf8Writer();
+
+    public ByteSink() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public ByteSink(int capacity) {
+        buffer = new byte[capacity];
+    }
+
+    /**
+     * @return the sink of the current thread, empty; or a new sink if the pooled one is still in use
+     */
+    public static ByteSink acquire() {
+        ByteSink sink = pool.get();
+        if (sink == null) {
+            sink = new ByteSink();
+            pool.set(sink);
+        } else if (sink.inUse) {
+            return new ByteSink();
+        }
+
+        sink.reset();
+        sink.inUse = true;
+        return sink;
+    }
+
+    /**
+     * return this sink to the pool of the current thread; the content is discarded
+     */
+    public void release() {
+        inUse = false;
+        if (buffer.length > MAX_RETAINED_CAPACITY) {
+            buffer = new byte[INITIAL_CAPACITY];
+        }
+        reset();
+    }
+
+    /**
+     * @return a Writer encoding the characters in UTF-8, into this sink. Closing it has no effect
+     */
+    public Writer getWriter() {
+        return writer;
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public int size() {
+        return count;
+    }
+
+    public void reset() {
+        count = 0;
+        highSurrogate = 0;
+    }
+
+    /**
+     * @return a copy of the bytes written, sized exactly
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, count);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, count, UTF8);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, capacity));
+        }
+    }
+
+    /**
+     * a minimal UTF-8 encoder; the unpaired surrogates are replaced with '?', like String#getBytes does
+     */
+    private class Utf8Writer extends Writer {
+
+        @Override
+        public void write(int c) {
+            write((char) c);
+        }
+
+        @Override
+        public void write(char[] chars, int off, int len) {
+            // the worst case is three bytes per char
+            ensureCapacity(count + len * 3);
+            for (int i = off; i < off + len; i++) {
+                write(chars[i]);
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            ensureCapacity(count + len * 3);
+            for (int i = off; i < off + len; i++) {
+                write(str.charAt(i));
+            }
+        }
+
+        private void write(char c) {
+            ensureCapacity(count + 4);
+            byte[] b = buffer;
+
+            if (highSurrogate != 0) {
+                char high = highSurrogate;
+                highSurrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    int codePoint = Character.toCodePoint(high, c);
+                    b[count++] = (byte) (0xf0 | (codePoint >> 18));
+                    b[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    b[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    b[count++] = (byte) (0x80 | (codePoint & 0x3f));
+                    return;
+                }
+                b[count++] = '?';
+            }
+
+            if (c < 0x80) {
+                b[count++] = (byte) c;
+            } else if (c < 0x800) {
+                b[count++] = (byte) (0xc0 | (c >> 6));
+                b[count++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c)) {
+                highSurrogate = c;
+            } else if (Character.isLowSurrogate(c)) {
+                b[count++] = '?';
+            } else {
+                b[count++] = (byte) (0xe0 | (c >> 12));
+                b[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                b[count++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+
+        /**
+         * nothing to flush, the bytes are already in the sink; a pending high surrogate is kept, as it
+         * may be paired by the next write
+         */
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The file change notifications of a Micro site: a single thread waiting for the events of a
+ * {@link WatchService}, on behalf of all the directories watched: the repositories, the config folder and the
+ * controllers. The listeners are told which files were modified, created or deleted and they are invalidating
+ * their caches, so nothing has to poll the files for changes.
+ * <p/>
+ * The events are collected for a short while before being sent out, an editor saving a file usually
+ * produces more than one. When the events were lost, a listener is notified with the directory it watches.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-18 11:30 PM)
+ */
+public class FileChangeService {
+  private static final Logger log = LoggerFactory.getLogger(FileChangeService.class);
+  public static final long DEFAULT_SETTLE_DELAY = 100; // milliseconds
+
+  private final ConcurrentMap<WatchKey, Path> directories = new ConcurrentHashMap<WatchKey, Path>();
+  private final List<Registration> registrations = new CopyOnWriteArrayList<Registration>();
+  private final AtomicLong events = new AtomicLong();
+  private final AtomicLong notifications = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final long settleDelay;
+  private WatchService watchService;
+  private Thread thread;
+  private volatile boolean running;
+
+  public FileChangeService() {
+    this(DEFAULT_SETTLE_DELAY);
+  }
+
+  /**
+   * @param settleDelay the time, in milliseconds, the events are collected before notifying the listeners
+   */
+  public FileChangeService(long settleDelay) {
+    this.settleDelay = settleDelay;
+  }
+
+  /**
+   * A listener notified about the files changed in a watched directory
+   */
+  public interface Listener {
+    /**
+     * @param file the file modified, created or deleted, or the watched directory if the events were lost
+     * @throws Exception logged, the other listeners are notified anyway
+     */
+    void changed(File file) throws Exception;
+  }
+
+  /**
+   * watch a directory
+   *
+   * @param directory the directory
+   * @param recursive true for watching its sub-directories too, including the ones created later
+   * @param listener  the listener notified about the changes
+   * @return true if the directory is watched; false if it doesn't exist or it cannot be watched, the
+   *         caller must check the files for changes by itself
+   */
+  public synchronized boolean watch(File directory, boolean recursive, Listener listener) {
+    if (directory == null || !directory.isDirectory()) {
+      return false;
+    }
+
+    try {
+      start();
+      Path root = directory.toPath().toAbsolutePath().normalize();
+      register(root, recursive);
+      registrations.add(new Registration(root, recursive, listener));
+      return true;
+    } catch (IOException e) {
+      log.warn(String.format("cannot watch: %s; %s", directory.getAbsolutePath(), e.getMessage()));
+      return false;
+    }
+  }
+
+  /**
+   * watch a file; the given object is reloaded when the file is modified
+   *
+   * @param file       the file
+   * @param reloadable the object reloaded
+   * @return true if the file is watched
+   */
+  public boolean watch(final File file, final Reloadable reloadable) {
+    final File absoluteFile = file.getAbsoluteFile();
+    return watch(absoluteFile.getParentFile(), false, new Listener() {
+      public void changed(File changed) throws Exception {
+        if ((changed.equals(absoluteFile) || changed.equals(absoluteFile.getParentFile())) && absoluteFile.exists()) {
+          reloadable.reload();
+          log.info(String.format("%s, reloaded.", absoluteFile.getAbsolutePath()));
+        }
+      }
+    });
+  }
+
+  /**
+   * stop watching the files
+   */
+  public synchronized void shutdown() {
+    running = false;
+    if (watchService != null) {
+      try {
+        watchService.close();
+      } catch (IOException e) {
+        log.warn("cannot close the watch service; " + e.getMessage());
+      }
+      watchService = null;
+    }
+    directories.clear();
+    registrations.clear();
+  }
+
+  /**
+   * @return the number of directories watched, of the events received, of the listener notifications
+   *         and of the listeners failing
+   */
+  public Map<String, Object> getStatistics() {
+    Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+    statistics.put("directories", directories.size());
+    statistics.put("events", events.get());
+    statistics.put("notifications", notifications.get());
+    statistics.put("failures", failures.get());
+    return statistics;
+  }
+
+  /**
+   * @return the number of file events received
+   */
+  public long getEventCount() {
+    return events.get();
+  }
+
+  /**
+   * @return the number of the notifications sent to the listeners
+   */
+  public long getNotificationCount() {
+    return notifications.get();
+  }
+
+  private void start() throws IOException {
+    if (watchService == null) {
+      watchService = FileSystems.getDefault().newWatchService();
+      running = true;
+      final WatchService service = watchService;
+      thread = new Thread(new Runnable() {
+        public void run() {
+          process(service);
+        }
+      }, "micro-file-watcher");
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  private void register(Path root, boolean recursive) throws IOException {
+    if (!recursive) {
+      registerDirectory(root);
+    } else {
+      Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+          registerDirectory(dir);
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    }
+  }
+
+  private void registerDirectory(Path dir) throws IOException {
+    if (!directories.containsValue(dir)) {
+      WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+      directories.put(key, dir);
+    }
+  }
+
+  private void process(WatchService service) {
+    try {
+      while (running) {
+        Set<Path> changed = new LinkedHashSet<Path>();
+        collect(service.take(), changed);
+
+        WatchKey next;
+        while ((next = service.poll(settleDelay, TimeUnit.MILLISECONDS)) != null) {
+          collect(next, changed);
+        }
+
+        for (Path path : changed) {
+          notifyListeners(path);
+        }
+      }
+    } catch (InterruptedException e) {
+      // stopped
+    } catch (ClosedWatchServiceException e) {
+      // stopped
+    }
+  }
+
+  private void collect(WatchKey key, Set<Path> changed) {
+    Path dir = directories.get(key);
+    if (dir != null) {
+      for (WatchEvent<?> event : key.pollEvents()) {
+        events.incrementAndGet();
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+          changed.add(dir);
+        } else {
+          Path path = dir.resolve((Path) event.context());
+          changed.add(path);
+          if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+            registerCreatedDirectory(path);
+          }
+        }
+      }
+    }
+
+    if (!key.reset()) {
+      directories.remove(key);
+    }
+  }
+
+  private synchronized void registerCreatedDirectory(Path path) {
+    for (Registration registration : registrations) {
+      if (registration.recursive && path.startsWith(registration.root)) {
+        try {
+          register(path, true);
+        } catch (IOException e) {
+          log.warn(String.format("cannot watch: %s; %s", path, e.getMessage()));
+        }
+        return;
+      }
+    }
+  }
+
+  private void notifyListeners(Path path) {
+    for (Registration registration : registrations) {
+      if (registration.accepts(path)) {
+        notifications.incrementAndGet();
+        try {
+          registration.listener.changed(path.toFile());
+        } catch (Exception e) {
+          failures.incrementAndGet();
+          log.error(String.format("cannot process the change of: %s; %s", path, e.getMessage()));
+        }
+      }
+    }
+  }
+
+  private static class Registration {
+    final Path root;
+    final boolean recursive;
+    final Listener listener;
+
+    Registration(Path root, boolean recursive, Listener listener) {
+      this.root = root;
+      this.recursive = recursive;
+      this.listener = listener;
+    }
+
+    boolean accepts(Path path) {
+      return recursive ? path.startsWith(root) : path.equals(root) || root.equals(path.getParent());
+    }
+  }
+}
@@ -13,7 +13,9 @@ import java.util.TimerTask;
  *
  * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
  * @since $Revision$ (created: 13-08-28 8:27 PM)
+ * @deprecated one polling thread per file; use {@link FileChangeService#watch(java.io.File, Reloadable)}
  */
+@Deprecated
 public class MicroConfigFileMonitor extends TimerTask {
   private static final Logger log = LoggerFactory.getLogger(MicroConfigFileMonitor.class);
   public static final int DEFAULT_DELAY = 5000;
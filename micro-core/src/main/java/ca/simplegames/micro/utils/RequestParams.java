@@ -0,0 +1,207 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.utils;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The 'params' of a request, resolved on demand: a parameter is looked up when it is read, in the values
+ * set by Micro, i.e. the route variables, then in the Rack params, the request parameters, the request
+ * attributes and the session attributes, if there is a session, and the result, found or not, is kept for
+ * the next reads. Nothing is copied when the request starts and the session is not touched unless a
+ * parameter is not found elsewhere.
+ * <p/>
+ * A parameter having a single value is a String, one having more values is a String[]; the attributes are
+ * converted to String. The values set by {@link #put(Object, Object)} are taking precedence over all the
+ * others and {@link #remove(Object)} is hiding a parameter from the request. The views returned by
+ * {@link #entrySet()}, {@link #keySet()} and {@link #values()} are snapshots and resolving all the
+ * parameters; use them only when all the parameters are needed. Thread safe: the contexts forked for the
+ * parallel controllers are sharing the params of the request; a parameter resolved concurrently is looked up
+ * more than once, with the same result.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-19 5:10 AM)
+ */
+public class RequestParams extends AbstractMap<String, Object> {
+    private static final Object MISSING = new Object(); // not found
+    private static final Object REMOVED = new Object(); // hidden by remove
+
+    private final Map<String, Object> rackParams;
+    private final HttpServletRequest request;
+    // the values set, the values resolved, the missing and the removed parameters
+    private final ConcurrentHashMap<String, Object> resolved = new ConcurrentHashMap<String, Object>();
+
+    /**
+     * @param rackParams the Rack params, can be null
+     * @param request    the request, can be null
+     */
+    public RequestParams(Map<String, Object> rackParams, HttpServletRequest request) {
+        this.rackParams = rackParams;
+        this.request = request;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+
+        Object value = resolved.get(key);
+        if (value == null) {
+            value = lookup((String) key);
+            Object previous = resolved.putIfAbsent((String) key, value != null ? value : MISSING);
+            if (previous != null) {
+                value = previous; // set, or removed, by another thread meanwhile
+            }
+        }
+        return value != MISSING && value != REMOVED ? value : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        Object previous = resolved.put(key, value != null ? value : REMOVED);
+        return previous != MISSING && previous != REMOVED ? previous : null;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        Object previous = get(key);
+        if (previous != null) {
+            resolved.put((String) key, REMOVED);
+        }
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        for (String name : names()) {
+            resolved.put(name, REMOVED);
+        }
+    }
+
+    /**
+     * @return true if there are no parameters; the session is checked only if there are no other parameters
+     */
+    @Override
+    public boolean isEmpty() {
+        boolean hidden = false;
+        for (Object value : resolved.values()) {
+            if (value == REMOVED) {
+                hidden = true;
+            } else if (value != MISSING) {
+                return false;
+            }
+        }
+
+        if (hidden) {
+            return entrySet().isEmpty();
+        }
+        if (!CollectionUtils.isEmpty(rackParams)) {
+            return false;
+        }
+        if (request != null) {
+            if (request.getParameterNames().hasMoreElements() || request.getAttributeNames().hasMoreElements()) {
+                return false;
+            }
+            HttpSession session = request.getSession(false);
+            return session == null || !session.getAttributeNames().hasMoreElements();
+        }
+        return true;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        Map<String, Object> params = new LinkedHashMap<String, Object>();
+        for (String name : names()) {
+            Object value = get(name);
+            if (value != null) {
+                params.put(name, value);
+            }
+        }
+        return Collections.unmodifiableMap(params).entrySet();
+    }
+
+    private Object lookup(String name) {
+        if (rackParams != null) {
+            Object value = rackParams.get(name);
+            if (value != null) {
+                return value;
+            }
+        }
+
+        if (request == null) {
+            return null;
+        }
+
+        String[] values = request.getParameterValues(name);
+        if (values != null) {
+            return values.length == 1 ? values[0] : values;
+        }
+
+        Object value = request.getAttribute(name);
+        if (value != null) {
+            return value.toString();
+        }
+
+        HttpSession session = request.getSession(false);
+        if (session != null) {
+            value = session.getAttribute(name);
+            if (value != null) {
+                return value.toString();
+            }
+        }
+        return null;
+    }
+
+    // the names of all the parameters, the hidden ones included
+    private Set<String> names() {
+        Set<String> names = new LinkedHashSet<String>(resolved.keySet());
+        if (rackParams != null) {
+            names.addAll(rackParams.keySet());
+        }
+
+        if (request != null) {
+            addNames(names, request.getParameterNames());
+            addNames(names, request.getAttributeNames());
+            HttpSession session = request.getSession(false);
+            if (session != null) {
+                addNames(names, session.getAttributeNames());
+            }
+        }
+        return names;
+    }
+
+    private static void addNames(Set<String> names, Enumeration enumeration) {
+        while (enumeration.hasMoreElements()) {
+            names.add(String.valueOf(enumeration.nextElement()));
+        }
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.utils;
+
+import ca.simplegames.micro.Globals;
+import ca.simplegames.micro.Micro;
+import org.jrack.Rack;
+
+import java.util.*;
+
+/**
+ * A small, single threaded Map used as the attribute store of the request context. The well known
+ * keys, see {@link #KNOWN_KEYS}, have their own fixed array slots, while all the other keys are kept
+ * in a small open addressing hash table. There are no entry objects allocated while adding attributes
+ * and {@link #clear()} keeps the allocated arrays, so the same instance can be reused for the next
+ * request served by the same thread.
+ * <p/>
+ * Like the context using it, this map doesn't accept null keys or null values, and it is NOT thread safe.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-18 1:10 PM)
+ */
+public class SlotMap extends AbstractMap<String, Object> {
+    /**
+     * the keys used by Micro for every request
+     */
+    public static final String[] KNOWN_KEYS = {
+            Globals.RACK_INPUT, Globals.SITE, Rack.RACK_LOGGER, Globals.LOG, Globals.REQUEST,
+            Globals.RESPONSE, Globals.MICRO_ENV, Globals.PARAMS, Globals.PATH_INFO, Globals.PATH,
+            Micro.TOOLS, Globals.MICRO_TEMPLATE_ENGINES, Globals.RACK_RESPONSE, Globals.TEMPLATE, Globals.VIEW,
+            Globals.YIELD, Globals.ERROR, Globals.MICRO_TEMPLATES_REPOSITORY_NAME,
+            Globals.MICRO_DEFAULT_REPOSITORY_NAME
+    };
+
+    private static final int INITIAL_CAPACITY = 16;
+    // the adhoc tables growing over this capacity, are dropped when the map is cleared
+    private static final int MAX_RETAINED_CAPACITY = 256;
+    private static final Object REMOVED = new Object();
+
+    // a static open addressing index of the known keys, mapping them to their slots
+    private static final String[] KNOWN_INDEX_KEYS;
+    private static final int[] KNOWN_INDEX_SLOTS;
+
+    static {
+        int capacity = tableSizeFor(KNOWN_KEYS.length * 2);
+        KNOWN_INDEX_KEYS = new String[capacity];
+        KNOWN_INDEX_SLOTS = new int[capacity];
+        for (int slot = 0; slot < KNOWN_KEYS.length; slot++) {
+            int i = hash(KNOWN_KEYS[slot]) & (capacity - 1);
+            while (KNOWN_INDEX_KEYS[i] != null) {
+                i = (i + 1) & (capacity - 1);
+            }
+            KNOWN_INDEX_KEYS[i] = KNOWN_KEYS[slot];
+            KNOWN_INDEX_SLOTS[i] = slot;
+        }
+    }
+
+    private final Object[] slots = new Object[KNOWN_KEYS.length];
+    private int slotsUsed;
+
+    // adhoc attributes; a removed entry keeps its key and has the REMOVED marker as value
+    private String[] keys;
+    private Object[] values;
+    private int adhocSize;
+    private int adhocUsed; // including the removed entries
+
+    private Set<Map.Entry<String, Object>> entrySet;
+
+    public SlotMap() {
+        keys = new String[INITIAL_CAPACITY];
+        values = new Object[INITIAL_CAPACITY];
+    }
+
+    /**
+     * @param key an attribute name
+     * @return the slot of a well known key or -1
+     */
+    public static int slotOf(String key) {
+        int mask = KNOWN_INDEX_KEYS.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            String k = KNOWN_INDEX_KEYS[i];
+            if (k == null) {
+                return -1;
+            } else if (k == key || k.equals(key)) {
+                return KNOWN_INDEX_SLOTS[i];
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return slotsUsed + adhocSize;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+
+        String name = (String) key;
+        int slot = slotOf(name);
+        if (slot != -1) {
+            return slots[slot];
+        }
+
+        int i = indexOf(name);
+        if (i == -1) {
+            return null;
+        }
+        Object value = values[i];
+        return value == REMOVED ? null : value;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("null keys or values are not supported");
+        }
+
+        int slot = slotOf(key);
+        if (slot != -1) {
+            Object previous = slots[slot];
+            if (previous == null) {
+                slotsUsed++;
+            }
+            slots[slot] = value;
+            return previous;
+        }
+
+        int i = indexOf(key);
+        if (i != -1) {
+            Object previous = values[i];
+            values[i] = value;
+            if (previous == REMOVED) {
+                adhocSize++;
+                return null;
+            }
+            return previous;
+        }
+
+        if ((adhocUsed + 1) * 4 > keys.length * 3) {
+            resize(adhocSize * 4 > keys.length * 2 ? keys.length * 2 : keys.length);
+        }
+
+        int mask = keys.length - 1;
+        i = hash(key) & mask;
+        while (keys[i] != null) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        adhocSize++;
+        adhocUsed++;
+        return null;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+
+        String name = (String) key;
+        int slot = slotOf(name);
+        if (slot != -1) {
+            Object previous = slots[slot];
+            if (previous != null) {
+                slots[slot] = null;
+                slotsUsed--;
+            }
+            return previous;
+        }
+
+        int i = indexOf(name);
+        if (i == -1 || values[i] == REMOVED) {
+            return null;
+        }
+        Object previous = values[i];
+        values[i] = REMOVED;
+        adhocSize--;
+        return previous;
+    }
+
+    /**
+     * remove all the attributes, keeping the allocated storage for reuse
+     */
+    @Override
+    public void clear() {
+        if (slotsUsed > 0) {
+            Arrays.fill(slots, null);
+            slotsUsed = 0;
+        }
+
+        if (keys.length > MAX_RETAINED_CAPACITY) {
+            keys = new String[INITIAL_CAPACITY];
+            values = new Object[INITIAL_CAPACITY];
+        } else if (adhocUsed > 0) {
+            Arrays.fill(keys, null);
+            Arrays.fill(values, null);
+        }
+        adhocSize = 0;
+        adhocUsed = 0;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, Object>>() {
+                @Override
+                public Iterator<Map.Entry<String, Object>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return SlotMap.this.size();
+                }
+
+                @Override
+                public void clear() {
+                    SlotMap.this.clear();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private int indexOf(String key) {
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            String k = keys[i];
+            if (k == null) {
+                return -1;
+            } else if (k == key || k.equals(key)) {
+                return i;
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        String[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new String[capacity];
+        values = new Object[capacity];
+        adhocUsed = 0;
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null && oldValues[j] != REMOVED) {
+                int i = hash(oldKeys[j]) & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+                adhocUsed++;
+            }
+        }
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSizeFor(int size) {
+        int capacity = 1;
+        while (capacity < size) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * iterates the known keys first, then the adhoc ones. The adhoc tables are never rehashed by a
+     * removal, therefore removing the current entry while iterating is safe.
+     */
+    private class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+        private int next = -1; // [0, slots.length) are the slots, the adhoc entries follow
+        private int current = -1;
+        private final String[] iteratedKeys = keys;
+        private final Object[] iteratedValues = values;
+
+        EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            for (next++; next < slots.length; next++) {
+                if (slots[next] != null) {
+                    return;
+                }
+            }
+            for (; next - slots.length < iteratedKeys.length; next++) {
+                int i = next - slots.length;
+                if (iteratedKeys[i] != null && iteratedValues[i] != REMOVED) {
+                    return;
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return next < slots.length + iteratedKeys.length;
+        }
+
+        public Map.Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            current = next;
+            advance();
+
+            if (current < slots.length) {
+                return new SimpleEntry<String, Object>(KNOWN_KEYS[current], slots[current]);
+            }
+            int i = current - slots.length;
+            return new SimpleEntry<String, Object>(iteratedKeys[i], iteratedValues[i]);
+        }
+
+        public void remove() {
+            if (current == -1) {
+                throw new IllegalStateException();
+            }
+            SlotMap.this.remove(current < slots.length ?
+                    KNOWN_KEYS[current] : iteratedKeys[current - slots.length]);
+            current = -1;
+        }
+    }
+}
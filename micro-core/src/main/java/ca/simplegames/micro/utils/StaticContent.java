@@ -0,0 +1,416 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.utils;
+
+import ca.simplegames.micro.Globals;
+import ca.simplegames.micro.MicroContext;
+import ca.simplegames.micro.cache.CachedOutput;
+import ca.simplegames.micro.cache.OutputCache;
+import org.eclipse.jetty.server.HttpOutput;
+import org.jrack.Rack;
+import org.jrack.RackResponse;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Sends out a file: static content, images, downloads, etc. The file is never read into a String, and
+ * the conditional requests (<code>If-None-Match</code>, <code>If-Modified-Since</code>) are answered with
+ * a 304, a single byte range (<code>Range: bytes=...</code>) with a 206 and a precompressed sibling of the
+ * file, <code>file.br</code> or <code>file.gz</code>, is sent instead of the file if the client accepts it.
+ * <p/>
+ * The body is streamed by the servlet filter from the {@link File}. When Micro is served by the
+ * {@link ca.simplegames.micro.AsyncMicroFilter} the file, or the range, is sent out by the filter instead, see:
+ * {@link FileRegion}; such responses are not cached by the output cache. Otherwise a range is read in memory, up to
+ * {@link #MAX_RANGE_IN_MEMORY} bytes: a longer range is answered with its first part, described by the
+ * <code>Content-Range</code> header, and the client asks for the rest.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-18 10:30 PM)
+ */
+public class StaticContent {
+    public static final String ACCEPT_RANGES = "Accept-Ranges";
+    public static final String RANGE = "Range";
+    public static final String IF_RANGE = "If-Range";
+    public static final String CONTENT_RANGE = "Content-Range";
+    public static final String ACCEPT_ENCODING = "Accept-Encoding";
+    public static final String CONTENT_ENCODING = "Content-Encoding";
+    public static final String VARY = "Vary";
+    public static final String BYTES = "bytes";
+
+    /**
+     * a request attribute, set by the servlet filters able to send out a {@link FileRegion}
+     */
+    public static final String ZERO_COPY = Globals.MICRO + "zero_copy";
+    /**
+     * a request attribute, the {@link FileRegion} to be sent out after the response headers
+     */
+    public static final String FILE_REGION = Globals.MICRO + "file_region";
+
+    /**
+     * the maximum length of a range read in memory, when the range cannot be sent out as a {@link FileRegion}
+     */
+    public static final int MAX_RANGE_IN_MEMORY = 1024 * 1024;
+
+    // the length of the parts of a file mapped in memory and written at once by a FileRegion
+    private static final int MAPPED_CHUNK = 4 * 1024 * 1024;
+    // the length of the heap buffer used when a stream cannot write a ByteBuffer
+    private static final int COPY_CHUNK = 8 * 1024;
+
+    // the precompressed siblings, in the order of preference: {encoding, file extension}
+    private static final String[][] ENCODINGS = {{"br", ".br"}, {"gzip", ".gz"}};
+
+    /**
+     * prepare the response of the current request for sending out a file
+     *
+     * @param context     the current context
+     * @param file        an existing file
+     * @param contentType the content type of the file
+     * @return the response of the current context
+     * @throws IOException if the range requested cannot be read
+     */
+    public static RackResponse serve(MicroContext context, File file, String contentType) throws IOException {
+        RackResponse response = context.getRackResponse()
+                .withContentType(contentType)
+                .withHeader(ACCEPT_RANGES, BYTES);
+
+        String range = OutputCache.header(context, RANGE);
+        File content = file;
+        for (String[] encoding : ENCODINGS) {
+            File sibling = new File(file.getPath() + encoding[1]);
+            if (sibling.isFile() && sibling.lastModified() >= file.lastModified()) {
+                response.withHeader(VARY, ACCEPT_ENCODING);
+                if (content == file && range == null && accepts(context, encoding[0])) {
+                    content = sibling;
+                    response.withHeader(CONTENT_ENCODING, encoding[0]);
+                }
+            }
+        }
+
+        long length = content.length();
+        long lastModified = content.lastModified() / 1000 * 1000;
+        String etag = String.format("\"%x-%x\"", length, lastModified);
+        String lastModifiedDate = CachedOutput.httpDateFormat().format(new Date(lastModified));
+        response.withHeader(CachedOutput.ETAG, etag).withHeader(CachedOutput.LAST_MODIFIED, lastModifiedDate);
+
+        if (isNotModified(context, etag, lastModified)) {
+            return response.withContentLength(0).withBody(new byte[0])
+                    .with(Rack.MESSAGE_STATUS, HttpServletResponse.SC_NOT_MODIFIED);
+        }
+
+        String ifRange = OutputCache.header(context, IF_RANGE);
+        if (range != null && (ifRange == null || ifRange.equals(etag) || ifRange.equals(lastModifiedDate))) {
+            long[] bytes = parseRange(range, length);
+            if (bytes == null) {
+                return response.withHeader(CONTENT_RANGE, String.format("%s */%d", BYTES, length))
+                        .withContentLength(0).withBody(new byte[0])
+                        .with(Rack.MESSAGE_STATUS, HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            }
+            if (bytes.length == 2) {
+                if (!isZeroCopy(context)) {
+                    bytes[1] = Math.min(bytes[1], bytes[0] + MAX_RANGE_IN_MEMORY - 1);
+                }
+                response.withHeader(CONTENT_RANGE, String.format("%s %d-%d/%d", BYTES, bytes[0], bytes[1], length))
+                        .with(Rack.MESSAGE_STATUS, HttpServletResponse.SC_PARTIAL_CONTENT);
+                return withBody(context, response, content, bytes[0], bytes[1] - bytes[0] + 1);
+            }
+        }
+
+        return withBody(context, response, content, 0, length);
+    }
+
+    /**
+     * send out the {@link FileRegion} left by Micro on the request, if any. Used by the servlet filters
+     * setting the {@link #ZERO_COPY} request attribute.
+     *
+     * @return true if a file region was sent out
+     */
+    public static boolean transfer(ServletRequest request, ServletResponse response) throws IOException {
+        FileRegion region = (FileRegion) request.getAttribute(FILE_REGION);
+        if (region == null) {
+            return false;
+        }
+
+        request.removeAttribute(FILE_REGION);
+        OutputStream out = response.getOutputStream();
+        region.transferTo(out);
+        out.flush();
+        return true;
+    }
+
+    /**
+     * write a buffer to a stream; a {@link BufferOutput} or the output stream of Jetty are writing the buffer
+     * as it is, a direct or a mapped buffer is not copied on the heap. The other streams are written through
+     * a heap buffer.
+     *
+     * @param out    the stream
+     * @param buffer the bytes written, from its position to its limit
+     * @throws IOException if the stream cannot be written
+     */
+    public static void write(OutputStream out, ByteBuffer buffer) throws IOException {
+        if (out instanceof BufferOutput) {
+            ((BufferOutput) out).write(buffer);
+        } else if (out instanceof HttpOutput) {
+            ((HttpOutput) out).write(buffer);
+        } else {
+            byte[] chunk = new byte[Math.min(buffer.remaining(), COPY_CHUNK)];
+            while (buffer.hasRemaining()) {
+                int length = Math.min(chunk.length, buffer.remaining());
+                buffer.get(chunk, 0, length);
+                out.write(chunk, 0, length);
+            }
+        }
+    }
+
+    private static RackResponse withBody(MicroContext context, RackResponse response, File file,
+                                         long offset, long length) throws IOException {
+        response.withContentLength(length);
+
+        if (isZeroCopy(context)) {
+            context.getRequest().setAttribute(FILE_REGION, new FileRegion(file, offset, length));
+            // the body is sent out after the response headers, the response must not be cached
+            context.with(OutputCache.NOT_CACHEABLE, Boolean.TRUE);
+            return response.withBody(new byte[0]);
+        }
+
+        if (offset == 0 && length == file.length()) {
+            return response.withBody(file);
+        }
+        return response.withBody(read(file, offset, (int) length)); // a range, see: MAX_RANGE_IN_MEMORY
+    }
+
+    private static boolean isZeroCopy(MicroContext context) {
+        HttpServletRequest request = context.getRequest();
+        return request != null && request.getAttribute(ZERO_COPY) != null;
+    }
+
+    private static byte[] read(File file, long offset, int length) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(new byte[length]);
+            FileChannel channel = in.getChannel();
+            while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) >= 0) {
+                // positional reads, until the range is complete
+            }
+            return buffer.array();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static boolean isNotModified(MicroContext context, String etag, long lastModified) {
+        String ifNoneMatch = OutputCache.header(context, CachedOutput.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.equals("*") || tag.equals(etag) || (tag.startsWith("W/") && tag.substring(2).equals(etag))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        String ifModifiedSince = OutputCache.header(context, CachedOutput.IF_MODIFIED_SINCE);
+        if (ifModifiedSince != null) {
+            try {
+                return CachedOutput.httpDateFormat().parse(ifModifiedSince).getTime() >= lastModified;
+            } catch (ParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param range  the value of the Range header
+     * @param length the length of the file
+     * @return {first, last} for a single satisfiable range, an empty array if the header is ignored, the
+     *         invalid or the multiple ranges are answered with the whole file, or null if the range cannot
+     *         be satisfied
+     */
+    static long[] parseRange(String range, long length) {
+        String spec = range.trim();
+        if (!spec.startsWith(BYTES + "=") || spec.indexOf(',') >= 0) {
+            return new long[0];
+        }
+
+        spec = spec.substring(BYTES.length() + 1).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                if (end < start) {
+                    return new long[0];
+                }
+                end = Math.min(end, length - 1);
+            }
+            return start < length ? new long[]{start, end} : null;
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    /**
+     * @param context the current context
+     * @return the encodings of the precompressed siblings accepted by the client, comma separated, in the
+     *         order of preference, or an empty String
+     */
+    public static String acceptedEncodings(MicroContext context) {
+        StringBuilder accepted = new StringBuilder();
+        for (String[] encoding : ENCODINGS) {
+            if (accepts(context, encoding[0])) {
+                accepted.append(accepted.length() > 0 ? "," : "").append(encoding[0]);
+            }
+        }
+        return accepted.toString();
+    }
+
+    private static boolean accepts(MicroContext context, String encoding) {
+        String acceptEncoding = OutputCache.header(context, ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        for (String token : acceptEncoding.split(",")) {
+            String[] parts = token.trim().split(";");
+            if (parts[0].trim().toLowerCase(Locale.ENGLISH).equals(encoding)) {
+                for (int i = 1; i < parts.length; i++) {
+                    String param = parts[i].trim();
+                    if (param.startsWith("q=")) {
+                        try {
+                            return Double.parseDouble(param.substring(2)) > 0;
+                        } catch (NumberFormatException e) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A stream able to write a {@link ByteBuffer} without copying it, implemented by the streams wrapping the
+     * output stream of the container.
+     */
+    public interface BufferOutput {
+
+        /**
+         * @param buffer the bytes written, from its position to its limit
+         * @throws IOException if the stream cannot be written
+         */
+        public void write(ByteBuffer buffer) throws IOException;
+    }
+
+    /**
+     * A part of a file, sent out after the response headers. Written to Jetty's output stream, or to a
+     * {@link BufferOutput}, the file is mapped in memory, 4 MB at a time, and the mapped
+     * buffers are written to the connection by the container, the file content is not copied on the heap.
+     * Other streams are written with {@link FileChannel#transferTo}, copying the file through a heap buffer,
+     * like a {@link File} body.
+     */
+    public static class FileRegion {
+        private final File file;
+        private final long offset;
+        private final long length;
+
+        public FileRegion(File file, long offset, long length) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * @param out the stream the region is sent to
+         * @return the number of bytes sent
+         * @throws IOException if the file cannot be read or the stream cannot be written
+         */
+        public long transferTo(OutputStream out) throws IOException {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                FileChannel channel = in.getChannel();
+                boolean mapped = out instanceof BufferOutput || out instanceof HttpOutput;
+                WritableByteChannel target = mapped ? null : Channels.newChannel(out);
+                long position = offset;
+                long remaining = length;
+                while (remaining > 0) {
+                    long sent;
+                    if (mapped) {
+                        sent = Math.min(remaining, Math.min(MAPPED_CHUNK, channel.size() - position));
+                        if (sent <= 0) {
+                            break;
+                        }
+                        write(out, channel.map(FileChannel.MapMode.READ_ONLY, position, sent));
+                    } else {
+                        sent = channel.transferTo(position, remaining, target);
+                        if (sent <= 0) {
+                            break;
+                        }
+                    }
+                    position += sent;
+                    remaining -= sent;
+                }
+                return length - remaining;
+            } finally {
+                in.close();
+            }
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+    }
+}
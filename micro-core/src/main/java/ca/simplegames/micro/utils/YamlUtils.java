@@ -0,0 +1,62 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.utils;
+
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Loads the YAML configuration files. A {@link Yaml} instance is expensive to build and it is not thread
+ * safe, so every thread reuses its own.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-19 3:40 AM)
+ */
+public abstract class YamlUtils {
+    private static final ThreadLocal<Yaml> yaml = new ThreadLocal<Yaml>() {
+        @Override
+        protected Yaml initialValue() {
+            return new Yaml();
+        }
+    };
+
+    /**
+     * @param file a YAML file
+     * @return the content of the file: a Map, a List, etc., or null if the file is empty
+     * @throws IOException if the file cannot be read
+     */
+    public static Object load(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return load(in);
+        } finally {
+            IO.close(in);
+        }
+    }
+
+    /**
+     * @param in a YAML stream; not closed
+     * @return the content of the stream, or null if it is empty
+     */
+    public static Object load(InputStream in) {
+        return yaml.get().load(in);
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro.viewers;
+
+import ca.simplegames.micro.repositories.Repository;
+
+/**
+ * A {@link ViewRenderer} able to compile a template, or to prepare a document, before it is rendered the
+ * first time. Used by the warm-up, see: {@link ca.simplegames.micro.WarmUp}.
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-19 4:20 AM)
+ */
+public interface TemplatePrecompiler {
+
+  /**
+   * compile a template and keep it for the next renderings
+   *
+   * @param path       the path to the template, as rendered
+   * @param repository the repository containing the template
+   * @return true if the template was compiled and kept, false if the renderer is not keeping its templates
+   * @throws Exception if the template cannot be loaded or compiled
+   */
+  public boolean precompile(String path, Repository repository) throws Exception;
+}
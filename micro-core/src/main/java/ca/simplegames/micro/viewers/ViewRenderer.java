@@ -37,8 +37,8 @@ public interface ViewRenderer {
    * @param path       The path to the template
    * @param repository the repository used for extracting the resource specified by path
    * @param context    The RequestContext
-   * @param out        The Writer to write the rendered view
-   * @return the number of bytes rendered
+   * @param out        The Writer to write the rendered view; it is not closed by the renderer
+   * @return the number of characters rendered, or -1 if the renderer is not counting them
    * @throws ViewException
    */
 
@@ -21,8 +21,8 @@ import ca.simplegames.micro.MicroContext;
 import ca.simplegames.micro.RedirectException;
 import ca.simplegames.micro.SiteContext;
 import ca.simplegames.micro.repositories.Repository;
-import ca.simplegames.micro.utils.IO;
 import ca.simplegames.micro.utils.StringUtils;
+import ca.simplegames.micro.viewers.TemplatePrecompiler;
 import ca.simplegames.micro.viewers.ViewException;
 import ca.simplegames.micro.viewers.ViewRenderer;
 import freemarker.template.Configuration;
@@ -34,6 +34,8 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * View renderer using Freemarker for views
@@ -41,14 +43,28 @@ import java.util.Map;
  * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
  * @since $Revision$ (created: 2013-01-13 1:48 PM)
  */
-public class FreemarkerViewRenderer implements ViewRenderer {
+public class FreemarkerViewRenderer implements ViewRenderer, TemplatePrecompiler {
   private static final Logger log = LoggerFactory.getLogger(FreemarkerViewRenderer.class);
   private static final String ADHOC = "adhoc"; // a reusable Template generic template name, for internal use
+  public static final String TEMPLATE_UPDATE_DELAY = "template_update_delay";
   protected String name = "freemarker";
   private Version fmVersion = Configuration.VERSION_2_3_21;
 
+  // one long lived Configuration per repository, caching the compiled templates
+  private final ConcurrentMap<String, Configuration> configurations = new ConcurrentHashMap<String, Configuration>();
+  private final Configuration adhocConfiguration = new Configuration(fmVersion);
+  private Integer templateUpdateDelay;
+
+  /**
+   * the compiled templates are reused forever in production, while in the other environments they are
+   * checked for modifications on every request. The delay between these checks can be specified
+   * in seconds, using the <code>template_update_delay</code> option.
+   */
   @Override
   public void loadConfiguration(SiteContext site, Map<String, Object> configuration) throws Exception {
+    if (configuration != null && configuration.get(TEMPLATE_UPDATE_DELAY) != null) {
+      templateUpdateDelay = Integer.parseInt(configuration.get(TEMPLATE_UPDATE_DELAY).toString().trim());
+    }
   }
 
   @Override
@@ -56,20 +72,11 @@ public class FreemarkerViewRenderer implements ViewRenderer {
       throws FileNotFoundException, ViewException {
 
     try {
-
-      // todo: get the FM config version from the micro-config.yml config file
-      Configuration fmConfig = new Configuration(fmVersion);
-      fmConfig.setTemplateLoader(new MicroTemplateLoader(repository));
-      fmConfig.setLocalizedLookup(false);
-      fmConfig.setWhitespaceStripping(context.getSiteContext().isProduction());
-      // NOT! fmConfig.setClassForTemplateLoading(Micro.class, Globals.EMPTY_STRING);
-
-      StringWriter writer = new StringWriter();
-
-      Template template = fmConfig.getTemplate(path, Globals.UTF8);
+      Template template = getConfiguration(repository).getTemplate(path, Globals.UTF8);
       template.process(context, out);
+      out.flush();
 
-      return IO.copy(new StringReader(writer.toString()), out);
+      return -1; // the content is processed straight into the given Writer
 
     } catch (TemplateException e) {
       throw new ViewException(e.getMessage());
@@ -84,14 +91,50 @@ public class FreemarkerViewRenderer implements ViewRenderer {
     }
   }
 
+  public boolean precompile(String path, Repository repository) throws Exception {
+    getConfiguration(repository).getTemplate(path, Globals.UTF8);
+    return true;
+  }
+
+  /**
+   * @param repository the repository containing the templates
+   * @return the Configuration used for the templates of the given repository
+   */
+  public Configuration getConfiguration(Repository repository) {
+    Configuration fmConfig = configurations.get(repository.getName());
+
+    if (fmConfig == null) {
+      // todo: get the FM config version from the micro-config.yml config file
+      fmConfig = new Configuration(fmVersion);
+      fmConfig.setTemplateLoader(new MicroTemplateLoader(repository));
+      fmConfig.setDefaultEncoding(Globals.UTF8);
+      fmConfig.setLocalizedLookup(false);
+      fmConfig.setWhitespaceStripping(repository.getSite().isProduction());
+      // NOT! fmConfig.setClassForTemplateLoading(Micro.class, Globals.EMPTY_STRING);
+
+      if (templateUpdateDelay != null) {
+        fmConfig.setTemplateUpdateDelay(templateUpdateDelay);
+      } else {
+        // with the hot reload, the template modification times are kept by the repository until changed
+        fmConfig.setTemplateUpdateDelay(repository.getSite().isProduction() && !repository.isWatched() ?
+            Integer.MAX_VALUE : 0);
+      }
+
+      Configuration existing = configurations.putIfAbsent(repository.getName(), fmConfig);
+      if (existing != null) {
+        fmConfig = existing;
+      }
+    }
+    return fmConfig;
+  }
+
   @Override
   public String evaluate(MicroContext context, String text) throws ViewException {
-    Configuration fmConfig = new Configuration(fmVersion);
     try {
       StringWriter writer = new StringWriter();
-      Template template = new Template(ADHOC, text, fmConfig);
+      Template template = new Template(ADHOC, text, adhocConfiguration);
       template.process(context, writer);
-      return IO.getString(new StringReader(writer.toString()));
+      return writer.toString();
     } catch (Exception e) {
       e.printStackTrace();
       throw new ViewException(e.getMessage());
@@ -16,15 +16,13 @@
 
 package ca.simplegames.micro.viewers.freemarker;
 
+import ca.simplegames.micro.Globals;
 import ca.simplegames.micro.repositories.Repository;
 import freemarker.cache.TemplateLoader;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.StringReader;
-import java.io.UnsupportedEncodingException;
 
 /**
  * Freemarker ... I don't love you and your template caching ... is not the best. This class is because
@@ -36,20 +34,19 @@ import java.io.UnsupportedEncodingException;
  * @since $Revision$ (created: 2013-01-13 6:06 PM)
  */
 public class MicroTemplateLoader implements TemplateLoader {
-    private static final Logger log = LoggerFactory.getLogger(MicroTemplateLoader.class);
     Repository repository;
 
     public MicroTemplateLoader(Repository repository) {
         this.repository = repository;
     }
 
+    /**
+     * @param name the template name
+     * @return the template name if there is such a template in the repository, or null
+     */
     @Override
     public Object findTemplateSource(String name) throws IOException {
-        try {
-            return repository.read(name);
-        } catch (Exception e) {
-            throw new IOException(e);
-        }
+        return repository.pathToFile(name).exists() ? name : null;
     }
 
     @Override
@@ -57,25 +54,25 @@ public class MicroTemplateLoader implements TemplateLoader {
         return repository.getLastModified((String) templateSource);
     }
 
+    /**
+     * the raw content is read by the repository, using its own cache, and it is decoded once, here, with
+     * the given encoding; UTF-8 by default, see: {@link FreemarkerViewRenderer}
+     */
     @Override
     public Reader getReader(Object templateSource, String encoding) throws IOException {
-        StringReader stringReader = new StringReader((String) templateSource);
-
-        if (encoding != null) {
-            try {
-                stringReader = new StringReader(new String(((String) templateSource).getBytes(), encoding));
-            } catch (UnsupportedEncodingException e) {
-                log.warn("Unsupported encoding " + encoding + "; using default encoding");
-            }
+        try {
+            repository.templateCompiled(); // Freemarker is reading a template only for compiling it
+            return new InputStreamReader(repository.readContent((String) templateSource).getInputStream(),
+                    encoding != null ? encoding : Globals.UTF8);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
         }
-
-        return stringReader;
-
     }
 
     @Override
     public void closeTemplateSource(Object templateSource) throws IOException {
-        // not needed, we're using the StringReader
-        // example: http://stackoverflow.com/questions/6122013/should-i-close-a-stringreader
+        // not needed, the readers are reading the content kept by the repository
     }
 }
@@ -4,46 +4,62 @@ import ca.simplegames.micro.MicroContext;
 import ca.simplegames.micro.RedirectException;
 import ca.simplegames.micro.SiteContext;
 import ca.simplegames.micro.repositories.Repository;
-import ca.simplegames.micro.utils.IO;
+import ca.simplegames.micro.utils.StringUtils;
+import ca.simplegames.micro.viewers.TemplatePrecompiler;
 import ca.simplegames.micro.viewers.ViewException;
 import ca.simplegames.micro.viewers.ViewRenderer;
 import org.pegdown.PegDownProcessor;
 
+import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.StringReader;
 import java.io.Writer;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Support for rendering Markdown documents
+ * <p/>
+ * The PEG processor is not thread safe, every thread is using its own processor. The HTML rendered
+ * from a Markdown document is cached and reused until the document is modified; the cache can be
+ * disabled with the <code>cache_html: false</code> option.
  *
  * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
  * @since $Revision$ (created: 2012-12-30 7:19 PM)
  */
-public class MarkupViewRenderer implements ViewRenderer {
-    PegDownProcessor pegDownProcessor = new PegDownProcessor();
+public class MarkupViewRenderer implements ViewRenderer, TemplatePrecompiler {
+    public static final String CACHE_HTML = "cache_html";
+
+    private final ThreadLocal<PegDownProcessor> pegDownProcessor = new ThreadLocal<PegDownProcessor>() {
+        @Override
+        protected PegDownProcessor initialValue() {
+            return new PegDownProcessor();
+        }
+    };
+
+    // the rendered HTML, by the absolute path of the Markdown document
+    private final ConcurrentMap<String, RenderedHtml> htmlCache = new ConcurrentHashMap<String, RenderedHtml>();
+    private boolean cacheHtml = true;
     protected String name = "markdown";
 
     /**
-     * this Viewer requires synchronization, otherwise the PEG processor is spitting errors under stress
-     *
      * @param path       The path to the template
      * @param repository the repository used for extracting the resource specified by path
      * @param context    The RequestContext (ignored in this implementation)
      * @param out        The Writer to write the rendered view
-     * @return
+     * @return the number of characters rendered
      * @throws FileNotFoundException
      * @throws ViewException
      */
-    public synchronized long render(String path, Repository repository, MicroContext context, Writer out)
+    public long render(String path, Repository repository, MicroContext context, Writer out)
             throws FileNotFoundException, ViewException {
 
         if (repository != null && out != null) {
             try {
 
-                String source = repository.read(path);
-                String html = pegDownProcessor.markdownToHtml(source);
-                return IO.copy(new StringReader(html), out);
+                String html = cacheHtml ? cachedHtml(path, repository) : toHtml(repository.read(path));
+                out.write(html);
+                return html.length();
 
             } catch (FileNotFoundException e) {
                 throw new FileNotFoundException(String.format("%s not found.", path));
@@ -55,18 +71,66 @@ public class MarkupViewRenderer implements ViewRenderer {
                 }
             }
         }
-        return 0;    }
+        return 0;
+    }
+
+    public boolean precompile(String path, Repository repository) throws Exception {
+        if (!cacheHtml) {
+            return false;
+        }
+        cachedHtml(path, repository);
+        return true;
+    }
+
+    /**
+     * the HTML of a Markdown document is rendered again only if the document was modified; its last modified
+     * time or its size changed
+     */
+    private String cachedHtml(String path, Repository repository) throws Exception {
+        File file = repository.pathToFile(path);
+        String key = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        RenderedHtml rendered = htmlCache.get(key);
+        if (rendered == null || rendered.lastModified != lastModified || rendered.length != length) {
+            rendered = new RenderedHtml(lastModified, length, toHtml(repository.read(path)));
+            if (lastModified != 0) { // 0, the file doesn't exist or it can't be accessed
+                htmlCache.put(key, rendered);
+            }
+        }
+        return rendered.html;
+    }
+
+    private String toHtml(String markdown) {
+        return pegDownProcessor.get().markdownToHtml(markdown);
+    }
 
     @Override
     public String evaluate(MicroContext context, String text) throws ViewException {
-        return pegDownProcessor.markdownToHtml(text);
+        return toHtml(text);
     }
 
     public void loadConfiguration(SiteContext site, Map<String, Object> configuration) throws Exception {
+        if (configuration != null) {
+            cacheHtml = StringUtils.defaultString(configuration.get(CACHE_HTML), "true").equalsIgnoreCase("true");
+        }
     }
 
     @Override
     public String getName() {
         return name;
     }
+
+    private static class RenderedHtml {
+        final long lastModified;
+        final long length;
+        final String html;
+
+        RenderedHtml(long lastModified, long length, String html) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.html = html;
+        }
+    }
 }
@@ -91,7 +91,11 @@ public class MicroResourceLoader extends ResourceLoader {
 
         try {
             File file =  new File(name);
-            return new BufferedInputStream(new FileInputStream(file));
+            InputStream in = new BufferedInputStream(new FileInputStream(file));
+            if (repository != null) {
+                repository.templateCompiled(); // Velocity is reading a template only for parsing it
+            }
+            return in;
         } catch (Exception e) {
             throw new ResourceNotFoundException(name);
         }
@@ -122,7 +126,8 @@ public class MicroResourceLoader extends ResourceLoader {
 
         try {
             File file =  new File(resource.getName());
-            return file.lastModified();
+            // the repository remembers the modification times until the files are changed, if watched
+            return repository != null ? repository.getLastModified(file) : file.lastModified();
         } catch (Exception e) {
             e.printStackTrace();
             return -1;
@@ -25,6 +25,7 @@ import ca.simplegames.micro.repositories.Repository;
 import ca.simplegames.micro.utils.IO;
 import ca.simplegames.micro.utils.ResourceUtils;
 import ca.simplegames.micro.utils.StringUtils;
+import ca.simplegames.micro.viewers.TemplatePrecompiler;
 import ca.simplegames.micro.viewers.ViewException;
 import ca.simplegames.micro.viewers.ViewRenderer;
 import org.apache.commons.collections.ExtendedProperties;
@@ -52,7 +53,7 @@ import java.util.Properties;
  * @since 2.0
  */
 @SuppressWarnings("unchecked")
-public class VelocityViewRenderer implements ViewRenderer, LogChute {
+public class VelocityViewRenderer implements ViewRenderer, TemplatePrecompiler, LogChute {
   private static final Logger log = LoggerFactory.getLogger(VelocityViewRenderer.class);
   private static final String DEFAULT_PROPERTIES_PATH = "WEB-INF/classes/velocity.properties";
 
@@ -128,7 +129,7 @@ public class VelocityViewRenderer implements ViewRenderer, LogChute {
     try {
       StringWriter writer = new StringWriter();
       velocityEngine.evaluate(new VelocityViewContext(context), writer, "eval", text);
-      return IO.getString(new StringReader(writer.toString()));
+      return writer.toString();
     } catch (Exception e) {
       e.printStackTrace();
       throw new ViewException(e.getMessage());
@@ -138,13 +139,13 @@ public class VelocityViewRenderer implements ViewRenderer, LogChute {
   public long render(String path, Repository repository, MicroContext context, Writer out)
       throws FileNotFoundException, ViewException, ControllerException {
 
-    StringWriter writer = new StringWriter();
     VelocityViewContext viewContext = new VelocityViewContext(context);
 
     try {
-      velocityEngine.mergeTemplate(repository.getPath() + File.separator + path, Globals.UTF8, viewContext, writer);
+      velocityEngine.mergeTemplate(resourceName(path, repository), Globals.UTF8, viewContext, out);
       //Velocity.evaluate(viewContext, writer, path, repository.read(path));
-      return IO.copy(new StringReader(writer.toString()), out); // doing this just to compute the size of the result :(
+      out.flush();
+      return -1; // the content is merged straight into the given Writer
     } catch (ResourceNotFoundException e) {
       throw new FileNotFoundException(String.format("%s not found.", path));
 
@@ -162,6 +163,23 @@ public class VelocityViewRenderer implements ViewRenderer, LogChute {
     }
   }
 
+  public boolean precompile(String path, Repository repository) throws Exception {
+    if (!resourceCacheEnabled) {
+      return false;
+    }
+    velocityEngine.getTemplate(resourceName(path, repository), Globals.UTF8);
+    return true;
+  }
+
+  // the name of a template in the Velocity cache; the same for "/index.html" and "index.html"
+  private static String resourceName(String path, Repository repository) {
+    int start = 0;
+    while (start < path.length() && (path.charAt(start) == '/' || path.charAt(start) == File.separatorChar)) {
+      start++;
+    }
+    return repository.getPath() + File.separator + path.substring(start);
+  }
+
   /**
    * load an initial set of Velocity properties
    *
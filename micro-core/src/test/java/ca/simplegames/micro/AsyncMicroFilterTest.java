@@ -0,0 +1,291 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro;
+
+import org.jrack.RackFilter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * the requests served asynchronously: timed out, failed or rejected, a request is answered and completed
+ * once, and the response is no longer written by the thread serving it
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-19 2:30 PM)
+ */
+public class AsyncMicroFilterTest {
+  private final CountDownLatch started = new CountDownLatch(1);
+  private final CountDownLatch finished = new CountDownLatch(1);
+  private final CountDownLatch release = new CountDownLatch(1);
+  private AsyncMicroFilter filter;
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    if (filter != null) {
+      filter.destroy();
+    }
+  }
+
+  /**
+   * a request timing out is answered with a 503 and completed once; the late writes are dropped
+   */
+  @Test
+  public void testTimeout() throws Exception {
+    filter = slowFilter();
+    TestAsyncContext asyncContext = new TestAsyncContext();
+    filter.doFilter(asyncContext.request, asyncContext.response, null);
+    Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    asyncContext.timeout();
+    Assert.assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, asyncContext.status);
+    Assert.assertEquals(1, asyncContext.completed.get());
+
+    Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+    Assert.assertEquals("The late writes must be dropped", 0, asyncContext.body.size());
+    Assert.assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, asyncContext.status);
+    Assert.assertEquals("The request must be completed once", 1, asyncContext.completed.get());
+  }
+
+  /**
+   * a request failing in the container is completed, once; the late writes are dropped
+   */
+  @Test
+  public void testError() throws Exception {
+    filter = slowFilter();
+    TestAsyncContext asyncContext = new TestAsyncContext();
+    filter.doFilter(asyncContext.request, asyncContext.response, null);
+    Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    asyncContext.error();
+    Assert.assertEquals("The request must be completed on error", 1, asyncContext.completed.get());
+
+    Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+    Assert.assertEquals("The late writes must be dropped", 0, asyncContext.body.size());
+    Assert.assertEquals(1, asyncContext.completed.get());
+  }
+
+  /**
+   * the requests exceeding the threads and the queue are answered with a 503
+   */
+  @Test
+  public void testQueueFull() throws Exception {
+    filter = slowFilter();
+    TestAsyncContext serving = new TestAsyncContext();
+    filter.doFilter(serving.request, serving.response, null);
+    Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+    TestAsyncContext queued = new TestAsyncContext();
+    filter.doFilter(queued.request, queued.response, null);
+
+    TestAsyncContext rejected = new TestAsyncContext();
+    filter.doFilter(rejected.request, rejected.response, null);
+    Assert.assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, rejected.status);
+    Assert.assertEquals(1, rejected.completed.get());
+    Assert.assertEquals(0, queued.completed.get());
+  }
+
+  /**
+   * @return a filter with one thread and a queue of one request, serving the requests slowly: a request
+   *         waits to be released or interrupted, then it writes its response
+   */
+  private AsyncMicroFilter slowFilter() throws Exception {
+    AsyncMicroFilter asyncFilter = new AsyncMicroFilter(new RackFilter() {
+      @Override
+      public void init(FilterConfig config) {
+      }
+
+      @Override
+      public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+          throws IOException {
+        started.countDown();
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) {
+          // the request was canceled
+        }
+        response.getOutputStream().write("late".getBytes());
+        ((HttpServletResponse) response).setStatus(HttpServletResponse.SC_OK);
+        finished.countDown();
+      }
+    });
+
+    final Map<String, String> parameters = new HashMap<String, String>();
+    parameters.put(AsyncMicroFilter.ASYNC_TIMEOUT, "60000");
+    parameters.put(AsyncMicroFilter.ASYNC_THREADS, "1");
+    parameters.put(AsyncMicroFilter.ASYNC_QUEUE, "1");
+    asyncFilter.init((FilterConfig) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class[]{FilterConfig.class}, new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            return method.getName().equals("getInitParameter") ? parameters.get(args[0]) : null;
+          }
+        }));
+    return asyncFilter;
+  }
+
+  /**
+   * an AsyncContext recording the completions, with a request and a response recording the status and
+   * the body
+   */
+  private static class TestAsyncContext implements AsyncContext {
+    final AtomicInteger completed = new AtomicInteger();
+    final List<AsyncListener> listeners = new ArrayList<AsyncListener>();
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    volatile int status = HttpServletResponse.SC_OK;
+    final HttpServletRequest request;
+    final HttpServletResponse response;
+
+    TestAsyncContext() {
+      final Map<Object, Object> attributes = new ConcurrentHashMap<Object, Object>();
+      request = (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+          new Class[]{HttpServletRequest.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+              String name = method.getName();
+              if (name.equals("startAsync")) {
+                return TestAsyncContext.this;
+              } else if (name.equals("isAsyncSupported")) {
+                return true;
+              } else if (name.equals("getDispatcherType")) {
+                return DispatcherType.REQUEST;
+              } else if (name.equals("getAttribute")) {
+                return attributes.get(args[0]);
+              } else if (name.equals("setAttribute")) {
+                attributes.put(args[0], args[1]);
+              } else if (name.equals("removeAttribute")) {
+                attributes.remove(args[0]);
+              }
+              return null;
+            }
+          });
+
+      final ServletOutputStream out = new ServletOutputStream() {
+        public void write(int b) {
+          synchronized (body) {
+            body.write(b);
+          }
+        }
+
+        public boolean isReady() {
+          return true;
+        }
+
+        public void setWriteListener(WriteListener writeListener) {
+        }
+      };
+      response = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+          new Class[]{HttpServletResponse.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+              String name = method.getName();
+              if (name.equals("getOutputStream")) {
+                return out;
+              } else if (name.equals("sendError") || name.equals("setStatus")) {
+                status = (Integer) args[0];
+              } else if (name.equals("isCommitted")) {
+                return false;
+              }
+              return null;
+            }
+          });
+    }
+
+    void timeout() throws IOException {
+      for (AsyncListener listener : listeners) {
+        listener.onTimeout(null);
+      }
+    }
+
+    void error() throws IOException {
+      for (AsyncListener listener : listeners) {
+        listener.onError(null);
+      }
+    }
+
+    public ServletRequest getRequest() {
+      return request;
+    }
+
+    public ServletResponse getResponse() {
+      return response;
+    }
+
+    public boolean hasOriginalRequestAndResponse() {
+      return true;
+    }
+
+    public void dispatch() {
+    }
+
+    public void dispatch(String path) {
+    }
+
+    public void dispatch(ServletContext context, String path) {
+    }
+
+    public void complete() {
+      completed.incrementAndGet();
+    }
+
+    public void start(Runnable run) {
+      run.run();
+    }
+
+    public void addListener(AsyncListener listener) {
+      listeners.add(listener);
+    }
+
+    public void addListener(AsyncListener listener, ServletRequest servletRequest, ServletResponse servletResponse) {
+      listeners.add(listener);
+    }
+
+    public <T extends AsyncListener> T createListener(Class<T> clazz) {
+      return null;
+    }
+
+    public void setTimeout(long timeout) {
+    }
+
+    public long getTimeout() {
+      return 0;
+    }
+  }
+}
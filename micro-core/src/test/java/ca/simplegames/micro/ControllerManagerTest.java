@@ -16,15 +16,24 @@
 
 package ca.simplegames.micro;
 
+import ca.simplegames.micro.controllers.BSFEnginePool;
+import ca.simplegames.micro.controllers.CompiledScriptController;
 import ca.simplegames.micro.controllers.ControllerException;
 import ca.simplegames.micro.controllers.ControllerManager;
 import ca.simplegames.micro.controllers.ControllerNotFoundException;
+import ca.simplegames.micro.controllers.ControllerRegistry;
+import ca.simplegames.micro.controllers.ControllerWrapper;
 import junit.framework.Assert;
 import org.jrack.Context;
 import org.jrack.Rack;
 import org.jrack.context.MapContext;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * testing various aspects of the ControllerManager
  *
@@ -65,4 +74,100 @@ public class ControllerManagerTest {
     ControllerManager cm = micro.getSite().getControllerManager();
     cm.execute("DivideByZero.bsh", new MicroContext<String>());
   }
+
+  /**
+   * the script controllers reuse the pooled engines, with the beans of their own execution
+   */
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testPooledScriptEngines() throws Exception {
+    ControllerManager cm = micro.getSite().getControllerManager();
+    BSFEnginePool pool = micro.getSite().getBSFEnginePool();
+    Assert.assertNotNull("The BSF engines pool was not properly initialized.", pool);
+
+    for (String foo : new String[]{"bar", "baz"}) {
+      MicroContext<String> context = new MicroContext<String>();
+      context.with(Globals.SITE, micro.getSite());
+      cm.execute("Foo.bsh", context, Collections.singletonMap("foo", foo));
+      Assert.assertEquals(foo, context.get("foo"));
+    }
+
+    Map<String, Object> statistics = (Map<String, Object>) pool.getStatistics().get("beanshell");
+    Assert.assertTrue("The engines must be reused", (Long) statistics.get("reused") > 0);
+    Assert.assertEquals(0, statistics.get("in_use"));
+
+    MicroContext<String> context = new MicroContext<String>();
+    context.with(Globals.SITE, micro.getSite());
+    try {
+      cm.execute("Foo.bsh", context, null);
+      Assert.fail("The configuration of a previous execution must not be visible");
+    } catch (ControllerException e) {
+      Assert.assertNull(context.get("foo"));
+    }
+  }
+
+  /**
+   * the scripts having a compiling JSR-223 engine are compiled once, and again if they are modified
+   */
+  @Test
+  public void testCompiledScriptController() throws Exception {
+    ControllerManager cm = micro.getSite().getControllerManager();
+    Assert.assertTrue(cm.findController("Compiled.groovy") instanceof CompiledScriptController);
+    Assert.assertSame(cm.findController("Compiled.groovy"), cm.findController("Compiled.groovy"));
+
+    for (String foo : new String[]{"bar", "baz"}) {
+      MicroContext<String> context = new MicroContext<String>();
+      cm.execute("Compiled.groovy", context, Collections.singletonMap("foo", foo));
+      Assert.assertEquals("compiled: " + foo, context.get("compiled"));
+    }
+
+    File script = File.createTempFile("Modified", ".groovy");
+    script.deleteOnExit();
+    writeScript(script, "context.put('version', 1)", 0);
+
+    MicroContext<String> context = new MicroContext<String>();
+    cm.execute(script.getAbsolutePath(), context);
+    Assert.assertEquals(1, context.get("version"));
+
+    writeScript(script, "context.put('version', 2)", script.lastModified() + 2000);
+    cm.execute(script.getAbsolutePath(), context);
+    Assert.assertEquals("The modified script must be compiled again", 2, context.get("version"));
+  }
+
+  /**
+   * the Java controllers are resolved once; the names of the scripts are remembered as missing classes
+   */
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testControllerRegistry() throws Exception {
+    ControllerManager cm = micro.getSite().getControllerManager();
+    ControllerRegistry registry = cm.getRegistry();
+    String name = TestController.class.getName();
+
+    Controller controller = cm.findController(name);
+    Assert.assertTrue(controller instanceof TestController);
+    Assert.assertNotSame("A new controller is expected for every lookup", controller, cm.findController(name));
+
+    MicroContext<String> context = new MicroContext<String>();
+    cm.execute(name, context);
+    Assert.assertEquals(name, context.get("class"));
+
+    Assert.assertNull(registry.newInstance("Foo.bsh", Controller.class));
+    long missing = (Long) registry.getStatistics().get("missing");
+    Assert.assertNull(registry.newInstance("Foo.bsh", Controller.class));
+    Assert.assertEquals("The missing classes must be looked up once", missing, registry.getStatistics().get("missing"));
+    Assert.assertNull("Not a controller wrapper", registry.newInstance(name, ControllerWrapper.class));
+  }
+
+  private static void writeScript(File file, String script, long lastModified) throws Exception {
+    FileWriter writer = new FileWriter(file);
+    try {
+      writer.write(script);
+    } finally {
+      writer.close();
+    }
+    if (lastModified > 0) {
+      file.setLastModified(lastModified);
+    }
+  }
 }
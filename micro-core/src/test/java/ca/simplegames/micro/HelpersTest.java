@@ -17,9 +17,18 @@
 package ca.simplegames.micro;
 
 import ca.simplegames.micro.helpers.HelloHelper;
+import ca.simplegames.micro.helpers.HelperWrapper;
 import ca.simplegames.micro.utils.Assert;
+import org.jrack.Context;
+import org.jrack.Rack;
+import org.jrack.RackResponse;
+import org.jrack.context.MapContext;
 import org.junit.Test;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
  * @since $Revision$ (created: 2013-01-17 8:44 PM)
@@ -35,4 +44,36 @@ public class HelpersTest {
         Assert.isTrue(helper.getName().equals("Huston"));
         Assert.isTrue(helper.getHello("Mona").equals("Hello Mona!"));
     }
+
+    /**
+     * the helpers are created only when used by a request and the stateless ones are shared
+     */
+    @Test
+    public void testLazyHelpers() throws Exception {
+        HelperWrapper hello = micro.getSite().getHelperManager().findHelper("hello");
+        long instances = hello.getInstanceCount();
+
+        Context<String> input = new MapContext<String>()
+                .with(Rack.REQUEST_METHOD, "GET")
+                .with(Rack.PATH_INFO, "/index.html");
+        RackResponse response = micro.call(input);
+        Assert.isTrue(RackResponse.getBodyAsString(response).contains("Hello"));
+        Assert.isTrue(hello.getInstanceCount() == instances, "a page not using a helper must not create it");
+
+        MicroContext<String> requestContext = new MicroContext<String>();
+        requestContext.with("hello", hello);
+        Object helper = requestContext.get("hello");
+        Assert.isTrue(helper instanceof HelloHelper);
+        Assert.isTrue(requestContext.get("hello") == helper, "a helper is created once per request");
+        Assert.isTrue(hello.getInstanceCount() == instances + 1);
+
+        Map<String, Object> configuration = new HashMap<String, Object>();
+        configuration.put("class", HelloHelper.class.getName());
+        configuration.put(HelperWrapper.STATELESS, true);
+        configuration.put("options", Collections.singletonMap("name", "Huston"));
+        HelperWrapper stateless = new HelperWrapper("stateless", configuration);
+        Assert.isTrue(stateless.getInstance(new MicroContext<String>()) ==
+                stateless.getInstance(new MicroContext<String>()), "the stateless helpers must be shared");
+        Assert.isTrue(stateless.getInstanceCount() == 1);
+    }
 }
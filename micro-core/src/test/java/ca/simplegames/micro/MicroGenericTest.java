@@ -16,6 +16,13 @@
 
 package ca.simplegames.micro;
 
+import ca.simplegames.micro.cache.CachedOutput;
+import ca.simplegames.micro.cache.LruCache;
+import ca.simplegames.micro.cache.MicroCache;
+import ca.simplegames.micro.cache.OutputCache;
+import ca.simplegames.micro.utils.ByteSink;
+import ca.simplegames.micro.utils.RequestParams;
+import ca.simplegames.micro.utils.SlotMap;
 import ca.simplegames.micro.viewers.ViewRenderer;
 import org.apache.bsf.BSFEngine;
 import org.jrack.Context;
@@ -26,9 +33,22 @@ import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.net.URLEncoder;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Micro Tester.
@@ -290,4 +310,432 @@ public class MicroGenericTest {
     Assert.assertTrue("Can't execute Java class",
         ((String) context.get("class")).equalsIgnoreCase(canonicalName));
   }
+
+  /**
+   * if enabled, the request contexts are reused by the requests served by the same thread, and they are
+   * cleared when the request is completed
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testContextRecycling() throws Exception {
+    Context<String> input = new MapContext<String>()
+        .with(Rack.REQUEST_METHOD, "GET")
+        .with(Rack.PATH_INFO, "/index.html");
+
+    micro.call(input);
+    Object firstContext = input.getObject(Globals.CONTEXT);
+    micro.call(input);
+    Assert.assertNotSame("The contexts are not recycled by default", firstContext, input.getObject(Globals.CONTEXT));
+
+    micro.getSite().setContextRecycling(true);
+    try {
+      micro.call(input);
+      MicroContext context = (MicroContext) input.getObject(Globals.CONTEXT);
+      Assert.assertNull("The context must be cleared when the request is completed", context.get(Globals.SITE));
+      Assert.assertNull(context.getRackInput());
+
+      Context<String> nextInput = new MapContext<String>()
+          .with(Rack.REQUEST_METHOD, "GET")
+          .with(Rack.PATH_INFO, "/index.html");
+
+      RackResponse response = micro.call(nextInput);
+      Assert.assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+      Assert.assertSame("The context was not reused", context, nextInput.getObject(Globals.CONTEXT));
+      Assert.assertFalse(context.isHalt());
+    } finally {
+      micro.getSite().setContextRecycling(false);
+    }
+
+    SlotMap map = new SlotMap();
+    Map<String, Object> expected = new HashMap<String, Object>();
+    for (int i = 0; i < 100; i++) {
+      map.put("key" + i, i);
+      expected.put("key" + i, i);
+    }
+    map.put(Globals.SITE, micro.getSite());
+    expected.put(Globals.SITE, micro.getSite());
+    for (int i = 0; i < 100; i += 3) {
+      Assert.assertEquals(i, map.remove("key" + i));
+      expected.remove("key" + i);
+    }
+    Assert.assertEquals(expected, map);
+
+    for (Iterator<Map.Entry<String, Object>> it = map.entrySet().iterator(); it.hasNext(); ) {
+      if (it.next().getKey().endsWith("1")) {
+        it.remove();
+      }
+    }
+    Assert.assertNull(map.get("key1"));
+    Assert.assertEquals(2, map.get("key2"));
+
+    map.clear();
+    Assert.assertTrue(map.isEmpty());
+    Assert.assertNull(map.get(Globals.SITE));
+  }
+
+  /**
+   * the pages are rendered in a UTF-8 byte sink and the Content-Length is the number of bytes rendered
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testStreamingResponse() throws Exception {
+    Context<String> input = new MapContext<String>()
+        .with(Rack.REQUEST_METHOD, "GET")
+        .with(Rack.PATH_INFO, "/index.html");
+
+    RackResponse response = micro.call(input);
+    Assert.assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    Assert.assertEquals(String.valueOf(RackResponse.getBodyAsBytes(response).length),
+        response.getHeaders().get("Content-Length"));
+
+    String text = "Grüß Gott! Bună! \u20ac \ud83d\ude00";
+    ByteSink sink = ByteSink.acquire();
+    try {
+      sink.getWriter().write(text.substring(0, text.length() - 1));
+      sink.getWriter().write(text.charAt(text.length() - 1));
+      Assert.assertArrayEquals(text.getBytes(Globals.UTF8), sink.toByteArray());
+      Assert.assertEquals(text, sink.toString());
+    } finally {
+      sink.release();
+    }
+  }
+
+  /**
+   * the cached pages are sent out without rendering them again, and the conditional requests are
+   * answered with a 304 when the client has the page already
+   */
+  @Test
+  public void testOutputCache() throws Exception {
+    int renders = RenderCounterController.renders.get();
+    String page = "rendered: " + (renders + 1) + " time(s)";
+
+    RackResponse response = micro.call(cachedPageRequest("1"));
+    Assert.assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    Assert.assertTrue(RackResponse.getBodyAsString(response).contains(page));
+    String etag = response.getHeaders().get(CachedOutput.ETAG);
+    String lastModified = response.getHeaders().get(CachedOutput.LAST_MODIFIED);
+    Assert.assertNotNull("The cached pages must have an ETag", etag);
+    Assert.assertNotNull("The cached pages must have a Last-Modified date", lastModified);
+
+    response = micro.call(cachedPageRequest("1"));
+    Assert.assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    Assert.assertTrue("The page must be served from the cache", RackResponse.getBodyAsString(response).contains(page));
+    Assert.assertEquals(etag, response.getHeaders().get(CachedOutput.ETAG));
+    Assert.assertEquals(renders + 1, RenderCounterController.renders.get());
+    Assert.assertEquals("The response headers must be replayed", "public, max-age=60",
+        response.getHeaders().get("Cache-Control"));
+    Assert.assertEquals("The headers varying the page must be sent out", "Accept-Language",
+        response.getHeaders().get("Vary"));
+
+    response = micro.call(cachedPageRequest("1").with("HTTP_IF_NONE_MATCH", etag));
+    Assert.assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+    Assert.assertTrue(RackResponse.getBodyAsString(response).isEmpty());
+    Assert.assertEquals("public, max-age=60", response.getHeaders().get("Cache-Control"));
+
+    response = micro.call(cachedPageRequest("1").with("HTTP_IF_MODIFIED_SINCE", lastModified));
+    Assert.assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+
+    response = micro.call(cachedPageRequest("1").with("HTTP_IF_NONE_MATCH", "\"stale\""));
+    Assert.assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    Assert.assertEquals(renders + 1, RenderCounterController.renders.get());
+
+    // the page varies by params
+    response = micro.call(cachedPageRequest("2"));
+    Assert.assertTrue(RackResponse.getBodyAsString(response).contains("rendered: " + (renders + 2) + " time(s)"));
+
+    // the requests carrying credentials are neither served from the cache nor cached
+    response = micro.call(cachedPageRequest("1").with("HTTP_COOKIE", "JSESSIONID=secret"));
+    Assert.assertTrue("A request with cookies must not be served from the cache",
+        RackResponse.getBodyAsString(response).contains("rendered: " + (renders + 3) + " time(s)"));
+    response = micro.call(cachedPageRequest("3").with("HTTP_AUTHORIZATION", "Basic c2VjcmV0"));
+    Assert.assertTrue(RackResponse.getBodyAsString(response).contains("rendered: " + (renders + 4) + " time(s)"));
+    response = micro.call(cachedPageRequest("3"));
+    Assert.assertTrue("A private page must not be cached",
+        RackResponse.getBodyAsString(response).contains("rendered: " + (renders + 5) + " time(s)"));
+
+    // the method is part of the key
+    OutputCache outputCache = new OutputCache(new HashMap<String, Object>());
+    MicroContext<String> getContext = new MicroContext<String>();
+    getContext.with(Globals.RACK_INPUT, cachedPageRequest("1"));
+    MicroContext<String> headContext = new MicroContext<String>();
+    headContext.with(Globals.RACK_INPUT, cachedPageRequest("1").with(Rack.REQUEST_METHOD, "HEAD"));
+    String getKey = outputCache.key(getContext);
+    String headKey = outputCache.key(headContext);
+    Assert.assertNotNull(getKey);
+    Assert.assertFalse(getKey.equals(headKey));
+
+    // an encoded response is cached only by the encodings accepted
+    MicroCache pages = micro.getSite().getCacheManager().getCacheWithDefault(outputCache.getCacheName());
+    RackResponse encoded = new RackResponse(HttpServletResponse.SC_OK)
+        .withHeader("Content-Encoding", "gzip").withBody(new byte[]{1, 2, 3});
+    outputCache.put(micro.getSite(), getKey, encoded);
+    Assert.assertNull("A gzipped page must not be cached for any client",
+        pages.get(getKey));
+    Assert.assertEquals("Accept-Encoding", encoded.getHeaders().get("Vary"));
+
+    getContext.with(Globals.RACK_INPUT, cachedPageRequest("1").with("HTTP_ACCEPT_ENCODING", "gzip"));
+    String gzipKey = outputCache.key(getContext);
+    outputCache.put(micro.getSite(), gzipKey, encoded);
+    CachedOutput cached = (CachedOutput) pages.get(gzipKey);
+    Assert.assertEquals("gzip", cached.getHeaders().get("Content-Encoding"));
+    Assert.assertFalse(cached.getHeaders().containsKey("Content-Length"));
+    pages.remove(gzipKey);
+  }
+
+  private Context<String> cachedPageRequest(String page) {
+    return new MapContext<String>()
+        .with(Rack.REQUEST_METHOD, "GET")
+        .with(Rack.PATH_INFO, "/cached.html")
+        .with(Rack.PARAMS, Collections.singletonMap("page", page));
+  }
+
+  /**
+   * the bounded cache, used when Micro runs without a cache system
+   */
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testLruCache() throws Exception {
+    LruCache cache = new LruCache();
+    cache.addCache("lru_test");
+    cache.setCapacity(10);
+
+    for (int i = 0; i < 20; i++) {
+      final String value = "value" + i;
+      Assert.assertEquals(value, cache.get("key" + i, new Callable<Object>() {
+        public Object call() {
+          return value;
+        }
+      }));
+    }
+    Assert.assertEquals("The cache must be bounded", 10, cache.getSize());
+    Assert.assertNull("The least recently used elements must be evicted", cache.get("key0"));
+    Assert.assertEquals("value19", cache.get("key19"));
+
+    Map<String, Object> statistics = (Map<String, Object>) cache.getStatistics();
+    Assert.assertEquals(1L, statistics.get("hits"));
+    Assert.assertEquals(21L, statistics.get("misses"));
+    Assert.assertEquals(10L, statistics.get("evictions"));
+    Assert.assertEquals(20L, statistics.get("loads"));
+
+    cache.setFlushInterval(1);
+    Thread.sleep(1100);
+    Assert.assertNull("The elements older than the flush interval must expire", cache.get("key19"));
+    Assert.assertEquals(1L, ((Map<String, Object>) cache.getStatistics()).get("expirations"));
+
+    cache.configure(Collections.<String, Object>singletonMap(LruCache.WEIGHER, LruCache.BYTES));
+    cache.setCapacity(1024);
+    cache.put("small", new byte[100]);
+    cache.put("large", new byte[1000]);
+    Assert.assertNull("The elements must be weighed by their size", cache.get("small"));
+    Assert.assertNotNull(cache.get("large"));
+  }
+
+  /**
+   * the managers of the test app are loaded in parallel; the application script runs last
+   */
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testParallelStartup() throws Exception {
+    SiteContext site = micro.getSite();
+    Assert.assertTrue(site.getStartup().isParallel());
+    Assert.assertNotNull(site.getCacheManager());
+    Assert.assertNotNull(site.getRepositoryManager());
+    Assert.assertNotNull(site.getControllerManager());
+    Assert.assertNotNull(site.getRouteManager());
+    Assert.assertNotNull(site.getHelperManager());
+    Assert.assertSame(site.getCacheManager(), site.get(Globals.MICRO_CACHE_MANAGER));
+    Assert.assertSame(site.getRepositoryManager(), site.get(Globals.MICRO_REPOSITORY_MANAGER));
+
+    Map<String, Object> report = site.getStartup().getReport();
+    Map<String, Map<String, Object>> phases = (Map<String, Map<String, Object>>) report.get("phases");
+    Assert.assertEquals(Startup.PARALLEL, report.get("mode"));
+    Assert.assertTrue(phases.keySet().containsAll(Arrays.asList("config", "cache",
+        "template_engines", "repositories", "scripting", "controllers", "filters", "extensions", "helpers",
+        "routes", "application")));
+
+    double applicationStarted = (Double) phases.get("application").get("started");
+    for (Map.Entry<String, Map<String, Object>> phase : phases.entrySet()) {
+      if (!phase.getKey().equals("application")) {
+        Assert.assertTrue(phase.getKey() + " must be completed before the application script",
+            (Double) phase.getValue().get("started") + (Double) phase.getValue().get("duration")
+                <= applicationStarted + 0.001);
+      }
+    }
+  }
+
+  /**
+   * the params are resolved on demand, the route variables first, then the request parameters, the
+   * attributes and the session, touched only for the parameters not found elsewhere
+   */
+  @Test
+  public void testRequestParams() throws Exception {
+    final AtomicInteger sessionLookups = new AtomicInteger();
+    final HttpSession session = (HttpSession) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class[]{HttpSession.class}, new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("getAttribute")) {
+              return args[0].equals("user") ? "micro" : args[0].equals("id") ? "session" : null;
+            }
+            return method.getName().equals("getAttributeNames") ?
+                Collections.enumeration(Arrays.asList("user", "id")) : null;
+          }
+        });
+    HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class[]{HttpServletRequest.class}, new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("getParameterValues")) {
+              return args[0].equals("id") ? new String[]{"42"} :
+                  args[0].equals("tags") ? new String[]{"a", "b"} : null;
+            } else if (name.equals("getParameterNames")) {
+              return Collections.enumeration(Arrays.asList("id", "tags"));
+            } else if (name.equals("getAttributeNames")) {
+              return Collections.enumeration(Collections.emptyList());
+            } else if (name.equals("getSession")) {
+              sessionLookups.incrementAndGet();
+              return session;
+            }
+            return null;
+          }
+        });
+
+    Map<String, Object> params = new RequestParams(null, request);
+    Assert.assertFalse(params.isEmpty());
+    Assert.assertEquals("42", params.get("id"));
+    Assert.assertArrayEquals(new String[]{"a", "b"}, (String[]) params.get("tags"));
+    Assert.assertEquals("the session must not be touched by the request parameters", 0, sessionLookups.get());
+
+    Assert.assertEquals("micro", params.get("user"));
+    Assert.assertEquals("micro", params.get("user"));
+    Assert.assertEquals("the resolved parameters must be kept", 1, sessionLookups.get());
+
+    params.put("id", "route");
+    Assert.assertEquals("the route variables first", "route", params.get("id"));
+    params.remove("user");
+    Assert.assertNull(params.get("user"));
+    Assert.assertFalse(params.containsKey("user"));
+    Assert.assertEquals(2, params.size());
+    Assert.assertTrue(params.keySet().containsAll(Arrays.asList("id", "tags")));
+  }
+
+  /**
+   * the templates, views, routes, controllers and resource bundles are warmed up before the site is ready
+   */
+  @Test
+  public void testWarmUp() throws Exception {
+    SiteContext site = micro.getSite();
+    WarmUp warmUp = site.getWarmUp();
+    Assert.assertNotNull(warmUp);
+    Assert.assertTrue(warmUp.isDone());
+    Assert.assertTrue(site.isReady());
+    Assert.assertEquals(WarmUp.COMPLETED, warmUp.getState());
+    Assert.assertTrue("the Velocity templates must be compiled", warmUp.getTemplates() > 0);
+    Assert.assertTrue(warmUp.getViews() > 0);
+    Assert.assertEquals(site.getRouteManager().getRouteTable().size(), warmUp.getRoutes());
+    Assert.assertTrue(warmUp.getControllers() > 0);
+    Assert.assertTrue("the i18n bundles must be loaded", warmUp.getResources() > 0);
+
+    Context<String> input = new MapContext<String>()
+        .with(Rack.REQUEST_METHOD, "GET")
+        .with(Rack.PATH_INFO, "/system/ready");
+
+    RackResponse response = micro.call(input);
+    Assert.assertEquals(200, response.getStatus());
+    Assert.assertTrue(RackResponse.getBodyAsString(response).contains("\"ready\":true"));
+  }
+
+  /**
+   * the warm-up is stopped by its budget even if an item is hanging; the site is ready anyway
+   */
+  @Test
+  public void testWarmUpBudget() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    Extension hanging = new HangingExtension(release);
+    List<Extension> extensions = micro.getSite().getExtensionsManager().getExtensions();
+    extensions.add(hanging);
+    try {
+      WarmUp warmUp = new WarmUp(micro.getSite(), 0.5, false, null);
+      long start = System.currentTimeMillis();
+      warmUp.run();
+      Assert.assertTrue("The budget must stop a hanging warm-up", System.currentTimeMillis() - start < 5000);
+      Assert.assertTrue(warmUp.isDone());
+      Assert.assertEquals(WarmUp.BUDGET_EXCEEDED, warmUp.getState());
+    } finally {
+      extensions.remove(hanging);
+      release.countDown();
+    }
+  }
+
+  // an extension hanging while it is warmed up, until released
+  private static class HangingExtension implements Extension, WarmUp.Participant {
+    private final CountDownLatch release;
+
+    HangingExtension(CountDownLatch release) {
+      this.release = release;
+    }
+
+    public Extension register(String name, SiteContext site, Map<String, Object> configuration) {
+      return this;
+    }
+
+    public String getName() {
+      return "hanging";
+    }
+
+    public void shutdown() {
+    }
+
+    public int warmUp(SiteContext site) throws Exception {
+      release.await();
+      return 0;
+    }
+  }
+
+  /**
+   * the phases wait for their dependencies and the first failure is reported
+   */
+  @Test
+  public void testStartupPhases() throws Exception {
+    final StringBuffer order = new StringBuffer();
+    Startup startup = new Startup(true, 4)
+        .add("slow", new Startup.Phase() {
+          public void run() throws Exception {
+            Thread.sleep(50);
+            order.append("slow,");
+          }
+        })
+        .add("fast", new Startup.Phase() {
+          public void run() throws Exception {
+            order.append("fast,");
+          }
+        })
+        .add("last", new Startup.Phase() {
+          public void run() throws Exception {
+            order.append("last");
+          }
+        }, "slow", "fast");
+    startup.run();
+    Assert.assertEquals("fast,slow,last", order.toString());
+    Assert.assertTrue(startup.getTotal() > 0);
+
+    startup = new Startup(true, 2)
+        .add("broken", new Startup.Phase() {
+          public void run() throws Exception {
+            throw new IllegalStateException("broken");
+          }
+        })
+        .add("dependent", new Startup.Phase() {
+          public void run() throws Exception {
+            Assert.fail("a phase must not run if its dependencies failed");
+          }
+        }, "broken");
+    try {
+      startup.run();
+      Assert.fail("the failure of a phase must be reported");
+    } catch (IllegalStateException e) {
+      Assert.assertEquals("broken", e.getMessage());
+    }
+  }
 }
@@ -28,7 +28,7 @@ import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({MicroGenericTest.class, ViewsTest.class, HelpersTest.class,
-    ControllerManagerTest.class, FiltersTest.class, RoutingTest.class})
+    ControllerManagerTest.class, FiltersTest.class, RoutingTest.class, AsyncMicroFilterTest.class})
 //@RunWith(OrderedRunner.class)
 //@FixMethodOrder(MethodSorters.NAME_ASCENDING)
 
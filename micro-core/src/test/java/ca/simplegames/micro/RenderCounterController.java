@@ -0,0 +1,38 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro;
+
+import ca.simplegames.micro.controllers.ControllerException;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * counting the renderings of a View, for testing the output cache; the response is cacheable by the clients
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-18 5:40 PM)
+ */
+public class RenderCounterController implements Controller {
+  public static final AtomicInteger renders = new AtomicInteger();
+
+  @Override
+  public void execute(MicroContext context, Map configuration) throws ControllerException {
+    context.put("renders", renders.incrementAndGet());
+    context.getRackResponse().withHeader("Cache-Control", "public, max-age=60");
+  }
+}
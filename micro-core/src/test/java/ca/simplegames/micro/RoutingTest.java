@@ -16,7 +16,13 @@
 
 package ca.simplegames.micro;
 
+import ca.simplegames.micro.cache.OutputCache;
+import ca.simplegames.micro.instrumentation.Instrumentation;
+import ca.simplegames.micro.instrumentation.MetricsWriter;
+import ca.simplegames.micro.route.RouteManager;
+import ca.simplegames.micro.route.RouteTrie;
 import ca.simplegames.micro.utils.ResponseUtils;
+import ca.simplegames.micro.utils.StaticContent;
 import junit.framework.Assert;
 import org.jrack.Context;
 import org.jrack.Rack;
@@ -26,10 +32,23 @@ import org.jrack.utils.Mime;
 import org.json.JSONObject;
 import org.junit.Test;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Test file for everything about routing in Micro
@@ -66,6 +85,245 @@ public class RoutingTest {
             .equalsIgnoreCase(Mime.mimeType(".png")));
   }
 
+  /**
+   * the binary content is answered with a 304 if not modified, partially if a byte range is asked and
+   * with a precompressed sibling if the client accepts it; see: {@link ca.simplegames.micro.utils.StaticContent}
+   */
+  @Test
+  public void testBinaryContentConditionalAndRanges() throws Exception {
+    RackResponse response = micro.call(new MapContext<String>()
+        .with(Rack.REQUEST_METHOD, "GET")
+        .with(Rack.PATH_INFO, "/micro-logo.png"));
+    String etag = RackResponse.getHeaders(response).get("ETag");
+    Assert.assertNotNull("The binary content must have an ETag", etag);
+    Assert.assertEquals("bytes", RackResponse.getHeaders(response).get("Accept-Ranges"));
+
+    response = micro.call(new MapContext<String>()
+        .with(Rack.REQUEST_METHOD, "GET")
+        .with(Rack.PATH_INFO, "/micro-logo.png")
+        .with("HTTP_IF_NONE_MATCH", etag));
+    Assert.assertEquals(304, response.getStatus());
+    Assert.assertEquals(0, RackResponse.getBodyAsBytes(response).length);
+
+    response = micro.call(new MapContext<String>()
+        .with(Rack.REQUEST_METHOD, "GET")
+        .with(Rack.PATH_INFO, "/micro-logo.png")
+        .with("HTTP_RANGE", "bytes=0-99"));
+    Assert.assertEquals(206, response.getStatus());
+    Assert.assertEquals(100, RackResponse.getBodyAsBytes(response).length);
+    Assert.assertEquals("bytes 0-99/6898", RackResponse.getHeaders(response).get("Content-Range"));
+    Assert.assertEquals("100", RackResponse.getHeaders(response).get("Content-Length"));
+
+    response = micro.call(new MapContext<String>()
+        .with(Rack.REQUEST_METHOD, "GET")
+        .with(Rack.PATH_INFO, "/micro-logo.png")
+        .with("HTTP_RANGE", "bytes=-10"));
+    Assert.assertEquals(206, response.getStatus());
+    Assert.assertEquals("bytes 6888-6897/6898", RackResponse.getHeaders(response).get("Content-Range"));
+
+    response = micro.call(new MapContext<String>()
+        .with(Rack.REQUEST_METHOD, "GET")
+        .with(Rack.PATH_INFO, "/micro-logo.png")
+        .with("HTTP_RANGE", "bytes=7000-"));
+    Assert.assertEquals(416, response.getStatus());
+    Assert.assertEquals("bytes */6898", RackResponse.getHeaders(response).get("Content-Range"));
+
+    File text = micro.getSite().getRepositoryManager().getDefaultRepository().pathToFile("precompressed.text");
+    File gzipped = new File(text.getPath() + ".gz");
+    try {
+      FileWriter writer = new FileWriter(text);
+      writer.write("Hello, compressed world!");
+      writer.close();
+      GZIPOutputStream gzip = new GZIPOutputStream(new FileOutputStream(gzipped));
+      gzip.write("Hello, compressed world!".getBytes("UTF-8"));
+      gzip.close();
+
+      response = micro.call(new MapContext<String>()
+          .with(Rack.REQUEST_METHOD, "GET")
+          .with(Rack.PATH_INFO, "/precompressed.text")
+          .with("HTTP_ACCEPT_ENCODING", "deflate, gzip"));
+      Assert.assertEquals("gzip", RackResponse.getHeaders(response).get("Content-Encoding"));
+      Assert.assertEquals("Accept-Encoding", RackResponse.getHeaders(response).get("Vary"));
+      Assert.assertEquals(String.valueOf(gzipped.length()), RackResponse.getHeaders(response).get("Content-Length"));
+
+      response = micro.call(new MapContext<String>()
+          .with(Rack.REQUEST_METHOD, "GET")
+          .with(Rack.PATH_INFO, "/precompressed.text"));
+      Assert.assertNull(RackResponse.getHeaders(response).get("Content-Encoding"));
+      Assert.assertEquals("Hello, compressed world!", RackResponse.getBodyAsString(response));
+    } finally {
+      text.delete();
+      gzipped.delete();
+    }
+  }
+
+  /**
+   * the ranges read in memory are bounded, and the output cache keys are varied by the precompressed
+   * encodings accepted by the client
+   */
+  @Test
+  public void testLongRangesAndEncodingKeys() throws Exception {
+    File file = File.createTempFile("micro-range", ".bin");
+    try {
+      RandomAccessFile content = new RandomAccessFile(file, "rw");
+      content.setLength(3 * StaticContent.MAX_RANGE_IN_MEMORY);
+      content.close();
+
+      MicroContext<String> context = new MicroContext<String>();
+      context.with(Globals.RACK_INPUT, new MapContext<String>().with("HTTP_RANGE", "bytes=10-"));
+      context.setRackResponse(new RackResponse(HttpServletResponse.SC_OK));
+      RackResponse response = StaticContent.serve(context, file, "application/octet-stream");
+      Assert.assertEquals(206, response.getStatus());
+      Assert.assertEquals(StaticContent.MAX_RANGE_IN_MEMORY, RackResponse.getBodyAsBytes(response).length);
+      Assert.assertEquals(String.format("bytes 10-%d/%d", StaticContent.MAX_RANGE_IN_MEMORY + 9, file.length()),
+          RackResponse.getHeaders(response).get("Content-Range"));
+    } finally {
+      file.delete();
+    }
+
+    OutputCache outputCache = new OutputCache(new HashMap<String, Object>());
+    String[] keys = new String[3];
+    String[] acceptEncodings = {"gzip, br", "br;q=1.0, gzip, deflate", null};
+    for (int i = 0; i < keys.length; i++) {
+      MicroContext<String> context = new MicroContext<String>();
+      context.with(Globals.RACK_INPUT, new MapContext<String>()
+          .with(Rack.REQUEST_METHOD, "GET")
+          .with(Rack.PATH_INFO, "/micro-logo.png")
+          .with("HTTP_ACCEPT_ENCODING", acceptEncodings[i]));
+      keys[i] = outputCache.key(context);
+    }
+    Assert.assertEquals(keys[0], keys[1]);
+    Assert.assertFalse("The pages must be cached by the encodings accepted", keys[0].equals(keys[2]));
+  }
+
+  /**
+   * the file regions are written as mapped buffers to the streams able to write them, and copied to the
+   * other streams
+   */
+  @Test
+  public void testFileRegions() throws Exception {
+    File file = File.createTempFile("micro-region", ".bin");
+    try {
+      byte[] bytes = new byte[5 * 1024 * 1024 + 123];
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = (byte) i;
+      }
+      FileOutputStream content = new FileOutputStream(file);
+      content.write(bytes);
+      content.close();
+
+      final List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+      ByteArrayOutputStream mapped = new MappedOutput(buffers);
+      StaticContent.FileRegion region = new StaticContent.FileRegion(file, 100, bytes.length - 100);
+      Assert.assertEquals(bytes.length - 100, region.transferTo(mapped));
+      Assert.assertTrue("The file must be written in chunks", buffers.size() > 1);
+      for (ByteBuffer buffer : buffers) {
+        Assert.assertTrue("The file must not be copied on the heap", buffer.isDirect());
+      }
+      Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(bytes, 100, bytes.length), mapped.toByteArray()));
+
+      ByteArrayOutputStream copied = new ByteArrayOutputStream();
+      Assert.assertEquals(bytes.length - 100, region.transferTo(copied));
+      Assert.assertTrue(Arrays.equals(mapped.toByteArray(), copied.toByteArray()));
+    } finally {
+      file.delete();
+    }
+  }
+
+  // a stream writing the buffers and keeping them
+  private static class MappedOutput extends ByteArrayOutputStream implements StaticContent.BufferOutput {
+    private final List<ByteBuffer> buffers;
+
+    MappedOutput(List<ByteBuffer> buffers) {
+      this.buffers = buffers;
+    }
+
+    public void write(ByteBuffer buffer) {
+      buffers.add(buffer);
+      byte[] chunk = new byte[buffer.remaining()];
+      buffer.get(chunk);
+      write(chunk, 0, chunk.length);
+    }
+  }
+
+  /**
+   * the stages of a request are timed and sent out with the Server-Timing header, when the instrumentation
+   * is enabled; the routes, the views and the controllers are timed individually
+   */
+  @Test
+  public void testRequestTimings() throws Exception {
+    Instrumentation instrumentation = micro.getSite().getInstrumentation();
+    Assert.assertTrue("The instrumentation must be enabled by the test config", instrumentation.isEnabled());
+    long requests = instrumentation.getStage(Instrumentation.Stage.TOTAL).getCount();
+
+    Context<String> input = new MapContext<String>()
+        .with(Rack.REQUEST_METHOD, "GET")
+        .with(Rack.PATH_INFO, "/view_with_filters.html");
+
+    RackResponse response = micro.call(input);
+    String serverTiming = RackResponse.getHeaders(response).get(Instrumentation.SERVER_TIMING);
+    Assert.assertNotNull("Missing the Server-Timing header", serverTiming);
+    for (String stage : new String[]{"helpers", "before_filters", "route_match", "view_config",
+        "view_controllers", "layout_render", "controller", "total"}) {
+      Assert.assertTrue(String.format("Stage: %s, not timed: %s", stage, serverTiming),
+          serverTiming.contains(stage + ";dur="));
+    }
+    Assert.assertTrue("The view controllers are not timed",
+        instrumentation.getControllers().containsKey("filters/BeforeViewFilter1.bsh"));
+    Assert.assertTrue("The view is not timed", instrumentation.getViews().containsKey("/view_with_filters.html"));
+
+    input = new MapContext<String>()
+        .with(Rack.REQUEST_METHOD, "GET")
+        .with(Rack.PATH_INFO, "/view/timings");
+    response = micro.call(input);
+    Assert.assertTrue("The route is not timed",
+        RackResponse.getHeaders(response).get(Instrumentation.SERVER_TIMING).contains("route;dur="));
+    Assert.assertEquals("The route is not timed", 1,
+        instrumentation.getRoutes().get("/view/{something}").getCount(), 0);
+
+    Assert.assertEquals("The requests are not counted", requests + 2,
+        instrumentation.getStage(Instrumentation.Stage.TOTAL).getCount());
+    Map<String, Object> statistics = instrumentation.getStatistics();
+    Assert.assertTrue(((Map) statistics.get("stages")).containsKey("total"));
+    Assert.assertTrue(((Map) statistics.get("routes")).containsKey("/view/{something}"));
+  }
+
+  /**
+   * the metrics of the site, in the Prometheus text format; see: {@link ca.simplegames.micro.instrumentation.Metrics}
+   */
+  @Test
+  public void testMetrics() throws Exception {
+    micro.call(new MapContext<String>()
+        .with(Rack.REQUEST_METHOD, "GET")
+        .with(Rack.PATH_INFO, "/view/metrics"));
+
+    RackResponse response = micro.call(new MapContext<String>()
+        .with(Rack.REQUEST_METHOD, "GET")
+        .with(Rack.PATH_INFO, "/system/metrics"));
+    String metrics = RackResponse.getBodyAsString(response, Charset.forName("UTF-8"));
+
+    Assert.assertEquals(MetricsWriter.CONTENT_TYPE, RackResponse.getHeaders(response).get("Content-Type"));
+    for (String sample : new String[]{
+        "micro_request_duration_seconds_bucket{route=\"/view/{something}\",status=\"200\",le=\"+Inf\"} ",
+        "micro_request_duration_seconds_count{route=\"/view/{something}\",status=\"200\"} ",
+        "micro_stage_duration_seconds_sum{stage=\"total\"} ",
+        "micro_controller_duration_seconds_count{controller=",
+        "micro_cache_hit_ratio{cache=\"micro_output_cache\"} ",
+        "micro_script_engines_created_total{language=\"beanshell\"} ",
+        "micro_template_compiles_total{repository=\"templates\"} ",
+        "micro_route_reloads_total ",
+        "jvm_memory_bytes_used{area=\"heap\"} ",
+        "jvm_threads_current "}) {
+      Assert.assertTrue("Missing: " + sample, metrics.contains(sample));
+    }
+
+    for (String line : metrics.split("\n")) {
+      Assert.assertTrue("Invalid sample: " + line,
+          line.startsWith("# HELP ") || line.startsWith("# TYPE ") ||
+              line.matches("[a-zA-Z_:][a-zA-Z0-9_:]*(\\{.*\\})? [-+]?(Inf|NaN|[0-9.E-]+)"));
+    }
+  }
+
   @Test
   public void testParamLessRoutes() throws Exception {
 
@@ -132,4 +390,108 @@ public class RoutingTest {
     Assert.assertEquals("Invalid response", "Micro",
         RackResponse.getBodyAsString(response, Charset.forName("UTF-8")));
   }
+
+  /**
+   * the compiled routes must pick the same Route as the linear scan, for every request path
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testCompiledRoutesMatchTheLinearScan() throws Exception {
+    String[][] templates = {
+        {"/{image_file}.{type: png|jpg|jpeg|text}", "get, head"},
+        {"/system/info", ""},
+        {"/view/{something}", "get, head"},
+        {"/micro/files", ""},
+        {"/micro/{name}/{version:.*}", ""},
+        {"/users/{id: \\d+}/", "post"},
+        {"/users/{name}", ""},
+        {"/files/{path:.*}", "get"},
+        {"/", "delete"},
+    };
+
+    RouteTrie trie = new RouteTrie();
+    List<Route> routes = new ArrayList<Route>();
+    for (String[] template : templates) {
+      Route route = new Route(template[0], Collections.<String, Object>singletonMap("method", template[1])) {
+        @Override
+        public RackResponse call(MicroContext context) throws Exception {
+          return null;
+        }
+      };
+      trie.add(route);
+      routes.add(route);
+    }
+
+    String[] paths = {"/micro-logo.png", "/a/micro-logo.png", "/system/info", "/system/info/", "/system/info/disk",
+        "/system/infox", "/view/Micro", "/view/a/b", "/view/", "/micro/files", "/micro/files/x", "/micro/µ/0.1.2",
+        "/micro/x/", "/users/42", "/users/42/", "/users/florin", "/files/a/b/c.txt", "/files", "/", "x", "",
+        "//", "/users//42"};
+
+    for (String method : new String[]{"GET", "POST", "HEAD", "DELETE"}) {
+      for (String path : paths) {
+        Route expected = null;
+        for (Route route : routes) {
+          if ((route.getMethod().isEmpty() || route.getMethod().contains(method))
+              && route.match(path, route.getPath()) != null) {
+            expected = route;
+            break;
+          }
+        }
+
+        Route found = null;
+        for (Route route : trie.candidates(path, method)) {
+          if (route.match(path, route.getPath()) != null) {
+            found = route;
+            break;
+          }
+        }
+        Assert.assertSame(String.format("%s %s", method, path), expected, found);
+      }
+    }
+  }
+
+  /**
+   * the routes are reloaded while other threads are using them; they must always see a complete route table
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testReloadingTheRoutesWhileInUse() throws Exception {
+    File routesConfig = new File(micro.getSite().getWebInfPath(), "config/routes.yml");
+    final RouteManager routeManager = new RouteManager(micro.getSite(), routesConfig);
+    final int routesCount = routeManager.getRouteTable().size();
+    final AtomicBoolean reloading = new AtomicBoolean(true);
+    final AtomicReference<String> failure = new AtomicReference<String>();
+
+    Assert.assertTrue("The test routes are not loaded", routesCount > 0);
+
+    Thread reader = new Thread(new Runnable() {
+      public void run() {
+        while (reloading.get() && failure.get() == null) {
+          try {
+            if (routeManager.candidates("/system/info", "GET").isEmpty()
+                || routeManager.getRouteTable().getRoutes().size() != routesCount) {
+              failure.set("incomplete route table");
+            }
+          } catch (Exception e) {
+            failure.set(e.toString());
+          }
+        }
+      }
+    });
+    reader.start();
+
+    for (int i = 0; i < 50; i++) {
+      routeManager.reload();
+    }
+    reloading.set(false);
+    reader.join();
+
+    Assert.assertNull(failure.get(), failure.get());
+    Assert.assertEquals(50, routeManager.getReloadCount());
+    Assert.assertEquals(0, routeManager.getReloadFailures());
+    Assert.assertEquals(routesCount, routeManager.getRoutesMap().size());
+    Assert.assertTrue(routeManager.getLastReloadTime() > 0);
+  }
 }
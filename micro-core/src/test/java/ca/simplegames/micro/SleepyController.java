@@ -0,0 +1,46 @@
+/*
+ * Copyright (c)2014 Florin T.Pătraşcu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.simplegames.micro;
+
+import ca.simplegames.micro.controllers.ControllerException;
+
+import java.util.Map;
+
+/**
+ * a slow controller, sleeping for: <code>sleep</code> milliseconds before adding the name of its thread to
+ * the context, as: <code>key</code>, and to the response, as the <code>X-key</code> header, and the value of
+ * the request parameter: <code>param</code>, if configured, as: <code>key_param</code>
+ *
+ * @author <a href="mailto:florin.patrascu@gmail.com">Florin T.PATRASCU</a>
+ * @since $Revision$ (created: 2026-10-18 9:10 PM)
+ */
+public class SleepyController implements Controller {
+  @Override
+  public void execute(MicroContext context, Map configuration) throws ControllerException {
+    try {
+      Thread.sleep(Long.parseLong(configuration.get("sleep").toString()));
+    } catch (InterruptedException e) {
+      throw new ControllerException("interrupted");
+    }
+    String key = (String) configuration.get("key");
+    context.put(key, Thread.currentThread().getName());
+    context.getRackResponse().withHeader("X-" + key, Thread.currentThread().getName());
+    if (configuration.get("param") != null) {
+      context.put(key + "_param", context.getParams().get(configuration.get("param")));
+    }
+  }
+}
@@ -16,6 +16,13 @@
 
 package ca.simplegames.micro;
 
+import ca.simplegames.micro.cache.MicroCache;
+import ca.simplegames.micro.repositories.Repository;
+import ca.simplegames.micro.repositories.RepositoryContent;
+import ca.simplegames.micro.utils.FileChangeService;
+import ca.simplegames.micro.utils.IO;
+import ca.simplegames.micro.utils.Reloadable;
+import ca.simplegames.micro.viewers.freemarker.FreemarkerViewRenderer;
 import org.jrack.Context;
 import org.jrack.Rack;
 import org.jrack.RackResponse;
@@ -25,7 +32,27 @@ import org.junit.Before;
 import org.junit.Test;
 
 import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * testing everything in relation to the Views
@@ -86,4 +113,252 @@ public class ViewsTest {
     Assert.assertNotNull("Should receive some feedback from the AFTER filters",
         context.get("afterFilters"));
   }
+
+  /**
+   * the Freemarker templates are compiled once per repository and recompiled when modified, outside production
+   */
+  @Test
+  public void testFreemarkerTemplatesCache() throws Exception {
+    Repository repository = micro.getSite().getRepositoryManager().getRepository("freemarker");
+    FreemarkerViewRenderer freemarker = (FreemarkerViewRenderer) repository.getRenderer();
+    MicroContext<String> context = new MicroContext<String>();
+    context.with(Globals.SITE, micro.getSite())
+        .with("title", "Freemarker")
+        .with("items", Arrays.asList("one", "two & three"));
+
+    context.with(Globals.YIELD, repository.getRepositoryWrapper(context).get("page.ftl"));
+    String page = repository.getRepositoryWrapper(context).get("layout.ftl");
+    Assert.assertTrue(page.contains("<title>Freemarker</title>"));
+    Assert.assertTrue(page.contains("<li class=\"odd\">2. two &amp; three</li>"));
+    Assert.assertSame("The Freemarker configuration must be reused",
+        freemarker.getConfiguration(repository), freemarker.getConfiguration(repository));
+
+    File template = new File(repository.getPath(), "modified.ftl");
+    try {
+      IO.writeData(template, "${title} v1".getBytes(Globals.UTF8));
+      Assert.assertEquals("Freemarker v1", repository.getRepositoryWrapper(context).get("modified.ftl"));
+
+      IO.writeData(template, "${title} v2".getBytes(Globals.UTF8));
+      template.setLastModified(template.lastModified() + 2000);
+      Assert.assertEquals("A modified template must be reloaded",
+          "Freemarker v2", repository.getRepositoryWrapper(context).get("modified.ftl"));
+    } finally {
+      template.delete();
+    }
+  }
+
+  /**
+   * the Markdown documents are rendered concurrently, and their HTML is reused until they are modified
+   */
+  @Test
+  public void testConcurrentMarkdown() throws Exception {
+    final Repository repository = micro.getSite().getRepositoryManager().getRepository("markdown");
+    final MicroContext<String> context = new MicroContext<String>();
+    context.with(Globals.SITE, micro.getSite());
+
+    File document = new File(repository.getPath(), "modified.md");
+    try {
+      IO.writeData(document, "**v1**".getBytes(Globals.UTF8));
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try {
+        List<Future<String>> results = new ArrayList<Future<String>>();
+        for (int i = 0; i < 50; i++) {
+          results.add(executor.submit(new Callable<String>() {
+            public String call() throws Exception {
+              return repository.getRepositoryWrapper(context).get("index.md") +
+                  repository.getRepositoryWrapper(context).get("modified.md");
+            }
+          }));
+        }
+        for (Future<String> result : results) {
+          Assert.assertTrue(result.get().contains("<h3>Markdown</h3><p>This is a simple markdown document</p>"));
+          Assert.assertTrue(result.get().endsWith("<p><strong>v1</strong></p>"));
+        }
+      } finally {
+        executor.shutdown();
+      }
+
+      IO.writeData(document, "_v2_".getBytes(Globals.UTF8));
+      Assert.assertEquals("A modified document must be rendered again",
+          "<p><em>v2</em></p>", repository.getRepositoryWrapper(context).get("modified.md"));
+    } finally {
+      document.delete();
+    }
+  }
+
+  /**
+   * the raw content of a repository resource is read without decoding it, on or off the heap
+   */
+  @Test
+  public void testRepositoryContent() throws Exception {
+    Repository repository = micro.getSite().getRepositoryManager().getDefaultRepository();
+    File logo = repository.pathToFile("micro-logo.png");
+
+    RepositoryContent content = repository.readContent("micro-logo.png");
+    Assert.assertEquals(6898, content.getLength());
+    Assert.assertEquals(logo.lastModified(), content.getLastModified());
+    Assert.assertArrayEquals(IO.copyToByteArray(logo), content.getBytes());
+    Assert.assertArrayEquals(content.getBytes(), IO.copyToByteArray(repository.getInputStream("micro-logo.png")));
+
+    Assert.assertEquals(repository.read("index.html"),
+        IO.getString(new InputStreamReader(repository.getInputStream("index.html"), Globals.UTF8)));
+
+    RepositoryContent direct = RepositoryContent.read(logo, true);
+    Assert.assertTrue(direct.isDirect());
+    Assert.assertArrayEquals(content.getBytes(), direct.getBytes());
+    Assert.assertEquals(new String(content.getBytes(), Globals.UTF8), direct.toString(Charset.forName(Globals.UTF8)));
+
+    // the large files are not cached
+    File large = repository.pathToFile("large-content.bin");
+    try {
+      RandomAccessFile out = new RandomAccessFile(large, "rw");
+      out.setLength(Repository.MAX_CACHED_CONTENT_LENGTH + 1);
+      out.close();
+      RepositoryContent largeContent = repository.readContent("large-content.bin");
+      Assert.assertEquals(Repository.MAX_CACHED_CONTENT_LENGTH + 1, largeContent.getLength());
+      Assert.assertFalse(largeContent.isDirect());
+      Assert.assertNotSame(largeContent, repository.readContent("large-content.bin"));
+    } finally {
+      large.delete();
+    }
+  }
+
+  /**
+   * the View definitions are parsed once and parsed again only if they are modified
+   */
+  @Test
+  public void testCompiledViews() throws Exception {
+    Repository repository = micro.getSite().getRepositoryManager().getDefaultRepository();
+    File definition = new File(repository.getPath(), "config/view_with_filters.yml");
+    long lastModified = definition.lastModified();
+
+    View view = repository.getView("view_with_filters.html");
+    Assert.assertNotNull(view);
+    Assert.assertEquals(2, view.getFiltersBefore().size());
+    long parsed = (Long) repository.getViewStatistics().get("parsed");
+
+    Assert.assertSame("a View must be parsed once", view, repository.getView("view_with_filters.html"));
+    Assert.assertEquals(parsed, repository.getViewStatistics().get("parsed"));
+    Assert.assertNull(repository.getView("no_such_view.html"));
+
+    try {
+      Assert.assertTrue(definition.setLastModified(lastModified + 2000));
+      View modified = repository.getView("view_with_filters.html");
+      Assert.assertNotSame("a modified View must be parsed again", view, modified);
+      Assert.assertEquals(parsed + 1, repository.getViewStatistics().get("parsed"));
+      Assert.assertSame(modified, repository.getView("view_with_filters.html"));
+    } finally {
+      definition.setLastModified(lastModified);
+    }
+
+    repository.invalidate(definition);
+    View invalidated = repository.getView("view_with_filters.html");
+    Assert.assertNotSame("an invalidated View must be parsed again", view, invalidated);
+
+    // a changed directory evicts only its own files from the cache, possibly shared
+    MicroCache cache = repository.getCache();
+    if (cache != null) {
+      String content = repository.read("index.html");
+      cache.put("foreign", "kept");
+      repository.invalidate(definition.getParentFile());
+      Assert.assertEquals("kept", cache.get("foreign"));
+      Assert.assertEquals(content, cache.get(repository.pathToFile("index.html").getAbsolutePath()));
+      cache.remove("foreign");
+    }
+
+    try {
+      view.getFiltersBefore().clear();
+      Assert.fail("a shared View must be read-only");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  /**
+   * the changes of the watched files are sent to the listeners, once per file
+   */
+  @Test
+  public void testFileChangeService() throws Exception {
+    File root = File.createTempFile("micro", "watched");
+    Assert.assertTrue(root.delete() && root.mkdir());
+    final BlockingQueue<File> changes = new LinkedBlockingQueue<File>();
+    final AtomicInteger reloads = new AtomicInteger();
+    final CountDownLatch reloaded = new CountDownLatch(1);
+    FileChangeService service = new FileChangeService(50);
+
+    File config = new File(root, "routes.yml");
+    File child = new File(root, "views");
+    File nested = new File(child, "index.html");
+    try {
+      IO.copy("routes: []".getBytes("UTF-8"), config);
+      Assert.assertTrue(service.watch(root, true, new FileChangeService.Listener() {
+        public void changed(File file) {
+          changes.add(file);
+        }
+      }));
+      Assert.assertTrue(service.watch(config, new Reloadable() {
+        public void reload() {
+          reloads.incrementAndGet();
+          reloaded.countDown();
+        }
+      }));
+      Assert.assertFalse(service.watch(new File(root, "missing"), true, null));
+
+      IO.copy("routes: [{route: /}]".getBytes("UTF-8"), config);
+      Assert.assertEquals(config.getAbsoluteFile(), changes.poll(10, TimeUnit.SECONDS));
+      Assert.assertTrue(reloaded.await(10, TimeUnit.SECONDS));
+
+      // the next change notified is the new directory, not the file again
+      Assert.assertTrue(child.mkdir());
+      Assert.assertEquals("the events of a file are sent out once", child.getAbsoluteFile(),
+          changes.poll(10, TimeUnit.SECONDS));
+      Assert.assertEquals(1, reloads.get());
+
+      // the new directory is watched before its creation is notified
+      IO.copy("<p>hello</p>".getBytes("UTF-8"), nested);
+      File changed;
+      do {
+        changed = changes.poll(10, TimeUnit.SECONDS);
+      } while (changed != null && !changed.equals(nested.getAbsoluteFile()));
+      Assert.assertEquals("a new directory must be watched", nested.getAbsoluteFile(), changed);
+      Assert.assertEquals(1, reloads.get());
+    } finally {
+      service.shutdown();
+      nested.delete();
+      child.delete();
+      config.delete();
+      root.delete();
+    }
+  }
+
+  /**
+   * the independent controllers of a View are executed concurrently and their results are merged into
+   * the context and the response, before rendering the View; they are sharing the params of the request. A
+   * redirect requested by such a controller is still a redirect
+   */
+  @Test
+  public void testParallelControllers() throws Exception {
+    Map<String, Object> params = new HashMap<String, Object>();
+    params.put("a", "1");
+    params.put("b", "2");
+    Context<String> input = new MapContext<String>()
+        .with(Rack.REQUEST_METHOD, "GET")
+        .with(Rack.PATH_INFO, "/parallel.html")
+        .with(Rack.PARAMS, params);
+
+    RackResponse response = micro.call(input);
+    String body = RackResponse.getBodyAsString(response);
+    Assert.assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    Matcher threads = Pattern.compile("first: (micro-controller-\\d+), second: (micro-controller-\\d+)").matcher(body);
+    Assert.assertTrue(body, threads.find());
+    Assert.assertFalse("The controllers must run concurrently", threads.group(1).equals(threads.group(2)));
+    Assert.assertTrue("The params must be read by the parallel controllers", body.contains("a: 1, b: 2"));
+    Assert.assertEquals("The response headers must be merged", threads.group(1), response.getHeaders().get("X-first"));
+    Assert.assertEquals(threads.group(2), response.getHeaders().get("X-second"));
+
+    input.with(Rack.PATH_INFO, "/parallel_redir.html");
+    response = micro.call(input);
+    Assert.assertTrue("A redirect is expected", response.getStatus() / 100 == 3);
+    Assert.assertTrue(response.getHeaders().get("Location").contains("redirected.html"));
+  }
 }
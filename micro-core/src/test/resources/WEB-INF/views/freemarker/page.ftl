@@ -0,0 +1,6 @@
+<h1>${title}</h1>
+<ul>
+<#list items as item>
+  <li class="<#if item_index % 2 == 0>even<#else>odd</#if>">${item_index + 1}. ${item?html}</li>
+</#list>
+</ul>